@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs benchmarks, as {@code org.openjdk.jmh.Main} does with the same
+ * command line options, with the allocation profiler attached so that every
+ * result reports the allocation rate and the bytes allocated per operation.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public final class BenchmarkMain {
+
+
+    /**
+     * Runs benchmarks.
+     *
+     * @param args JMH command line options; {@code -h} for help.
+     *
+     * @throws IOException if failed to show the help.
+     * @throws CommandLineOptionException if the options are illegal.
+     * @throws RunnerException if failed to run benchmarks.
+     */
+    public static void main(final String[] args)
+        throws IOException, CommandLineOptionException, RunnerException {
+
+        final CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        if (options.shouldList()) {
+            new Runner(options).list();
+            return;
+        }
+
+        new Runner(new OptionsBuilder().parent(options)
+            .addProfiler(GCProfiler.class).build()).run();
+    }
+
+
+    private BenchmarkMain() {
+
+        super();
+    }
+
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+import static java.util.concurrent.ThreadLocalRandom.current;
+
+
+/**
+ * Utilities shared by benchmarks.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class Benchmarks {
+
+
+    /**
+     * Random bytes repeated by source channels so that the file system can't
+     * take any shortcut for zeros.
+     */
+    private static final byte[] PATTERN = new byte[65536];
+
+
+    static {
+        new Random(0L).nextBytes(PATTERN);
+    }
+
+
+    /**
+     * Creates a new temporary root path.
+     *
+     * @return a new root path.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static Path createRootPath() throws IOException {
+
+        return Files.createTempDirectory("simple-file-back-benchmarks");
+    }
+
+
+    /**
+     * Deletes specified root path and everything under it.
+     *
+     * @param rootPath the root path.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static void deleteRootPath(final Path rootPath) throws IOException {
+
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+
+
+            @Override
+            public FileVisitResult visitFile(final Path file,
+                                             final BasicFileAttributes attrs)
+                throws IOException {
+
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir,
+                                                      final IOException exc)
+                throws IOException {
+
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+
+        });
+    }
+
+
+    /**
+     * Returns a new random file key.
+     *
+     * @return a new file key.
+     */
+    static ByteBuffer randomFileKey() {
+
+        final byte[] keyBytes = new byte[16];
+        current().nextBytes(keyBytes);
+
+        return ByteBuffer.wrap(keyBytes);
+    }
+
+
+    /**
+     * Returns a channel which supplies specified number of bytes without
+     * holding them in memory.
+     *
+     * @param size the number of bytes to supply.
+     *
+     * @return a source channel.
+     */
+    static ReadableByteChannel source(final long size) {
+
+        return new ReadableByteChannel() {
+
+
+            @Override
+            public int read(final ByteBuffer dst) {
+
+                if (remaining == 0L) {
+                    return -1;
+                }
+                final int length = (int) Math.min(
+                    remaining, Math.min(dst.remaining(), PATTERN.length));
+                dst.put(PATTERN, 0, length);
+                remaining -= length;
+                return length;
+            }
+
+
+            @Override
+            public boolean isOpen() {
+
+                return true;
+            }
+
+
+            @Override
+            public void close() {
+            }
+
+
+            private long remaining = size;
+
+
+        };
+    }
+
+
+    /**
+     * Returns a channel which discards all bytes written.
+     *
+     * @return a sink channel.
+     */
+    static WritableByteChannel sink() {
+
+        return new WritableByteChannel() {
+
+
+            @Override
+            public int write(final ByteBuffer src) {
+
+                final int remaining = src.remaining();
+                src.position(src.limit());
+                return remaining;
+            }
+
+
+            @Override
+            public boolean isOpen() {
+
+                return true;
+            }
+
+
+            @Override
+            public void close() {
+            }
+
+
+        };
+    }
+
+
+    /**
+     * Writes specified number of bytes as the file part of specified key.
+     *
+     * @param fileBack the file back to write to.
+     * @param fileKey the file key.
+     * @param size the number of bytes to write.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    static void write(final FileBack fileBack, final ByteBuffer fileKey,
+                      final long size)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(
+            () -> FileBack.FileOperation.WRITE);
+        fileContext.targetKeySupplier(fileKey::duplicate);
+        fileContext.sourceChannelSupplier(() -> source(size));
+        fileBack.operate(fileContext);
+    }
+
+
+    private Benchmarks() {
+
+        super();
+    }
+
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the overhead of CRC32C checksums. Reads with {@code verify}
+ * copy bytes through the heap while others transfer them directly.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#checksums(boolean)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChecksumBenchmark {
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, FileBackException {
+
+        fileBack = new LocalFileBack(Benchmarks.createRootPath());
+        fileBack.checksums(true);
+        Benchmarks.write(fileBack, sourceKey, size);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        Benchmarks.deleteRootPath(fileBack.rootPath());
+    }
+
+
+    @Benchmark
+    public void read() throws IOException, FileBackException {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+        fileContext.sourceKeySupplier(sourceKey::duplicate);
+        fileContext.targetChannelSupplier(Benchmarks::sink);
+        fileContext.verifySupplier(() -> verify);
+        fileBack.operate(fileContext);
+    }
+
+
+    @Benchmark
+    public void write() throws IOException, FileBackException {
+
+        fileBack.checksums(verify);
+        try {
+            Benchmarks.write(fileBack, targetKey, size);
+        } finally {
+            fileBack.checksums(true);
+        }
+    }
+
+
+    @Param({"1024", "1048576", "67108864"})
+    public long size;
+
+
+    /**
+     * Whether checksums are verified by reads and computed by writes.
+     */
+    @Param({"false", "true"})
+    public boolean verify;
+
+
+    private LocalFileBack fileBack;
+
+
+    private final ByteBuffer sourceKey = Benchmarks.randomFileKey();
+
+
+    private final ByteBuffer targetKey = Benchmarks.randomFileKey();
+
+
+}
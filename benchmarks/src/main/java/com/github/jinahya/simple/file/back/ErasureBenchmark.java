@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks encoding and decoding of {@link ReedSolomon}. Decoding
+ * reconstructs as many data shards as there are parity shards, the worst
+ * case.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ErasureBenchmark {
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        codec = new ReedSolomon(dataShards, parityShards);
+        shards = new byte[dataShards + parityShards][shardSize];
+        final Random random = new Random(0L);
+        for (int i = 0; i < dataShards; i++) {
+            random.nextBytes(shards[i]);
+        }
+        codec.encode(shards, 0, shardSize);
+
+        present = new boolean[shards.length];
+        Arrays.fill(present, parityShards, present.length, true);
+    }
+
+
+    @Benchmark
+    public byte[][] encode() {
+
+        codec.encode(shards, 0, shardSize);
+
+        return shards;
+    }
+
+
+    @Benchmark
+    public byte[][] decode() {
+
+        codec.decode(shards, present, 0, shardSize);
+
+        return shards;
+    }
+
+
+    @Param({"4", "10"})
+    public int dataShards;
+
+
+    @Param({"2", "4"})
+    public int parityShards;
+
+
+    @Param({"4096", "1048576"})
+    public int shardSize;
+
+
+    private ReedSolomon codec;
+
+
+    private byte[][] shards;
+
+
+    private boolean[] present;
+
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks hashing file keys into path names and resolving leaf paths.
+ * Keys are taken round robin from a fixed set so that only the first round
+ * of {@link #leafPathCreatingParent()} creates directories and the rest
+ * measure the check for existing ones.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeyBenchmark {
+
+
+    private static final int KEYS = 1024;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        rootPath = Benchmarks.createRootPath();
+        fileBack = new LocalFileBack(rootPath);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Benchmarks.randomFileKey();
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        Benchmarks.deleteRootPath(rootPath);
+    }
+
+
+    private ByteBuffer next() {
+
+        return keys[index++ & (KEYS - 1)].duplicate();
+    }
+
+
+    @Benchmark
+    public String fileKeyToPathName() throws NoSuchAlgorithmException {
+
+        return FileBackUtilities.fileKeyToPathName(next(), "SHA-1", 3, "/");
+    }
+
+
+    @Benchmark
+    public Path leafPath() {
+
+        return LocalFileBack.leafPath(rootPath, next(), false);
+    }
+
+
+    @Benchmark
+    public Path leafPathCreatingParent() {
+
+        return LocalFileBack.leafPath(rootPath, next(), true);
+    }
+
+
+    @Benchmark
+    public FileKey fileKey() {
+
+        return fileBack.fileKey(next());
+    }
+
+
+    private Path rootPath;
+
+
+    private LocalFileBack fileBack;
+
+
+    private final ByteBuffer[] keys = new ByteBuffer[KEYS];
+
+
+    private int index;
+
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Benchmarks each file operation of {@link LocalFileBack} against a
+ * temporary root path across sizes of file parts. Each thread works on its
+ * own keys; see {@link ConcurrentOperationBenchmark} for contended runs.
+ * Large sizes need as much free space, per thread, as a few file parts.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class OperationBenchmark {
+
+
+    /**
+     * The maximum number of bytes appended by an operation.
+     */
+    private static final long RECORD_SIZE = 4096L;
+
+
+    /**
+     * A file back shared by threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Back {
+
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+
+            fileBack = new LocalFileBack(Benchmarks.createRootPath());
+            fileBack.prefetcher(
+                new Prefetcher(Runnable::run, Long.MAX_VALUE));
+        }
+
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+
+            Benchmarks.deleteRootPath(fileBack.rootPath());
+        }
+
+
+        /**
+         * The size of file parts; from 1 KiB to 1 GiB.
+         */
+        @Param({"1024", "1048576", "1073741824"})
+        public long size;
+
+
+        LocalFileBack fileBack;
+
+
+    }
+
+
+    /**
+     * Keys of a thread.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+
+
+        @Setup(Level.Trial)
+        public void setup(final Back back)
+            throws IOException, FileBackException {
+
+            Benchmarks.write(back.fileBack, sourceKey, back.size);
+        }
+
+
+        @Setup(Level.Iteration)
+        public void reset(final Back back)
+            throws IOException, FileBackException {
+
+            // appended files would grow without bound
+            Benchmarks.write(back.fileBack, appendKey, back.size);
+        }
+
+
+        final ByteBuffer sourceKey = Benchmarks.randomFileKey();
+
+
+        final ByteBuffer targetKey = Benchmarks.randomFileKey();
+
+
+        final ByteBuffer appendKey = Benchmarks.randomFileKey();
+
+
+    }
+
+
+    /**
+     * A file part to delete, written before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class Deletion {
+
+
+        @Setup(Level.Invocation)
+        public void setup(final Back back)
+            throws IOException, FileBackException {
+
+            Benchmarks.write(back.fileBack, key, back.size);
+        }
+
+
+        final ByteBuffer key = Benchmarks.randomFileKey();
+
+
+    }
+
+
+    private static FileContext fileContext(
+        final FileOperation fileOperation) {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> fileOperation);
+
+        return fileContext;
+    }
+
+
+    @Benchmark
+    public void append(final Back back, final Keys keys)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = fileContext(FileOperation.APPEND);
+        fileContext.targetKeySupplier(keys.appendKey::duplicate);
+        fileContext.sourceChannelSupplier(
+            () -> Benchmarks.source(Math.min(back.size, RECORD_SIZE)));
+        back.fileBack.operate(fileContext);
+    }
+
+
+    @Benchmark
+    public void copy(final Back back, final Keys keys)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = fileContext(FileOperation.COPY);
+        fileContext.sourceKeySupplier(keys.sourceKey::duplicate);
+        fileContext.targetKeySupplier(keys.targetKey::duplicate);
+        back.fileBack.operate(fileContext);
+    }
+
+
+    @Benchmark
+    public void delete(final Back back, final Deletion deletion)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = fileContext(FileOperation.DELETE);
+        fileContext.targetKeySupplier(deletion.key::duplicate);
+        back.fileBack.operate(fileContext);
+    }
+
+
+    @Benchmark
+    public void prefetch(final Back back, final Keys keys,
+                         final Blackhole blackhole)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = fileContext(FileOperation.PREFETCH);
+        fileContext.sourceKeySupplier(keys.sourceKey::duplicate);
+        fileContext.sourceObjectConsumer(blackhole::consume);
+        back.fileBack.operate(fileContext);
+    }
+
+
+    @Benchmark
+    public void read(final Back back, final Keys keys)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = fileContext(FileOperation.READ);
+        fileContext.sourceKeySupplier(keys.sourceKey::duplicate);
+        fileContext.targetChannelSupplier(Benchmarks::sink);
+        back.fileBack.operate(fileContext);
+    }
+
+
+    @Benchmark
+    public void stat(final Back back, final Keys keys,
+                     final Blackhole blackhole)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = fileContext(FileOperation.STAT);
+        fileContext.sourceKeySupplier(keys.sourceKey::duplicate);
+        fileContext.sourceAttributesConsumer(blackhole::consume);
+        back.fileBack.operate(fileContext);
+    }
+
+
+    @Benchmark
+    public void write(final Back back, final Keys keys)
+        throws IOException, FileBackException {
+
+        Benchmarks.write(back.fileBack, keys.targetKey, back.size);
+    }
+
+
+}
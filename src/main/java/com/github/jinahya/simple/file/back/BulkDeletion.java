@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * The result of a bulk deletion. Outcomes are keyed by the path names of
+ * deleted file parts.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#delete(java.util.Collection, Executor, int, int)
+ * @see LocalFileBack#delete(String, Executor, int, int)
+ */
+public final class BulkDeletion {
+
+
+    /**
+     * Outcomes of deleting each file part.
+     */
+    public static enum Outcome {
+
+
+        /**
+         * A constant for a deleted file part.
+         */
+        DELETED,
+        /**
+         * A constant for a file part which didn't exist.
+         */
+        ABSENT,
+        /**
+         * A constant for a file part which failed to be deleted.
+         */
+        FAILED
+
+
+    }
+
+
+    /**
+     * Deletes specified leaf paths grouped by their parent directories. Each
+     * group is deleted, in order, by one of {@code parallelism} workers
+     * running on specified executor.
+     *
+     * @param fileBack the file back to delete from.
+     * @param groups leaf paths grouped by their parent directories.
+     * @param executor the executor to run workers.
+     * @param parallelism the maximum number of concurrent workers.
+     * @param rate the maximum number of file parts deleted per second;
+     * {@code 0} for unlimited.
+     *
+     * @return the result.
+     */
+    static BulkDeletion run(final LocalFileBack fileBack,
+                            final SortedMap<Path, List<Path>> groups,
+                            final Executor executor, final int parallelism,
+                            final int rate) {
+
+        final BulkDeletion deletion = new BulkDeletion(rate);
+        final Queue<List<Path>> queue
+            = new ConcurrentLinkedQueue<>(groups.values());
+        final List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(parallelism, groups.size()); i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                for (List<Path> group; (group = queue.poll()) != null;) {
+                    for (final Path leafPath : group) {
+                        deletion.pace();
+                        deletion.delete(fileBack, leafPath);
+                    }
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(workers.toArray(
+            new CompletableFuture<?>[workers.size()])).join();
+
+        return deletion;
+    }
+
+
+    private BulkDeletion(final int rate) {
+
+        super();
+
+        interval = rate == 0 ? 0L : TimeUnit.SECONDS.toNanos(1L) / rate;
+    }
+
+
+    /**
+     * Waits for the next slot of the rate, if any.
+     */
+    private void pace() {
+
+        if (interval == 0L) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final long slot = next.getAndUpdate(v -> Math.max(v, now) + interval);
+        for (long delay; (delay = slot - System.nanoTime()) > 0L;) {
+            LockSupport.parkNanos(delay);
+        }
+    }
+
+
+    private void delete(final LocalFileBack fileBack, final Path leafPath) {
+
+        final String pathName = fileBack.pathName(leafPath);
+        try {
+            final long freed = fileBack.delete(leafPath);
+            if (freed == -1L) {
+                outcomes.put(pathName, Outcome.ABSENT);
+            } else {
+                outcomes.put(pathName, Outcome.DELETED);
+                freedBytes.add(freed);
+            }
+        } catch (final IOException ioe) {
+            logger.error("failed to delete " + leafPath, ioe);
+            outcomes.put(pathName, Outcome.FAILED);
+        }
+    }
+
+
+    /**
+     * Returns the outcomes keyed by path names.
+     *
+     * @return an unmodifiable map of outcomes.
+     */
+    public Map<String, Outcome> outcomes() {
+
+        return Collections.unmodifiableMap(outcomes);
+    }
+
+
+    /**
+     * Returns the number of file parts with specified outcome.
+     *
+     * @param outcome the outcome.
+     *
+     * @return the number of file parts.
+     */
+    public int count(final Outcome outcome) {
+
+        if (outcome == null) {
+            throw new NullPointerException("null outcome");
+        }
+
+        int count = 0;
+        for (final Outcome value : outcomes.values()) {
+            if (value == outcome) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Returns the total number of bytes of deleted file parts.
+     *
+     * @return the number of bytes freed.
+     */
+    public long freedBytes() {
+
+        return freedBytes.sum();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final long interval;
+
+
+    private final AtomicLong next = new AtomicLong(System.nanoTime());
+
+
+    private final Map<String, Outcome> outcomes = new ConcurrentHashMap<>();
+
+
+    private final LongAdder freedBytes = new LongAdder();
+
+
+}
@@ -0,0 +1,952 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Live byte and object counters of a file back, per root and per namespace,
+ * along with quotas. Counters are updated by operations from the sizes they
+ * already know, persisted periodically into a file named
+ * {@value #STATE_NAME} in the root path and reconciled by an occasional scan
+ * of the tree. Writes are rejected, before any I/O, while a quota is reached;
+ * a single write may exceed a quota.
+ * <p>
+ * The namespace of each file part is kept as a user-defined attribute where
+ * the file system supports one; otherwise it is kept in an index held in
+ * memory and persisted, along with counters, into a file named
+ * {@value #INDEX_NAME} in the root path.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#account(CapacityAccount)
+ * @see FileContext#namespaceSupplier()
+ */
+public class CapacityAccount implements AutoCloseable {
+
+
+    /**
+     * The name of the file in the root path counters are persisted to.
+     */
+    public static final String STATE_NAME = ".capacity";
+
+
+    /**
+     * The name of the file in the root path the namespace index is persisted
+     * to where the file system doesn't support user-defined attributes.
+     */
+    public static final String INDEX_NAME = ".capacity.namespaces";
+
+
+    /**
+     * The name of the user-defined attribute for namespaces.
+     */
+    static final String NAMESPACE_ATTRIBUTE = "namespace";
+
+
+    /**
+     * The size and the namespace of a file part.
+     */
+    static final class Footprint {
+
+
+        Footprint(final String namespace, final long size) {
+
+            super();
+
+            this.namespace = namespace;
+            this.size = size;
+        }
+
+
+        final String namespace;
+
+
+        final long size;
+
+
+    }
+
+
+    /**
+     * A change of counters made while scanning, by an operation on a file
+     * part not visited yet.
+     */
+    private static final class Change {
+
+
+        Change(final Path leafPath, final String namespace, final long bytes,
+               final long objects) {
+
+            super();
+
+            this.leafPath = leafPath;
+            this.namespace = namespace;
+            this.bytes = bytes;
+            this.objects = objects;
+        }
+
+
+        final Path leafPath;
+
+
+        final String namespace;
+
+
+        final long bytes;
+
+
+        final long objects;
+
+
+    }
+
+
+    /**
+     * The state of a scan in progress.
+     */
+    private static final class Scan {
+
+
+        /**
+         * File parts counted by the scan.
+         */
+        final Set<Path> visited = ConcurrentHashMap.newKeySet();
+
+
+        /**
+         * Changes to file parts not visited at the time.
+         */
+        final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+
+
+    }
+
+
+    /**
+     * Counters and quotas of the root or a namespace.
+     */
+    private static final class Usage {
+
+
+        final LongAdder bytes = new LongAdder();
+
+
+        final LongAdder objects = new LongAdder();
+
+
+        volatile long byteQuota = Long.MAX_VALUE;
+
+
+        volatile long objectQuota = Long.MAX_VALUE;
+
+
+    }
+
+
+    /**
+     * Creates a new instance for specified file back. Counters are loaded
+     * from the root path or, if never persisted, reconciled in the
+     * background.
+     *
+     * @param fileBack the file back to account.
+     * @param scheduler the scheduler for persisting and reconciling.
+     * @param persistPeriod the period of persisting counters.
+     * @param reconcilePeriod the period of reconciling counters; {@code 0}
+     * for never.
+     * @param unit the unit of periods.
+     *
+     * @throws IOException if an I/O error occurs while loading counters.
+     */
+    public CapacityAccount(final LocalFileBack fileBack,
+                           final ScheduledExecutorService scheduler,
+                           final long persistPeriod,
+                           final long reconcilePeriod, final TimeUnit unit)
+        throws IOException {
+
+        this(fileBack, scheduler, persistPeriod, reconcilePeriod, unit,
+             fileBack != null && Files.getFileStore(fileBack.rootPath())
+             .supportsFileAttributeView(UserDefinedFileAttributeView.class));
+    }
+
+
+    /**
+     * Creates a new instance for specified file back.
+     *
+     * @param fileBack the file back to account.
+     * @param scheduler the scheduler for persisting and reconciling.
+     * @param persistPeriod the period of persisting counters.
+     * @param reconcilePeriod the period of reconciling counters; {@code 0}
+     * for never.
+     * @param unit the unit of periods.
+     * @param attributes a flag for keeping namespaces as user-defined
+     * attributes rather than in the index.
+     *
+     * @throws IOException if an I/O error occurs while loading counters.
+     */
+    CapacityAccount(final LocalFileBack fileBack,
+                    final ScheduledExecutorService scheduler,
+                    final long persistPeriod, final long reconcilePeriod,
+                    final TimeUnit unit, final boolean attributes)
+        throws IOException {
+
+        super();
+
+        if (fileBack == null) {
+            throw new NullPointerException("null fileBack");
+        }
+
+        if (scheduler == null) {
+            throw new NullPointerException("null scheduler");
+        }
+
+        if (persistPeriod <= 0L) {
+            throw new IllegalArgumentException(
+                "persistPeriod(" + persistPeriod + ") <= 0");
+        }
+
+        if (reconcilePeriod < 0L) {
+            throw new IllegalArgumentException(
+                "reconcilePeriod(" + reconcilePeriod + ") < 0");
+        }
+
+        if (unit == null) {
+            throw new NullPointerException("null unit");
+        }
+
+        this.fileBack = fileBack;
+        rootPath = fileBack.rootPath();
+        statePath = rootPath.resolve(STATE_NAME);
+        indexPath = rootPath.resolve(INDEX_NAME);
+        this.attributes = attributes;
+
+        final boolean loaded = load();
+
+        persisting = scheduler.scheduleAtFixedRate(
+            this::persistQuietly, persistPeriod, persistPeriod, unit);
+        if (reconcilePeriod > 0L) {
+            reconciling = scheduler.scheduleAtFixedRate(
+                this::reconcileQuietly, loaded ? reconcilePeriod : 0L,
+                reconcilePeriod, unit);
+        } else {
+            reconciling = loaded
+                          ? null
+                          : scheduler.schedule(this::reconcileQuietly, 0L,
+                                               unit);
+        }
+    }
+
+
+    private boolean load() throws IOException {
+
+        final Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(statePath)) {
+            properties.load(input);
+        } catch (final NoSuchFileException nsfe) {
+            return false;
+        }
+
+        for (final String name : properties.stringPropertyNames()) {
+            final long value = Long.parseLong(properties.getProperty(name));
+            final int index = name.indexOf('.');
+            final Usage usage = index == -1
+                                ? root : usage(name.substring(index + 1));
+            if (name.startsWith("bytes")) {
+                usage.bytes.add(value);
+            } else if (name.startsWith("objects")) {
+                usage.objects.add(value);
+            }
+        }
+
+        if (!attributes) {
+            final Properties index = new Properties();
+            try (InputStream input = Files.newInputStream(indexPath)) {
+                index.load(input);
+            } catch (final NoSuchFileException nsfe) {
+                // never persisted
+            }
+            for (final String name : index.stringPropertyNames()) {
+                this.index.put(rootPath.resolve(name),
+                               index.getProperty(name));
+            }
+        }
+
+        return true;
+    }
+
+
+    private Usage usage(final String namespace) {
+
+        return namespace == null
+               ? root : usages.computeIfAbsent(namespace, k -> new Usage());
+    }
+
+
+    /**
+     * Checks quotas of the root and specified namespace.
+     *
+     * @param namespace the namespace; may be {@code null}.
+     *
+     * @throws QuotaExceededException if a quota is reached.
+     */
+    void admit(final String namespace) throws QuotaExceededException {
+
+        admit(null, root);
+        if (namespace != null) {
+            final Usage usage = usages.get(namespace);
+            if (usage != null) {
+                admit(namespace, usage);
+            }
+        }
+    }
+
+
+    private static void admit(final String namespace, final Usage usage)
+        throws QuotaExceededException {
+
+        if (usage.byteQuota != Long.MAX_VALUE
+            && usage.bytes.sum() >= usage.byteQuota) {
+            throw new QuotaExceededException(
+                namespace, "bytes quota(" + usage.byteQuota + ") reached"
+                           + (namespace == null ? "" : ": " + namespace));
+        }
+
+        if (usage.objectQuota != Long.MAX_VALUE
+            && usage.objects.sum() >= usage.objectQuota) {
+            throw new QuotaExceededException(
+                namespace, "objects quota(" + usage.objectQuota + ") reached"
+                           + (namespace == null ? "" : ": " + namespace));
+        }
+    }
+
+
+    /**
+     * Returns the footprint of specified leaf path.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the footprint or {@code null} if the file doesn't exist.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    Footprint footprint(final Path leafPath) throws IOException {
+
+        final long size;
+        try {
+            size = Files.size(leafPath);
+        } catch (final NoSuchFileException nsfe) {
+            return null;
+        }
+
+        return new Footprint(namespace(leafPath), size);
+    }
+
+
+    /**
+     * Returns the footprint of pending content of specified leaf path not
+     * written yet.
+     *
+     * @param leafPath the leaf path.
+     * @param size the size of the pending content.
+     *
+     * @return the footprint.
+     */
+    Footprint footprint(final Path leafPath, final long size) {
+
+        return new Footprint(attributes ? null : index.get(leafPath), size);
+    }
+
+
+    /**
+     * Reads the namespace of specified leaf path from its attribute or from
+     * the index.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the namespace or {@code null} if none.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private String namespace(final Path leafPath) throws IOException {
+
+        if (!attributes) {
+            return index.get(leafPath);
+        }
+
+        if (usages.isEmpty()) {
+            return null; // no namespace ever charged
+        }
+
+        return attribute(leafPath);
+    }
+
+
+    private static String attribute(final Path leafPath) throws IOException {
+
+        final UserDefinedFileAttributeView view = Files.getFileAttributeView(
+            leafPath, UserDefinedFileAttributeView.class);
+        if (!view.list().contains(NAMESPACE_ATTRIBUTE)) {
+            return null;
+        }
+
+        final ByteBuffer buffer
+            = ByteBuffer.allocate(view.size(NAMESPACE_ATTRIBUTE));
+        view.read(NAMESPACE_ATTRIBUTE, buffer);
+
+        return new String(buffer.array(), 0, buffer.position(),
+                          StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Charges a written file part replacing specified previous footprint.
+     * The caller holds the lock of the leaf path.
+     *
+     * @param leafPath the leaf path.
+     * @param previous the previous footprint; {@code null} if the file part
+     * didn't exist.
+     * @param namespace the namespace of the written file part; may be
+     * {@code null}.
+     * @param size the size of the written file part.
+     *
+     * @throws IOException if an I/O error occurs while updating the
+     * namespace attribute.
+     */
+    void charge(final Path leafPath, final Footprint previous,
+                final String namespace, final long size)
+        throws IOException {
+
+        release(leafPath, previous);
+        add(leafPath, namespace, size, 1L);
+
+        if (!attributes) {
+            if (namespace != null) {
+                index.put(leafPath, namespace);
+            }
+            return;
+        }
+        final String current = previous == null ? null : previous.namespace;
+        if (namespace == null ? current == null : namespace.equals(current)) {
+            return;
+        }
+        final UserDefinedFileAttributeView view = Files.getFileAttributeView(
+            leafPath, UserDefinedFileAttributeView.class);
+        try {
+            if (namespace == null) {
+                view.delete(NAMESPACE_ATTRIBUTE);
+            } else {
+                view.write(NAMESPACE_ATTRIBUTE, StandardCharsets.UTF_8
+                           .encode(namespace));
+            }
+        } catch (final NoSuchFileException nsfe) {
+            // not flushed yet
+        } catch (final FileSystemException fse) {
+            logger.warn("failed to update namespace of " + leafPath, fse);
+        }
+    }
+
+
+    /**
+     * Releases specified footprint of a deleted or replaced file part. The
+     * caller holds the lock of the leaf path.
+     *
+     * @param leafPath the leaf path.
+     * @param previous the footprint; {@code null} for nothing.
+     */
+    void release(final Path leafPath, final Footprint previous) {
+
+        if (previous != null) {
+            add(leafPath, previous.namespace, -previous.size, -1L);
+        }
+        if (!attributes) {
+            index.remove(leafPath);
+        }
+    }
+
+
+    private void add(final Path leafPath, final String namespace,
+                     final long bytes, final long objects) {
+
+        final Lock lock = scanning.readLock();
+        lock.lock();
+        try {
+            add(namespace, bytes, objects);
+            final Scan scan = this.scan;
+            if (scan != null && !scan.visited.contains(leafPath)) {
+                scan.changes.add(
+                    new Change(leafPath, namespace, bytes, objects));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void add(final String namespace, final long bytes,
+                     final long objects) {
+
+        root.bytes.add(bytes);
+        root.objects.add(objects);
+        if (namespace != null) {
+            final Usage usage = usage(namespace);
+            usage.bytes.add(bytes);
+            usage.objects.add(objects);
+        }
+    }
+
+
+    /**
+     * Sets quotas of the root.
+     *
+     * @param bytes the maximum number of bytes; {@link Long#MAX_VALUE} for
+     * unlimited.
+     * @param objects the maximum number of file parts; {@link Long#MAX_VALUE}
+     * for unlimited.
+     */
+    public void quota(final long bytes, final long objects) {
+
+        quota(root, bytes, objects);
+    }
+
+
+    /**
+     * Sets quotas of specified namespace.
+     *
+     * @param namespace the namespace.
+     * @param bytes the maximum number of bytes; {@link Long#MAX_VALUE} for
+     * unlimited.
+     * @param objects the maximum number of file parts; {@link Long#MAX_VALUE}
+     * for unlimited.
+     */
+    public void quota(final String namespace, final long bytes,
+                      final long objects) {
+
+        if (namespace == null) {
+            throw new NullPointerException("null namespace");
+        }
+
+        quota(usage(namespace), bytes, objects);
+    }
+
+
+    private static void quota(final Usage usage, final long bytes,
+                              final long objects) {
+
+        if (bytes < 0L) {
+            throw new IllegalArgumentException("bytes(" + bytes + ") < 0");
+        }
+
+        if (objects < 0L) {
+            throw new IllegalArgumentException(
+                "objects(" + objects + ") < 0");
+        }
+
+        usage.byteQuota = bytes;
+        usage.objectQuota = objects;
+    }
+
+
+    /**
+     * Returns the number of bytes of all file parts.
+     *
+     * @return the number of bytes.
+     */
+    public long bytes() {
+
+        return root.bytes.sum();
+    }
+
+
+    /**
+     * Returns the number of all file parts.
+     *
+     * @return the number of file parts.
+     */
+    public long objects() {
+
+        return root.objects.sum();
+    }
+
+
+    /**
+     * Returns the number of bytes of file parts of specified namespace.
+     *
+     * @param namespace the namespace.
+     *
+     * @return the number of bytes.
+     */
+    public long bytes(final String namespace) {
+
+        final Usage usage = usages.get(namespace);
+
+        return usage == null ? 0L : usage.bytes.sum();
+    }
+
+
+    /**
+     * Returns the number of file parts of specified namespace.
+     *
+     * @param namespace the namespace.
+     *
+     * @return the number of file parts.
+     */
+    public long objects(final String namespace) {
+
+        final Usage usage = usages.get(namespace);
+
+        return usage == null ? 0L : usage.objects.sum();
+    }
+
+
+    /**
+     * Returns the namespaces ever charged or given quotas.
+     *
+     * @return an unmodifiable set of namespaces.
+     */
+    public Set<String> namespaces() {
+
+        return Collections.unmodifiableSet(usages.keySet());
+    }
+
+
+    /**
+     * Writes current counters to the root path.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized void persist() throws IOException {
+
+        final Properties properties = new Properties();
+        properties.setProperty("bytes", Long.toString(bytes()));
+        properties.setProperty("objects", Long.toString(objects()));
+        for (final Map.Entry<String, Usage> e : usages.entrySet()) {
+            properties.setProperty("bytes." + e.getKey(),
+                                   Long.toString(e.getValue().bytes.sum()));
+            properties.setProperty("objects." + e.getKey(),
+                                   Long.toString(e.getValue().objects.sum()));
+        }
+
+        final Path temporary = statePath.resolveSibling(STATE_NAME + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporary)) {
+            properties.store(output, null);
+        }
+        Files.move(temporary, statePath, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+
+        if (attributes) {
+            return;
+        }
+        final Properties index = new Properties();
+        for (final Map.Entry<Path, String> e : this.index.entrySet()) {
+            index.setProperty(rootPath.relativize(e.getKey()).toString(),
+                              e.getValue());
+        }
+        final Path indexTemporary
+            = indexPath.resolveSibling(INDEX_NAME + ".tmp");
+        try (OutputStream output = Files.newOutputStream(indexTemporary)) {
+            index.store(output, null);
+        }
+        Files.move(indexTemporary, indexPath,
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private void persistQuietly() {
+
+        try {
+            persist();
+        } catch (final IOException ioe) {
+            logger.error("failed to persist counters", ioe);
+        }
+    }
+
+
+    /**
+     * Scans the tree and corrects counters. Each file part is counted under
+     * its lock; changes made by concurrent operations to file parts already
+     * counted are kept while those to file parts counted later are not
+     * counted twice. Paths of all file parts are held in memory while
+     * scanning.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    public synchronized void reconcile() throws IOException {
+
+        final long bytes0;
+        final long objects0;
+        final Map<String, long[]> usages0 = new HashMap<>();
+        final Scan scan = new Scan();
+        final Lock lock = scanning.writeLock();
+        lock.lock();
+        try {
+            bytes0 = bytes();
+            objects0 = objects();
+            for (final Map.Entry<String, Usage> e : usages.entrySet()) {
+                usages0.put(e.getKey(), new long[]{
+                    e.getValue().bytes.sum(), e.getValue().objects.sum()});
+            }
+            this.scan = scan;
+        } finally {
+            lock.unlock();
+        }
+
+        final long[] scanned = new long[2];
+        final Map<String, long[]> scannedUsages = new HashMap<>();
+        try {
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(
+                    final Path dir, final BasicFileAttributes attrs) {
+
+                    return !dir.equals(rootPath)
+                           && dir.getFileName().toString().startsWith(".")
+                           ? FileVisitResult.SKIP_SUBTREE
+                           : FileVisitResult.CONTINUE;
+                }
+
+
+                @Override
+                public FileVisitResult visitFile(
+                    final Path file, final BasicFileAttributes attrs)
+                    throws IOException {
+
+                    try {
+                        fileBack.fileKey(fileBack.pathName(file)); // objects
+                    } catch (final IllegalArgumentException iae) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    final StripedLocks locks = fileBack.locks();
+                    try (StripedLocks.Hold hold = locks == null
+                                                  ? StripedLocks.NONE
+                                                  : locks.read(file)) {
+                        visit(file, scanned, scannedUsages);
+                        scan.visited.add(file);
+                    } catch (final NoSuchFileException nsfe) {
+                        // deleted
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+
+                @Override
+                public FileVisitResult visitFileFailed(
+                    final Path file, final IOException exc) {
+
+                    logger.warn("failed to visit " + file, exc);
+                    return FileVisitResult.CONTINUE;
+                }
+
+            });
+        } catch (final IOException ioe) {
+            this.scan = null;
+            throw ioe;
+        }
+
+        lock.lock();
+        try {
+            this.scan = null;
+            // changes to file parts the scan saw afterwards
+            final Map<String, long[]> seen = new HashMap<>();
+            final long[] seenRoot = new long[2];
+            for (final Change change : scan.changes) {
+                if (!scan.visited.contains(change.leafPath)) {
+                    continue;
+                }
+                seenRoot[0] += change.bytes;
+                seenRoot[1] += change.objects;
+                if (change.namespace != null) {
+                    final long[] usage = seen.computeIfAbsent(
+                        change.namespace, k -> new long[2]);
+                    usage[0] += change.bytes;
+                    usage[1] += change.objects;
+                }
+            }
+            root.bytes.add(scanned[0] - bytes0 - seenRoot[0]);
+            root.objects.add(scanned[1] - objects0 - seenRoot[1]);
+            for (final String namespace : scannedUsages.keySet()) {
+                usage(namespace);
+            }
+            for (final Map.Entry<String, Usage> e : usages.entrySet()) {
+                final long[] before = usages0.getOrDefault(e.getKey(),
+                                                           new long[2]);
+                final long[] after = scannedUsages.getOrDefault(e.getKey(),
+                                                                new long[2]);
+                final long[] changed = seen.getOrDefault(e.getKey(),
+                                                         new long[2]);
+                e.getValue().bytes.add(after[0] - before[0] - changed[0]);
+                e.getValue().objects.add(after[1] - before[1] - changed[1]);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // entries of file parts deleted behind the file back
+        final StripedLocks locks = fileBack.locks();
+        for (final Path leafPath : index.keySet()) {
+            if (scan.visited.contains(leafPath)) {
+                continue;
+            }
+            try (StripedLocks.Hold hold = locks == null
+                                          ? StripedLocks.NONE
+                                          : locks.read(leafPath)) {
+                if (!Files.exists(leafPath)) {
+                    index.remove(leafPath);
+                }
+            }
+        }
+        logger.debug("reconciled: {} bytes, {} objects", bytes(), objects());
+    }
+
+
+    /**
+     * Counts the file part of specified leaf path into specified counters.
+     *
+     * @param leafPath the leaf path.
+     * @param scanned the root counters.
+     * @param scannedUsages the namespace counters.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void visit(final Path leafPath, final long[] scanned,
+                       final Map<String, long[]> scannedUsages)
+        throws IOException {
+
+        final long size = Files.size(leafPath);
+        final String namespace
+            = attributes ? attribute(leafPath) : index.get(leafPath);
+        scanned[0] += size;
+        scanned[1]++;
+        if (namespace != null) {
+            final long[] usage
+                = scannedUsages.computeIfAbsent(namespace, k -> new long[2]);
+            usage[0] += size;
+            usage[1]++;
+        }
+    }
+
+
+    private void reconcileQuietly() {
+
+        try {
+            reconcile();
+        } catch (final IOException ioe) {
+            logger.error("failed to reconcile counters", ioe);
+        }
+    }
+
+
+    /**
+     * Stops persisting and reconciling and persists counters.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+
+        persisting.cancel(false);
+        if (reconciling != null) {
+            reconciling.cancel(false);
+        }
+        persist();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    final LocalFileBack fileBack;
+
+
+    private final Path rootPath;
+
+
+    private final Path statePath;
+
+
+    private final Path indexPath;
+
+
+    /**
+     * A flag for keeping namespaces as user-defined attributes.
+     */
+    private final boolean attributes;
+
+
+    private final Usage root = new Usage();
+
+
+    private final ConcurrentMap<String, Usage> usages
+        = new ConcurrentHashMap<>();
+
+
+    /**
+     * Namespaces of file parts, by their leaf paths, kept only if
+     * {@link #attributes} is {@code false}.
+     */
+    private final ConcurrentMap<Path, String> index
+        = new ConcurrentHashMap<>();
+
+
+    private final ReadWriteLock scanning = new ReentrantReadWriteLock();
+
+
+    private volatile Scan scan;
+
+
+    private final ScheduledFuture<?> persisting;
+
+
+    private final ScheduledFuture<?> reconciling;
+
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+/**
+ * An exception thrown when the checksum of a file part read doesn't match the
+ * checksum stored when the file part was written.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#checksums(boolean)
+ */
+public class ChecksumMismatchException extends FileBackException {
+
+
+    private static final long serialVersionUID = 4419506123364372385L;
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pathName the path name of the file part.
+     * @param expected the checksum stored.
+     * @param actual the checksum computed.
+     */
+    public ChecksumMismatchException(final String pathName, final int expected,
+                                     final int actual) {
+
+        super("checksum of " + pathName + " mismatched; expected: "
+              + Integer.toHexString(expected) + ", actual: "
+              + Integer.toHexString(actual));
+
+        this.pathName = pathName;
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+
+    /**
+     * Returns the path name of the file part.
+     *
+     * @return the path name.
+     */
+    public String pathName() {
+
+        return pathName;
+    }
+
+
+    /**
+     * Returns the checksum stored when the file part was written.
+     *
+     * @return the expected checksum.
+     */
+    public int expected() {
+
+        return expected;
+    }
+
+
+    /**
+     * Returns the checksum computed while the file part was read.
+     *
+     * @return the actual checksum.
+     */
+    public int actual() {
+
+        return actual;
+    }
+
+
+    private final String pathName;
+
+
+    private final int expected;
+
+
+    private final int actual;
+
+
+}
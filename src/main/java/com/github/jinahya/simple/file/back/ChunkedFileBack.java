@@ -0,0 +1,1048 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import static java.util.Optional.ofNullable;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A file back storing large files as fixed-size chunks on a
+ * {@link LocalFileBack}. A file no larger than a chunk is stored as is at the
+ * leaf path of its key. A larger file is split into chunks, each of which is
+ * stored at the leaf path of a key derived from the path name of the file,
+ * and a manifest is stored next to the leaf path of the file.
+ * <p>
+ * Chunks are written by the executor while the content is still being
+ * supplied and read ahead by the executor while bytes are being consumed in
+ * order; up to {@code parallelism} chunks of each operation are in flight.
+ * Each write stores chunks of a new generation and switches the manifest
+ * atomically, so that readers never see chunks of different writes.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ChunkedFileBack implements FileBack {
+
+
+    /**
+     * The suffix of the name of each manifest file.
+     */
+    static final String MANIFEST_SUFFIX = ".chunks";
+
+
+    /**
+     * A manifest of a chunked file.
+     */
+    static final class Manifest {
+
+
+        static Manifest read(final Path manifestPath) throws IOException {
+
+            final byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(manifestPath);
+            } catch (final NoSuchFileException nsfe) {
+                return null;
+            }
+
+            try (DataInputStream input = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+                return new Manifest(input.readLong(), input.readLong(),
+                                    input.readInt());
+            }
+        }
+
+
+        Manifest(final long generation, final long size,
+                 final int chunkSize) {
+
+            super();
+
+            this.generation = generation;
+            this.size = size;
+            this.chunkSize = chunkSize;
+        }
+
+
+        void write(final Path manifestPath) throws IOException {
+
+            final Path temporary = manifestPath.resolveSibling(
+                manifestPath.getFileName() + ".writing");
+            try (DataOutputStream output = new DataOutputStream(
+                Files.newOutputStream(temporary))) {
+                output.writeLong(generation);
+                output.writeLong(size);
+                output.writeInt(chunkSize);
+            }
+            Files.move(temporary, manifestPath,
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+
+
+        int count() {
+
+            return (int) ((size + chunkSize - 1) / chunkSize);
+        }
+
+
+        int length(final int index) {
+
+            return (int) Math.min(chunkSize, size - (long) index * chunkSize);
+        }
+
+
+        final long generation;
+
+
+        final long size;
+
+
+        final int chunkSize;
+
+
+    }
+
+
+    /**
+     * A channel splitting bytes written into chunks written by the executor.
+     */
+    private final class ChunkingChannel implements WritableByteChannel {
+
+
+        ChunkingChannel(final FileKey fileKey) {
+
+            super();
+
+            this.fileKey = fileKey;
+            generation = ThreadLocalRandom.current().nextLong();
+        }
+
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+
+            final int written = src.remaining();
+            while (src.hasRemaining()) {
+                if (filled == chunkSize) {
+                    submit();
+                }
+                final int length
+                    = Math.min(src.remaining(), chunkSize - filled);
+                src.get(chunk, filled, length);
+                filled += length;
+            }
+            size += written;
+
+            return written;
+        }
+
+
+        private void submit() throws IOException {
+
+            try {
+                permits.acquire();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                    "interrupted while waiting for chunks in flight");
+            }
+            final int index = count++;
+            final byte[] bytes = chunk;
+            final int length = filled;
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    writeChunk(chunkKey(fileKey, generation, index), bytes,
+                               length);
+                } finally {
+                    permits.release();
+                }
+            }, executor));
+            chunk = new byte[chunkSize];
+            filled = 0;
+        }
+
+
+        /**
+         * Returns whether the content written fits in a single chunk.
+         *
+         * @return {@code true} if the content is no larger than a chunk.
+         */
+        boolean plain() {
+
+            return count == 0;
+        }
+
+
+        /**
+         * Returns the content written if it fits in a single chunk.
+         *
+         * @return a channel of the content.
+         */
+        ReadableByteChannel content() {
+
+            return Channels.newChannel(
+                new ByteArrayInputStream(chunk, 0, filled));
+        }
+
+
+        @Override
+        public boolean isOpen() {
+
+            return open;
+        }
+
+
+        /**
+         * Submits the last chunk, unless the content fits in a single chunk,
+         * and waits for all chunks written.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+
+            if (!open) {
+                return;
+            }
+            open = false;
+
+            if (count > 0 && filled > 0) {
+                submit();
+            }
+            await(futures);
+        }
+
+
+        /**
+         * Waits for chunks in flight and deletes all chunks written.
+         */
+        void abort() {
+
+            open = false;
+            try {
+                await(futures);
+            } catch (final IOException ioe) {
+                // deleting anyway
+            }
+            deleteChunks(fileKey, new Manifest(
+                generation, (long) count * chunkSize, chunkSize));
+        }
+
+
+        Manifest manifest() {
+
+            return new Manifest(generation, size, chunkSize);
+        }
+
+
+        private final FileKey fileKey;
+
+
+        private final long generation;
+
+
+        private final Semaphore permits = new Semaphore(parallelism);
+
+
+        private final List<CompletableFuture<Void>> futures
+            = new ArrayList<>();
+
+
+        private byte[] chunk = new byte[chunkSize];
+
+
+        private int filled;
+
+
+        private int count;
+
+
+        private long size;
+
+
+        private boolean open = true;
+
+
+    }
+
+
+    /**
+     * A channel reading chunks ahead by the executor and emitting bytes in
+     * order.
+     */
+    private final class ChunkReadingChannel implements ReadableByteChannel {
+
+
+        ChunkReadingChannel(final FileKey fileKey, final Manifest manifest) {
+
+            super();
+
+            this.fileKey = fileKey;
+            this.manifest = manifest;
+
+            while (requested < manifest.count()
+                   && futures.size() < parallelism) {
+                request();
+            }
+        }
+
+
+        private void request() {
+
+            final int index = requested++;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readChunk(chunkKey(fileKey, manifest.generation,
+                                              index),
+                                     manifest.length(index));
+                } catch (final IOException ioe) {
+                    throw new CompletionException(ioe);
+                }
+            }, executor));
+        }
+
+
+        private ByteBuffer next() throws IOException {
+
+            if (current != null && current.hasRemaining()) {
+                return current;
+            }
+
+            final CompletableFuture<ByteBuffer> future = futures.poll();
+            if (future == null) {
+                return null;
+            }
+            if (requested < manifest.count()) {
+                request();
+            }
+            try {
+                current = future.get();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                    "interrupted while reading chunks");
+            } catch (final ExecutionException ee) {
+                throw cause(ee.getCause());
+            }
+
+            return current;
+        }
+
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+
+            final ByteBuffer buffer = next();
+            if (buffer == null) {
+                return -1;
+            }
+
+            final int length = Math.min(buffer.remaining(), dst.remaining());
+            final ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + length);
+            dst.put(slice);
+            buffer.position(buffer.position() + length);
+
+            return length;
+        }
+
+
+        /**
+         * Writes all remaining bytes to specified channel.
+         *
+         * @param target the channel to write.
+         *
+         * @return the number of bytes written.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        long transferTo(final WritableByteChannel target) throws IOException {
+
+            long transferred = 0L;
+            for (ByteBuffer buffer; (buffer = next()) != null;) {
+                transferred += buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+
+            return transferred;
+        }
+
+
+        @Override
+        public boolean isOpen() {
+
+            return open;
+        }
+
+
+        @Override
+        public void close() {
+
+            open = false;
+            futures.forEach(f -> f.cancel(false));
+            futures.clear();
+        }
+
+
+        private final FileKey fileKey;
+
+
+        private final Manifest manifest;
+
+
+        private final Deque<CompletableFuture<ByteBuffer>> futures
+            = new ArrayDeque<>();
+
+
+        private int requested;
+
+
+        private ByteBuffer current;
+
+
+        private boolean open = true;
+
+
+    }
+
+
+    private static IOException cause(final Throwable cause) {
+
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+
+        if (cause instanceof CompletionException
+            && cause.getCause() instanceof IOException) {
+            return (IOException) cause.getCause();
+        }
+
+        return new IOException(cause);
+    }
+
+
+    private static void await(final List<CompletableFuture<Void>> futures)
+        throws IOException {
+
+        try {
+            CompletableFuture.allOf(
+                futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .get();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "interrupted while writing chunks");
+        } catch (final ExecutionException ee) {
+            throw cause(ee.getCause());
+        }
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param root the file back storing files, chunks and manifests.
+     * @param executor the executor reading and writing chunks.
+     * @param chunkSize the number of bytes of each chunk; files no larger
+     * than this are not chunked.
+     * @param parallelism the maximum number of chunks of each operation in
+     * flight.
+     */
+    public ChunkedFileBack(final LocalFileBack root, final Executor executor,
+                           final int chunkSize, final int parallelism) {
+
+        super();
+
+        if (root == null) {
+            throw new NullPointerException("null root");
+        }
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(
+                "chunkSize(" + chunkSize + ") <= 0");
+        }
+
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(
+                "parallelism(" + parallelism + ") <= 0");
+        }
+
+        this.root = root;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+
+    @Override
+    public void operate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        final FileOperation fileOperation
+            = ofNullable(fileContext.fileOperationSupplier())
+            .orElseThrow(
+                () -> new FileBackException("no file operation supplier set"))
+            .get();
+        logger.trace("file operation: {}", fileOperation);
+        if (fileOperation == null) {
+            logger.error("null file operation supplied");
+            return;
+        }
+
+        switch (fileOperation) {
+            case COPY:
+                copy(fileContext);
+                break;
+            case DELETE:
+                delete(fileContext);
+                break;
+            case READ:
+                read(fileContext);
+                break;
+            case STAT:
+                stat(fileContext);
+                break;
+            case WRITE:
+                write(fileContext);
+                break;
+            default:
+                throw new FileBackException(
+                    "unsupported file operation: " + fileOperation);
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void copy(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey sourceFileKey
+            = ShardedFileBack.sourceFileKey(fileContext, false, root);
+        if (sourceFileKey == null) {
+            logger.error("no source key located");
+            return;
+        }
+
+        final FileKey targetFileKey
+            = ShardedFileBack.targetFileKey(fileContext, root);
+        if (targetFileKey == null) {
+            logger.error("no target key located");
+            return;
+        }
+
+        if (sourceFileKey.equals(targetFileKey)) {
+            logger.error("source key == target key");
+            return;
+        }
+
+        final ChunkingChannel chunking;
+        try (StripedLocks.Hold hold = locks.read(sourceFileKey)) {
+            final Manifest manifest = Manifest.read(manifest(sourceFileKey));
+            if (manifest == null) {
+                chunking = null;
+            } else {
+                chunking = new ChunkingChannel(targetFileKey);
+                try (ChunkReadingChannel reading
+                    = new ChunkReadingChannel(sourceFileKey, manifest)) {
+                    reading.transferTo(chunking);
+                    chunking.close();
+                } catch (final IOException | RuntimeException e) {
+                    chunking.abort();
+                    throw e;
+                }
+            }
+        }
+
+        if (chunking == null) {
+            // the source is not chunked; let the root copy it
+            try (StripedLocks.Hold hold
+                 = locks.readWrite(sourceFileKey, targetFileKey)) {
+                final Manifest previous
+                    = Manifest.read(manifest(targetFileKey));
+                root.operate(fileContext);
+                unchunk(targetFileKey, previous);
+            }
+            return;
+        }
+
+        commit(targetFileKey, chunking);
+        ofNullable(fileContext.pathNameConsumer()).ifPresent(
+            c -> c.accept(targetFileKey.pathName()));
+        LocalFileBack.copied(fileContext, chunking.size);
+    }
+
+
+    @SuppressWarnings("try")
+    private void delete(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        FileKey fileKey_
+            = ShardedFileBack.sourceFileKey(fileContext, false, root);
+        if (fileKey_ == null) {
+            fileKey_ = ShardedFileBack.targetFileKey(fileContext, root);
+        }
+        final FileKey fileKey = fileKey_;
+        if (fileKey == null) {
+            logger.warn("no key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = locks.write(fileKey)) {
+            final Manifest previous = Manifest.read(manifest(fileKey));
+            root.operate(fileContext);
+            unchunk(fileKey, previous);
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void read(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.sourceFileKey(fileContext, true, root);
+        if (fileKey == null) {
+            logger.warn("no source key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = locks.read(fileKey)) {
+            final Manifest manifest = Manifest.read(manifest(fileKey));
+            if (manifest == null) {
+                root.operate(fileContext);
+                return;
+            }
+
+            ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                c -> c.accept(fileKey.pathName()));
+
+            final Consumer<ReadableByteChannel> sourceChannelConsumer
+                = fileContext.sourceChannelConsumer();
+            if (sourceChannelConsumer != null) {
+                try (ChunkReadingChannel reading
+                    = new ChunkReadingChannel(fileKey, manifest)) {
+                    sourceChannelConsumer.accept(reading);
+                }
+            }
+
+            final Supplier<WritableByteChannel> targetChannelSupplier
+                = fileContext.targetChannelSupplier();
+            if (targetChannelSupplier != null) {
+                try (ChunkReadingChannel reading
+                    = new ChunkReadingChannel(fileKey, manifest)) {
+                    final long copied
+                        = reading.transferTo(targetChannelSupplier.get());
+                    LocalFileBack.copied(fileContext, copied);
+                }
+            }
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void stat(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.sourceFileKey(fileContext, true, root);
+        if (fileKey == null) {
+            logger.warn("no source key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = locks.read(fileKey)) {
+            final Path manifestPath = manifest(fileKey);
+            final Manifest manifest = Manifest.read(manifestPath);
+            if (manifest == null) {
+                root.operate(fileContext);
+                return;
+            }
+            final BasicFileAttributes attributes
+                = new ErasureCodedFileBack.Attributes(
+                    Files.readAttributes(manifestPath,
+                                         BasicFileAttributes.class),
+                    manifest.size);
+            ofNullable(fileContext.sourceAttributesConsumer()).ifPresent(
+                c -> c.accept(attributes));
+        }
+    }
+
+
+    private void write(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.targetFileKey(fileContext, root);
+        if (fileKey == null) {
+            logger.warn("no target key located");
+            return;
+        }
+
+        final Consumer<WritableByteChannel> targetChannelConsumer
+            = fileContext.targetChannelConsumer();
+        final Supplier<ReadableByteChannel> sourceChannelSupplier
+            = fileContext.sourceChannelSupplier();
+        if (targetChannelConsumer == null && sourceChannelSupplier == null) {
+            logger.warn("no source channel supplier nor target channel"
+                        + " consumer set");
+            return;
+        }
+
+        ofNullable(fileContext.pathNameConsumer()).ifPresent(
+            c -> c.accept(fileKey.pathName()));
+
+        final ChunkingChannel chunking = new ChunkingChannel(fileKey);
+        try {
+            if (targetChannelConsumer != null) {
+                targetChannelConsumer.accept(chunking);
+            } else {
+                final ReadableByteChannel source = sourceChannelSupplier.get();
+                final ByteBuffer buffer = ByteBuffer.allocate(65536);
+                while (source.read(buffer) != -1) {
+                    buffer.flip();
+                    chunking.write(buffer);
+                    buffer.clear();
+                }
+            }
+            chunking.close();
+        } catch (final IOException | RuntimeException e) {
+            chunking.abort();
+            throw e;
+        }
+
+        commit(fileKey, chunking);
+        LocalFileBack.copied(fileContext, chunking.size);
+    }
+
+
+    /**
+     * Switches specified file to the content written through specified
+     * channel.
+     *
+     * @param fileKey the file key.
+     * @param chunking the closed channel.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    @SuppressWarnings("try")
+    private void commit(final FileKey fileKey, final ChunkingChannel chunking)
+        throws IOException, FileBackException {
+
+        try (StripedLocks.Hold hold = locks.write(fileKey)) {
+            final Path manifestPath = manifest(fileKey);
+            final Manifest previous = Manifest.read(manifestPath);
+            if (chunking.plain()) {
+                final FileContext fileContext = new DefaultFileContext();
+                fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+                fileContext.targetFileKeySupplier(() -> fileKey);
+                fileContext.sourceChannelSupplier(chunking::content);
+                root.operate(fileContext);
+                unchunk(fileKey, previous);
+                return;
+            }
+            LocalFileBack.createParent(manifestPath);
+            chunking.manifest().write(manifestPath);
+            chunked.increment();
+            final FileContext fileContext = new DefaultFileContext();
+            fileContext.fileOperationSupplier(() -> FileOperation.DELETE);
+            fileContext.sourceFileKeySupplier(() -> fileKey);
+            root.operate(fileContext);
+            if (previous != null) {
+                deleteChunks(fileKey, previous);
+            }
+        }
+    }
+
+
+    /**
+     * Deletes the manifest and chunks of specified file, if any.
+     *
+     * @param fileKey the file key.
+     * @param previous the manifest read while locked; may be {@code null}.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void unchunk(final FileKey fileKey, final Manifest previous)
+        throws IOException {
+
+        if (previous == null) {
+            return;
+        }
+
+        Files.deleteIfExists(manifest(fileKey));
+        deleteChunks(fileKey, previous);
+    }
+
+
+    private void writeChunk(final FileKey chunkKey, final byte[] bytes,
+                            final int length) {
+
+        final AtomicLong copied = new AtomicLong(-1L);
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        fileContext.targetFileKeySupplier(() -> chunkKey);
+        fileContext.sourceChannelSupplier(
+            () -> Channels.newChannel(
+                new ByteArrayInputStream(bytes, 0, length)));
+        fileContext.targetCopiedConsumer(copied::set);
+        try {
+            root.operate(fileContext);
+        } catch (final IOException ioe) {
+            throw new CompletionException(ioe);
+        } catch (final FileBackException fbe) {
+            throw new CompletionException(new IOException(fbe));
+        }
+        if (copied.get() != length) {
+            throw new CompletionException(new IOException(
+                "failed to write " + chunkKey.pathName() + "; copied("
+                + copied.get() + ") != length(" + length + ")"));
+        }
+        chunksWritten.increment();
+    }
+
+
+    private ByteBuffer readChunk(final FileKey chunkKey, final int length)
+        throws IOException {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        final AtomicBoolean found = new AtomicBoolean();
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+        fileContext.sourceFileKeySupplier(() -> chunkKey);
+        fileContext.sourceChannelConsumer(channel -> {
+            found.set(true);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) == -1) {
+                        throw new IOException("truncated chunk: " + chunkKey);
+                    }
+                }
+                // to the end, for verifying checksums
+                if (channel.read(ByteBuffer.allocate(1)) != -1) {
+                    throw new IOException("oversized chunk: " + chunkKey);
+                }
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+        try {
+            root.operate(fileContext);
+        } catch (final UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } catch (final FileBackException fbe) {
+            throw new IOException(fbe);
+        }
+        if (!found.get()) {
+            throw new NoSuchFileException("missing chunk: " + chunkKey);
+        }
+        chunksRead.increment();
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    private void deleteChunks(final FileKey fileKey, final Manifest manifest) {
+
+        for (int i = 0; i < manifest.count(); i++) {
+            final FileKey chunkKey
+                = chunkKey(fileKey, manifest.generation, i);
+            final FileContext fileContext = new DefaultFileContext();
+            fileContext.fileOperationSupplier(() -> FileOperation.DELETE);
+            fileContext.sourceFileKeySupplier(() -> chunkKey);
+            try {
+                root.operate(fileContext);
+            } catch (final IOException | FileBackException e) {
+                logger.error("failed to delete chunk: " + chunkKey, e);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the key of a chunk of specified file.
+     *
+     * @param fileKey the file key.
+     * @param generation the generation of chunks.
+     * @param index the index of the chunk.
+     *
+     * @return the key of the chunk.
+     */
+    FileKey chunkKey(final FileKey fileKey, final long generation,
+                     final int index) {
+
+        return root.fileKey(ByteBuffer.wrap(
+            (fileKey.pathName() + "#" + Long.toHexString(generation) + "#"
+             + index).getBytes(StandardCharsets.UTF_8)));
+    }
+
+
+    /**
+     * Returns the path of the manifest of specified file.
+     *
+     * @param fileKey the file key.
+     *
+     * @return the path of the manifest.
+     */
+    static Path manifest(final FileKey fileKey) {
+
+        final Path leafPath = fileKey.leafPath();
+
+        return leafPath.resolveSibling(
+            "." + leafPath.getFileName() + MANIFEST_SUFFIX);
+    }
+
+
+    /**
+     * Returns the number of bytes of each chunk.
+     *
+     * @return the chunk size.
+     */
+    public int chunkSize() {
+
+        return chunkSize;
+    }
+
+
+    /**
+     * Returns the maximum number of chunks of each operation in flight.
+     *
+     * @return the parallelism.
+     */
+    public int parallelism() {
+
+        return parallelism;
+    }
+
+
+    /**
+     * Returns the number of files stored as chunks so far.
+     *
+     * @return the number of chunked files.
+     */
+    public long chunked() {
+
+        return chunked.sum();
+    }
+
+
+    /**
+     * Returns the number of chunks written so far.
+     *
+     * @return the number of chunks written.
+     */
+    public long chunksWritten() {
+
+        return chunksWritten.sum();
+    }
+
+
+    /**
+     * Returns the number of chunks read so far.
+     *
+     * @return the number of chunks read.
+     */
+    public long chunksRead() {
+
+        return chunksRead.sum();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final LocalFileBack root;
+
+
+    private final Executor executor;
+
+
+    private final int chunkSize;
+
+
+    private final int parallelism;
+
+
+    private final StripedLocks locks = new StripedLocks(256);
+
+
+    private final LongAdder chunked = new LongAdder();
+
+
+    private final LongAdder chunksWritten = new LongAdder();
+
+
+    private final LongAdder chunksRead = new LongAdder();
+
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import static java.util.Optional.ofNullable;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A file back limiting the number of operations in flight on another file
+ * back, per file operation. Operations over the limit are rejected at once
+ * with a {@link LimitExceededException} instead of being queued. Each limit
+ * adapts to observed latencies; it grows additively while latencies stay
+ * close to the lowest latency seen and shrinks multiplicatively once they
+ * don't or the underlying file back fails with an {@link IOException}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ConcurrencyLimitedFileBack implements FileBack {
+
+
+    /**
+     * The ratio of a latency to the baseline above which the latency is
+     * regarded as a sign of overload.
+     */
+    static final double TOLERANCE = 2.0d;
+
+
+    /**
+     * The factor a limit is multiplied by on overload.
+     */
+    static final double BACKOFF = 0.9d;
+
+
+    /**
+     * The number of samples over which the baseline drifts towards higher
+     * latencies.
+     */
+    static final int BASELINE_DRIFT = 64;
+
+
+    /**
+     * An adaptive limit of a single file operation.
+     */
+    static final class Limiter {
+
+
+        Limiter(final int initialLimit, final int maximumLimit) {
+
+            super();
+
+            this.maximumLimit = maximumLimit;
+
+            limit = initialLimit;
+        }
+
+
+        /**
+         * Acquires a permit if the number of operations in flight is less
+         * than the limit.
+         *
+         * @return {@code true} if acquired; {@code false} otherwise.
+         */
+        boolean acquire() {
+
+            for (int current; (current = inFlight.get()) < (int) limit;) {
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+
+            rejections.increment();
+
+            return false;
+        }
+
+
+        /**
+         * Releases a permit without sampling.
+         */
+        void release() {
+
+            inFlight.decrementAndGet();
+        }
+
+
+        /**
+         * Releases a permit and adapts the limit.
+         *
+         * @param elapsed the latency of the operation in nanoseconds.
+         * @param dropped a flag for failures of the operation.
+         */
+        void release(final long elapsed, final boolean dropped) {
+
+            final int current = inFlight.getAndDecrement();
+
+            synchronized (this) {
+                if (!dropped) {
+                    if (baseline == 0L || elapsed < baseline) {
+                        baseline = elapsed;
+                    } else {
+                        baseline += (elapsed - baseline) / BASELINE_DRIFT;
+                    }
+                }
+                final long now = System.nanoTime();
+                if (dropped || elapsed > baseline * TOLERANCE) {
+                    // once per latency so that a burst of slow operations
+                    // started together backs off only once
+                    if (now - decreased >= elapsed) {
+                        limit = Math.max(1.0d, limit * BACKOFF);
+                        decreased = now;
+                    }
+                    return;
+                }
+                if (current * 2 >= (int) limit) {
+                    limit = Math.min(maximumLimit, limit + 1.0d / limit);
+                }
+            }
+        }
+
+
+        int limit() {
+
+            return (int) limit;
+        }
+
+
+        int inFlight() {
+
+            return inFlight.get();
+        }
+
+
+        long rejections() {
+
+            return rejections.sum();
+        }
+
+
+        private final int maximumLimit;
+
+
+        private volatile double limit;
+
+
+        private long baseline;
+
+
+        private long decreased = System.nanoTime();
+
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+
+        private final LongAdder rejections = new LongAdder();
+
+
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fileBack the file back to limit.
+     * @param initialLimit the initial limit of each file operation.
+     * @param maximumLimit the maximum limit of each file operation.
+     */
+    public ConcurrencyLimitedFileBack(final FileBack fileBack,
+                                      final int initialLimit,
+                                      final int maximumLimit) {
+
+        super();
+
+        if (fileBack == null) {
+            throw new NullPointerException("null fileBack");
+        }
+
+        if (initialLimit <= 0) {
+            throw new IllegalArgumentException(
+                "initialLimit(" + initialLimit + ") <= 0");
+        }
+
+        if (maximumLimit < initialLimit) {
+            throw new IllegalArgumentException(
+                "maximumLimit(" + maximumLimit + ") < initialLimit("
+                + initialLimit + ")");
+        }
+
+        this.fileBack = fileBack;
+
+        limiters = new Limiter[FileOperation.values().length];
+        for (int i = 0; i < limiters.length; i++) {
+            limiters[i] = new Limiter(initialLimit, maximumLimit);
+        }
+    }
+
+
+    @Override
+    public void operate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        final FileOperation fileOperation
+            = ofNullable(fileContext.fileOperationSupplier())
+            .map(Supplier::get).orElse(null);
+        if (fileOperation == null) {
+            fileBack.operate(fileContext);
+            return;
+        }
+
+        final Limiter limiter = limiters[fileOperation.ordinal()];
+        if (!limiter.acquire()) {
+            logger.debug("rejected {}; limit: {}", fileOperation,
+                         limiter.limit());
+            throw new LimitExceededException(fileOperation, limiter.limit());
+        }
+
+        final long started = System.nanoTime();
+        try {
+            fileBack.operate(fileContext);
+        } catch (final IOException ioe) {
+            limiter.release(System.nanoTime() - started, true);
+            throw ioe;
+        } catch (final RuntimeException | Error | FileBackException e) {
+            limiter.release();
+            throw e;
+        }
+        limiter.release(System.nanoTime() - started, false);
+    }
+
+
+    Limiter limiter(final FileOperation fileOperation) {
+
+        if (fileOperation == null) {
+            throw new NullPointerException("null fileOperation");
+        }
+
+        return limiters[fileOperation.ordinal()];
+    }
+
+
+    /**
+     * Returns the current limit of specified file operation.
+     *
+     * @param fileOperation the file operation.
+     *
+     * @return the current limit.
+     */
+    public int limit(final FileOperation fileOperation) {
+
+        return limiter(fileOperation).limit();
+    }
+
+
+    /**
+     * Returns the number of operations in flight of specified file
+     * operation.
+     *
+     * @param fileOperation the file operation.
+     *
+     * @return the number of operations in flight.
+     */
+    public int inFlight(final FileOperation fileOperation) {
+
+        return limiter(fileOperation).inFlight();
+    }
+
+
+    /**
+     * Returns the number of rejected operations of specified file operation.
+     *
+     * @param fileOperation the file operation.
+     *
+     * @return the number of rejections.
+     */
+    public long rejections(final FileOperation fileOperation) {
+
+        return limiter(fileOperation).rejections();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final FileBack fileBack;
+
+
+    private final Limiter[] limiters;
+
+
+}
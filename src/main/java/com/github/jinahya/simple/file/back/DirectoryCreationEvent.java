@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+
+/**
+ * A flight recorder event for creating parent directories of a leaf path.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+@Name(DirectoryCreationEvent.NAME)
+@Label("File Back Directory Creation")
+@Category("Simple File Back")
+@Description("Parent directories created for a leaf path")
+@StackTrace(false)
+@Threshold("10 ms")
+final class DirectoryCreationEvent extends Event {
+
+
+    static final String NAME
+        = "com.github.jinahya.simple.file.back.DirectoryCreation";
+
+
+    private static final EventType TYPE
+        = EventType.getEventType(DirectoryCreationEvent.class);
+
+
+    /**
+     * Creates a new event if the event type is enabled in any recording.
+     *
+     * @return a new event or {@code null} if the event type is disabled.
+     */
+    static DirectoryCreationEvent start() {
+
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+
+        final DirectoryCreationEvent event = new DirectoryCreationEvent();
+        event.begin();
+
+        return event;
+    }
+
+
+    @Label("Directory")
+    String directory;
+
+
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Removes empty directories left by deleted file parts. Directories are
+ * queued by deletes and removed bottom-up, up to but excluding the root
+ * path, by a background task. Writers share the lock mapped to the parent
+ * directory of their leaf path while they create and fill the file so that
+ * a directory is never removed under a writer; ancestors are removed only
+ * while they are empty.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#pruner(DirectoryPruner)
+ */
+public class DirectoryPruner {
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor the executor for pruning directories.
+     */
+    public DirectoryPruner(final Executor executor) {
+
+        super();
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        this.executor = executor;
+    }
+
+
+    /**
+     * Acquires the shared lock for specified directory which a writer is
+     * about to create a file in.
+     *
+     * @param directory the directory.
+     *
+     * @return a hold to release.
+     */
+    StripedLocks.Hold use(final Path directory) {
+
+        return locks.read(directory);
+    }
+
+
+    /**
+     * Queues specified directory, and its ancestors under specified root
+     * path, for removal.
+     *
+     * @param rootPath the root path which is never removed.
+     * @param directory the directory.
+     */
+    void enqueue(final Path rootPath, final Path directory) {
+
+        pendings.put(directory, rootPath);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+
+    private void drain() {
+
+        do {
+            for (final Path directory : new ArrayList<>(pendings.keySet())) {
+                final Path rootPath = pendings.remove(directory);
+                if (rootPath != null) {
+                    prune(rootPath, directory);
+                }
+            }
+            scheduled.set(false);
+        } while (!pendings.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+
+    private void prune(final Path rootPath, final Path directory) {
+
+        for (Path path = directory;
+             path != null && path.startsWith(rootPath)
+             && !path.equals(rootPath);
+             path = path.getParent()) {
+            if (!remove(path)) {
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Removes specified directory if it is empty.
+     *
+     * @param directory the directory.
+     *
+     * @return {@code true} if the directory is removed or doesn't exist;
+     * {@code false} otherwise.
+     */
+    @SuppressWarnings("try")
+    private boolean remove(final Path directory) {
+
+        try (StripedLocks.Hold hold = locks.write(directory)) {
+            Files.delete(directory);
+            logger.trace("pruned: {}", directory);
+            pruned.increment();
+            return true;
+        } catch (final NoSuchFileException nsfe) {
+            return true;
+        } catch (final DirectoryNotEmptyException dnee) {
+            return false;
+        } catch (final IOException ioe) {
+            logger.error("failed to prune " + directory, ioe);
+            return false;
+        }
+    }
+
+
+    /**
+     * Removes all empty directories under specified root path. Each
+     * directory directly under the root path is walked, depth first, by a
+     * separate task of the executor. Directories whose names start with a
+     * dot are skipped.
+     *
+     * @param rootPath the root path.
+     *
+     * @return the number of directories removed.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    long prune(final Path rootPath) throws IOException {
+
+        final LongAdder removed = new LongAdder();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try (DirectoryStream<Path> children
+            = Files.newDirectoryStream(rootPath, Files::isDirectory)) {
+            for (final Path child : children) {
+                if (child.getFileName().toString().startsWith(".")) {
+                    continue;
+                }
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        walk(child, removed);
+                    } catch (final IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                }, executor));
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(
+                new CompletableFuture<?>[futures.size()])).join();
+        } catch (final CompletionException ce) {
+            if (ce.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ce.getCause()).getCause();
+            }
+            throw ce;
+        }
+
+        return removed.sum();
+    }
+
+
+    private void walk(final Path start, final LongAdder removed)
+        throws IOException {
+
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(
+                final Path dir, final BasicFileAttributes attrs) {
+
+                return dir.getFileName().toString().startsWith(".")
+                       ? FileVisitResult.SKIP_SUBTREE
+                       : FileVisitResult.CONTINUE;
+            }
+
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file,
+                                                   final IOException exc) {
+
+                logger.warn("failed to visit " + file, exc);
+                return FileVisitResult.CONTINUE;
+            }
+
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir,
+                                                      final IOException exc) {
+
+                if (remove(dir)) {
+                    removed.increment();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+    }
+
+
+    /**
+     * Returns the number of directories queued and not pruned yet.
+     *
+     * @return the number of pending directories.
+     */
+    public int pending() {
+
+        return pendings.size();
+    }
+
+
+    /**
+     * Returns the number of directories removed so far.
+     *
+     * @return the number of directories removed.
+     */
+    public long pruned() {
+
+        return pruned.sum();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final Executor executor;
+
+
+    private final StripedLocks locks = new StripedLocks(256);
+
+
+    private final ConcurrentMap<Path, Path> pendings
+        = new ConcurrentHashMap<>();
+
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+
+    private final LongAdder pruned = new LongAdder();
+
+
+}
@@ -0,0 +1,964 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Optional.ofNullable;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A file back splitting each file into {@code k} data fragments and
+ * {@code m} parity fragments, each of which is stored on a different root at
+ * the leaf path of the key. Any {@code k} fragments reconstruct the file, so
+ * that up to {@code m} roots may be lost. Files are encoded and decoded stripe
+ * by stripe; only a single stripe of each operation is held in memory.
+ * <p>
+ * Each fragment starts with the length of the file and a generation id, each
+ * as an 8-byte big-endian integer, followed by {@value #STRIPE_UNIT}-byte
+ * units, one per stripe. The last stripe is padded with zeros. Each write
+ * picks a new generation id; fragments not of the generation held by most
+ * fragments of a key are stale and treated as missing. Generations are
+ * compared once when fragments are opened and, while reading, parity
+ * fragments are read only in place of absent data fragments.
+ * <p>
+ * Fragments are read and written directly on the roots' leaf paths under
+ * this file back's own locks; operations of the roots, and so their locks,
+ * metrics, checksums, capacity accounting and caches, are bypassed. Roots
+ * shared with other users must not be operated for the same keys.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ErasureCodedFileBack implements FileBack {
+
+
+    /**
+     * The number of bytes of each fragment in a stripe.
+     */
+    static final int STRIPE_UNIT = 262144;
+
+
+    /**
+     * The number of bytes of the header of each fragment.
+     */
+    static final int HEADER_SIZE = 16;
+
+
+    /**
+     * A channel encoding bytes written into fragment channels.
+     */
+    private final class EncodingChannel implements WritableByteChannel {
+
+
+        EncodingChannel(final FileChannel[] channels) {
+
+            super();
+
+            this.channels = channels;
+            shards = new byte[channels.length][STRIPE_UNIT];
+        }
+
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+
+            final int written = src.remaining();
+            final int capacity = codec.dataShards() * STRIPE_UNIT;
+            while (src.hasRemaining()) {
+                final int index = filled / STRIPE_UNIT;
+                final int offset = filled % STRIPE_UNIT;
+                final int length
+                    = Math.min(src.remaining(), STRIPE_UNIT - offset);
+                src.get(shards[index], offset, length);
+                filled += length;
+                if (filled == capacity) {
+                    flush();
+                }
+            }
+            size += written;
+
+            return written;
+        }
+
+
+        private void flush() throws IOException {
+
+            if (filled == 0) {
+                return;
+            }
+
+            for (int i = filled / STRIPE_UNIT; i < codec.dataShards(); i++) {
+                Arrays.fill(shards[i], i == filled / STRIPE_UNIT
+                                       ? filled % STRIPE_UNIT : 0,
+                            STRIPE_UNIT, (byte) 0);
+            }
+            codec.encode(shards, 0, STRIPE_UNIT);
+            for (int i = 0; i < channels.length; i++) {
+                final ByteBuffer buffer = ByteBuffer.wrap(shards[i]);
+                while (buffer.hasRemaining()) {
+                    channels[i].write(buffer);
+                }
+            }
+            filled = 0;
+        }
+
+
+        @Override
+        public boolean isOpen() {
+
+            return open;
+        }
+
+
+        @Override
+        public void close() throws IOException {
+
+            if (open) {
+                flush();
+                open = false;
+            }
+        }
+
+
+        private final FileChannel[] channels;
+
+
+        private final byte[][] shards;
+
+
+        private int filled;
+
+
+        private long size;
+
+
+        private boolean open = true;
+
+
+    }
+
+
+    /**
+     * A channel reading, and reconstructing if required, stripes from
+     * fragment channels.
+     */
+    private final class DecodingChannel implements ReadableByteChannel {
+
+
+        DecodingChannel(final FileChannel[] channels, final ByteBuffer header) {
+
+            super();
+
+            this.channels = channels.clone();
+            size = header.getLong(0);
+            shards = new byte[channels.length][STRIPE_UNIT];
+            present = new boolean[channels.length];
+        }
+
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+
+            if (position == size) {
+                return -1;
+            }
+
+            if (available == 0) {
+                load();
+            }
+
+            int read = 0;
+            while (available > 0 && dst.hasRemaining()) {
+                final int index = consumed / STRIPE_UNIT;
+                final int offset = consumed % STRIPE_UNIT;
+                final int length = Math.min(
+                    Math.min(available, dst.remaining()),
+                    STRIPE_UNIT - offset);
+                dst.put(shards[index], offset, length);
+                consumed += length;
+                available -= length;
+                position += length;
+                read += length;
+            }
+
+            return read;
+        }
+
+
+        /**
+         * Writes all remaining bytes to specified channel.
+         *
+         * @param target the channel to write.
+         *
+         * @return the number of bytes written.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        long transferTo(final WritableByteChannel target) throws IOException {
+
+            final long started = position;
+            while (position < size) {
+                if (available == 0) {
+                    load();
+                }
+                final int index = consumed / STRIPE_UNIT;
+                final int offset = consumed % STRIPE_UNIT;
+                final int length
+                    = Math.min(available, STRIPE_UNIT - offset);
+                final ByteBuffer buffer
+                    = ByteBuffer.wrap(shards[index], offset, length);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                consumed += length;
+                available -= length;
+                position += length;
+            }
+
+            return position - started;
+        }
+
+
+        private void load() throws IOException {
+
+            final long stripe = position / (codec.dataShards() * STRIPE_UNIT);
+            final long offset = HEADER_SIZE + stripe * STRIPE_UNIT;
+            Arrays.fill(present, false);
+            int count = 0;
+            // parity fragments are read only in place of absent data ones
+            for (int i = 0; i < channels.length && count < codec.dataShards();
+                 i++) {
+                present[i] = channels[i] != null
+                             && read(channels[i], shards[i], offset);
+                if (present[i]) {
+                    count++;
+                } else {
+                    channels[i] = null; // never again
+                }
+            }
+            if (count < codec.dataShards()) {
+                throw new IOException(
+                    "fragments(" + count + ") < " + codec.dataShards());
+            }
+            for (int i = 0; i < codec.dataShards(); i++) {
+                if (!present[i]) {
+                    codec.decodeData(shards, present, 0, STRIPE_UNIT);
+                    reconstructions.increment();
+                    break;
+                }
+            }
+            consumed = 0;
+            available = (int) Math.min(
+                (long) codec.dataShards() * STRIPE_UNIT, size - position);
+        }
+
+
+        private boolean read(final FileChannel channel, final byte[] shard,
+                             final long offset)
+            throws IOException {
+
+            final ByteBuffer buffer = ByteBuffer.wrap(shard);
+            while (buffer.hasRemaining()) {
+                final int read = channel.read(
+                    buffer, offset + buffer.position());
+                if (read == -1) {
+                    return false; // truncated
+                }
+            }
+
+            return true;
+        }
+
+
+        @Override
+        public boolean isOpen() {
+
+            return open;
+        }
+
+
+        @Override
+        public void close() {
+
+            open = false;
+        }
+
+
+        private final FileChannel[] channels;
+
+
+        private final long size;
+
+
+        private final byte[][] shards;
+
+
+        private final boolean[] present;
+
+
+        private long position;
+
+
+        private int consumed;
+
+
+        private int available;
+
+
+        private boolean open = true;
+
+
+    }
+
+
+    /**
+     * Attributes of a fragment reporting the size of the whole file.
+     */
+    static final class Attributes implements BasicFileAttributes {
+
+
+        Attributes(final BasicFileAttributes fragment, final long size) {
+
+            super();
+
+            this.fragment = fragment;
+            this.size = size;
+        }
+
+
+        @Override
+        public FileTime lastModifiedTime() {
+
+            return fragment.lastModifiedTime();
+        }
+
+
+        @Override
+        public FileTime lastAccessTime() {
+
+            return fragment.lastAccessTime();
+        }
+
+
+        @Override
+        public FileTime creationTime() {
+
+            return fragment.creationTime();
+        }
+
+
+        @Override
+        public boolean isRegularFile() {
+
+            return true;
+        }
+
+
+        @Override
+        public boolean isDirectory() {
+
+            return false;
+        }
+
+
+        @Override
+        public boolean isSymbolicLink() {
+
+            return false;
+        }
+
+
+        @Override
+        public boolean isOther() {
+
+            return false;
+        }
+
+
+        @Override
+        public long size() {
+
+            return size;
+        }
+
+
+        @Override
+        public Object fileKey() {
+
+            return null;
+        }
+
+
+        private final BasicFileAttributes fragment;
+
+
+        private final long size;
+
+
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param roots the file backs whose roots store fragments; the first
+     * {@code dataShards} store data fragments and the rest store parity
+     * fragments.
+     * @param dataShards the number of data fragments.
+     */
+    public ErasureCodedFileBack(final List<LocalFileBack> roots,
+                                final int dataShards) {
+
+        super();
+
+        if (roots == null) {
+            throw new NullPointerException("null roots");
+        }
+
+        if (dataShards <= 0 || dataShards >= roots.size()) {
+            throw new IllegalArgumentException(
+                "dataShards(" + dataShards + ") not in [1, " + roots.size()
+                + ")");
+        }
+
+        this.roots = unmodifiableList(new ArrayList<>(roots));
+        codec = new ReedSolomon(dataShards, roots.size() - dataShards);
+    }
+
+
+    @Override
+    public void operate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        final FileOperation fileOperation
+            = ofNullable(fileContext.fileOperationSupplier())
+            .orElseThrow(
+                () -> new FileBackException("no file operation supplier set"))
+            .get();
+        logger.trace("file operation: {}", fileOperation);
+        if (fileOperation == null) {
+            logger.error("null file operation supplied");
+            return;
+        }
+
+        switch (fileOperation) {
+            case COPY:
+                copy(fileContext);
+                break;
+            case DELETE:
+                delete(fileContext);
+                break;
+            case READ:
+                read(fileContext);
+                break;
+            case STAT:
+                stat(fileContext);
+                break;
+            case WRITE:
+                write(fileContext);
+                break;
+            default:
+                throw new FileBackException(
+                    "unsupported file operation: " + fileOperation);
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void copy(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey sourceFileKey
+            = ShardedFileBack.sourceFileKey(fileContext, false, primary());
+        if (sourceFileKey == null) {
+            logger.error("no source key located");
+            return;
+        }
+
+        final FileKey targetFileKey
+            = ShardedFileBack.targetFileKey(fileContext, primary());
+        if (targetFileKey == null) {
+            logger.error("no target key located");
+            return;
+        }
+
+        if (sourceFileKey.equals(targetFileKey)) {
+            logger.error("source key == target key");
+            return;
+        }
+
+        try (StripedLocks.Hold hold
+             = locks.readWrite(sourceFileKey, targetFileKey)) {
+            final Path[] sourceLeafPaths = leafPaths(sourceFileKey);
+            final Path[] targetLeafPaths = leafPaths(targetFileKey);
+            final Path[] temporaries = new Path[roots.size()];
+            long size = -1L;
+            try {
+                for (int i = 0; i < roots.size(); i++) {
+                    if (!Files.isRegularFile(sourceLeafPaths[i])) {
+                        continue;
+                    }
+                    LocalFileBack.createParent(targetLeafPaths[i]);
+                    temporaries[i] = temporary(targetLeafPaths[i]);
+                    Files.copy(sourceLeafPaths[i], temporaries[i],
+                               StandardCopyOption.REPLACE_EXISTING);
+                    if (size == -1L) {
+                        try (FileChannel channel = FileChannel.open(
+                            temporaries[i], StandardOpenOption.READ)) {
+                            size = header(channel).getLong(0);
+                        }
+                    }
+                }
+                if (size == -1L) {
+                    logger.error("source key not found: {}", sourceFileKey);
+                    return;
+                }
+                for (int i = 0; i < roots.size(); i++) {
+                    if (temporaries[i] == null) {
+                        Files.deleteIfExists(targetLeafPaths[i]);
+                        continue;
+                    }
+                    move(temporaries[i], targetLeafPaths[i]);
+                    temporaries[i] = null;
+                }
+            } finally {
+                delete(temporaries);
+            }
+            ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                c -> c.accept(targetFileKey.pathName()));
+            LocalFileBack.copied(fileContext, size);
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void delete(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        FileKey fileKey_
+            = ShardedFileBack.sourceFileKey(fileContext, false, primary());
+        if (fileKey_ == null) {
+            fileKey_ = ShardedFileBack.targetFileKey(fileContext, primary());
+        }
+        final FileKey fileKey = fileKey_;
+        if (fileKey == null) {
+            logger.warn("no key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = locks.write(fileKey)) {
+            for (final Path leafPath : leafPaths(fileKey)) {
+                Files.deleteIfExists(leafPath);
+            }
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void read(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.sourceFileKey(fileContext, true, primary());
+        if (fileKey == null) {
+            logger.warn("no source key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = locks.read(fileKey)) {
+            final Path[] leafPaths = leafPaths(fileKey);
+            final FileChannel[] channels = new FileChannel[roots.size()];
+            try {
+                final ByteBuffer header = open(leafPaths, channels);
+                int present = 0;
+                for (final FileChannel channel : channels) {
+                    if (channel != null) {
+                        present++;
+                    }
+                }
+                if (present == 0) {
+                    logger.warn("no fragments found: {}", fileKey);
+                    return;
+                }
+                if (present < codec.dataShards()) {
+                    throw new FileBackException(
+                        "fragments(" + present + ") < " + codec.dataShards()
+                        + ": " + fileKey);
+                }
+                ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                    c -> c.accept(fileKey.pathName()));
+
+                final Consumer<ReadableByteChannel> sourceChannelConsumer
+                    = fileContext.sourceChannelConsumer();
+                if (sourceChannelConsumer != null) {
+                    sourceChannelConsumer.accept(
+                        new DecodingChannel(channels, header));
+                }
+
+                final Supplier<WritableByteChannel> targetChannelSupplier
+                    = fileContext.targetChannelSupplier();
+                if (targetChannelSupplier != null) {
+                    final long copied = new DecodingChannel(channels, header)
+                        .transferTo(targetChannelSupplier.get());
+                    LocalFileBack.copied(fileContext, copied);
+                }
+            } finally {
+                for (final FileChannel channel : channels) {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+            }
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void stat(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.sourceFileKey(fileContext, true, primary());
+        if (fileKey == null) {
+            logger.warn("no source key located");
+            return;
+        }
+
+        BasicFileAttributes attributes = null;
+        try (StripedLocks.Hold hold = locks.read(fileKey)) {
+            final Path[] leafPaths = leafPaths(fileKey);
+            final FileChannel[] channels = new FileChannel[roots.size()];
+            try {
+                final ByteBuffer header = open(leafPaths, channels);
+                for (int i = 0; i < channels.length; i++) {
+                    if (channels[i] == null) {
+                        continue;
+                    }
+                    try {
+                        attributes = new Attributes(Files.readAttributes(
+                            leafPaths[i], BasicFileAttributes.class),
+                                                    header.getLong(0));
+                        break;
+                    } catch (final NoSuchFileException nsfe) {
+                        // next
+                    }
+                }
+            } finally {
+                for (final FileChannel channel : channels) {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+            }
+        }
+
+        final BasicFileAttributes found = attributes;
+        ofNullable(fileContext.sourceAttributesConsumer()).ifPresent(
+            c -> c.accept(found));
+    }
+
+
+    @SuppressWarnings("try")
+    private void write(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.targetFileKey(fileContext, primary());
+        if (fileKey == null) {
+            logger.warn("no target key located");
+            return;
+        }
+
+        final Consumer<WritableByteChannel> targetChannelConsumer
+            = fileContext.targetChannelConsumer();
+        final Supplier<ReadableByteChannel> sourceChannelSupplier
+            = fileContext.sourceChannelSupplier();
+        if (targetChannelConsumer == null && sourceChannelSupplier == null) {
+            logger.warn("no source channel supplier nor target channel"
+                        + " consumer set");
+            return;
+        }
+
+        ofNullable(fileContext.pathNameConsumer()).ifPresent(
+            c -> c.accept(fileKey.pathName()));
+
+        try (StripedLocks.Hold hold = locks.write(fileKey)) {
+            final Path[] leafPaths = leafPaths(fileKey);
+            final Path[] temporaries = new Path[roots.size()];
+            final FileChannel[] channels = new FileChannel[roots.size()];
+            final long size;
+            try {
+                for (int i = 0; i < roots.size(); i++) {
+                    LocalFileBack.createParent(leafPaths[i]);
+                    temporaries[i] = temporary(leafPaths[i]);
+                    channels[i] = FileChannel.open(
+                        temporaries[i], StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
+                    channels[i].position(HEADER_SIZE);
+                }
+                final EncodingChannel encoding = new EncodingChannel(channels);
+                if (targetChannelConsumer != null) {
+                    targetChannelConsumer.accept(encoding);
+                } else {
+                    final InputStream input = Channels.newInputStream(
+                        sourceChannelSupplier.get());
+                    final byte[] buffer = new byte[65536];
+                    for (int read; (read = input.read(buffer)) != -1;) {
+                        encoding.write(ByteBuffer.wrap(buffer, 0, read));
+                    }
+                }
+                encoding.close();
+                size = encoding.size;
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putLong(0, size);
+                header.putLong(8, ThreadLocalRandom.current().nextLong());
+                for (final FileChannel channel : channels) {
+                    final ByteBuffer duplicate = header.duplicate();
+                    while (duplicate.hasRemaining()) {
+                        channel.write(duplicate,
+                                      duplicate.position());
+                    }
+                    channel.close();
+                }
+                for (int i = 0; i < roots.size(); i++) {
+                    move(temporaries[i], leafPaths[i]);
+                    temporaries[i] = null;
+                }
+            } finally {
+                for (final FileChannel channel : channels) {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+                delete(temporaries);
+            }
+            LocalFileBack.copied(fileContext, size);
+        }
+    }
+
+
+    private static ByteBuffer header(final FileChannel channel)
+        throws IOException {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) == -1) {
+                throw new IOException("truncated fragment");
+            }
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    /**
+     * Opens fragments at specified leaf paths into specified channels and
+     * closes, and leaves {@code null}, those missing, truncated or not of the
+     * generation held by most fragments.
+     *
+     * @param leafPaths the leaf paths of fragments.
+     * @param channels the array to fill with channels of matching fragments.
+     *
+     * @return the header of matching fragments, or {@code null} if no
+     * fragments found.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private static ByteBuffer open(final Path[] leafPaths,
+                                   final FileChannel[] channels)
+        throws IOException {
+
+        final ByteBuffer[] headers = new ByteBuffer[channels.length];
+        try {
+            for (int i = 0; i < channels.length; i++) {
+                try {
+                    channels[i] = FileChannel.open(
+                        leafPaths[i], StandardOpenOption.READ);
+                } catch (final NoSuchFileException nsfe) {
+                    continue;
+                }
+                try {
+                    headers[i] = header(channels[i]);
+                } catch (final IOException ioe) {
+                    channels[i].close();
+                    channels[i] = null;
+                }
+            }
+        } catch (final IOException ioe) {
+            for (final FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            throw ioe;
+        }
+
+        int chosen = -1;
+        int most = 0;
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i] == null) {
+                continue;
+            }
+            int count = 0;
+            for (final ByteBuffer header : headers) {
+                if (header != null && header.equals(headers[i])) {
+                    count++;
+                }
+            }
+            if (count > most) {
+                chosen = i;
+                most = count;
+            }
+        }
+        if (chosen == -1) {
+            return null;
+        }
+
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i] != null && !headers[i].equals(headers[chosen])) {
+                channels[i].close(); // stale
+                channels[i] = null;
+            }
+        }
+
+        return headers[chosen];
+    }
+
+
+    private static Path temporary(final Path leafPath) {
+
+        return leafPath.resolveSibling(
+            "." + leafPath.getFileName() + ".encoding");
+    }
+
+
+    private static void move(final Path temporary, final Path leafPath)
+        throws IOException {
+
+        Files.move(temporary, leafPath, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private void delete(final Path[] temporaries) {
+
+        for (final Path temporary : temporaries) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (final IOException ioe) {
+                    logger.error("failed to delete " + temporary, ioe);
+                }
+            }
+        }
+    }
+
+
+    private Path[] leafPaths(final FileKey fileKey) {
+
+        final Path[] leafPaths = new Path[roots.size()];
+        for (int i = 0; i < leafPaths.length; i++) {
+            leafPaths[i] = roots.get(i).fileKey(fileKey.pathName()).leafPath();
+        }
+
+        return leafPaths;
+    }
+
+
+    private LocalFileBack primary() {
+
+        return roots.get(0);
+    }
+
+
+    /**
+     * Returns the codec.
+     *
+     * @return the codec.
+     */
+    public ReedSolomon codec() {
+
+        return codec;
+    }
+
+
+    /**
+     * Returns the number of stripes reconstructed from parities so far.
+     *
+     * @return the number of stripes reconstructed.
+     */
+    public long reconstructions() {
+
+        return reconstructions.sum();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final List<LocalFileBack> roots;
+
+
+    private final ReedSolomon codec;
+
+
+    private final StripedLocks locks = new StripedLocks(256);
+
+
+    private final LongAdder reconstructions = new LongAdder();
+
+
+}
@@ -0,0 +1,618 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Deletes file parts whose time to live elapsed. Expirations are kept in
+ * memory, appended to a compact log named {@value #LOG_NAME} in the root
+ * path and scheduled on a hierarchical timing wheel which is advanced by
+ * the scheduler every tick. Expired file parts are deleted in batches not
+ * exceeding the rate. The log is read, not the tree, when an instance is
+ * created.
+ * <p>
+ * Expirations are appended without forcing; a file part whose expiration
+ * is lost by a crash is never deleted.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#reaper(ExpiryReaper)
+ * @see FileContext#timeToLiveSupplier()
+ */
+public class ExpiryReaper implements AutoCloseable {
+
+
+    /**
+     * The name of the expiry log in the root path.
+     */
+    public static final String LOG_NAME = ".expiry";
+
+
+    /**
+     * The value of an expiration in the log which clears the previous one.
+     */
+    private static final long CLEARED = 0L;
+
+
+    /**
+     * An expiration scheduled on the wheel.
+     */
+    static final class Entry {
+
+
+        Entry(final Path leafPath, final long expiresAt, final long deadline) {
+
+            super();
+
+            this.leafPath = leafPath;
+            this.expiresAt = expiresAt;
+            this.deadline = deadline;
+        }
+
+
+        final Path leafPath;
+
+
+        final long expiresAt;
+
+
+        /**
+         * The tick at which this entry is due.
+         */
+        final long deadline;
+
+
+    }
+
+
+    /**
+     * A hierarchical timing wheel of {@value #LEVELS} levels of
+     * {@value #SLOTS} slots. A slot of level {@code i} spans
+     * {@code SLOTS^i} ticks; entries of higher levels cascade down as the
+     * wheel turns.
+     */
+    static final class Wheel {
+
+
+        static final int LEVELS = 4;
+
+
+        static final int SLOTS = 64;
+
+
+        private static final int BITS = 6;
+
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Wheel(final long current) {
+
+            super();
+
+            this.current = current;
+            slots = new List[LEVELS][SLOTS];
+            for (int i = 0; i < LEVELS; i++) {
+                for (int j = 0; j < SLOTS; j++) {
+                    slots[i][j] = new ArrayList<>();
+                }
+            }
+        }
+
+
+        /**
+         * Schedules specified entry.
+         *
+         * @param entry the entry.
+         * @param due the list to add the entry to if it is already due.
+         */
+        void add(final Entry entry, final List<Entry> due) {
+
+            final long delta = entry.deadline - current;
+            if (delta <= 0L) {
+                due.add(entry);
+                return;
+            }
+
+            for (int level = 0; level < LEVELS; level++) {
+                if (delta < 1L << (BITS * (level + 1))) {
+                    slots[level][(int) ((entry.deadline >>> (BITS * level))
+                                        & (SLOTS - 1))].add(entry);
+                    return;
+                }
+            }
+
+            overflow.add(entry);
+        }
+
+
+        /**
+         * Turns this wheel up to specified tick and collects due entries.
+         *
+         * @param tick the tick to turn to.
+         * @param due the list to add due entries to.
+         */
+        void advance(final long tick, final List<Entry> due) {
+
+            while (current < tick) {
+                current++;
+                int top = 0; // the highest level wrapped
+                while (top < LEVELS - 1
+                       && (current & ((1L << (BITS * (top + 1))) - 1)) == 0L) {
+                    top++;
+                }
+                if (top == LEVELS - 1) {
+                    cascade(overflow, due);
+                }
+                for (int level = top; level > 0; level--) {
+                    cascade(slots[level][(int) ((current >>> (BITS * level))
+                                                & (SLOTS - 1))], due);
+                }
+                final List<Entry> slot
+                    = slots[0][(int) (current & (SLOTS - 1))];
+                due.addAll(slot);
+                slot.clear();
+            }
+        }
+
+
+        private void cascade(final List<Entry> entries,
+                             final List<Entry> due) {
+
+            final List<Entry> moving = new ArrayList<>(entries);
+            entries.clear();
+            for (final Entry entry : moving) {
+                add(entry, due);
+            }
+        }
+
+
+        long current;
+
+
+        private final List<Entry>[][] slots;
+
+
+        private final List<Entry> overflow = new ArrayList<>();
+
+
+    }
+
+
+    /**
+     * Creates a new instance for specified file back. The log in the root
+     * path of the file back is read and compacted and the wheel starts
+     * turning.
+     *
+     * @param fileBack the file back whose file parts expire.
+     * @param scheduler the scheduler for turning the wheel.
+     * @param tick the duration of a tick of the wheel.
+     * @param unit the unit of {@code tick}.
+     * @param rate the maximum number of file parts deleted per second.
+     *
+     * @throws IOException if an I/O error occurs while reading the log.
+     */
+    public ExpiryReaper(final LocalFileBack fileBack,
+                        final ScheduledExecutorService scheduler,
+                        final long tick, final TimeUnit unit, final int rate)
+        throws IOException {
+
+        super();
+
+        if (fileBack == null) {
+            throw new NullPointerException("null fileBack");
+        }
+
+        if (scheduler == null) {
+            throw new NullPointerException("null scheduler");
+        }
+
+        if (unit == null) {
+            throw new NullPointerException("null unit");
+        }
+
+        if (unit.toMillis(tick) <= 0L) {
+            throw new IllegalArgumentException(
+                "tick(" + tick + " " + unit + ") < 1 ms");
+        }
+
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate(" + rate + ") <= 0");
+        }
+
+        this.fileBack = fileBack;
+        tickMillis = unit.toMillis(tick);
+        batch = (int) Math.max(1L, rate * tickMillis / 1000L);
+        logPath = fileBack.rootPath().resolve(LOG_NAME);
+
+        wheel = new Wheel(System.currentTimeMillis() / tickMillis);
+        load();
+        compact();
+
+        future = scheduler.scheduleAtFixedRate(
+            this::turn, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    private void load() throws IOException {
+
+        final Map<String, Long> latest = new HashMap<>();
+        try (InputStream stream = Files.newInputStream(logPath)) {
+            final DataInputStream input
+                = new DataInputStream(new BufferedInputStream(stream));
+            while (true) {
+                final long expiresAt;
+                final String pathName;
+                try {
+                    expiresAt = input.readLong();
+                    pathName = input.readUTF();
+                } catch (final EOFException eofe) {
+                    break; // possibly a torn tail
+                }
+                latest.put(pathName, expiresAt);
+            }
+        } catch (final NoSuchFileException nsfe) {
+            return;
+        }
+
+        final List<Entry> due = new ArrayList<>();
+        for (final Map.Entry<String, Long> e : latest.entrySet()) {
+            if (e.getValue() == CLEARED) {
+                continue;
+            }
+            final Path leafPath;
+            try {
+                leafPath = fileBack.fileKey(e.getKey()).leafPath();
+            } catch (final IllegalArgumentException iae) {
+                logger.warn("illegal path name in log: {}", e.getKey());
+                continue;
+            }
+            expirations.put(leafPath, e.getValue());
+            schedule(entry(leafPath, e.getValue()), due);
+        }
+        this.due.addAll(due);
+        logger.debug("expirations loaded: {}", expirations.size());
+    }
+
+
+    /**
+     * Rewrites the log with current expirations only.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private synchronized void compact() throws IOException {
+
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+
+        final Path compacting = logPath.resolveSibling(LOG_NAME + ".tmp");
+        try (FileChannel output = FileChannel.open(
+            compacting, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (final Map.Entry<Path, Long> e : expirations.entrySet()) {
+                write(output, fileBack.pathName(e.getKey()), e.getValue());
+            }
+            output.force(false);
+        }
+        Files.move(compacting, logPath, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        records = expirations.size();
+
+        channel = FileChannel.open(
+            logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    }
+
+
+    private static void write(final FileChannel channel,
+                              final String pathName, final long expiresAt)
+        throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeLong(expiresAt);
+        output.writeUTF(pathName);
+        output.flush();
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    private synchronized void append(final Path leafPath,
+                                     final long expiresAt)
+        throws IOException {
+
+        if (channel == null) {
+            throw new IOException("closed");
+        }
+
+        write(channel, fileBack.pathName(leafPath), expiresAt);
+        if (++records > (expirations.size() << 1) + 1024) {
+            compact();
+        }
+    }
+
+
+    private Entry entry(final Path leafPath, final long expiresAt) {
+
+        return new Entry(leafPath, expiresAt,
+                         (expiresAt + tickMillis - 1) / tickMillis);
+    }
+
+
+    /**
+     * Schedules specified entry on the wheel unless it is already expired.
+     *
+     * @param entry the entry.
+     * @param due the list to add the entry to if it is already expired.
+     */
+    private void schedule(final Entry entry, final List<Entry> due) {
+
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            due.add(entry);
+            return;
+        }
+
+        wheel.add(entry, due);
+    }
+
+
+    /**
+     * Sets the expiration of specified leaf path. The caller holds the lock
+     * of the leaf path.
+     *
+     * @param leafPath the leaf path.
+     * @param expiresAt the time, in milliseconds since the epoch, at which
+     * the file part expires.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void expire(final Path leafPath, final long expiresAt)
+        throws IOException {
+
+        expirations.put(leafPath, expiresAt);
+        append(leafPath, expiresAt);
+
+        final List<Entry> due = new ArrayList<>(0);
+        synchronized (wheel) {
+            schedule(entry(leafPath, expiresAt), due);
+            this.due.addAll(due);
+        }
+    }
+
+
+    /**
+     * Clears the expiration, if any, of specified leaf path. The caller holds
+     * the lock of the leaf path.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void clear(final Path leafPath) throws IOException {
+
+        if (expirations.remove(leafPath) != null) {
+            append(leafPath, CLEARED);
+        }
+    }
+
+
+    /**
+     * Removes the expiration of specified leaf path if it is still the
+     * specified one. The caller holds the lock of the leaf path.
+     *
+     * @param leafPath the leaf path.
+     * @param expiresAt the expiration.
+     *
+     * @return {@code true} if removed; {@code false} if the expiration has
+     * been changed or cleared.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    boolean remove(final Path leafPath, final long expiresAt)
+        throws IOException {
+
+        if (!expirations.remove(leafPath, expiresAt)) {
+            return false;
+        }
+
+        append(leafPath, CLEARED);
+
+        return true;
+    }
+
+
+    /**
+     * Returns the expiration of specified leaf path.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the time, in milliseconds since the epoch, at which the file
+     * part expires or {@code null} if it never expires.
+     */
+    Long expiresAt(final Path leafPath) {
+
+        return expirations.get(leafPath);
+    }
+
+
+    /**
+     * Checks whether the file part of specified leaf path is expired.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return {@code true} if expired, even if not deleted yet.
+     */
+    boolean expired(final Path leafPath) {
+
+        if (expirations.isEmpty()) {
+            return false;
+        }
+
+        final Long expiresAt = expirations.get(leafPath);
+
+        return expiresAt != null && expiresAt <= System.currentTimeMillis();
+    }
+
+
+    /**
+     * Turns the wheel and deletes due file parts up to the batch size.
+     */
+    void turn() {
+
+        final List<Entry> due = new ArrayList<>();
+        final List<Entry> reaping = new ArrayList<>();
+        synchronized (wheel) {
+            wheel.advance(System.currentTimeMillis() / tickMillis, due);
+            this.due.addAll(due);
+            for (Entry entry; reaping.size() < batch
+                              && (entry = this.due.poll()) != null;) {
+                reaping.add(entry);
+            }
+        }
+
+        for (final Entry entry : reaping) {
+            if (!Long.valueOf(entry.expiresAt).equals(
+                expirations.get(entry.leafPath))) {
+                continue; // rewritten or cleared
+            }
+            try {
+                if (fileBack.expire(entry.leafPath, entry.expiresAt)) {
+                    reaped.increment();
+                }
+            } catch (final IOException ioe) {
+                logger.error("failed to reap " + entry.leafPath, ioe);
+                synchronized (wheel) {
+                    this.due.add(entry);
+                }
+            } catch (final RuntimeException re) {
+                logger.error("failed to reap " + entry.leafPath, re);
+            }
+        }
+    }
+
+
+    /**
+     * Stops turning the wheel and closes the log. Expirations are kept in
+     * the log for the next instance.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+
+        future.cancel(false);
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+
+    /**
+     * Returns the number of file parts which have expirations.
+     *
+     * @return the number of pending expirations.
+     */
+    public int pending() {
+
+        return expirations.size();
+    }
+
+
+    /**
+     * Returns the number of file parts deleted so far.
+     *
+     * @return the number of file parts reaped.
+     */
+    public long reaped() {
+
+        return reaped.sum();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    final LocalFileBack fileBack;
+
+
+    private final long tickMillis;
+
+
+    private final int batch;
+
+
+    private final Path logPath;
+
+
+    private final ConcurrentMap<Path, Long> expirations
+        = new ConcurrentHashMap<>();
+
+
+    private final Wheel wheel;
+
+
+    private final Deque<Entry> due = new ArrayDeque<>();
+
+
+    private final ScheduledFuture<?> future;
+
+
+    private FileChannel channel;
+
+
+    private long records;
+
+
+    private final LongAdder reaped = new LongAdder();
+
+
+}
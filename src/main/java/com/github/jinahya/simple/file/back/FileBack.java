@@ -34,6 +34,10 @@ public interface FileBack {
     public static enum FileOperation {
 
 
+        /**
+         * A constant for appending to files.
+         */
+        APPEND,
         /**
          * A constant for coping files.
          */
@@ -42,10 +46,19 @@ public interface FileBack {
          * A constant for deleting files.
          */
         DELETE,
+        /**
+         * A constant for warming files up, in background, before they are
+         * read.
+         */
+        PREFETCH,
         /**
          * A constant for reading files.
          */
         READ,
+        /**
+         * A constant for querying attributes of files without opening them.
+         */
+        STAT,
         /**
          * A constant for writing files.
          */
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+/**
+ * Availability of flight recorder events. Event classes extend
+ * {@code jdk.jfr.Event}, which is absent from some Java 8 runtimes, so they
+ * are touched only if this flag is set.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class FileBackEvents {
+
+
+    /**
+     * A flag for the availability of {@code jdk.jfr}.
+     */
+    static final boolean AVAILABLE;
+
+
+    static {
+        boolean available = false;
+        try {
+            Class.forName("jdk.jfr.Event", false,
+                          FileBackEvents.class.getClassLoader());
+            available = true;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            // no flight recorder
+        }
+        AVAILABLE = available;
+    }
+
+
+    private FileBackEvents() {
+
+        super();
+    }
+
+
+}
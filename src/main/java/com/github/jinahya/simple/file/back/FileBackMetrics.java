@@ -0,0 +1,316 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Latencies, error counts and transferred bytes recorded by file backs.
+ * Recording is lock-free and allocation-free so that instances can be left
+ * attached in production.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class FileBackMetrics implements FileBackMetricsMXBean {
+
+
+    /**
+     * Phases of file operations.
+     */
+    public static enum Phase {
+
+
+        /**
+         * A constant for hashing file keys.
+         */
+        KEY_HASH,
+        /**
+         * A constant for resolving leaf paths from hashed keys.
+         */
+        LEAF_RESOLVE,
+        /**
+         * A constant for creating parent directories of leaf paths.
+         */
+        PARENT_CREATE,
+        /**
+         * A constant for opening file channels.
+         */
+        OPEN,
+        /**
+         * A constant for transferring bytes.
+         */
+        TRANSFER,
+        /**
+         * A constant for forcing updates to the storage device.
+         */
+        FORCE
+
+
+    }
+
+
+    /**
+     * The domain of object names this class registers with.
+     */
+    public static final String OBJECT_NAME_DOMAIN
+        = "com.github.jinahya.simple.file.back";
+
+
+    /**
+     * Records the latency of an operation.
+     *
+     * @param fileOperation the file operation.
+     * @param elapsed the elapsed time in nanoseconds.
+     */
+    public void operation(final FileOperation fileOperation,
+                          final long elapsed) {
+
+        operations[fileOperation.ordinal()].record(elapsed);
+    }
+
+
+    /**
+     * Records the latency of a phase.
+     *
+     * @param phase the phase.
+     * @param elapsed the elapsed time in nanoseconds.
+     */
+    public void phase(final Phase phase, final long elapsed) {
+
+        phases[phase.ordinal()].record(elapsed);
+    }
+
+
+    /**
+     * Records a failure of an operation.
+     *
+     * @param fileOperation the file operation.
+     */
+    public void error(final FileOperation fileOperation) {
+
+        errors[fileOperation.ordinal()].increment();
+    }
+
+
+    /**
+     * Adds the number of bytes written into the storage.
+     *
+     * @param bytes the number of bytes.
+     */
+    public void bytesIn(final long bytes) {
+
+        bytesIn.add(bytes);
+    }
+
+
+    /**
+     * Adds the number of bytes read from the storage.
+     *
+     * @param bytes the number of bytes.
+     */
+    public void bytesOut(final long bytes) {
+
+        bytesOut.add(bytes);
+    }
+
+
+    /**
+     * Returns a snapshot of latencies of specified operation.
+     *
+     * @param fileOperation the file operation.
+     *
+     * @return a snapshot of latencies.
+     */
+    public LatencySnapshot latency(final FileOperation fileOperation) {
+
+        if (fileOperation == null) {
+            throw new NullPointerException("null fileOperation");
+        }
+
+        return operations[fileOperation.ordinal()].snapshot();
+    }
+
+
+    /**
+     * Returns a snapshot of latencies of specified phase.
+     *
+     * @param phase the phase.
+     *
+     * @return a snapshot of latencies.
+     */
+    public LatencySnapshot latency(final Phase phase) {
+
+        if (phase == null) {
+            throw new NullPointerException("null phase");
+        }
+
+        return phases[phase.ordinal()].snapshot();
+    }
+
+
+    /**
+     * Returns the number of failures of specified operation.
+     *
+     * @param fileOperation the file operation.
+     *
+     * @return the number of failures.
+     */
+    public long errors(final FileOperation fileOperation) {
+
+        if (fileOperation == null) {
+            throw new NullPointerException("null fileOperation");
+        }
+
+        return errors[fileOperation.ordinal()].sum();
+    }
+
+
+    @Override
+    public Map<String, LatencySnapshot> getOperationLatencies() {
+
+        final Map<String, LatencySnapshot> latencies = new LinkedHashMap<>();
+        for (final FileOperation fileOperation : FileOperation.values()) {
+            latencies.put(fileOperation.name(), latency(fileOperation));
+        }
+
+        return latencies;
+    }
+
+
+    @Override
+    public Map<String, LatencySnapshot> getPhaseLatencies() {
+
+        final Map<String, LatencySnapshot> latencies = new LinkedHashMap<>();
+        for (final Phase phase : Phase.values()) {
+            latencies.put(phase.name(), latency(phase));
+        }
+
+        return latencies;
+    }
+
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (final FileOperation fileOperation : FileOperation.values()) {
+            counts.put(fileOperation.name(), errors(fileOperation));
+        }
+
+        return counts;
+    }
+
+
+    @Override
+    public long getBytesIn() {
+
+        return bytesIn.sum();
+    }
+
+
+    @Override
+    public long getBytesOut() {
+
+        return bytesOut.sum();
+    }
+
+
+    @Override
+    public void reset() {
+
+        for (final LatencyHistogram operation : operations) {
+            operation.reset();
+        }
+        for (final LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+        for (final LongAdder error : errors) {
+            error.reset();
+        }
+        bytesIn.reset();
+        bytesOut.reset();
+    }
+
+
+    /**
+     * Registers this instance to the platform MBean server with an object
+     * name of {@value #OBJECT_NAME_DOMAIN}{@code :type=FileBackMetrics,name=}
+     * {@code name}.
+     *
+     * @param name the value of {@code name} key of the object name.
+     *
+     * @return the object name registered.
+     *
+     * @throws JMException if failed to register.
+     */
+    public ObjectName register(final String name) throws JMException {
+
+        if (name == null) {
+            throw new NullPointerException("null name");
+        }
+
+        final ObjectName objectName = new ObjectName(
+            OBJECT_NAME_DOMAIN + ":type=FileBackMetrics,name="
+            + ObjectName.quote(name));
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+
+        return objectName;
+    }
+
+
+    private final LatencyHistogram[] operations
+        = new LatencyHistogram[FileOperation.values().length];
+
+
+    private final LatencyHistogram[] phases
+        = new LatencyHistogram[Phase.values().length];
+
+
+    private final LongAdder[] errors
+        = new LongAdder[FileOperation.values().length];
+
+
+    private final LongAdder bytesIn = new LongAdder();
+
+
+    private final LongAdder bytesOut = new LongAdder();
+
+
+    {
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+        }
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+
+}
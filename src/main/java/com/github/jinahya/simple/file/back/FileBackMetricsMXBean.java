@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.util.Map;
+
+
+/**
+ * A management interface for {@link FileBackMetrics}.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public interface FileBackMetricsMXBean {
+
+
+    /**
+     * Returns latencies of operations keyed by the name of each
+     * {@link FileBack.FileOperation}.
+     *
+     * @return latencies of operations.
+     */
+    Map<String, LatencySnapshot> getOperationLatencies();
+
+
+    /**
+     * Returns latencies of phases keyed by the name of each
+     * {@link FileBackMetrics.Phase}.
+     *
+     * @return latencies of phases.
+     */
+    Map<String, LatencySnapshot> getPhaseLatencies();
+
+
+    /**
+     * Returns the number of failed operations keyed by the name of each
+     * {@link FileBack.FileOperation}.
+     *
+     * @return the number of failed operations.
+     */
+    Map<String, Long> getErrorCounts();
+
+
+    /**
+     * Returns the number of bytes written into the storage.
+     *
+     * @return the number of bytes written.
+     */
+    long getBytesIn();
+
+
+    /**
+     * Returns the number of bytes read from the storage.
+     *
+     * @return the number of bytes read.
+     */
+    long getBytesOut();
+
+
+    /**
+     * Clears all recorded values.
+     */
+    void reset();
+
+
+}
@@ -21,10 +21,6 @@ package com.github.jinahya.simple.file.back;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Formatter;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 
 /**
@@ -34,6 +30,9 @@ import java.util.stream.Stream;
 public final class FileBackUtilities {
 
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
     /**
      * Converts given file key to a path name.
      *
@@ -74,22 +73,129 @@ public final class FileBackUtilities {
             throw new NullPointerException("null tokenDelimiter");
         }
 
+        return digestToPathName(digest(fileKey, digestAlgorithm), tokenLength,
+                                tokenDelimiter);
+    }
+
+
+    /**
+     * Digests given file key.
+     *
+     * @param fileKey the file key to digest.
+     * @param digestAlgorithm a message digest algorithm to hash.
+     *
+     * @return the digest.
+     *
+     * @throws NoSuchAlgorithmException if {@code digestAlgorithm} is unknown.
+     */
+    public static byte[] digest(final ByteBuffer fileKey,
+                                final String digestAlgorithm)
+        throws NoSuchAlgorithmException {
+
+        if (fileKey == null) {
+            throw new NullPointerException("null fileKey");
+        }
+
+        if (fileKey.remaining() == 0) {
+            throw new IllegalArgumentException("keyBuffer.remaining == 0");
+        }
+
+        if (digestAlgorithm == null) {
+            throw new NullPointerException("null digestAlgorithm");
+        }
+
         final MessageDigest digest = MessageDigest.getInstance(digestAlgorithm);
         digest.update(fileKey.asReadOnlyBuffer());
-        final byte[] digested = digest.digest();
 
-        final String hexed = IntStream.range(0, digested.length)
-            .collect(() -> new StringBuilder(digested.length * 2),
-                     (b, i) -> new Formatter(b).format(
-                         "%02x", digested[i] & 0xFF),
-                     StringBuilder::append)
-            .toString();
+        return digest.digest();
+    }
+
 
-        final String joined = Stream
-            .of(hexed.split("(?<=\\G.{" + tokenLength + "})"))
-            .collect(Collectors.joining(tokenDelimiter));
+    /**
+     * Converts given digest to a path name by splitting its hexadecimal
+     * representation.
+     *
+     * @param digest the digest to convert.
+     * @param tokenLength the number of characters to split.
+     * @param tokenDelimiter the delimiter string used when joining split
+     * tokens.
+     *
+     * @return a path name.
+     */
+    public static String digestToPathName(final byte[] digest,
+                                          final int tokenLength,
+                                          final String tokenDelimiter) {
+
+        if (digest == null) {
+            throw new NullPointerException("null digest");
+        }
+
+        if (tokenLength <= 0) {
+            throw new IllegalArgumentException(
+                "tokenLength(" + tokenLength + ") <= 0");
+        }
+
+        if (tokenDelimiter == null) {
+            throw new NullPointerException("null tokenDelimiter");
+        }
+
+        final int length = digest.length * 2;
+        final StringBuilder builder = new StringBuilder(
+            length + (length - 1) / tokenLength * tokenDelimiter.length());
+        for (int i = 0; i < length; i++) {
+            if (i > 0 && i % tokenLength == 0) {
+                builder.append(tokenDelimiter);
+            }
+            final int b = digest[i >> 1] & 0xFF;
+            builder.append(HEX_DIGITS[(i & 1) == 0 ? b >> 4 : b & 0x0F]);
+        }
+
+        return builder.toString();
+    }
+
+
+    /**
+     * Converts given path name, which is produced by
+     * {@link #digestToPathName(byte[], int, String)}, back to the digest.
+     *
+     * @param pathName the path name to convert.
+     * @param tokenDelimiter the delimiter string used when joining split
+     * tokens.
+     *
+     * @return the digest.
+     *
+     * @throws IllegalArgumentException if {@code pathName} is not a path name
+     * of a digest.
+     */
+    public static byte[] pathNameToDigest(final String pathName,
+                                          final String tokenDelimiter) {
+
+        if (pathName == null) {
+            throw new NullPointerException("null pathName");
+        }
+
+        if (tokenDelimiter == null) {
+            throw new NullPointerException("null tokenDelimiter");
+        }
+
+        final String hexed = pathName.replace(tokenDelimiter, "");
+        if (hexed.isEmpty() || hexed.length() % 2 != 0) {
+            throw new IllegalArgumentException(
+                "illegal path name: " + pathName);
+        }
+
+        final byte[] digest = new byte[hexed.length() / 2];
+        for (int i = 0; i < digest.length; i++) {
+            final int high = Character.digit(hexed.charAt(i * 2), 16);
+            final int low = Character.digit(hexed.charAt(i * 2 + 1), 16);
+            if (high == -1 || low == -1) {
+                throw new IllegalArgumentException(
+                    "illegal path name: " + pathName);
+            }
+            digest[i] = (byte) ((high << 4) | low);
+        }
 
-        return joined;
+        return digest;
     }
 
 
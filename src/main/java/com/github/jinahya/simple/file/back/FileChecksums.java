@@ -0,0 +1,620 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.zip.Checksum;
+
+
+/**
+ * CRC32C checksums of file parts. Checksums are computed by
+ * {@code java.util.zip.CRC32C}, whose updates are intrinsified to the
+ * hardware instructions, when the runtime provides it and by a table driven
+ * implementation otherwise. Each checksum is stored as a user-defined
+ * attribute of the file part along with the size and the last modified time
+ * of the file part so that a checksum left by a write which didn't compute
+ * one is detected as stale rather than as a mismatch.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class FileChecksums {
+
+
+    /**
+     * The name of the user-defined attribute holding checksums.
+     */
+    static final String CHECKSUM_ATTRIBUTE = "crc32c";
+
+
+    /**
+     * The size of the attribute value; the checksum, the size and the last
+     * modified time.
+     */
+    private static final int ATTRIBUTE_SIZE = 4 + 8 + 8;
+
+
+    /**
+     * A table driven CRC32C for runtimes without {@code java.util.zip.CRC32C}.
+     */
+    static final class Crc32c implements Checksum {
+
+
+        private static final int[] TABLE = new int[256];
+
+
+        static {
+            for (int i = 0; i < TABLE.length; i++) {
+                int crc = i;
+                for (int j = 0; j < 8; j++) {
+                    crc = (crc & 1) == 1 ? (crc >>> 1) ^ 0x82F63B78
+                          : crc >>> 1;
+                }
+                TABLE[i] = crc;
+            }
+        }
+
+
+        @Override
+        public void update(final int b) {
+
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+        }
+
+
+        @Override
+        public void update(final byte[] b, final int off, final int len) {
+
+            int crc = this.crc;
+            for (int i = off; i < off + len; i++) {
+                crc = (crc >>> 8) ^ TABLE[(crc ^ b[i]) & 0xFF];
+            }
+            this.crc = crc;
+        }
+
+
+        @Override
+        public long getValue() {
+
+            return ~crc & 0xFFFFFFFFL;
+        }
+
+
+        @Override
+        public void reset() {
+
+            crc = 0xFFFFFFFF;
+        }
+
+
+        private int crc = 0xFFFFFFFF;
+
+
+    }
+
+
+    /**
+     * Verifies bytes read against a stored checksum.
+     */
+    static final class Verifier {
+
+
+        Verifier(final String pathName, final int expected) {
+
+            super();
+
+            this.pathName = pathName;
+            this.expected = expected;
+        }
+
+
+        /**
+         * Verifies specified bytes.
+         *
+         * @param bytes the bytes to verify.
+         *
+         * @throws ChecksumMismatchException if the checksum of bytes doesn't
+         * match.
+         */
+        void verify(final byte[] bytes) throws ChecksumMismatchException {
+
+            final int actual = checksum(bytes);
+            if (actual != expected) {
+                throw new ChecksumMismatchException(
+                    pathName, expected, actual);
+            }
+        }
+
+
+        /**
+         * Returns a channel which verifies bytes read from specified channel
+         * when it reaches the end. A mismatch fails the read reaching the end
+         * with an {@link IOException} and is rethrown by {@link #verify()}.
+         *
+         * @param channel the channel to read.
+         *
+         * @return a verifying channel.
+         */
+        ReadableByteChannel verifying(final ReadableByteChannel channel) {
+
+            final Checksum checksum = newChecksum();
+
+            return new ReadableByteChannel() {
+
+
+                @Override
+                public int read(final ByteBuffer dst) throws IOException {
+
+                    final int position = dst.position();
+                    final int read = channel.read(dst);
+                    if (read > 0) {
+                        update(checksum, dst, position, read);
+                    }
+                    if (read == -1) {
+                        final int actual = (int) checksum.getValue();
+                        if (actual != expected) {
+                            mismatch = new ChecksumMismatchException(
+                                pathName, expected, actual);
+                            throw new IOException(mismatch);
+                        }
+                    }
+                    return read;
+                }
+
+
+                @Override
+                public boolean isOpen() {
+
+                    return channel.isOpen();
+                }
+
+
+                @Override
+                public void close() throws IOException {
+
+                    channel.close();
+                }
+
+
+            };
+        }
+
+
+        /**
+         * Throws the mismatch detected by verifying channels, if any.
+         *
+         * @throws ChecksumMismatchException if a mismatch has been detected.
+         */
+        void verify() throws ChecksumMismatchException {
+
+            if (mismatch != null) {
+                throw mismatch;
+            }
+        }
+
+
+        private final String pathName;
+
+
+        private final int expected;
+
+
+        private volatile ChecksumMismatchException mismatch;
+
+
+    }
+
+
+    private static final Constructor<? extends Checksum> CONSTRUCTOR;
+
+
+    static {
+        Constructor<? extends Checksum> constructor = null;
+        try {
+            constructor = Class.forName("java.util.zip.CRC32C")
+                .asSubclass(Checksum.class).getConstructor();
+        } catch (final ReflectiveOperationException roe) {
+            // prior to 9
+        }
+        CONSTRUCTOR = constructor;
+    }
+
+
+    /**
+     * Creates a new CRC32C checksum.
+     *
+     * @return a new checksum.
+     */
+    static Checksum newChecksum() {
+
+        if (CONSTRUCTOR != null) {
+            try {
+                return CONSTRUCTOR.newInstance();
+            } catch (final ReflectiveOperationException roe) {
+                throw new RuntimeException(roe);
+            }
+        }
+
+        return new Crc32c();
+    }
+
+
+    /**
+     * Computes the CRC32C of specified bytes.
+     *
+     * @param bytes the bytes.
+     *
+     * @return the checksum.
+     */
+    static int checksum(final byte[] bytes) {
+
+        final Checksum checksum = newChecksum();
+        checksum.update(bytes, 0, bytes.length);
+
+        return (int) checksum.getValue();
+    }
+
+
+    /**
+     * Computes the CRC32C of all bytes read from specified channel.
+     *
+     * @param channel the channel to read.
+     *
+     * @return the checksum.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static int checksum(final ReadableByteChannel channel)
+        throws IOException {
+
+        final Checksum checksum = newChecksum();
+        final ByteBuffer buffer = ByteBuffer.allocate(65536);
+        while (channel.read(buffer) != -1) {
+            checksum.update(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+
+        return (int) checksum.getValue();
+    }
+
+
+    /**
+     * Combines CRC32Cs of two consecutive byte sequences into the CRC32C of
+     * the concatenation; e.g., for extending the checksum of a file with the
+     * checksum of bytes appended.
+     *
+     * @param checksum1 the checksum of the first sequence.
+     * @param checksum2 the checksum of the second sequence.
+     * @param length2 the length of the second sequence.
+     *
+     * @return the checksum of the concatenation.
+     */
+    static int combine(final int checksum1, final int checksum2,
+                       final long length2) {
+
+        if (length2 <= 0L) {
+            return checksum1;
+        }
+
+        // operators, as GF(2) matrices, appending 2^n zero bits
+        final int[] even = new int[32];
+        final int[] odd = new int[32];
+        odd[0] = 0x82F63B78;
+        for (int n = 1, row = 1; n < 32; n++, row <<= 1) {
+            odd[n] = row;
+        }
+        square(even, odd); // two zero bits
+        square(odd, even); // four zero bits
+
+        int combined = checksum1;
+        long length = length2;
+        do {
+            square(even, odd);
+            if ((length & 1L) == 1L) {
+                combined = times(even, combined);
+            }
+            length >>>= 1;
+            if (length == 0L) {
+                break;
+            }
+            square(odd, even);
+            if ((length & 1L) == 1L) {
+                combined = times(odd, combined);
+            }
+            length >>>= 1;
+        } while (length != 0L);
+
+        return combined ^ checksum2;
+    }
+
+
+    private static int times(final int[] matrix, final int vector) {
+
+        int product = 0;
+        for (int i = 0, v = vector; v != 0; i++, v >>>= 1) {
+            if ((v & 1) == 1) {
+                product ^= matrix[i];
+            }
+        }
+
+        return product;
+    }
+
+
+    private static void square(final int[] square, final int[] matrix) {
+
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+
+
+    private static void update(final Checksum checksum,
+                               final ByteBuffer buffer, final int position,
+                               final int length) {
+
+        if (buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + position,
+                            length);
+            return;
+        }
+
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(position + length).position(position);
+        final byte[] array = new byte[Math.min(length, 8192)];
+        while (slice.hasRemaining()) {
+            final int chunk = Math.min(array.length, slice.remaining());
+            slice.get(array, 0, chunk);
+            checksum.update(array, 0, chunk);
+        }
+    }
+
+
+    /**
+     * Returns a channel which updates specified checksum with bytes read from
+     * specified channel.
+     *
+     * @param channel the channel to read.
+     * @param checksum the checksum to update; {@code null} for no checksum.
+     *
+     * @return a checksumming channel or {@code channel} itself if
+     * {@code checksum} is {@code null}.
+     */
+    static ReadableByteChannel checksumming(final ReadableByteChannel channel,
+                                            final Checksum checksum) {
+
+        if (checksum == null) {
+            return channel;
+        }
+
+        return new ReadableByteChannel() {
+
+
+            @Override
+            public int read(final ByteBuffer dst) throws IOException {
+
+                final int position = dst.position();
+                final int read = channel.read(dst);
+                if (read > 0) {
+                    update(checksum, dst, position, read);
+                }
+                return read;
+            }
+
+
+            @Override
+            public boolean isOpen() {
+
+                return channel.isOpen();
+            }
+
+
+            @Override
+            public void close() throws IOException {
+
+                channel.close();
+            }
+
+
+        };
+    }
+
+
+    /**
+     * Returns a channel which updates specified checksum with bytes written
+     * to specified channel.
+     *
+     * @param channel the channel to write.
+     * @param checksum the checksum to update; {@code null} for no checksum.
+     *
+     * @return a checksumming channel or {@code channel} itself if
+     * {@code checksum} is {@code null}.
+     */
+    static WritableByteChannel checksumming(final WritableByteChannel channel,
+                                            final Checksum checksum) {
+
+        if (checksum == null) {
+            return channel;
+        }
+
+        return new WritableByteChannel() {
+
+
+            @Override
+            public int write(final ByteBuffer src) throws IOException {
+
+                final int position = src.position();
+                final int written = channel.write(src);
+                if (written > 0) {
+                    update(checksum, src, position, written);
+                }
+                return written;
+            }
+
+
+            @Override
+            public boolean isOpen() {
+
+                return channel.isOpen();
+            }
+
+
+            @Override
+            public void close() throws IOException {
+
+                channel.close();
+            }
+
+
+        };
+    }
+
+
+    /**
+     * Stores specified checksum of specified leaf path. The caller holds the
+     * lock of the leaf path and has closed the channel written.
+     *
+     * @param leafPath the leaf path.
+     * @param checksum the checksum of all bytes of the file.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static void store(final Path leafPath, final int checksum)
+        throws IOException {
+
+        final UserDefinedFileAttributeView view = Files.getFileAttributeView(
+            leafPath, UserDefinedFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+
+        final BasicFileAttributes attributes
+            = Files.readAttributes(leafPath, BasicFileAttributes.class);
+        final ByteBuffer value = ByteBuffer.allocate(ATTRIBUTE_SIZE);
+        value.putInt(checksum).putLong(attributes.size())
+            .putLong(attributes.lastModifiedTime().to(NANOSECONDS)).flip();
+        view.write(CHECKSUM_ATTRIBUTE, value);
+    }
+
+
+    /**
+     * Loads the stored checksum of specified leaf path.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the stored checksum or {@code null} if no checksum stored or
+     * the stored one is stale.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static Integer load(final Path leafPath) throws IOException {
+
+        final UserDefinedFileAttributeView view = Files.getFileAttributeView(
+            leafPath, UserDefinedFileAttributeView.class);
+        if (view == null) {
+            return null;
+        }
+
+        final ByteBuffer value = ByteBuffer.allocate(ATTRIBUTE_SIZE);
+        try {
+            view.read(CHECKSUM_ATTRIBUTE, value);
+        } catch (final FileSystemException fse) {
+            return null; // no such attribute
+        }
+        if (value.hasRemaining()) {
+            return null;
+        }
+        value.flip();
+
+        final int checksum = value.getInt();
+        final BasicFileAttributes attributes
+            = Files.readAttributes(leafPath, BasicFileAttributes.class);
+        if (value.getLong() != attributes.size()
+            || value.getLong()
+               != attributes.lastModifiedTime().to(NANOSECONDS)) {
+            return null;
+        }
+
+        return checksum;
+    }
+
+
+    /**
+     * Checks whether the bytes of specified leaf path mismatch its stored
+     * checksum. The caller holds the lock of the leaf path.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return {@code true} if mismatched; {@code false} if matched or no
+     * valid checksum stored.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static boolean mismatched(final Path leafPath) throws IOException {
+
+        final Integer expected = load(leafPath);
+        if (expected == null) {
+            return false;
+        }
+
+        try (FileChannel channel
+            = FileChannel.open(leafPath, StandardOpenOption.READ)) {
+            return checksum(channel) != expected;
+        }
+    }
+
+
+    /**
+     * Stores the stored checksum of specified source leaf path, if valid, as
+     * the checksum of specified target leaf path which is a copy of the
+     * source.
+     *
+     * @param sourceLeafPath the source leaf path.
+     * @param targetLeafPath the target leaf path.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static void carry(final Path sourceLeafPath, final Path targetLeafPath)
+        throws IOException {
+
+        final Integer checksum = load(sourceLeafPath);
+        if (checksum != null) {
+            store(targetLeafPath, checksum);
+        }
+    }
+
+
+    private FileChecksums() {
+
+        super();
+    }
+
+
+}
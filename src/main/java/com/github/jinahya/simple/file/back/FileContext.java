@@ -22,6 +22,9 @@ import com.github.jinahya.simple.file.back.FileBack.FileOperation;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Optional;
 import static java.util.Optional.ofNullable;
 import java.util.function.Consumer;
@@ -105,18 +108,82 @@ public interface FileContext {
          * locating the target file part.
          */
         TARGET_KEY_SUPPLIER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Supplier<FileKey>} which supplies a resolved key for locating
+         * the source file part. This property takes precedence over
+         * {@link #SOURCE_KEY_SUPPLIER}.
+         */
+        SOURCE_FILE_KEY_SUPPLIER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Supplier<FileKey>} which supplies a resolved key for locating
+         * the target file part. This property takes precedence over
+         * {@link #TARGET_KEY_SUPPLIER}.
+         */
+        TARGET_FILE_KEY_SUPPLIER,
         /**
          * A constant for the key of a property whose value is an instance of
          * {@code Consumer<Object>} which consumes an implementation specific
          * type of source file reference.
          */
         SOURCE_OBJECT_CONSUMER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Consumer<BasicFileAttributes>} which consumes the attributes
+         * of the source file part or {@code null} if the file part does not
+         * exist.
+         */
+        SOURCE_ATTRIBUTES_CONSUMER,
         /**
          * A constant for the key of a property whose value is an instance of
          * {@code Consumer<Object>} which consumes an implementation specific
          * type of target file reference.
          */
-        TARGET_OBJECT_CONSUMER
+        TARGET_OBJECT_CONSUMER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Supplier<Duration>} which supplies the time to live of the
+         * target file part being written. File parts written without a time
+         * to live never expire.
+         */
+        TIME_TO_LIVE_SUPPLIER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Supplier<String>} which supplies the namespace the target
+         * file part is accounted to.
+         */
+        NAMESPACE_SUPPLIER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Supplier<String>} which supplies the name of the priority
+         * class the operation is paced as.
+         */
+        PRIORITY_CLASS_SUPPLIER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Supplier<Collection<ByteBuffer>>} which supplies the keys of
+         * multiple source file parts.
+         */
+        SOURCE_KEYS_SUPPLIER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Consumer<Long>} which consumes the size of the target file
+         * part after appended.
+         */
+        TARGET_SIZE_CONSUMER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Supplier<Boolean>} which supplies whether appended bytes are
+         * forced to the storage device before the operation returns.
+         */
+        FORCE_SUPPLIER,
+        /**
+         * A constant for the key of a property whose value is an instance of
+         * {@code Supplier<Boolean>} which supplies whether the stored checksum
+         * of the source file part is verified while being read.
+         */
+        VERIFY_SUPPLIER
 
 
     }
@@ -356,6 +423,41 @@ public interface FileContext {
     }
 
 
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#SOURCE_FILE_KEY_SUPPLIER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#SOURCE_FILE_KEY_SUPPLIER} or {@code null} if no
+     * mappings found.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<FileKey> sourceFileKeySupplier() {
+
+        return (Supplier<FileKey>) property(
+            PropertyKey.SOURCE_FILE_KEY_SUPPLIER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#SOURCE_FILE_KEY_SUPPLIER}.
+     *
+     * @param sourceFileKeySupplier the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<FileKey> sourceFileKeySupplier(
+        final Supplier<FileKey> sourceFileKeySupplier) {
+
+        return (Supplier<FileKey>) property(
+            PropertyKey.SOURCE_FILE_KEY_SUPPLIER, sourceFileKeySupplier)
+            .orElse(null);
+    }
+
+
     @SuppressWarnings("unchecked")
     default Consumer<Object> sourceObjectConsumer() {
 
@@ -374,6 +476,41 @@ public interface FileContext {
     }
 
 
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#SOURCE_ATTRIBUTES_CONSUMER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#SOURCE_ATTRIBUTES_CONSUMER} or {@code null} if no
+     * mappings found.
+     */
+    @SuppressWarnings("unchecked")
+    default Consumer<BasicFileAttributes> sourceAttributesConsumer() {
+
+        return (Consumer<BasicFileAttributes>) property(
+            PropertyKey.SOURCE_ATTRIBUTES_CONSUMER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#SOURCE_ATTRIBUTES_CONSUMER}.
+     *
+     * @param sourceAttributesConsumer the new value; {@code null} for removal
+     * of entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Consumer<BasicFileAttributes> sourceAttributesConsumer(
+        final Consumer<BasicFileAttributes> sourceAttributesConsumer) {
+
+        return (Consumer<BasicFileAttributes>) property(
+            PropertyKey.SOURCE_ATTRIBUTES_CONSUMER, sourceAttributesConsumer)
+            .orElse(null);
+    }
+
+
     @SuppressWarnings("unchecked")
     default Consumer<Long> targetCopiedConsumer() {
 
@@ -410,6 +547,41 @@ public interface FileContext {
     }
 
 
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#TARGET_FILE_KEY_SUPPLIER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#TARGET_FILE_KEY_SUPPLIER} or {@code null} if no
+     * mappings found.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<FileKey> targetFileKeySupplier() {
+
+        return (Supplier<FileKey>) property(
+            PropertyKey.TARGET_FILE_KEY_SUPPLIER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#TARGET_FILE_KEY_SUPPLIER}.
+     *
+     * @param targetFileKeySupplier the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<FileKey> targetFileKeySupplier(
+        final Supplier<FileKey> targetFileKeySupplier) {
+
+        return (Supplier<FileKey>) property(
+            PropertyKey.TARGET_FILE_KEY_SUPPLIER, targetFileKeySupplier)
+            .orElse(null);
+    }
+
+
     @SuppressWarnings("unchecked")
     default Consumer<WritableByteChannel> targetChannelConsumer() {
 
@@ -466,5 +638,247 @@ public interface FileContext {
     }
 
 
-}
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#TIME_TO_LIVE_SUPPLIER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#TIME_TO_LIVE_SUPPLIER} or {@code null} if no mappings
+     * found.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<Duration> timeToLiveSupplier() {
+
+        return (Supplier<Duration>) property(PropertyKey.TIME_TO_LIVE_SUPPLIER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#TIME_TO_LIVE_SUPPLIER}.
+     *
+     * @param timeToLiveSupplier the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<Duration> timeToLiveSupplier(
+        final Supplier<Duration> timeToLiveSupplier) {
+
+        return (Supplier<Duration>) property(
+            PropertyKey.TIME_TO_LIVE_SUPPLIER, timeToLiveSupplier)
+            .orElse(null);
+    }
+
+
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#NAMESPACE_SUPPLIER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#NAMESPACE_SUPPLIER} or {@code null} if no mappings
+     * found.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<String> namespaceSupplier() {
+
+        return (Supplier<String>) property(PropertyKey.NAMESPACE_SUPPLIER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#NAMESPACE_SUPPLIER}.
+     *
+     * @param namespaceSupplier the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<String> namespaceSupplier(
+        final Supplier<String> namespaceSupplier) {
+
+        return (Supplier<String>) property(PropertyKey.NAMESPACE_SUPPLIER,
+                                           namespaceSupplier)
+            .orElse(null);
+    }
+
+
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#PRIORITY_CLASS_SUPPLIER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#PRIORITY_CLASS_SUPPLIER} or {@code null} if no
+     * mappings found.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<String> priorityClassSupplier() {
+
+        return (Supplier<String>) property(
+            PropertyKey.PRIORITY_CLASS_SUPPLIER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#PRIORITY_CLASS_SUPPLIER}.
+     *
+     * @param priorityClassSupplier the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<String> priorityClassSupplier(
+        final Supplier<String> priorityClassSupplier) {
 
+        return (Supplier<String>) property(
+            PropertyKey.PRIORITY_CLASS_SUPPLIER, priorityClassSupplier)
+            .orElse(null);
+    }
+
+
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#SOURCE_KEYS_SUPPLIER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#SOURCE_KEYS_SUPPLIER} or {@code null} if no
+     * mappings found.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<Collection<ByteBuffer>> sourceKeysSupplier() {
+
+        return (Supplier<Collection<ByteBuffer>>) property(
+            PropertyKey.SOURCE_KEYS_SUPPLIER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#SOURCE_KEYS_SUPPLIER}.
+     *
+     * @param sourceKeysSupplier the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<Collection<ByteBuffer>> sourceKeysSupplier(
+        final Supplier<Collection<ByteBuffer>> sourceKeysSupplier) {
+
+        return (Supplier<Collection<ByteBuffer>>) property(
+            PropertyKey.SOURCE_KEYS_SUPPLIER, sourceKeysSupplier)
+            .orElse(null);
+    }
+
+
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#TARGET_SIZE_CONSUMER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#TARGET_SIZE_CONSUMER} or {@code null} if no
+     * mappings found.
+     */
+    @SuppressWarnings("unchecked")
+    default Consumer<Long> targetSizeConsumer() {
+
+        return (Consumer<Long>) property(
+            PropertyKey.TARGET_SIZE_CONSUMER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#TARGET_SIZE_CONSUMER}.
+     *
+     * @param targetSizeConsumer the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Consumer<Long> targetSizeConsumer(
+        final Consumer<Long> targetSizeConsumer) {
+
+        return (Consumer<Long>) property(
+            PropertyKey.TARGET_SIZE_CONSUMER, targetSizeConsumer)
+            .orElse(null);
+    }
+
+
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#FORCE_SUPPLIER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#FORCE_SUPPLIER} or {@code null} if no
+     * mappings found.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<Boolean> forceSupplier() {
+
+        return (Supplier<Boolean>) property(
+            PropertyKey.FORCE_SUPPLIER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#FORCE_SUPPLIER}.
+     *
+     * @param forceSupplier the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<Boolean> forceSupplier(
+        final Supplier<Boolean> forceSupplier) {
+
+        return (Supplier<Boolean>) property(
+            PropertyKey.FORCE_SUPPLIER, forceSupplier)
+            .orElse(null);
+    }
+
+
+    /**
+     * Returns the current property value mapped to
+     * {@link PropertyKey#VERIFY_SUPPLIER}.
+     *
+     * @return the current property value mapped to
+     * {@link PropertyKey#VERIFY_SUPPLIER} or {@code null} if no
+     * mappings found.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<Boolean> verifySupplier() {
+
+        return (Supplier<Boolean>) property(
+            PropertyKey.VERIFY_SUPPLIER)
+            .orElse(null);
+    }
+
+
+    /**
+     * Sets the new value for {@link PropertyKey#VERIFY_SUPPLIER}.
+     *
+     * @param verifySupplier the new value; {@code null} for removal of
+     * entry.
+     *
+     * @return previous value mapped; possibly {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    default Supplier<Boolean> verifySupplier(
+        final Supplier<Boolean> verifySupplier) {
+
+        return (Supplier<Boolean>) property(
+            PropertyKey.VERIFY_SUPPLIER, verifySupplier)
+            .orElse(null);
+    }
+
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+
+/**
+ * A flight recorder event for forcing a written file to the storage device.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+@Name(FileForceEvent.NAME)
+@Label("File Back Force")
+@Category("Simple File Back")
+@Description("A written file forced to the storage device")
+@StackTrace(false)
+@Threshold("10 ms")
+final class FileForceEvent extends Event {
+
+
+    static final String NAME = "com.github.jinahya.simple.file.back.Force";
+
+
+    private static final EventType TYPE
+        = EventType.getEventType(FileForceEvent.class);
+
+
+    /**
+     * Creates a new event if the event type is enabled in any recording.
+     *
+     * @return a new event or {@code null} if the event type is disabled.
+     */
+    static FileForceEvent start() {
+
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+
+        final FileForceEvent event = new FileForceEvent();
+        event.begin();
+
+        return event;
+    }
+
+
+    @Label("File")
+    String file;
+
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+
+/**
+ * A resolved file key. Instances carry the digest of the key bytes, the path
+ * name derived from the digest and the leaf path so that subsequent
+ * operations on the same key don't hash and resolve it again. Two instances
+ * are equal if their digests are equal.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#fileKey(java.nio.ByteBuffer)
+ * @see LocalFileBack#fileKey(String)
+ */
+public final class FileKey {
+
+
+    FileKey(final Path rootPath, final byte[] digest, final String pathName,
+            final Path leafPath) {
+
+        super();
+
+        this.rootPath = rootPath;
+        this.digest = digest;
+        this.pathName = pathName;
+        this.leafPath = leafPath;
+
+        // digests are uniformly distributed; the leading bytes will do.
+        int hash = 0;
+        for (int i = 0; i < Math.min(digest.length, 4); i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        this.hash = hash;
+    }
+
+
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        if (!(obj instanceof FileKey)) {
+            return false;
+        }
+
+        final FileKey that = (FileKey) obj;
+
+        return hash == that.hash && Arrays.equals(digest, that.digest);
+    }
+
+
+    @Override
+    public int hashCode() {
+
+        return hash;
+    }
+
+
+    @Override
+    public String toString() {
+
+        return super.toString() + "?pathName=" + pathName;
+    }
+
+
+    /**
+     * Returns a copy of the digest of the key bytes.
+     *
+     * @return a copy of the digest.
+     */
+    public byte[] digest() {
+
+        return digest.clone();
+    }
+
+
+    /**
+     * Returns the path name relative to the root path.
+     *
+     * @return the path name.
+     */
+    public String pathName() {
+
+        return pathName;
+    }
+
+
+    /**
+     * Returns the leaf path.
+     *
+     * @return the leaf path.
+     */
+    public Path leafPath() {
+
+        return leafPath;
+    }
+
+
+    /**
+     * The root path of the file back which resolved this key.
+     */
+    final Path rootPath;
+
+
+    final byte[] digest;
+
+
+    private final String pathName;
+
+
+    private final Path leafPath;
+
+
+    private final int hash;
+
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+
+/**
+ * The state of a file operation traced by a {@link FileOperationEvent}.
+ * Operations pass instances of this class, rather than events, around, even
+ * into lambdas, so that {@code jdk.jfr} is never linked on runtimes lacking
+ * it.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class FileOperationTrace {
+
+
+    /**
+     * Starts tracing an operation if the flight recorder is available and
+     * the event type is enabled.
+     *
+     * @return a new trace or {@code null} if not traced.
+     */
+    static FileOperationTrace start() {
+
+        if (!FileBackEvents.AVAILABLE) {
+            return null;
+        }
+
+        final FileOperationEvent event = FileOperationEvent.start();
+
+        return event == null ? null : new FileOperationTrace(event);
+    }
+
+
+    private FileOperationTrace(final FileOperationEvent event) {
+
+        super();
+
+        this.event = event;
+    }
+
+
+    /**
+     * Ends the event and commits it if it exceeds the threshold.
+     *
+     * @param fileOperation the file operation.
+     * @param succeeded a flag for operations which returned normally.
+     * @param pathName a function for deriving the path name of
+     * {@link #leafPath}.
+     */
+    void commit(final FileOperation fileOperation, final boolean succeeded,
+                final Function<Path, String> pathName) {
+
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+
+        event.operation = fileOperation.name();
+        if (leafPath != null) {
+            event.pathName = pathName.apply(leafPath);
+        }
+        event.bytes = bytes;
+        event.outcome = succeeded && !failed ? "SUCCEEDED" : "FAILED";
+        event.commit();
+    }
+
+
+    private final FileOperationEvent event;
+
+
+    /**
+     * The leaf path resolved during the operation. The path name is derived
+     * from this value only if the event is committed.
+     */
+    Path leafPath;
+
+
+    /**
+     * The number of bytes transferred.
+     */
+    long bytes;
+
+
+    /**
+     * A flag for failures which were logged rather than thrown.
+     */
+    boolean failed;
+
+
+}
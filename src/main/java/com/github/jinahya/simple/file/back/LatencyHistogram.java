@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A lock-free histogram of latencies in nanoseconds. Values are recorded into
+ * log-linear buckets; each power of two is split into
+ * {@value #SUB_BUCKET_COUNT} linear sub-buckets which bounds the relative
+ * error of reported percentiles to about 6%.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class LatencyHistogram {
+
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+
+    private static final int BUCKET_COUNT
+        = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+
+    static int index(final long value) {
+
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        final int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+                              & (SUB_BUCKET_COUNT - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+
+    /**
+     * Returns the highest value equivalent to the values recorded in the
+     * bucket at specified index.
+     *
+     * @param index the bucket index.
+     *
+     * @return the highest equivalent value.
+     */
+    static long highest(final int index) {
+
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKET_COUNT;
+
+        return ((SUB_BUCKET_COUNT + subBucket + 1)
+                << (exponent - SUB_BUCKET_BITS)) - 1L;
+    }
+
+
+    /**
+     * Records specified value. Negative values are recorded as zero.
+     *
+     * @param value the value in nanoseconds.
+     */
+    void record(final long value) {
+
+        final long recorded = value < 0L ? 0L : value;
+
+        buckets.incrementAndGet(index(recorded));
+        count.increment();
+        total.add(recorded);
+
+        long current;
+        while (recorded > (current = maximum.get())) {
+            if (maximum.compareAndSet(current, recorded)) {
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Takes a snapshot of this histogram. The snapshot is not atomic with
+     * respect to concurrent recordings but each bucket is read once.
+     *
+     * @return a snapshot.
+     */
+    LatencySnapshot snapshot() {
+
+        final long[] counts = new long[BUCKET_COUNT];
+        long sum = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            sum += counts[i];
+        }
+
+        final long max = maximum.get();
+
+        return new LatencySnapshot(
+            sum, sum == 0L ? 0.0d : total.sum() / (double) count.sum(),
+            percentile(counts, sum, .50d, max),
+            percentile(counts, sum, .90d, max),
+            percentile(counts, sum, .99d, max),
+            percentile(counts, sum, .999d, max),
+            max);
+    }
+
+
+    private static long percentile(final long[] counts, final long sum,
+                                   final double quantile, final long max) {
+
+        if (sum == 0L) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(sum * quantile));
+        long accumulated = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            accumulated += counts[i];
+            if (accumulated >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+
+        return max;
+    }
+
+
+    /**
+     * Clears all recorded values.
+     */
+    void reset() {
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0L);
+        }
+        count.reset();
+        total.reset();
+        maximum.set(0L);
+    }
+
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+
+    private final LongAdder count = new LongAdder();
+
+
+    private final LongAdder total = new LongAdder();
+
+
+    private final AtomicLong maximum = new AtomicLong();
+
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+/**
+ * An immutable snapshot of recorded latencies. All values are in nanoseconds.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class LatencySnapshot {
+
+
+    public LatencySnapshot(final long count, final double mean,
+                           final long p50, final long p90, final long p99,
+                           final long p999, final long max) {
+
+        super();
+
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+
+    @Override
+    public String toString() {
+
+        return super.toString() + "?count=" + count + "&mean=" + mean
+               + "&p50=" + p50 + "&p90=" + p90 + "&p99=" + p99
+               + "&p999=" + p999 + "&max=" + max;
+    }
+
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+
+        return count;
+    }
+
+
+    /**
+     * Returns the mean of recorded values.
+     *
+     * @return the mean of recorded values.
+     */
+    public double getMean() {
+
+        return mean;
+    }
+
+
+    public long getP50() {
+
+        return p50;
+    }
+
+
+    public long getP90() {
+
+        return p90;
+    }
+
+
+    public long getP99() {
+
+        return p99;
+    }
+
+
+    public long getP999() {
+
+        return p999;
+    }
+
+
+    /**
+     * Returns the maximum of recorded values.
+     *
+     * @return the maximum of recorded values.
+     */
+    public long getMax() {
+
+        return max;
+    }
+
+
+    private final long count;
+
+
+    private final double mean;
+
+
+    private final long p50;
+
+
+    private final long p90;
+
+
+    private final long p99;
+
+
+    private final long p999;
+
+
+    private final long max;
+
+
+}
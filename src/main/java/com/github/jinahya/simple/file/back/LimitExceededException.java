@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+
+
+/**
+ * An exception thrown when an operation is rejected because the number of
+ * operations in flight reached the current limit.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see ConcurrencyLimitedFileBack
+ */
+public class LimitExceededException extends FileBackException {
+
+
+    private static final long serialVersionUID = -2870421853529446173L;
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fileOperation the file operation rejected.
+     * @param limit the limit reached.
+     */
+    public LimitExceededException(final FileOperation fileOperation,
+                                  final int limit) {
+
+        super("limit(" + limit + ") of " + fileOperation + " exceeded");
+
+        this.fileOperation = fileOperation;
+        this.limit = limit;
+    }
+
+
+    /**
+     * Returns the file operation rejected.
+     *
+     * @return the file operation.
+     */
+    public FileOperation fileOperation() {
+
+        return fileOperation;
+    }
+
+
+    /**
+     * Returns the limit reached.
+     *
+     * @return the limit.
+     */
+    public int limit() {
+
+        return limit;
+    }
+
+
+    private final FileOperation fileOperation;
+
+
+    private final int limit;
+
+
+}
@@ -18,21 +18,40 @@
 package com.github.jinahya.simple.file.back;
 
 
+import com.github.jinahya.simple.file.back.FileBackMetrics.Phase;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import static java.lang.invoke.MethodHandles.lookup;
 import java.nio.ByteBuffer;
-import static java.nio.channels.Channels.newInputStream;
-import static java.nio.channels.Channels.newOutputStream;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import static java.nio.file.Files.newByteChannel;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import static java.util.Optional.ofNullable;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
 import static java.util.stream.Collectors.joining;
 import java.util.stream.StreamSupport;
 import javax.inject.Inject;
@@ -56,13 +75,43 @@ public class LocalFileBack implements FileBack {
     private static final String PATH_TOKEN_DELIMITER = "/";
 
 
+    /**
+     * The maximum number of bytes transferred by a single call of
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)} or
+     * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}.
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 1048576L;
+
+
+    /**
+     * The size of buffers for copying bytes which have to be inspected.
+     */
+    private static final int STREAM_BUFFER_SIZE = 65536;
+
+
+    /**
+     * The maximum number of attempts to create a parent directory whose
+     * ancestors are concurrently pruned.
+     */
+    private static final int PARENT_CREATE_ATTEMPTS = 8;
+
+
     static Path leafPath(final Path rootPath, final ByteBuffer fileKey,
                          final boolean createParent) {
 
+        return leafPath(rootPath, fileKey, createParent, null);
+    }
+
+
+    static Path leafPath(final Path rootPath, final ByteBuffer fileKey,
+                         final boolean createParent,
+                         final FileBackMetrics metrics) {
+
         final Logger logger = getLogger(lookup().lookupClass());
 
         logger.trace("leafPath({}, {}, {})", rootPath, fileKey, createParent);
 
+        long started = metrics == null ? 0L : System.nanoTime();
         String pathName = null;
         try {
             pathName = FileBackUtilities.fileKeyToPathName(
@@ -72,24 +121,25 @@ public class LocalFileBack implements FileBack {
             throw new RuntimeException(nsae);
         }
         logger.trace("path name: {}", pathName);
+        if (metrics != null) {
+            final long finished = System.nanoTime();
+            metrics.phase(Phase.KEY_HASH, finished - started);
+            started = finished;
+        }
 
         final Path leafPath = rootPath.resolve(pathName.replace(
             PATH_TOKEN_DELIMITER, rootPath.getFileSystem().getSeparator()));
         logger.trace("leaf path: {}", leafPath);
+        if (metrics != null) {
+            final long finished = System.nanoTime();
+            metrics.phase(Phase.LEAF_RESOLVE, finished - started);
+            started = finished;
+        }
 
         if (createParent) {
-            final Path parent = leafPath.getParent();
-            logger.trace("parent: {}", parent);
-            logger.trace("parent.directory: {}", Files.isDirectory(parent));
-            if (!Files.isDirectory(parent)) {
-                try {
-                    final Path created = Files.createDirectories(parent);
-                    logger.trace("parent created: {}", created);
-                } catch (Exception e) {
-                    logger.error("failed to create parent directory: " + parent,
-                                 e);
-                    throw new RuntimeException(e);
-                }
+            createParent(leafPath);
+            if (metrics != null) {
+                metrics.phase(Phase.PARENT_CREATE, System.nanoTime() - started);
             }
         }
 
@@ -97,6 +147,306 @@ public class LocalFileBack implements FileBack {
     }
 
 
+    /**
+     * Creates, if not exists, the parent directory of specified leaf path.
+     *
+     * @param leafPath the leaf path.
+     */
+    static void createParent(final Path leafPath) {
+
+        final Logger logger = getLogger(lookup().lookupClass());
+
+        final Path parent = leafPath.getParent();
+        logger.trace("parent: {}", parent);
+        logger.trace("parent.directory: {}", Files.isDirectory(parent));
+        for (int attempt = 1; !Files.isDirectory(parent); attempt++) {
+            final DirectoryCreationEvent event
+                = FileBackEvents.AVAILABLE
+                  ? DirectoryCreationEvent.start() : null;
+            try {
+                final Path created = Files.createDirectories(parent);
+                logger.trace("parent created: {}", created);
+                if (event != null) {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.directory = created.toString();
+                        event.commit();
+                    }
+                }
+            } catch (final NoSuchFileException nsfe) {
+                // an ancestor has been pruned while creating
+                if (attempt < PARENT_CREATE_ATTEMPTS) {
+                    continue;
+                }
+                logger.error("failed to create parent directory: " + parent,
+                             nsfe);
+                throw new RuntimeException(nsfe);
+            } catch (Exception e) {
+                logger.error("failed to create parent directory: " + parent,
+                             e);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+
+    /**
+     * Transfers all bytes from specified file channel to specified target
+     * channel.
+     *
+     * @param sourceChannel the file channel to read.
+     * @param targetChannel the channel to write.
+     *
+     * @return the number of bytes transferred.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long transfer(final FileChannel sourceChannel,
+                         final WritableByteChannel targetChannel)
+        throws IOException {
+
+        return transfer(sourceChannel, targetChannel, null);
+    }
+
+
+    /**
+     * Transfers all bytes from specified file channel to specified target
+     * channel pacing each chunk as specified priority class.
+     *
+     * @param sourceChannel the file channel to read.
+     * @param targetChannel the channel to write.
+     * @param priority the priority class to pace as; {@code null} for no
+     * pacing.
+     *
+     * @return the number of bytes transferred.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long transfer(final FileChannel sourceChannel,
+                         final WritableByteChannel targetChannel,
+                         final QualityOfService.PriorityClass priority)
+        throws IOException {
+
+        final long chunkSize = priority == null
+                               ? TRANSFER_CHUNK_SIZE : priority.chunkSize();
+        long position = 0L;
+        while (true) {
+            final long transferred = sourceChannel.transferTo(
+                position, chunkSize, targetChannel);
+            if (transferred <= 0L) {
+                break;
+            }
+            position += transferred;
+            if (priority != null) {
+                priority.bytes(transferred);
+            }
+        }
+
+        return position;
+    }
+
+
+    /**
+     * Transfers all bytes from specified source channel to specified file
+     * channel.
+     *
+     * @param sourceChannel the channel to read.
+     * @param targetChannel the file channel to write.
+     *
+     * @return the number of bytes transferred.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long transfer(final ReadableByteChannel sourceChannel,
+                         final FileChannel targetChannel)
+        throws IOException {
+
+        return transfer(sourceChannel, targetChannel, 0L);
+    }
+
+
+    /**
+     * Transfers all bytes from specified source channel to specified file
+     * channel starting at specified position.
+     *
+     * @param sourceChannel the channel to read.
+     * @param targetChannel the file channel to write.
+     * @param position the file position to start at.
+     *
+     * @return the file position after the last byte transferred.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long transfer(final ReadableByteChannel sourceChannel,
+                         final FileChannel targetChannel,
+                         final long position)
+        throws IOException {
+
+        return transfer(sourceChannel, targetChannel, position, null);
+    }
+
+
+    /**
+     * Transfers all bytes from specified source channel to specified file
+     * channel starting at specified position pacing each chunk as specified
+     * priority class.
+     *
+     * @param sourceChannel the channel to read.
+     * @param targetChannel the file channel to write.
+     * @param position the file position to start at.
+     * @param priority the priority class to pace as; {@code null} for no
+     * pacing.
+     *
+     * @return the file position after the last byte transferred.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long transfer(final ReadableByteChannel sourceChannel,
+                         final FileChannel targetChannel,
+                         final long position,
+                         final QualityOfService.PriorityClass priority)
+        throws IOException {
+
+        final long chunkSize = priority == null
+                               ? TRANSFER_CHUNK_SIZE : priority.chunkSize();
+        long current = position;
+        while (true) {
+            final long transferred = targetChannel.transferFrom(
+                sourceChannel, current, chunkSize);
+            if (transferred <= 0L) {
+                break;
+            }
+            current += transferred;
+            if (priority != null) {
+                priority.bytes(transferred);
+            }
+        }
+
+        return current;
+    }
+
+
+    /**
+     * Copies all bytes from specified source channel to specified target
+     * channel through a buffer pacing each chunk as specified priority class.
+     * Unlike {@link #transfer(FileChannel, WritableByteChannel,
+     * QualityOfService.PriorityClass)} every byte passes through the source
+     * channel so that the channel can inspect it.
+     *
+     * @param sourceChannel the channel to read.
+     * @param targetChannel the channel to write.
+     * @param priority the priority class to pace as; {@code null} for no
+     * pacing.
+     *
+     * @return the number of bytes copied.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long stream(final ReadableByteChannel sourceChannel,
+                       final WritableByteChannel targetChannel,
+                       final QualityOfService.PriorityClass priority)
+        throws IOException {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        long copied = 0L;
+        while (sourceChannel.read(buffer) != -1) {
+            buffer.flip();
+            final int remaining = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                targetChannel.write(buffer);
+            }
+            buffer.clear();
+            copied += remaining;
+            if (priority != null) {
+                priority.bytes(remaining);
+            }
+        }
+
+        return copied;
+    }
+
+
+    /**
+     * Reads bytes from specified channel into specified stream until the end
+     * of the channel or more than specified number of bytes are read.
+     *
+     * @param channel the channel to read.
+     * @param stream the stream to write.
+     * @param limit the maximum number of bytes to read.
+     *
+     * @return {@code true} if the end of the channel reached within the limit;
+     * {@code false} otherwise.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static boolean read(final ReadableByteChannel channel,
+                        final ByteArrayOutputStream stream, final int limit)
+        throws IOException {
+
+        // not closed; the channel belongs to the caller
+        final InputStream input = Channels.newInputStream(channel);
+        final byte[] buffer = new byte[8192];
+        while (stream.size() <= limit) {
+            final int read = input.read(
+                buffer, 0, (int) Math.min(buffer.length,
+                                          limit + 1L - stream.size()));
+            if (read == -1) {
+                return true;
+            }
+            stream.write(buffer, 0, read);
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Returns the number of bytes remaining in specified channel, if known.
+     *
+     * @param channel the channel.
+     *
+     * @return the number of bytes remaining or {@code -1L} if unknown.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    static long remaining(final ReadableByteChannel channel)
+        throws IOException {
+
+        if (channel instanceof SeekableByteChannel) {
+            final SeekableByteChannel seekable = (SeekableByteChannel) channel;
+            return Math.max(0L, seekable.size() - seekable.position());
+        }
+
+        return -1L;
+    }
+
+
+    /**
+     * Creates a new instance whose root path is supposed to be injected.
+     */
+    public LocalFileBack() {
+
+        super();
+    }
+
+
+    /**
+     * Creates a new instance with specified root path.
+     *
+     * @param rootPath the root path.
+     */
+    public LocalFileBack(final Path rootPath) {
+
+        this();
+
+        if (rootPath == null) {
+            throw new NullPointerException("null rootPath");
+        }
+
+        this.rootPath = rootPath;
+    }
+
+
     @Override
     public void operate(final FileContext fileContext)
         throws IOException, FileBackException {
@@ -116,26 +466,202 @@ public class LocalFileBack implements FileBack {
             return;
         }
 
-        switch (fileOperation) {
-            case COPY:
-                copy(fileContext);
-                break;
-            case DELETE:
-                delete(fileContext);
-                break;
-            case READ:
-                read(fileContext);
-                break;
-            case WRITE:
-                write(fileContext);
-                break;
-            default:
-                throw new FileBackException(
-                    "unsupported operation: " + fileOperation);
+        operate(fileContext, fileOperation);
+    }
+
+
+    private void operate(final FileContext fileContext,
+                         final FileOperation fileOperation)
+        throws IOException, FileBackException {
+
+        final FileBackMetrics metrics = this.metrics;
+        final long started = metrics == null ? 0L : System.nanoTime();
+        final FileOperationTrace event = FileOperationTrace.start();
+        boolean succeeded = false;
+        try {
+            final QualityOfService.PriorityClass priority
+                = priority(fileContext);
+            if (priority != null) {
+                priority.operation();
+            }
+            switch (fileOperation) {
+                case APPEND:
+                    append(fileContext, event);
+                    break;
+                case COPY:
+                    copy(fileContext, event);
+                    break;
+                case DELETE:
+                    delete(fileContext, event);
+                    break;
+                case PREFETCH:
+                    prefetch(fileContext, event);
+                    break;
+                case READ:
+                    read(fileContext, event);
+                    break;
+                case STAT:
+                    stat(fileContext, event);
+                    break;
+                case WRITE:
+                    write(fileContext, event);
+                    break;
+                default:
+                    throw new FileBackException(
+                        "unsupported operation: " + fileOperation);
+            }
+            succeeded = true;
+        } finally {
+            if (metrics != null) {
+                metrics.operation(fileOperation, System.nanoTime() - started);
+                if (!succeeded) {
+                    metrics.error(fileOperation);
+                }
+            }
+            if (event != null) {
+                event.commit(fileOperation, succeeded, this::pathName);
+            }
+        }
+    }
+
+
+    /**
+     * Appends bytes to the target file part, creating it if not exists,
+     * without rewriting existing bytes. Bytes are written to the channel
+     * passed to {@link FileContext#targetChannelConsumer()} or read from
+     * {@link FileContext#sourceChannelSupplier()}. Concurrent appends to a
+     * same file part are serialized. The size after appended is passed to
+     * {@link FileContext#targetSizeConsumer()} and appended bytes are forced
+     * to the storage device only if {@link FileContext#forceSupplier()}
+     * supplies {@code true}.
+     *
+     * @param fileContext the file context.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    public void append(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        operate(fileContext, FileOperation.APPEND);
+    }
+
+
+    @SuppressWarnings("try")
+    private void append(final FileContext fileContext,
+                        final FileOperationTrace event)
+        throws IOException, FileBackException {
+
+        admit(fileContext);
+
+        final Path targetLeafPath = targetLeafPath(fileContext, true);
+        logger.trace("target leaf path: {}", targetLeafPath);
+        if (event != null) {
+            event.leafPath = targetLeafPath;
+        }
+        ofNullable(fileContext.targetObjectConsumer()).ifPresent(
+            c -> c.accept(targetLeafPath));
+        if (targetLeafPath == null) {
+            logger.warn("no target leaf path located");
+            return;
+        }
+
+        final Consumer<WritableByteChannel> targetChannelConsumer
+            = fileContext.targetChannelConsumer();
+        final Supplier<ReadableByteChannel> sourceChannelSupplier
+            = fileContext.sourceChannelSupplier();
+        if (targetChannelConsumer == null && sourceChannelSupplier == null) {
+            logger.warn("no source channel supplier nor target channel"
+                        + " consumer set");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = write(targetLeafPath);
+             StripedLocks.Hold parent = parent(targetLeafPath)) {
+            flush(targetLeafPath);
+            final boolean expired = expired(targetLeafPath);
+            final CapacityAccount.Footprint previous
+                = footprint(targetLeafPath);
+            // a valid stored checksum is extended with the bytes appended
+            final Integer stored
+                = !checksums ? null
+                  : expired || !Files.exists(targetLeafPath)
+                    ? Integer.valueOf(0) : FileChecksums.load(targetLeafPath);
+            final Checksum checksum = stored == null ? null : checksum();
+            if (expired || fileContext.timeToLiveSupplier() != null) {
+                expiry(fileContext, targetLeafPath);
+            }
+            final QualityOfService.PriorityClass priority
+                = priority(fileContext);
+            final String pathName = pathName(targetLeafPath);
+            ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                c -> c.accept(pathName));
+
+            long started = started();
+            final long appended;
+            final long size;
+            try (FileChannel targetChannel = FileChannel.open(
+                targetLeafPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                if (expired) {
+                    targetChannel.truncate(0L);
+                }
+                final long position = targetChannel.size();
+                started = phase(Phase.OPEN, started);
+                if (targetChannelConsumer != null) {
+                    targetChannelConsumer.accept(
+                        pace(FileChecksums.checksumming(
+                            (WritableByteChannel) targetChannel, checksum),
+                             priority));
+                } else {
+                    transfer(FileChecksums.checksumming(
+                        sourceChannelSupplier.get(), checksum), targetChannel,
+                             position, priority);
+                }
+                phase(Phase.TRANSFER, started);
+                size = targetChannel.size();
+                appended = size - position;
+                if (ofNullable(fileContext.forceSupplier())
+                    .map(Supplier::get).orElse(Boolean.FALSE)) {
+                    force(targetChannel, targetLeafPath, size);
+                }
+            }
+            if (checksum != null) {
+                FileChecksums.store(targetLeafPath, FileChecksums.combine(
+                    stored, (int) checksum.getValue(), appended));
+            }
+
+            if (metrics != null) {
+                metrics.bytesIn(appended);
+            }
+            if (event != null) {
+                event.bytes = appended;
+            }
+            copied(fileContext, appended);
+            targetSize(fileContext, size);
+
+            final CapacityAccount account = this.account;
+            if (account != null) {
+                final String namespace = ofNullable(namespace(fileContext))
+                    .orElse(previous == null ? null : previous.namespace);
+                account.charge(targetLeafPath, previous, namespace, size);
+            }
         }
     }
 
 
+    /**
+     * Copies the source file part to the target file part.
+     *
+     * @param fileContext the file context.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
     public void copy(final FileContext fileContext)
         throws IOException, FileBackException {
 
@@ -145,40 +671,44 @@ public class LocalFileBack implements FileBack {
             throw new NullPointerException("null fileContext");
         }
 
-        final Path[] sourceLeafPath_ = new Path[1];
-        if (sourceLeafPath_[0] == null) {
-            ofNullable(fileContext.sourceKeySupplier()).ifPresent(s -> {
-                ofNullable(s.get()).ifPresent(v -> {
-                    logger.trace("source key: {}", v);
-                    sourceLeafPath_[0] = leafPath(rootPath, v, false);
-                });
-            });
-        }
-        final Path sourceLeafPath = sourceLeafPath_[0];
+        operate(fileContext, FileOperation.COPY);
+    }
+
+
+    @SuppressWarnings("try")
+    private void copy(final FileContext fileContext,
+                      final FileOperationTrace event)
+        throws IOException, FileBackException {
+
+        admit(fileContext);
+
+        final Path sourceLeafPath = sourceLeafPath(fileContext, false);
         logger.trace("source leaf path: {}", sourceLeafPath);
+        if (event != null) {
+            event.leafPath = sourceLeafPath;
+        }
         ofNullable(fileContext.sourceObjectConsumer()).ifPresent(
             c -> c.accept(sourceLeafPath));
         if (sourceLeafPath == null) {
             logger.error("no source leaf path located");
             return;
         }
+        flush(sourceLeafPath);
+        if (expired(sourceLeafPath)) {
+            logger.error("source leaf path is expired: {}", sourceLeafPath);
+            return;
+        }
         if (!Files.isReadable(sourceLeafPath)) {
             logger.error("source leaf path is not readable: {}",
                          sourceLeafPath);
             return;
         }
 
-        final Path[] targetLeafPath_ = new Path[1];
-        if (targetLeafPath_[0] == null) {
-            ofNullable(fileContext.targetKeySupplier()).ifPresent(s -> {
-                ofNullable(s.get()).ifPresent(v -> {
-                    logger.trace("target key: {}", v);
-                    targetLeafPath_[0] = leafPath(rootPath, v, true);
-                });
-            });
-        }
-        final Path targetLeafPath = targetLeafPath_[0];
+        final Path targetLeafPath = targetLeafPath(fileContext, true);
         logger.trace("target leaf path: {}", targetLeafPath);
+        if (event != null) {
+            event.leafPath = targetLeafPath;
+        }
         ofNullable(fileContext.targetObjectConsumer()).ifPresent(
             c -> c.accept(targetLeafPath));
         if (targetLeafPath == null) {
@@ -191,25 +721,63 @@ public class LocalFileBack implements FileBack {
             return;
         }
 
-        Files.copy(sourceLeafPath, targetLeafPath,
-                   StandardCopyOption.REPLACE_EXISTING);
-        logger.trace("file copied");
+        try (StripedLocks.Hold hold
+             = readWrite(sourceLeafPath, targetLeafPath);
+             StripedLocks.Hold parent = parent(targetLeafPath)) {
+            final CapacityAccount.Footprint previous
+                = footprint(targetLeafPath);
+            discard(targetLeafPath);
+            expiry(fileContext, targetLeafPath);
+            final long started = started();
+            final QualityOfService.PriorityClass priority
+                = priority(fileContext);
+            if (priority == null) {
+                Files.copy(sourceLeafPath, targetLeafPath,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (FileChannel sourceChannel = FileChannel.open(
+                    sourceLeafPath, StandardOpenOption.READ);
+                     FileChannel targetChannel = FileChannel.open(
+                         targetLeafPath, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.WRITE)) {
+                    transfer(sourceChannel, targetChannel, priority);
+                }
+            }
+            logger.trace("file copied");
+            phase(Phase.TRANSFER, started);
+            if (checksums) {
+                FileChecksums.carry(sourceLeafPath, targetLeafPath);
+            }
 
-        final String pathName = StreamSupport
-            .stream(((Iterable<Path>) () -> rootPath.relativize(targetLeafPath)
-                     .iterator()).spliterator(), false)
-            .map(Path::toString).collect(joining("/"));
-        logger.trace("path name: {}", pathName);
-        ofNullable(fileContext.pathNameConsumer()).ifPresent(
-            c -> c.accept(pathName));
+            final long copied = Files.size(targetLeafPath);
+            charge(fileContext, targetLeafPath, previous, copied);
+            if (metrics != null) {
+                metrics.bytesOut(copied);
+                metrics.bytesIn(copied);
+            }
+            if (event != null) {
+                event.bytes = copied;
+            }
 
-        ofNullable(fileContext.sourceCopiedConsumer()).ifPresent(
-            c -> c.accept(sourceLeafPath.toFile().length()));
-        ofNullable(fileContext.targetCopiedConsumer()).ifPresent(
-            c -> c.accept(targetLeafPath.toFile().length()));
+            final String pathName = pathName(targetLeafPath);
+            logger.trace("path name: {}", pathName);
+            ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                c -> c.accept(pathName));
+
+            copied(fileContext, copied);
+        }
     }
 
 
+    /**
+     * Deletes the file part located by the source key or the target key.
+     *
+     * @param fileContext the file context.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
     public void delete(final FileContext fileContext)
         throws IOException, FileBackException {
 
@@ -217,194 +785,2155 @@ public class LocalFileBack implements FileBack {
             throw new NullPointerException("null fileContext");
         }
 
-        final Path[] leafPath_ = new Path[1];
-        if (leafPath_[0] == null) {
-            ofNullable(fileContext.sourceKeySupplier()).ifPresent(s -> {
-                ofNullable(s.get()).ifPresent(v -> {
-                    logger.trace("source key: {}", v);
-                    leafPath_[0] = leafPath(rootPath, v, false);
-                });
-            });
-        }
-        if (leafPath_[0] == null) {
-            ofNullable(fileContext.targetKeySupplier()).ifPresent(s -> {
-                ofNullable(s.get()).ifPresent(v -> {
-                    logger.trace("target key: {}", v);
-                    leafPath_[0] = leafPath(rootPath, v, false);
-                });
-            });
+        operate(fileContext, FileOperation.DELETE);
+    }
+
+
+    @SuppressWarnings("try")
+    private void delete(final FileContext fileContext,
+                        final FileOperationTrace event)
+        throws IOException, FileBackException {
+
+        Path leafPath_ = sourceLeafPath(fileContext, false);
+        if (leafPath_ == null) {
+            leafPath_ = targetLeafPath(fileContext, false);
         }
-        final Path leafPath = leafPath_[0];
+        final Path leafPath = leafPath_;
         logger.trace("leaf path: {}", leafPath);
+        if (event != null) {
+            event.leafPath = leafPath;
+        }
         ofNullable(fileContext.sourceObjectConsumer()).ifPresent(
             c -> c.accept(leafPath));
         ofNullable(fileContext.targetObjectConsumer()).ifPresent(
             c -> c.accept(leafPath));
+        if (leafPath == null) {
+            logger.warn("no leaf path located");
+            return;
+        }
 
-        final boolean fileDeleted = Files.deleteIfExists(leafPath);
-        logger.trace("file deleted: {}", fileDeleted);
+        try (StripedLocks.Hold hold = write(leafPath)) {
+            final CapacityAccount.Footprint previous
+                = footprint(leafPath);
+            discard(leafPath);
+            clear(leafPath);
+            final boolean fileDeleted = Files.deleteIfExists(leafPath);
+            logger.trace("file deleted: {}", fileDeleted);
+            release(leafPath, previous);
+            final DirectoryPruner pruner = this.pruner;
+            if (fileDeleted && pruner != null) {
+                pruner.enqueue(rootPath, leafPath.getParent());
+            }
+        }
     }
 
 
-    public void read(final FileContext fileContext)
-        throws IOException, FileBackException {
-
-        if (fileContext == null) {
-            throw new NullPointerException("null fileContext");
+    /**
+     * Deletes specified leaf path while holding its lock.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the number of bytes freed or {@code -1L} if the file doesn't
+     * exist.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    long delete(final Path leafPath) throws IOException {
+
+        try (StripedLocks.Hold hold = write(leafPath)) {
+            final CapacityAccount.Footprint previous
+                = footprint(leafPath);
+            discard(leafPath);
+            clear(leafPath);
+            release(leafPath, previous);
+            final long size;
+            try {
+                size = Files.size(leafPath);
+            } catch (final NoSuchFileException nsfe) {
+                return -1L;
+            }
+            if (!Files.deleteIfExists(leafPath)) {
+                return -1L;
+            }
+            final DirectoryPruner pruner = this.pruner;
+            if (pruner != null) {
+                pruner.enqueue(rootPath, leafPath.getParent());
+            }
+            return size;
         }
+    }
 
-        final Path[] sourceLeafPath_ = new Path[1];
-        if (sourceLeafPath_[0] == null) {
-            ofNullable(fileContext.sourceKeySupplier()).ifPresent(s -> {
-                ofNullable(s.get()).ifPresent(v -> {
-                    logger.trace("source key: {}", v);
-                    sourceLeafPath_[0] = leafPath(rootPath, v, false);
-                });
-            });
-        }
-        if (sourceLeafPath_[0] == null) {
-            ofNullable(fileContext.pathNameSupplier()).ifPresent(s -> {
-                ofNullable(s.get()).ifPresent(v -> {
-                    logger.trace("path name: {}", v);
-                    sourceLeafPath_[0] = rootPath.resolve(v);
-                });
-            });
-        }
-        final Path sourceLeafPath = sourceLeafPath_[0];
-        logger.trace("source leaf path: {}", sourceLeafPath);
-        ofNullable(fileContext.sourceObjectConsumer()).ifPresent(
-            c -> c.accept(sourceLeafPath));
-        if (sourceLeafPath == null) {
-            logger.warn("no source leaf path located");
-            return;
-        }
-        if (!Files.isRegularFile(sourceLeafPath)) {
-            logger.warn("source leaf path is not a regular file: {}",
-                        sourceLeafPath);
-            return;
+
+    /**
+     * Checks, while holding the shared lock, whether the bytes of specified
+     * leaf path mismatch its stored checksum.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return {@code true} if mismatched; {@code false} if matched or no
+     * valid checksum stored.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    boolean corrupted(final Path leafPath) throws IOException {
+
+        try (StripedLocks.Hold hold = read(leafPath)) {
+            return FileChecksums.mismatched(leafPath);
         }
+    }
 
-        final String pathName = StreamSupport
-            .stream(((Iterable<Path>) () -> rootPath.relativize(sourceLeafPath)
-                     .iterator()).spliterator(), false)
-            .map(Path::toString).collect(joining("/"));
-        logger.trace("path name: {}", pathName);
-        ofNullable(fileContext.pathNameConsumer()).ifPresent(
-            c -> c.accept(pathName));
 
-        ofNullable(fileContext.sourceChannelConsumer()).ifPresent(c -> {
-            logger.trace("source channel consumer presents");
+    /**
+     * Moves specified leaf path to specified quarantine path, while holding
+     * its lock, if its bytes mismatch its stored checksum. The file part is
+     * released as if it were deleted.
+     *
+     * @param leafPath the leaf path.
+     * @param quarantinePath the path to move the file to.
+     *
+     * @return {@code true} if quarantined; {@code false} if the file is not
+     * corrupted, doesn't exist or is about to be overwritten by a pending
+     * write.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    boolean quarantine(final Path leafPath, final Path quarantinePath)
+        throws IOException {
+
+        try (StripedLocks.Hold hold = write(leafPath)) {
+            final WriteBehind writeBehind = this.writeBehind;
+            if (writeBehind != null && writeBehind.get(leafPath) != null) {
+                return false;
+            }
             try {
-                try (ReadableByteChannel sourceChannel = newByteChannel(
-                    sourceLeafPath, StandardOpenOption.READ)) {
-                    c.accept(sourceChannel);
+                if (!FileChecksums.mismatched(leafPath)) {
+                    return false;
                 }
-            } catch (IOException ioe) {
-                logger.error(
-                    "failed to open source leaf path: " + sourceLeafPath, ioe);
+            } catch (final NoSuchFileException nsfe) {
+                return false;
             }
-        });
-
-        ofNullable(fileContext.targetChannelSupplier()).ifPresent(s -> {
-            logger.trace("target channel supplier presents");
-            final WritableByteChannel targetChannel = s.get();
-            logger.trace("target channel: {}", targetChannel);
-            try {
-                final long copied = Files.copy(
-                    sourceLeafPath, newOutputStream(targetChannel));
-                ofNullable(fileContext.sourceCopiedConsumer()).ifPresent(
-                    c -> c.accept(copied));
-                ofNullable(fileContext.targetCopiedConsumer()).ifPresent(
-                    c -> c.accept(copied));
-            } catch (final IOException ioe) {
-                logger.error(
-                    "failed to copy from source leaf path to target channel",
-                    ioe);
+            final CapacityAccount.Footprint previous
+                = footprint(leafPath);
+            clear(leafPath);
+            release(leafPath, previous);
+            Files.move(leafPath, quarantinePath,
+                       StandardCopyOption.REPLACE_EXISTING);
+            final DirectoryPruner pruner = this.pruner;
+            if (pruner != null) {
+                pruner.enqueue(rootPath, leafPath.getParent());
             }
-        });
+            return true;
+        }
     }
 
 
-    public void write(final FileContext fileContext)
-        throws IOException, FileBackException {
+    /**
+     * Deletes file parts of specified keys. Leaf paths are grouped by their
+     * parent directories and each group is deleted by one of
+     * {@code parallelism} workers.
+     *
+     * @param keys the keys to delete.
+     * @param executor the executor to run workers.
+     * @param parallelism the maximum number of concurrent workers.
+     * @param rate the maximum number of file parts deleted per second;
+     * {@code 0} for unlimited.
+     *
+     * @return the result whose outcomes are keyed by path names.
+     */
+    public BulkDeletion delete(final Collection<ByteBuffer> keys,
+                               final Executor executor,
+                               final int parallelism, final int rate) {
+
+        if (keys == null) {
+            throw new NullPointerException("null keys");
+        }
 
-        if (fileContext == null) {
-            throw new NullPointerException("null fileContext");
+        final SortedMap<Path, List<Path>> groups = new TreeMap<>();
+        for (final ByteBuffer key : keys) {
+            final Path leafPath = fileKey(key.duplicate()).leafPath();
+            final List<Path> group = groups.computeIfAbsent(
+                leafPath.getParent(), k -> new ArrayList<>());
+            if (!group.contains(leafPath)) {
+                group.add(leafPath);
+            }
         }
 
-        final Path[] targetLeafPath_ = new Path[1];
-        if (targetLeafPath_[0] == null) {
-            ofNullable(fileContext.targetKeySupplier()).ifPresent(s -> {
-                ofNullable(s.get()).ifPresent(v -> {
-                    logger.trace("target key: {}", v);
-                    targetLeafPath_[0] = leafPath(rootPath, v, true);
-                });
-            });
+        return delete(groups, executor, parallelism, rate);
+    }
+
+
+    /**
+     * Deletes file parts whose path names start with specified prefix.
+     *
+     * @param prefix the prefix of path names; an empty string for all file
+     * parts.
+     * @param executor the executor to run workers.
+     * @param parallelism the maximum number of concurrent workers.
+     * @param rate the maximum number of file parts deleted per second;
+     * {@code 0} for unlimited.
+     *
+     * @return the result whose outcomes are keyed by path names.
+     *
+     * @throws IOException if an I/O error occurs while walking.
+     * @see #delete(Collection, Executor, int, int)
+     */
+    public BulkDeletion delete(final String prefix, final Executor executor,
+                               final int parallelism, final int rate)
+        throws IOException {
+
+        if (prefix == null) {
+            throw new NullPointerException("null prefix");
         }
-        final Path targetLeafPath = targetLeafPath_[0];
-        logger.trace("target leaf path: {}", targetLeafPath);
-        ofNullable(fileContext.targetObjectConsumer()).ifPresent(
-            c -> c.accept(targetLeafPath));
-        if (targetLeafPath == null) {
-            logger.warn("no target leaf path located");
-            return;
+
+        final SortedMap<Path, List<Path>> groups = new TreeMap<>();
+        final int index = prefix.lastIndexOf(PATH_TOKEN_DELIMITER);
+        final Path start = index == -1
+                           ? rootPath : leafPath(prefix.substring(0, index));
+        if (!Files.isDirectory(start)) {
+            return delete(groups, executor, parallelism, rate);
         }
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
 
-        final String pathName = StreamSupport
-            .stream(((Iterable<Path>) () -> rootPath.relativize(targetLeafPath)
-                     .iterator()).spliterator(), false)
-            .map(Path::toString).collect(joining("/"));
-        logger.trace("path name: {}", pathName);
-        ofNullable(fileContext.pathNameConsumer()).ifPresent(
-            c -> {
-                logger.trace("accepting path name consumer");
-                c.accept(pathName);
-            });
+            @Override
+            public FileVisitResult preVisitDirectory(
+                final Path dir, final BasicFileAttributes attrs) {
 
-        ofNullable(fileContext.targetChannelConsumer()).ifPresent(c -> {
-            logger.trace("target channel consumer presents");
-            try {
-                try (FileChannel targetChannel = FileChannel.open(
-                    targetLeafPath, StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING,
-                    StandardOpenOption.WRITE)) {
-                    c.accept(targetChannel);
-                    targetChannel.force(true);
+                if (dir.equals(rootPath)) {
+                    return FileVisitResult.CONTINUE;
                 }
-            } catch (IOException ioe) {
-                logger.error(
-                    "failed to open target leaf path: " + targetLeafPath, ioe);
+                if (dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                final String name = pathName(dir);
+                return prefix.startsWith(name + PATH_TOKEN_DELIMITER)
+                       || name.startsWith(prefix)
+                       ? FileVisitResult.CONTINUE
+                       : FileVisitResult.SKIP_SUBTREE;
             }
-        });
 
-        ofNullable(fileContext.sourceChannelSupplier()).ifPresent(s -> {
-            logger.trace("source channel supplier: {}", s);
-            final ReadableByteChannel sourceChannel = s.get();
-            logger.trace("target channel: {}", sourceChannel);
-            try {
-                final long copied = Files.copy(
-                    newInputStream(sourceChannel), targetLeafPath,
-                    StandardCopyOption.REPLACE_EXISTING);
-                ofNullable(fileContext.sourceCopiedConsumer()).ifPresent(
-                    c -> c.accept(copied));
-                ofNullable(fileContext.targetCopiedConsumer()).ifPresent(
-                    c -> c.accept(copied));
-            } catch (final IOException ioe) {
-                logger.error(
-                    "failed to copy from source channel to target leaf path",
-                    ioe);
+
+            @Override
+            public FileVisitResult visitFile(final Path file,
+                                             final BasicFileAttributes attrs) {
+
+                final String pathName = pathName(file);
+                if (!pathName.startsWith(prefix)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    fileKey(pathName); // objects only
+                } catch (final IllegalArgumentException iae) {
+                    return FileVisitResult.CONTINUE;
+                }
+                groups.computeIfAbsent(file.getParent(),
+                                       k -> new ArrayList<>()).add(file);
+                return FileVisitResult.CONTINUE;
             }
-        });
-    }
 
 
-    Path rootPath() {
+            @Override
+            public FileVisitResult visitFileFailed(final Path file,
+                                                   final IOException exc) {
 
-        return rootPath;
-    }
+                logger.warn("failed to visit " + file, exc);
+                return FileVisitResult.CONTINUE;
+            }
 
+        });
 
-    private transient final Logger logger = getLogger(lookup().lookupClass());
+        return delete(groups, executor, parallelism, rate);
+    }
+
+
+    private BulkDeletion delete(final SortedMap<Path, List<Path>> groups,
+                                final Executor executor,
+                                final int parallelism, final int rate) {
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(
+                "parallelism(" + parallelism + ") <= 0");
+        }
+
+        if (rate < 0) {
+            throw new IllegalArgumentException("rate(" + rate + ") < 0");
+        }
+
+        return BulkDeletion.run(this, groups, executor, parallelism, rate);
+    }
+
+
+    /**
+     * Reads the source file part.
+     *
+     * @param fileContext the file context.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    public void read(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        operate(fileContext, FileOperation.READ);
+    }
+
+
+    @SuppressWarnings("try")
+    private void read(final FileContext fileContext,
+                      final FileOperationTrace event)
+        throws IOException, FileBackException {
+
+        final Path sourceLeafPath = sourceLeafPath(fileContext, true);
+        logger.trace("source leaf path: {}", sourceLeafPath);
+        if (event != null) {
+            event.leafPath = sourceLeafPath;
+        }
+        ofNullable(fileContext.sourceObjectConsumer()).ifPresent(
+            c -> c.accept(sourceLeafPath));
+        if (sourceLeafPath == null) {
+            logger.warn("no source leaf path located");
+            return;
+        }
+        try (StripedLocks.Hold hold = read(sourceLeafPath)) {
+            final WriteBehind writeBehind = this.writeBehind;
+            final byte[] pending = writeBehind == null
+                                   ? null : writeBehind.get(sourceLeafPath);
+            if (expired(sourceLeafPath)) {
+                logger.warn("source leaf path is expired: {}",
+                            sourceLeafPath);
+                return;
+            }
+            if (pending == null && !Files.isRegularFile(sourceLeafPath)) {
+                logger.warn("source leaf path is not a regular file: {}",
+                            sourceLeafPath);
+                return;
+            }
+            ofNullable(prefetcher).ifPresent(p -> p.accessed(sourceLeafPath));
+
+            final String pathName = pathName(sourceLeafPath);
+            logger.trace("path name: {}", pathName);
+            ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                c -> c.accept(pathName));
+
+            final byte[] buffered = pending != null
+                                    ? pending
+                                    : coalesce(fileContext, sourceLeafPath);
+            final QualityOfService.PriorityClass priority
+                = priority(fileContext);
+            // pending contents are not on the file yet
+            final FileChecksums.Verifier verifier = pending != null
+                                                    ? null
+                                                    : verifier(fileContext,
+                                                               sourceLeafPath,
+                                                               pathName);
+            if (verifier != null && buffered != null) {
+                verifier.verify(buffered);
+            }
+
+            ofNullable(fileContext.sourceChannelConsumer()).ifPresent(c -> {
+                logger.trace("source channel consumer presents");
+                if (buffered != null) {
+                    c.accept(pace(Channels.newChannel(
+                        new ByteArrayInputStream(buffered)), priority));
+                    return;
+                }
+                try {
+                    final long started = started();
+                    try (ReadableByteChannel sourceChannel = newByteChannel(
+                        sourceLeafPath, StandardOpenOption.READ)) {
+                        phase(Phase.OPEN, started);
+                        c.accept(pace(verifier == null
+                                      ? sourceChannel
+                                      : verifier.verifying(sourceChannel),
+                                      priority));
+                    }
+                } catch (IOException ioe) {
+                    logger.error(
+                        "failed to open source leaf path: " + sourceLeafPath,
+                        ioe);
+                    error(FileOperation.READ, event);
+                }
+            });
+
+            ofNullable(fileContext.targetChannelSupplier()).ifPresent(s -> {
+                logger.trace("target channel supplier presents");
+                final WritableByteChannel targetChannel = s.get();
+                logger.trace("target channel: {}", targetChannel);
+                try {
+                    long started = started();
+                    final long copied;
+                    if (buffered != null) {
+                        final ByteBuffer buffer = ByteBuffer.wrap(buffered);
+                        while (buffer.hasRemaining()) {
+                            targetChannel.write(buffer);
+                        }
+                        copied = buffered.length;
+                        if (priority != null) {
+                            priority.bytes(copied);
+                        }
+                        phase(Phase.TRANSFER, started);
+                    } else {
+                        try (FileChannel sourceChannel = FileChannel.open(
+                            sourceLeafPath, StandardOpenOption.READ)) {
+                            started = phase(Phase.OPEN, started);
+                            // verified bytes can't bypass the heap
+                            copied = verifier == null
+                                     ? transfer(sourceChannel, targetChannel,
+                                                priority)
+                                     : stream(verifier.verifying(
+                                         sourceChannel), targetChannel,
+                                              priority);
+                            phase(Phase.TRANSFER, started);
+                        }
+                    }
+                    if (metrics != null) {
+                        metrics.bytesOut(copied);
+                    }
+                    if (event != null) {
+                        event.bytes = copied;
+                    }
+                    copied(fileContext, copied);
+                } catch (final IOException ioe) {
+                    logger.error(
+                        "failed to copy from source leaf path to target"
+                        + " channel",
+                        ioe);
+                    error(FileOperation.READ, event);
+                }
+            });
+
+            if (verifier != null) {
+                verifier.verify();
+            }
+        }
+    }
+
+
+    /**
+     * Warms up the source file parts, in background, with the attached
+     * prefetcher. Keys are taken from
+     * {@link FileContext#sourceKeysSupplier()} in addition to the source key.
+     * The batch of submitted files is passed to
+     * {@link FileContext#sourceObjectConsumer()} so that it can be awaited
+     * or cancelled.
+     *
+     * @param fileContext the file context.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     * @see #prefetcher(Prefetcher)
+     */
+    public void prefetch(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        operate(fileContext, FileOperation.PREFETCH);
+    }
+
+
+    private void prefetch(final FileContext fileContext,
+                          final FileOperationTrace event)
+        throws IOException, FileBackException {
+
+        final Prefetcher prefetcher = this.prefetcher;
+        if (prefetcher == null) {
+            throw new FileBackException("no prefetcher attached");
+        }
+
+        final List<Path> leafPaths = new ArrayList<>();
+        ofNullable(sourceLeafPath(fileContext, true)).ifPresent(
+            leafPaths::add);
+        final Collection<ByteBuffer> keys = ofNullable(
+            fileContext.sourceKeysSupplier()).map(Supplier::get).orElse(null);
+        if (keys != null) {
+            for (final ByteBuffer key : keys) {
+                leafPaths.add(leafPath(rootPath, key, false, metrics));
+            }
+        }
+        leafPaths.removeIf(this::expired);
+        logger.trace("prefetching {} leaf path(s)", leafPaths.size());
+        if (event != null && leafPaths.size() == 1) {
+            event.leafPath = leafPaths.get(0);
+        }
+
+        final QualityOfService qos = this.qos;
+        final QualityOfService.PriorityClass priority = qos == null
+            ? null
+            : qos.priorityClass(ofNullable(
+                fileContext.priorityClassSupplier()).map(Supplier::get)
+                .orElse(Prefetcher.PRIORITY_CLASS));
+        final Prefetcher.Batch batch = prefetcher.submit(leafPaths, priority);
+        ofNullable(fileContext.sourceObjectConsumer()).ifPresent(
+            c -> c.accept(batch));
+    }
+
+
+    /**
+     * Reads the attributes of the source file part, without opening it, and
+     * passes them to {@link FileContext#sourceAttributesConsumer()}. The
+     * consumer accepts {@code null} if the file part does not exist.
+     *
+     * @param fileContext the file context.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    public void stat(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        operate(fileContext, FileOperation.STAT);
+    }
+
+
+    @SuppressWarnings("try")
+    private void stat(final FileContext fileContext,
+                      final FileOperationTrace event)
+        throws IOException, FileBackException {
+
+        final Path sourceLeafPath = sourceLeafPath(fileContext, true);
+        logger.trace("source leaf path: {}", sourceLeafPath);
+        if (event != null) {
+            event.leafPath = sourceLeafPath;
+        }
+        ofNullable(fileContext.sourceObjectConsumer()).ifPresent(
+            c -> c.accept(sourceLeafPath));
+        if (sourceLeafPath == null) {
+            logger.warn("no source leaf path located");
+            return;
+        }
+
+        flush(sourceLeafPath);
+        try (StripedLocks.Hold hold = read(sourceLeafPath)) {
+            final BasicFileAttributes attributes
+                = expired(sourceLeafPath) ? null : attributes(sourceLeafPath);
+            logger.trace("attributes: {}", attributes);
+            if (event != null && attributes != null) {
+                event.bytes = attributes.size();
+            }
+
+            if (attributes != null) {
+                ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                    c -> c.accept(pathName(sourceLeafPath)));
+            }
+
+            ofNullable(fileContext.sourceAttributesConsumer()).ifPresent(
+                c -> c.accept(attributes));
+        }
+    }
+
+
+    /**
+     * Reads the attributes of file parts mapped to each of specified file
+     * keys. The {@code attributesConsumer} accepts each file key along with
+     * its attributes or {@code null} if the file part does not exist.
+     *
+     * @param fileKeys the file keys.
+     * @param attributesConsumer the consumer of attributes.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void stat(
+        final Iterable<? extends ByteBuffer> fileKeys,
+        final BiConsumer<ByteBuffer, BasicFileAttributes> attributesConsumer)
+        throws IOException {
+
+        if (fileKeys == null) {
+            throw new NullPointerException("null fileKeys");
+        }
+
+        if (attributesConsumer == null) {
+            throw new NullPointerException("null attributesConsumer");
+        }
+
+        for (final ByteBuffer fileKey : fileKeys) {
+            final Path leafPath = leafPath(rootPath, fileKey, false, metrics);
+            attributesConsumer.accept(fileKey, attributes(leafPath));
+        }
+    }
+
+
+    /**
+     * Writes the target file part.
+     *
+     * @param fileContext the file context.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    public void write(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        operate(fileContext, FileOperation.WRITE);
+    }
+
+
+    @SuppressWarnings("try")
+    private void write(final FileContext fileContext,
+                       final FileOperationTrace event)
+        throws IOException, FileBackException {
+
+        admit(fileContext);
+
+        final Path targetLeafPath = targetLeafPath(fileContext, true);
+        logger.trace("target leaf path: {}", targetLeafPath);
+        if (event != null) {
+            event.leafPath = targetLeafPath;
+        }
+        ofNullable(fileContext.targetObjectConsumer()).ifPresent(
+            c -> c.accept(targetLeafPath));
+        if (targetLeafPath == null) {
+            logger.warn("no target leaf path located");
+            return;
+        }
+
+        if (writeBehind(fileContext, event, targetLeafPath)) {
+            return;
+        }
+
+        try (StripedLocks.Hold hold = write(targetLeafPath);
+             StripedLocks.Hold parent = parent(targetLeafPath)) {
+            final CapacityAccount.Footprint previous
+                = footprint(targetLeafPath);
+            discard(targetLeafPath);
+            expiry(fileContext, targetLeafPath);
+            final QualityOfService.PriorityClass priority
+                = priority(fileContext);
+            final String pathName = pathName(targetLeafPath);
+            logger.trace("path name: {}", pathName);
+            ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                c -> {
+                    logger.trace("accepting path name consumer");
+                    c.accept(pathName);
+                });
+
+            ofNullable(fileContext.targetChannelConsumer()).ifPresent(c -> {
+                logger.trace("target channel consumer presents");
+                try {
+                    final long started = started();
+                    final Checksum checksum = checksum();
+                    try (FileChannel targetChannel = FileChannel.open(
+                        targetLeafPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+                        phase(Phase.OPEN, started);
+                        c.accept(pace(FileChecksums.checksumming(
+                            (WritableByteChannel) targetChannel, checksum),
+                                      priority));
+                        final long size = targetChannel.size();
+                        force(targetChannel, targetLeafPath, size);
+                        if (metrics != null) {
+                            metrics.bytesIn(size);
+                        }
+                        if (event != null) {
+                            event.bytes = size;
+                        }
+                    }
+                    store(targetLeafPath, checksum);
+                } catch (IOException ioe) {
+                    logger.error(
+                        "failed to open target leaf path: " + targetLeafPath,
+                        ioe);
+                    error(FileOperation.WRITE, event);
+                }
+            });
+
+            ofNullable(fileContext.sourceChannelSupplier()).ifPresent(s -> {
+                logger.trace("source channel supplier: {}", s);
+                final ReadableByteChannel sourceChannel = s.get();
+                logger.trace("target channel: {}", sourceChannel);
+                try {
+                    long started = started();
+                    final long copied;
+                    final Checksum checksum = checksum();
+                    try (FileChannel targetChannel = FileChannel.open(
+                        targetLeafPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+                        started = phase(Phase.OPEN, started);
+                        copied = transfer(FileChecksums.checksumming(
+                            sourceChannel, checksum), targetChannel, 0L,
+                                          priority);
+                        phase(Phase.TRANSFER, started);
+                    }
+                    store(targetLeafPath, checksum);
+                    if (metrics != null) {
+                        metrics.bytesIn(copied);
+                    }
+                    if (event != null) {
+                        event.bytes = copied;
+                    }
+                    copied(fileContext, copied);
+                } catch (final IOException ioe) {
+                    logger.error(
+                        "failed to copy from source channel to target leaf"
+                        + " path",
+                        ioe);
+                    error(FileOperation.WRITE, event);
+                }
+            });
+
+            charge(fileContext, targetLeafPath, previous);
+        }
+    }
+
+
+    /**
+     * Publishes specified staging file, which is under the root path, at
+     * specified leaf path by forcing and moving it atomically. The file
+     * context supplies the namespace, the time to live and the path name
+     * consumer as if the file were written by {@link FileOperation#WRITE}.
+     *
+     * @param fileContext the file context.
+     * @param staging the staging file.
+     * @param channel the channel of the staging file; closed on return.
+     * @param targetLeafPath the leaf path to publish at.
+     *
+     * @return the size of the file published.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    @SuppressWarnings("try")
+    long publish(final FileContext fileContext, final Path staging,
+                 final FileChannel channel, final Path targetLeafPath)
+        throws IOException, FileBackException {
+
+        final long size;
+        try (FileChannel closing = channel) {
+            admit(fileContext);
+            size = channel.size();
+            force(channel, targetLeafPath, size);
+        }
+
+        createParent(targetLeafPath);
+        try (StripedLocks.Hold hold = write(targetLeafPath);
+             StripedLocks.Hold parent = parent(targetLeafPath)) {
+            final CapacityAccount.Footprint previous
+                = footprint(targetLeafPath);
+            discard(targetLeafPath);
+            expiry(fileContext, targetLeafPath);
+            Files.move(staging, targetLeafPath,
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            charge(fileContext, targetLeafPath, previous, size);
+        }
+
+        final String pathName = pathName(targetLeafPath);
+        ofNullable(fileContext.pathNameConsumer()).ifPresent(
+            c -> c.accept(pathName));
+        if (metrics != null) {
+            metrics.bytesIn(size);
+        }
+        copied(fileContext, size);
+
+        return size;
+    }
+
+
+    /**
+     * Returns a resolved file key for specified key bytes. The returned value
+     * can be supplied to subsequent operations via
+     * {@link FileContext#sourceFileKeySupplier(java.util.function.Supplier)}
+     * or
+     * {@link FileContext#targetFileKeySupplier(java.util.function.Supplier)}.
+     *
+     * @param keyBytes the key bytes.
+     *
+     * @return a resolved file key.
+     */
+    public FileKey fileKey(final ByteBuffer keyBytes) {
+
+        if (keyBytes == null) {
+            throw new NullPointerException("null keyBytes");
+        }
+
+        long started = started();
+        final byte[] digest;
+        try {
+            digest = FileBackUtilities.digest(keyBytes, KEY_DIGEST_ALGORITHM);
+        } catch (final NoSuchAlgorithmException nsae) {
+            throw new RuntimeException(nsae);
+        }
+        final String pathName = FileBackUtilities.digestToPathName(
+            digest, PATH_TOKEN_LENGTH, PATH_TOKEN_DELIMITER);
+        started = phase(Phase.KEY_HASH, started);
+
+        final FileKey fileKey = new FileKey(
+            rootPath, digest, pathName, leafPath(pathName));
+        phase(Phase.LEAF_RESOLVE, started);
+
+        return fileKey;
+    }
+
+
+    /**
+     * Returns a resolved file key for specified path name which is previously
+     * consumed via {@link FileContext#pathNameConsumer()} or acquired via
+     * {@link FileKey#pathName()}.
+     *
+     * @param pathName the path name.
+     *
+     * @return a resolved file key.
+     *
+     * @throws IllegalArgumentException if {@code pathName} is not a path name
+     * produced by this file back.
+     */
+    public FileKey fileKey(final String pathName) {
+
+        if (pathName == null) {
+            throw new NullPointerException("null pathName");
+        }
+
+        final byte[] digest = FileBackUtilities.pathNameToDigest(
+            pathName, PATH_TOKEN_DELIMITER);
+        if (!pathName.equals(FileBackUtilities.digestToPathName(
+            digest, PATH_TOKEN_LENGTH, PATH_TOKEN_DELIMITER))) {
+            throw new IllegalArgumentException(
+                "illegal path name: " + pathName);
+        }
+
+        return new FileKey(rootPath, digest, pathName, leafPath(pathName));
+    }
+
+
+    /**
+     * Resolves specified path name against the root path.
+     *
+     * @param pathName the path name.
+     *
+     * @return the leaf path.
+     */
+    private Path leafPath(final String pathName) {
+
+        return rootPath.resolve(pathName.replace(
+            PATH_TOKEN_DELIMITER, rootPath.getFileSystem().getSeparator()));
+    }
+
+
+    /**
+     * Returns the leaf path of specified file key in this file back.
+     *
+     * @param fileKey the file key.
+     *
+     * @return the leaf path.
+     */
+    private Path leafPath(final FileKey fileKey) {
+
+        if (fileKey.rootPath == rootPath) {
+            return fileKey.leafPath();
+        }
+
+        return leafPath(fileKey.pathName());
+    }
+
+
+    /**
+     * Locates the source leaf path from the source file key or the source key
+     * of specified file context.
+     *
+     * @param fileContext the file context.
+     * @param pathName a flag for falling back to the path name supplied by
+     * {@link FileContext#pathNameSupplier()}.
+     *
+     * @return the source leaf path or {@code null} if not located.
+     */
+    private Path sourceLeafPath(final FileContext fileContext,
+                                final boolean pathName) {
+
+        final Supplier<FileKey> fileKeySupplier
+            = fileContext.sourceFileKeySupplier();
+        if (fileKeySupplier != null) {
+            final FileKey fileKey = fileKeySupplier.get();
+            if (fileKey != null) {
+                logger.trace("source file key: {}", fileKey);
+                return leafPath(fileKey);
+            }
+        }
+
+        final Supplier<ByteBuffer> keySupplier
+            = fileContext.sourceKeySupplier();
+        if (keySupplier != null) {
+            final ByteBuffer key = keySupplier.get();
+            if (key != null) {
+                logger.trace("source key: {}", key);
+                return leafPath(rootPath, key, false, metrics);
+            }
+        }
+
+        if (pathName) {
+            final Supplier<String> pathNameSupplier
+                = fileContext.pathNameSupplier();
+            if (pathNameSupplier != null) {
+                final String v = pathNameSupplier.get();
+                if (v != null) {
+                    logger.trace("path name: {}", v);
+                    return rootPath.resolve(v);
+                }
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Locates the target leaf path from the target file key or the target key
+     * of specified file context.
+     *
+     * @param fileContext the file context.
+     * @param createParent a flag for creating the parent directory.
+     *
+     * @return the target leaf path or {@code null} if not located.
+     */
+    private Path targetLeafPath(final FileContext fileContext,
+                                final boolean createParent) {
+
+        final Supplier<FileKey> fileKeySupplier
+            = fileContext.targetFileKeySupplier();
+        if (fileKeySupplier != null) {
+            final FileKey fileKey = fileKeySupplier.get();
+            if (fileKey != null) {
+                logger.trace("target file key: {}", fileKey);
+                final Path leafPath = leafPath(fileKey);
+                if (createParent) {
+                    final long started = started();
+                    createParent(leafPath);
+                    phase(Phase.PARENT_CREATE, started);
+                }
+                return leafPath;
+            }
+        }
+
+        final Supplier<ByteBuffer> keySupplier
+            = fileContext.targetKeySupplier();
+        if (keySupplier != null) {
+            final ByteBuffer key = keySupplier.get();
+            if (key != null) {
+                logger.trace("target key: {}", key);
+                return leafPath(rootPath, key, createParent, metrics);
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Buffers the content of a {@link FileOperation#WRITE} operation into the
+     * attached write behind, if any. The content is written through when it
+     * is larger than the per-write limit of the write behind; a seekable
+     * source channel known to be larger is written through without being
+     * buffered at all. At most the per-write limit, plus one byte, is held
+     * before the bytes are reserved.
+     *
+     * @param fileContext the file context.
+     * @param event the event to update; may be {@code null}.
+     * @param targetLeafPath the target leaf path.
+     *
+     * @return {@code true} if the operation is done; {@code false} if no write
+     * behind attached or the operation doesn't supply a source channel.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    private boolean writeBehind(final FileContext fileContext,
+                                final FileOperationTrace event,
+                                final Path targetLeafPath)
+        throws IOException {
+
+        final WriteBehind writeBehind = this.writeBehind;
+        if (writeBehind == null) {
+            return false;
+        }
+
+        final Supplier<ReadableByteChannel> sourceChannelSupplier
+            = fileContext.sourceChannelSupplier();
+        if (sourceChannelSupplier == null
+            || fileContext.targetChannelConsumer() != null) {
+            return false;
+        }
+
+        if (account != null && namespace(fileContext) != null) {
+            return false; // namespaces are kept in files
+        }
+
+        final ReadableByteChannel sourceChannel = sourceChannelSupplier.get();
+        logger.trace("source channel: {}", sourceChannel);
+        final int limit = writeBehind.maximumWriteBytes();
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final boolean fits = remaining(sourceChannel) <= limit
+                             && read(sourceChannel, stream, limit);
+        final byte[] content = stream.toByteArray();
+
+        final String pathName = pathName(targetLeafPath);
+        logger.trace("path name: {}", pathName);
+        ofNullable(fileContext.pathNameConsumer()).ifPresent(
+            c -> c.accept(pathName));
+
+        // returned unless taken by the pending content
+        boolean reserved = false;
+        if (fits) {
+            // outside the lock so that flushes of this key can proceed
+            writeBehind.acquire(content.length);
+            reserved = true;
+        }
+
+        final long copied;
+        try (StripedLocks.Hold hold = write(targetLeafPath)) {
+            final CapacityAccount.Footprint previous
+                = footprint(targetLeafPath);
+            expiry(fileContext, targetLeafPath);
+            final QualityOfService.PriorityClass priority
+                = priority(fileContext);
+            if (priority != null) {
+                priority.bytes(content.length);
+            }
+            if (fits) {
+                final boolean first = writeBehind.put(targetLeafPath, content);
+                reserved = false;
+                if (first) {
+                    writeBehind.schedule(
+                        () -> flush(writeBehind, targetLeafPath));
+                }
+                copied = content.length;
+                charge(fileContext, targetLeafPath, previous, copied);
+            } else {
+                logger.trace("writing through {} bytes or more",
+                             content.length);
+                writeBehind.discard(targetLeafPath);
+                long started = started();
+                final Checksum checksum = checksum();
+                try (StripedLocks.Hold parent = parent(targetLeafPath);
+                     FileChannel targetChannel = FileChannel.open(
+                         targetLeafPath, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.WRITE)) {
+                    started = phase(Phase.OPEN, started);
+                    final ByteBuffer buffer = ByteBuffer.wrap(content);
+                    while (buffer.hasRemaining()) {
+                        targetChannel.write(buffer);
+                    }
+                    if (checksum != null) {
+                        checksum.update(content, 0, content.length);
+                    }
+                    copied = transfer(FileChecksums.checksumming(
+                        sourceChannel, checksum), targetChannel,
+                                      content.length, priority);
+                    phase(Phase.TRANSFER, started);
+                }
+                store(targetLeafPath, checksum);
+                charge(fileContext, targetLeafPath, previous, copied);
+                if (metrics != null) {
+                    metrics.bytesIn(copied);
+                }
+            }
+        } finally {
+            if (reserved) {
+                writeBehind.release(content.length);
+            }
+        }
+
+        if (event != null) {
+            event.bytes = copied;
+        }
+        copied(fileContext, copied);
+
+        return true;
+    }
+
+
+    /**
+     * Writes the pending content of specified leaf path, if any, to the file.
+     * The flush is scheduled again if it fails or the content is replaced
+     * while being written.
+     *
+     * @param writeBehind the write behind holding the content.
+     * @param leafPath the leaf path.
+     */
+    @SuppressWarnings("try")
+    private void flush(final WriteBehind writeBehind, final Path leafPath) {
+
+        try (StripedLocks.Hold hold = write(leafPath)) {
+            final byte[] content = writeBehind.get(leafPath);
+            if (content == null) {
+                return;
+            }
+            try {
+                final long started = started();
+                try (StripedLocks.Hold parent = parent(leafPath);
+                     FileChannel channel = FileChannel.open(
+                         leafPath, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.WRITE)) {
+                    phase(Phase.OPEN, started);
+                    final ByteBuffer buffer = ByteBuffer.wrap(content);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    force(channel, leafPath, content.length);
+                }
+                if (checksums) {
+                    FileChecksums.store(
+                        leafPath, FileChecksums.checksum(content));
+                }
+                final FileBackMetrics metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.bytesIn(content.length);
+                }
+            } catch (final IOException ioe) {
+                logger.error("failed to flush " + leafPath, ioe);
+                final FileBackMetrics metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.error(FileOperation.WRITE);
+                }
+                writeBehind.schedule(() -> flush(writeBehind, leafPath));
+                return;
+            }
+            if (!writeBehind.remove(leafPath, content)) {
+                writeBehind.schedule(() -> flush(writeBehind, leafPath));
+            }
+        }
+    }
+
+
+    /**
+     * Flushes the pending content of specified leaf path, if any, through the
+     * attached write behind.
+     *
+     * @param leafPath the leaf path.
+     */
+    private void flush(final Path leafPath) {
+
+        final WriteBehind writeBehind = this.writeBehind;
+        if (writeBehind != null && writeBehind.get(leafPath) != null) {
+            flush(writeBehind, leafPath);
+        }
+    }
+
+
+    /**
+     * Discards the pending content of specified leaf path, if any, which is
+     * about to be overwritten or deleted.
+     *
+     * @param leafPath the leaf path.
+     */
+    private void discard(final Path leafPath) {
+
+        final WriteBehind writeBehind = this.writeBehind;
+        if (writeBehind != null) {
+            writeBehind.discard(leafPath);
+        }
+    }
+
+
+    /**
+     * Flushes all pending contents of the attached write behind, if any,
+     * immediately. Call this method before detaching the write behind or
+     * shutting down its scheduler.
+     */
+    public void flush() {
+
+        final WriteBehind writeBehind = this.writeBehind;
+        if (writeBehind == null) {
+            return;
+        }
+
+        for (final Path leafPath : writeBehind.paths()) {
+            flush(writeBehind, leafPath);
+        }
+    }
+
+
+    /**
+     * Reads all bytes of specified source leaf path through the attached
+     * coalescer.
+     *
+     * @param fileContext the file context.
+     * @param sourceLeafPath the source leaf path.
+     *
+     * @return all bytes of the file or {@code null} if no coalescer attached,
+     * nothing to serve or the file is larger than the limit of the coalescer.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private byte[] coalesce(final FileContext fileContext,
+                            final Path sourceLeafPath)
+        throws IOException {
+
+        final ReadCoalescer coalescer = this.coalescer;
+        if (coalescer == null) {
+            return null;
+        }
+
+        if (fileContext.sourceChannelConsumer() == null
+            && fileContext.targetChannelSupplier() == null) {
+            return null;
+        }
+
+        return coalescer.read(sourceLeafPath);
+    }
+
+
+    /**
+     * Acquires the shared lock for specified leaf path if locks are
+     * attached.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return a hold to release.
+     */
+    private StripedLocks.Hold read(final Path leafPath) {
+
+        final StripedLocks locks = this.locks;
+
+        return locks == null ? StripedLocks.NONE : locks.read(leafPath);
+    }
+
+
+    /**
+     * Acquires the exclusive lock for specified leaf path if locks are
+     * attached.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return a hold to release.
+     */
+    private StripedLocks.Hold write(final Path leafPath) {
+
+        final StripedLocks locks = this.locks;
+
+        return locks == null ? StripedLocks.NONE : locks.write(leafPath);
+    }
+
+
+    /**
+     * Returns, from the attached quality of service, the priority class of
+     * specified file context.
+     *
+     * @param fileContext the file context.
+     *
+     * @return the priority class or {@code null} if no quality of service
+     * attached.
+     */
+    private QualityOfService.PriorityClass priority(
+        final FileContext fileContext) {
+
+        final QualityOfService qos = this.qos;
+        if (qos == null) {
+            return null;
+        }
+
+        return qos.priorityClass(ofNullable(
+            fileContext.priorityClassSupplier()).map(Supplier::get)
+            .orElse(null));
+    }
+
+
+    private static ReadableByteChannel pace(
+        final ReadableByteChannel channel,
+        final QualityOfService.PriorityClass priority) {
+
+        return priority == null ? channel : priority.pace(channel);
+    }
+
+
+    private static WritableByteChannel pace(
+        final WritableByteChannel channel,
+        final QualityOfService.PriorityClass priority) {
+
+        return priority == null ? channel : priority.pace(channel);
+    }
+
+
+    /**
+     * Returns the namespace supplied by specified file context.
+     *
+     * @param fileContext the file context; may be {@code null}.
+     *
+     * @return the namespace or {@code null} if not supplied.
+     */
+    private static String namespace(final FileContext fileContext) {
+
+        if (fileContext == null) {
+            return null;
+        }
+
+        return ofNullable(fileContext.namespaceSupplier()).map(Supplier::get)
+            .orElse(null);
+    }
+
+
+    /**
+     * Creates a new checksum for bytes being written if checksums are
+     * enabled.
+     *
+     * @return a new checksum or {@code null} if checksums are disabled.
+     */
+    private Checksum checksum() {
+
+        return checksums ? FileChecksums.newChecksum() : null;
+    }
+
+
+    /**
+     * Stores specified checksum, if any, of specified leaf path.
+     *
+     * @param leafPath the leaf path.
+     * @param checksum the checksum of all bytes written; may be
+     * {@code null}.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void store(final Path leafPath, final Checksum checksum)
+        throws IOException {
+
+        if (checksum != null) {
+            FileChecksums.store(leafPath, (int) checksum.getValue());
+        }
+    }
+
+
+    /**
+     * Returns a verifier of the stored checksum of specified source leaf
+     * path.
+     *
+     * @param fileContext the file context.
+     * @param sourceLeafPath the source leaf path.
+     * @param pathName the path name of the source leaf path.
+     *
+     * @return a verifier or {@code null} if checksums are disabled, the file
+     * context skips the verification or no valid checksum stored.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private FileChecksums.Verifier verifier(final FileContext fileContext,
+                                            final Path sourceLeafPath,
+                                            final String pathName)
+        throws IOException {
+
+        if (!checksums || !ofNullable(fileContext.verifySupplier())
+            .map(Supplier::get).orElse(Boolean.TRUE)) {
+            return null;
+        }
+
+        final Integer expected = FileChecksums.load(sourceLeafPath);
+        if (expected == null) {
+            return null;
+        }
+
+        return new FileChecksums.Verifier(pathName, expected);
+    }
+
+
+    /**
+     * Checks, through the attached account, quotas of the root and the
+     * namespace of specified file context before any I/O.
+     *
+     * @param fileContext the file context.
+     *
+     * @throws QuotaExceededException if a quota is reached.
+     */
+    private void admit(final FileContext fileContext)
+        throws QuotaExceededException {
+
+        final CapacityAccount account = this.account;
+        if (account != null) {
+            account.admit(namespace(fileContext));
+        }
+    }
+
+
+    /**
+     * Returns, through the attached account, the footprint of specified leaf
+     * path including its pending content, if any. The caller holds the lock
+     * of the leaf path.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the footprint or {@code null} if no account attached or the
+     * file part doesn't exist.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private CapacityAccount.Footprint footprint(final Path leafPath)
+        throws IOException {
+
+        final CapacityAccount account = this.account;
+        if (account == null) {
+            return null;
+        }
+
+        final WriteBehind writeBehind = this.writeBehind;
+        final byte[] pending
+            = writeBehind == null ? null : writeBehind.get(leafPath);
+        if (pending != null) {
+            return account.footprint(leafPath, pending.length);
+        }
+
+        return account.footprint(leafPath);
+    }
+
+
+    /**
+     * Charges, through the attached account, the written file part of
+     * specified leaf path.
+     *
+     * @param fileContext the file context.
+     * @param leafPath the leaf path.
+     * @param previous the footprint before written.
+     * @param size the size of the file part.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void charge(final FileContext fileContext, final Path leafPath,
+                        final CapacityAccount.Footprint previous,
+                        final long size)
+        throws IOException {
+
+        final CapacityAccount account = this.account;
+        if (account != null) {
+            account.charge(leafPath, previous, namespace(fileContext), size);
+        }
+    }
+
+
+    /**
+     * Charges, through the attached account, the file part of specified
+     * leaf path with its current size.
+     *
+     * @param fileContext the file context.
+     * @param leafPath the leaf path.
+     * @param previous the footprint before written.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void charge(final FileContext fileContext, final Path leafPath,
+                        final CapacityAccount.Footprint previous)
+        throws IOException {
+
+        final CapacityAccount account = this.account;
+        if (account == null) {
+            return;
+        }
+
+        final long size;
+        try {
+            size = Files.size(leafPath);
+        } catch (final NoSuchFileException nsfe) {
+            account.release(leafPath, previous);
+            return;
+        }
+        account.charge(leafPath, previous, namespace(fileContext), size);
+    }
+
+
+    /**
+     * Releases, through the attached account, specified footprint of
+     * specified leaf path.
+     *
+     * @param leafPath the leaf path.
+     * @param previous the footprint; may be {@code null}.
+     */
+    private void release(final Path leafPath,
+                         final CapacityAccount.Footprint previous) {
+
+        final CapacityAccount account = this.account;
+        if (account != null) {
+            account.release(leafPath, previous);
+        }
+    }
+
+
+    /**
+     * Sets or clears, through the attached reaper, the expiration of
+     * specified target leaf path from the time to live of specified file
+     * context. The caller holds the lock of the leaf path.
+     *
+     * @param fileContext the file context.
+     * @param leafPath the target leaf path.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void expiry(final FileContext fileContext, final Path leafPath)
+        throws IOException {
+
+        final ExpiryReaper reaper = this.reaper;
+        if (reaper == null) {
+            return;
+        }
+
+        final Duration timeToLive = ofNullable(
+            fileContext.timeToLiveSupplier()).map(Supplier::get).orElse(null);
+        if (timeToLive == null) {
+            reaper.clear(leafPath);
+            return;
+        }
+
+        reaper.expire(leafPath,
+                      System.currentTimeMillis() + timeToLive.toMillis());
+    }
+
+
+    /**
+     * Clears, through the attached reaper, the expiration of specified leaf
+     * path which is about to be deleted.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void clear(final Path leafPath) throws IOException {
+
+        final ExpiryReaper reaper = this.reaper;
+        if (reaper != null) {
+            reaper.clear(leafPath);
+        }
+    }
+
+
+    /**
+     * Supplies, through specified file context, the namespace and the
+     * remaining time to live of specified leaf path so that the file part
+     * keeps them when written elsewhere.
+     *
+     * @param leafPath the leaf path.
+     * @param fileContext the file context to supply.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void describe(final Path leafPath, final FileContext fileContext)
+        throws IOException {
+
+        final CapacityAccount.Footprint footprint = footprint(leafPath);
+        if (footprint != null && footprint.namespace != null) {
+            fileContext.namespaceSupplier(() -> footprint.namespace);
+        }
+
+        final ExpiryReaper reaper = this.reaper;
+        final Long expiresAt
+            = reaper == null ? null : reaper.expiresAt(leafPath);
+        if (expiresAt != null) {
+            final Duration timeToLive = Duration.ofMillis(
+                Math.max(0L, expiresAt - System.currentTimeMillis()));
+            fileContext.timeToLiveSupplier(() -> timeToLive);
+        }
+    }
+
+
+    /**
+     * Checks whether specified leaf path is expired but not deleted yet.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return {@code true} if expired; {@code false} otherwise.
+     */
+    private boolean expired(final Path leafPath) {
+
+        final ExpiryReaper reaper = this.reaper;
+
+        return reaper != null && reaper.expired(leafPath);
+    }
+
+
+    /**
+     * Deletes specified leaf path if its expiration is still the specified
+     * one.
+     *
+     * @param leafPath the leaf path.
+     * @param expiresAt the expiration.
+     *
+     * @return {@code true} if deleted; {@code false} otherwise.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    boolean expire(final Path leafPath, final long expiresAt)
+        throws IOException {
+
+        final ExpiryReaper reaper = this.reaper;
+        if (reaper == null) {
+            return false;
+        }
+
+        try (StripedLocks.Hold hold = write(leafPath)) {
+            if (!reaper.remove(leafPath, expiresAt)) {
+                return false;
+            }
+            release(leafPath, footprint(leafPath));
+            discard(leafPath);
+            final boolean fileDeleted = Files.deleteIfExists(leafPath);
+            logger.trace("expired file deleted: {}", fileDeleted);
+            final DirectoryPruner pruner = this.pruner;
+            if (fileDeleted && pruner != null) {
+                pruner.enqueue(rootPath, leafPath.getParent());
+            }
+            return fileDeleted;
+        }
+    }
+
+
+    /**
+     * Acquires the shared lock of the attached pruner, if any, for the parent
+     * directory of specified leaf path and creates the directory again if it
+     * has been pruned since located.
+     *
+     * @param leafPath the leaf path to create.
+     *
+     * @return a hold to release once the file is created.
+     */
+    private StripedLocks.Hold parent(final Path leafPath) {
+
+        final DirectoryPruner pruner = this.pruner;
+        if (pruner == null) {
+            return StripedLocks.NONE;
+        }
+
+        final StripedLocks.Hold hold = pruner.use(leafPath.getParent());
+        try {
+            createParent(leafPath);
+        } catch (final RuntimeException re) {
+            hold.close();
+            throw re;
+        }
+
+        return hold;
+    }
+
+
+    /**
+     * Acquires the shared lock for specified source leaf path and the
+     * exclusive lock for specified target leaf path if locks are attached.
+     *
+     * @param sourceLeafPath the source leaf path.
+     * @param targetLeafPath the target leaf path.
+     *
+     * @return a hold to release.
+     */
+    private StripedLocks.Hold readWrite(final Path sourceLeafPath,
+                                        final Path targetLeafPath) {
+
+        final StripedLocks locks = this.locks;
+
+        return locks == null
+               ? StripedLocks.NONE
+               : locks.readWrite(sourceLeafPath, targetLeafPath);
+    }
+
+
+    /**
+     * Passes specified number of copied bytes to the copied consumers of
+     * specified file context. The value is passed without boxing if
+     * {@code fileContext} is a {@link ReusableFileContext}.
+     *
+     * @param fileContext the file context.
+     * @param copied the number of bytes copied.
+     */
+    static void copied(final FileContext fileContext,
+                       final long copied) {
+
+        if (fileContext instanceof RoutedFileContext
+            && !((RoutedFileContext) fileContext).detached) {
+            copied(((RoutedFileContext) fileContext).delegate, copied);
+            return;
+        }
+
+        if (fileContext instanceof ReusableFileContext) {
+            ((ReusableFileContext) fileContext).sourceCopied(copied);
+            ((ReusableFileContext) fileContext).targetCopied(copied);
+            return;
+        }
+
+        ofNullable(fileContext.sourceCopiedConsumer()).ifPresent(
+            c -> c.accept(copied));
+        ofNullable(fileContext.targetCopiedConsumer()).ifPresent(
+            c -> c.accept(copied));
+    }
+
+
+    /**
+     * Passes specified size to the target size consumer of specified file
+     * context. The value is passed without boxing if {@code fileContext} is a
+     * {@link ReusableFileContext}.
+     *
+     * @param fileContext the file context.
+     * @param size the size of the target file.
+     */
+    static void targetSize(final FileContext fileContext, final long size) {
+
+        if (fileContext instanceof RoutedFileContext
+            && !((RoutedFileContext) fileContext).detached) {
+            targetSize(((RoutedFileContext) fileContext).delegate, size);
+            return;
+        }
+
+        if (fileContext instanceof ReusableFileContext) {
+            ((ReusableFileContext) fileContext).targetSize(size);
+            return;
+        }
+
+        ofNullable(fileContext.targetSizeConsumer()).ifPresent(
+            c -> c.accept(size));
+    }
+
+
+    /**
+     * Reads the basic attributes of specified leaf path with a single call.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the attributes or {@code null} if {@code leafPath} is not a
+     * regular file.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private BasicFileAttributes attributes(final Path leafPath)
+        throws IOException {
+
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(
+                leafPath, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (final NoSuchFileException nsfe) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Returns the path name of specified leaf path relative to the root path.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the path name.
+     */
+    String pathName(final Path leafPath) {
+
+        return StreamSupport
+            .stream(((Iterable<Path>) () -> rootPath.relativize(leafPath)
+                     .iterator()).spliterator(), false)
+            .map(Path::toString).collect(joining(PATH_TOKEN_DELIMITER));
+    }
+
+
+    /**
+     * Returns the current value of {@link System#nanoTime()} if metrics are
+     * attached.
+     *
+     * @return the current time in nanoseconds or {@code 0L} if no metrics
+     * attached.
+     */
+    private long started() {
+
+        return metrics == null ? 0L : System.nanoTime();
+    }
+
+
+    /**
+     * Records the time elapsed since specified time for specified phase.
+     *
+     * @param phase the phase.
+     * @param started the value returned from {@link #started()}.
+     *
+     * @return the current time in nanoseconds or {@code 0L} if no metrics
+     * attached.
+     */
+    private long phase(final Phase phase, final long started) {
+
+        if (metrics == null) {
+            return 0L;
+        }
+
+        final long finished = System.nanoTime();
+        metrics.phase(phase, finished - started);
+
+        return finished;
+    }
+
+
+    /**
+     * Forces specified channel, which is opened for specified leaf path, to
+     * the storage device.
+     *
+     * @param channel the channel to force.
+     * @param leafPath the leaf path of the channel.
+     * @param size the number of bytes written to the channel.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void force(final FileChannel channel, final Path leafPath,
+                       final long size)
+        throws IOException {
+
+        final long started = started();
+        final FileForceEvent event = FileBackEvents.AVAILABLE
+                                     ? FileForceEvent.start() : null;
+        channel.force(true);
+        phase(Phase.FORCE, started);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = pathName(leafPath);
+                event.bytes = size;
+                event.commit();
+            }
+        }
+    }
+
+
+    /**
+     * Records a failure which is logged rather than thrown.
+     *
+     * @param fileOperation the file operation failed.
+     * @param event the event of the operation; may be {@code null}.
+     */
+    private void error(final FileOperation fileOperation,
+                       final FileOperationTrace event) {
+
+        if (metrics != null) {
+            metrics.error(fileOperation);
+        }
+
+        if (event != null) {
+            event.failed = true;
+        }
+    }
+
+
+    Path rootPath() {
+
+        return rootPath;
+    }
+
+
+    /**
+     * Returns the metrics currently attached.
+     *
+     * @return the metrics currently attached or {@code null} if no metrics
+     * attached.
+     */
+    public FileBackMetrics metrics() {
+
+        return metrics;
+    }
+
+
+    /**
+     * Attaches specified metrics. Operations performed afterwards record
+     * their latencies, failures and transferred bytes into the metrics.
+     *
+     * @param metrics the metrics to attach; {@code null} to detach.
+     */
+    public void metrics(final FileBackMetrics metrics) {
+
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Returns the locks currently attached.
+     *
+     * @return the locks currently attached or {@code null} if no locks
+     * attached.
+     */
+    public StripedLocks locks() {
+
+        return locks;
+    }
+
+
+    /**
+     * Attaches specified locks. While attached, operations reading a file
+     * part share the lock mapped to its leaf path and operations writing or
+     * deleting a file part hold the lock exclusively. Note that the leaf path
+     * is derived from the digest of the key.
+     *
+     * @param locks the locks to attach; {@code null} to detach.
+     */
+    public void locks(final StripedLocks locks) {
+
+        this.locks = locks;
+    }
+
+
+    /**
+     * Returns the read coalescer currently attached.
+     *
+     * @return the read coalescer currently attached or {@code null} if no
+     * coalescer attached.
+     */
+    public ReadCoalescer coalescer() {
+
+        return coalescer;
+    }
+
+
+    /**
+     * Attaches specified read coalescer. While attached, concurrent
+     * {@link FileOperation#READ} operations of a same key share a single read
+     * of the file whose bytes are passed to each caller's source channel
+     * consumer and written to each caller's target channel. When locks are
+     * also attached, a read in flight never spans a write of the same key.
+     *
+     * @param coalescer the read coalescer to attach; {@code null} to detach.
+     */
+    public void coalescer(final ReadCoalescer coalescer) {
+
+        this.coalescer = coalescer;
+    }
+
+
+    /**
+     * Returns the write behind currently attached.
+     *
+     * @return the write behind currently attached or {@code null} if no
+     * write behind attached.
+     */
+    public WriteBehind writeBehind() {
+
+        return writeBehind;
+    }
+
+
+    /**
+     * Attaches specified write behind. While attached, contents of
+     * {@link FileOperation#WRITE} operations supplying source channels are
+     * kept in memory and only the latest content of each key is written when
+     * the window of the write behind elapses. {@link FileOperation#READ}
+     * operations are served from pending contents so that callers always read
+     * their own writes. Attach locks as well so that a pending content is
+     * never flushed over a concurrent write or delete of the same key.
+     *
+     * @param writeBehind the write behind to attach; {@code null} to detach.
+     *
+     * @see #flush()
+     */
+    public void writeBehind(final WriteBehind writeBehind) {
+
+        this.writeBehind = writeBehind;
+    }
+
+
+    /**
+     * Returns the directory pruner currently attached.
+     *
+     * @return the directory pruner currently attached or {@code null} if no
+     * pruner attached.
+     */
+    public DirectoryPruner pruner() {
+
+        return pruner;
+    }
+
+
+    /**
+     * Attaches specified directory pruner. While attached,
+     * {@link FileOperation#DELETE} operations queue the parent directory of
+     * each deleted file part so that empty directories are removed in the
+     * background.
+     *
+     * @param pruner the directory pruner to attach; {@code null} to detach.
+     *
+     * @see #prune()
+     */
+    public void pruner(final DirectoryPruner pruner) {
+
+        this.pruner = pruner;
+    }
+
+
+    /**
+     * Removes all empty directories under the root path through the attached
+     * directory pruner. Operations may proceed concurrently.
+     *
+     * @return the number of directories removed.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalStateException if no pruner attached.
+     */
+    public long prune() throws IOException {
+
+        final DirectoryPruner pruner = this.pruner;
+        if (pruner == null) {
+            throw new IllegalStateException("no pruner attached");
+        }
+
+        return pruner.prune(rootPath);
+    }
+
+
+    /**
+     * Returns the expiry reaper currently attached.
+     *
+     * @return the expiry reaper currently attached or {@code null} if no
+     * reaper attached.
+     */
+    public ExpiryReaper reaper() {
+
+        return reaper;
+    }
+
+
+    /**
+     * Attaches specified expiry reaper. While attached,
+     * {@link FileOperation#WRITE} and {@link FileOperation#COPY} operations
+     * set the expiration of the target file part from
+     * {@link FileContext#timeToLiveSupplier()}, and expired file parts are
+     * treated as absent until deleted.
+     *
+     * @param reaper the expiry reaper to attach; {@code null} to detach.
+     */
+    public void reaper(final ExpiryReaper reaper) {
+
+        if (reaper != null && reaper.fileBack != this) {
+            throw new IllegalArgumentException(
+                "reaper created for another file back");
+        }
+
+        this.reaper = reaper;
+    }
+
+
+    /**
+     * Returns the capacity account currently attached.
+     *
+     * @return the capacity account currently attached or {@code null} if no
+     * account attached.
+     */
+    public CapacityAccount account() {
+
+        return account;
+    }
+
+
+    /**
+     * Attaches specified capacity account. While attached, written, copied
+     * and deleted file parts are accounted to the root and to the namespace
+     * supplied by {@link FileContext#namespaceSupplier()}, and
+     * {@link FileOperation#WRITE} and {@link FileOperation#COPY} operations
+     * are rejected with a {@link QuotaExceededException} while a quota is
+     * reached. Writes with namespaces bypass the write behind.
+     *
+     * @param account the capacity account to attach; {@code null} to detach.
+     */
+    public void account(final CapacityAccount account) {
+
+        if (account != null && account.fileBack != this) {
+            throw new IllegalArgumentException(
+                "account created for another file back");
+        }
+
+        this.account = account;
+    }
+
+
+    /**
+     * Returns the quality of service currently attached.
+     *
+     * @return the quality of service currently attached or {@code null} if
+     * none attached.
+     */
+    public QualityOfService qos() {
+
+        return qos;
+    }
+
+
+    /**
+     * Attaches specified quality of service. While attached, each operation
+     * takes a token of the priority class supplied by
+     * {@link FileContext#priorityClassSupplier()} and transferred bytes are
+     * paced, chunk by chunk, by the limits of the class.
+     *
+     * @param qos the quality of service to attach; {@code null} to detach.
+     */
+    public void qos(final QualityOfService qos) {
+
+        this.qos = qos;
+    }
+
+
+    /**
+     * Returns the prefetcher currently attached.
+     *
+     * @return the prefetcher currently attached or {@code null} if none
+     * attached.
+     */
+    public Prefetcher prefetcher() {
+
+        return prefetcher;
+    }
+
+
+    /**
+     * Attaches specified prefetcher. {@link FileOperation#PREFETCH} fails
+     * unless a prefetcher is attached and reads of prefetched files are
+     * counted as hits of the prefetcher.
+     *
+     * @param prefetcher the prefetcher to attach; {@code null} to detach.
+     */
+    public void prefetcher(final Prefetcher prefetcher) {
+
+        this.prefetcher = prefetcher;
+    }
+
+
+    /**
+     * Returns whether CRC32C checksums of file parts are computed and
+     * verified.
+     *
+     * @return {@code true} if checksums are enabled; {@code false} otherwise.
+     */
+    public boolean checksums() {
+
+        return checksums;
+    }
+
+
+    /**
+     * Enables or disables CRC32C checksums of file parts. While enabled,
+     * {@link FileOperation#WRITE} computes the checksum in the same pass as
+     * the bytes are written and stores it as a user-defined attribute, named
+     * {@value FileChecksums#CHECKSUM_ATTRIBUTE}, of the file and
+     * {@link FileOperation#READ} verifies the stored checksum while the bytes
+     * are read failing with {@link ChecksumMismatchException} unless
+     * {@link FileContext#verifySupplier()} supplies {@code false}.
+     * {@link FileOperation#APPEND} extends a valid stored checksum with the
+     * bytes appended. Verified reads to target channels are copied through
+     * the heap rather than transferred directly. Files written while
+     * disabled, or appended to such files, and files uploaded in parts are
+     * read without verification. The file store of
+     * the root path should support user-defined attributes.
+     *
+     * @param checksums {@code true} to enable; {@code false} to disable.
+     */
+    public void checksums(final boolean checksums) {
+
+        this.checksums = checksums;
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
 
 
     @Inject
@@ -412,5 +2941,35 @@ public class LocalFileBack implements FileBack {
     private Path rootPath;
 
 
+    private volatile FileBackMetrics metrics;
+
+
+    private volatile StripedLocks locks;
+
+
+    private volatile ReadCoalescer coalescer;
+
+
+    private volatile WriteBehind writeBehind;
+
+
+    private volatile DirectoryPruner pruner;
+
+
+    private volatile ExpiryReaper reaper;
+
+
+    private volatile CapacityAccount account;
+
+
+    private volatile QualityOfService qos;
+
+
+    private volatile Prefetcher prefetcher;
+
+
+    private volatile boolean checksums;
+
+
 }
 
@@ -0,0 +1,1529 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileContext.PropertyKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Optional.ofNullable;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A file back keeping a copy of each file on every one of multiple
+ * {@link LocalFileBack}s. Writes, copies and deletes are applied to all
+ * mirrors in parallel and acknowledged once a quorum of mirrors succeeded;
+ * the rest complete in background. Reads are served, through
+ * {@link LocalFileBack#operate(FileContext)}, by the mirror with the best
+ * recent latency and hedged to another mirror when the first one is slower
+ * than usual. Deletes leave a tombstone next to each deleted file so that
+ * repairs don't bring the key back from mirrors which missed the delete.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class MirroredFileBack implements FileBack {
+
+
+    /**
+     * The number of bytes of written contents buffered in memory. Larger
+     * contents are spooled to a temporary file.
+     */
+    static final int SPOOL_MEMORY_BYTES = 1048576;
+
+
+    /**
+     * The number of bytes read from a mirror for deciding it responds.
+     */
+    static final int PROBE_BYTES = 8192;
+
+
+    /**
+     * The suffix of names of tombstones. The tombstone of a leaf path is a
+     * hidden sibling whose last modified time is when the key was deleted.
+     */
+    static final String TOMBSTONE_SUFFIX = ".deleted";
+
+
+    /**
+     * Properties of callers' file contexts hidden from mirrors.
+     */
+    private static final PropertyKey[] ROUTED = {
+        PropertyKey.PATH_NAME_CONSUMER, PropertyKey.PATH_NAME_SUPPLIER,
+        PropertyKey.SOURCE_CHANNEL_CONSUMER,
+        PropertyKey.TARGET_CHANNEL_CONSUMER,
+        PropertyKey.SOURCE_CHANNEL_SUPPLIER,
+        PropertyKey.TARGET_CHANNEL_SUPPLIER, PropertyKey.SOURCE_KEY_SUPPLIER,
+        PropertyKey.TARGET_KEY_SUPPLIER, PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+        PropertyKey.TARGET_FILE_KEY_SUPPLIER,
+        PropertyKey.SOURCE_OBJECT_CONSUMER,
+        PropertyKey.SOURCE_ATTRIBUTES_CONSUMER,
+        PropertyKey.TARGET_OBJECT_CONSUMER, PropertyKey.SOURCE_KEYS_SUPPLIER
+    };
+
+
+    /**
+     * The hedge delay in nanoseconds until enough latencies are recorded.
+     */
+    static final long INITIAL_HEDGE_DELAY = TimeUnit.MILLISECONDS.toNanos(10L);
+
+
+    /**
+     * The minimum hedge delay in nanoseconds.
+     */
+    static final long MINIMUM_HEDGE_DELAY = TimeUnit.MICROSECONDS.toNanos(100L);
+
+
+    /**
+     * The number of reads between updates of each hedge delay.
+     */
+    static final int HEDGE_DELAY_PERIOD = 64;
+
+
+    /**
+     * The content of a write kept in memory or in a temporary file until all
+     * mirrors are written.
+     */
+    private static final class Spool {
+
+
+        Spool(final byte[] bytes, final Path path) {
+
+            super();
+
+            this.bytes = bytes;
+            this.path = path;
+        }
+
+
+        ReadableByteChannel open() throws IOException {
+
+            if (bytes != null) {
+                return Channels.newChannel(new ByteArrayInputStream(bytes));
+            }
+
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+
+        long size() throws IOException {
+
+            return bytes != null ? bytes.length : Files.size(path);
+        }
+
+
+        void delete() {
+
+            if (path != null) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (final IOException ioe) {
+                    getLogger(lookup().lookupClass()).error(
+                        "failed to delete spool: " + path, ioe);
+                }
+            }
+        }
+
+
+        private final byte[] bytes;
+
+
+        private final Path path;
+
+
+    }
+
+
+    /**
+     * A file being read on a mirror which produced its first bytes. The
+     * channel is held open by the read of the mirror until closed.
+     */
+    private static final class Probe {
+
+
+        Probe(final int mirror, final Path leafPath, final ByteBuffer head,
+              final ReadableByteChannel channel) {
+
+            super();
+
+            this.mirror = mirror;
+            this.leafPath = leafPath;
+            this.head = head;
+            this.channel = channel;
+        }
+
+
+        /**
+         * Returns a channel reading the first bytes and then the rest.
+         *
+         * @return a channel of all bytes.
+         */
+        ReadableByteChannel channel() {
+
+            return Channels.newChannel(new SequenceInputStream(
+                new ByteArrayInputStream(head.array(), 0, head.limit()),
+                Channels.newInputStream(channel)));
+        }
+
+
+        /**
+         * Lets the read of the mirror close the file.
+         */
+        void close() {
+
+            closed.complete(null);
+        }
+
+
+        /**
+         * Closes this probe and waits for the read of the mirror to finish.
+         *
+         * @throws IOException if the read failed; e.g., a checksum mismatch
+         * found at the end.
+         * @throws FileBackException if the read failed with a file back
+         * error.
+         */
+        void finish() throws IOException, FileBackException {
+
+            close();
+            final Throwable failure = failed.join();
+            if (failure == null) {
+                return;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof FileBackException) {
+                throw (FileBackException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new IOException(failure);
+        }
+
+
+        final int mirror;
+
+
+        final Path leafPath;
+
+
+        final ByteBuffer head;
+
+
+        final ReadableByteChannel channel;
+
+
+        final CompletableFuture<Void> closed = new CompletableFuture<>();
+
+
+        /**
+         * Completes, once the read of the mirror returns, with its failure
+         * or {@code null}.
+         */
+        final CompletableFuture<Throwable> failed = new CompletableFuture<>();
+
+
+    }
+
+
+    /**
+     * Routes specified file context of the caller to a mirror for specified
+     * operation. Properties such as the time to live, the namespace, the
+     * priority class and flags apply; keys, channels, consumers and results
+     * are hidden for the router to override.
+     *
+     * @param fileContext the file context of the caller.
+     * @param fileOperation the file operation.
+     *
+     * @return a detached routed file context.
+     */
+    private static RoutedFileContext route(final FileContext fileContext,
+                                           final FileOperation fileOperation) {
+
+        final RoutedFileContext routed
+            = new RoutedFileContext(fileContext, true);
+        routed.override(PropertyKey.FILE_OPERATION_SUPPLIER,
+                        (Supplier<FileOperation>) () -> fileOperation);
+        for (final PropertyKey propertyKey : ROUTED) {
+            routed.override(propertyKey, null);
+        }
+
+        return routed;
+    }
+
+
+    /**
+     * Returns the tombstone of specified leaf path.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the path of the tombstone.
+     */
+    static Path tombstone(final Path leafPath) {
+
+        return leafPath.resolveSibling(
+            "." + leafPath.getFileName() + TOMBSTONE_SUFFIX);
+    }
+
+
+    /**
+     * Deletes specified key from specified mirror after leaving a tombstone.
+     * The tombstone is created anew so that the file system stamps it with
+     * the same clock as it stamps written files.
+     *
+     * @param mirror the mirror.
+     * @param mirrorKey the key resolved by {@code mirror}.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    private static void bury(final LocalFileBack mirror,
+                             final FileKey mirrorKey)
+        throws IOException, FileBackException {
+
+        final Path tombstone = tombstone(mirrorKey.leafPath());
+        LocalFileBack.createParent(tombstone);
+        Files.deleteIfExists(tombstone);
+        Files.createFile(tombstone);
+        ShardedFileBack.delete(mirror, mirrorKey);
+    }
+
+
+    private static BasicFileAttributes attributes(final Path path)
+        throws IOException {
+
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (final NoSuchFileException nsfe) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Checks whether specified path is still as specified attributes say.
+     *
+     * @param path the path.
+     * @param expected the attributes read before; {@code null} for absence.
+     *
+     * @return {@code true} if unchanged; {@code false} otherwise.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private static boolean unchanged(final Path path,
+                                     final BasicFileAttributes expected)
+        throws IOException {
+
+        final BasicFileAttributes actual = attributes(path);
+        if (expected == null || actual == null) {
+            return expected == actual;
+        }
+
+        return actual.size() == expected.size()
+               && actual.lastModifiedTime().equals(
+                   expected.lastModifiedTime());
+    }
+
+
+    /**
+     * Returns the CRC32C of specified leaf path; the stored one if valid,
+     * otherwise computed from the content.
+     *
+     * @param leafPath the leaf path.
+     *
+     * @return the checksum.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private static int checksum(final Path leafPath) throws IOException {
+
+        final Integer stored = FileChecksums.load(leafPath);
+        if (stored != null) {
+            return stored;
+        }
+
+        try (FileChannel channel
+            = FileChannel.open(leafPath, StandardOpenOption.READ)) {
+            return FileChecksums.checksum(channel);
+        }
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param mirrors the file backs to mirror; at least two.
+     * @param quorum the number of mirrors which must succeed before
+     * acknowledging writes, copies and deletes.
+     * @param executor the executor for operations on mirrors; must not run
+     * tasks in the calling thread.
+     */
+    public MirroredFileBack(final List<LocalFileBack> mirrors,
+                            final int quorum, final Executor executor) {
+
+        super();
+
+        if (mirrors == null) {
+            throw new NullPointerException("null mirrors");
+        }
+
+        if (mirrors.size() < 2) {
+            throw new IllegalArgumentException(
+                "mirrors.size(" + mirrors.size() + ") < 2");
+        }
+
+        if (quorum <= 0 || quorum > mirrors.size()) {
+            throw new IllegalArgumentException(
+                "quorum(" + quorum + ") not in [1, " + mirrors.size() + "]");
+        }
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        this.mirrors = unmodifiableList(new ArrayList<>(mirrors));
+        this.quorum = quorum;
+        this.executor = executor;
+
+        chains = new ArrayList<>(mirrors.size());
+        latencies = new LatencyHistogram[mirrors.size()];
+        for (int i = 0; i < mirrors.size(); i++) {
+            chains.add(new ConcurrentHashMap<>());
+            latencies[i] = new LatencyHistogram();
+        }
+        averages = new AtomicLongArray(mirrors.size());
+        delays = new AtomicLongArray(mirrors.size());
+        for (int i = 0; i < mirrors.size(); i++) {
+            delays.set(i, INITIAL_HEDGE_DELAY);
+        }
+    }
+
+
+    @Override
+    public void operate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        final FileOperation fileOperation
+            = ofNullable(fileContext.fileOperationSupplier())
+            .orElseThrow(
+                () -> new FileBackException("no file operation supplier set"))
+            .get();
+        logger.trace("file operation: {}", fileOperation);
+        if (fileOperation == null) {
+            logger.error("null file operation supplied");
+            return;
+        }
+
+        switch (fileOperation) {
+            case COPY:
+                copy(fileContext);
+                break;
+            case DELETE:
+                delete(fileContext);
+                break;
+            case READ:
+                read(fileContext);
+                break;
+            case STAT:
+                stat(fileContext);
+                break;
+            case WRITE:
+                write(fileContext);
+                break;
+            default:
+                throw new FileBackException(
+                    "unsupported file operation: " + fileOperation);
+        }
+    }
+
+
+    private void copy(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey sourceFileKey
+            = ShardedFileBack.sourceFileKey(fileContext, false, primary());
+        if (sourceFileKey == null) {
+            logger.error("no source key located");
+            return;
+        }
+
+        final FileKey targetFileKey
+            = ShardedFileBack.targetFileKey(fileContext, primary());
+        if (targetFileKey == null) {
+            logger.error("no target key located");
+            return;
+        }
+
+        if (sourceFileKey.equals(targetFileKey)) {
+            logger.error("source key == target key");
+            return;
+        }
+
+        final AtomicLong copied = new AtomicLong(-1L);
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < mirrors.size(); i++) {
+            final LocalFileBack mirror = mirrors.get(i);
+            futures.add(submit(i, targetFileKey, () -> {
+                final FileContext context
+                    = route(fileContext, FileOperation.COPY);
+                final FileKey mirrorKey
+                    = mirror.fileKey(targetFileKey.pathName());
+                context.sourceFileKeySupplier(
+                    () -> mirror.fileKey(sourceFileKey.pathName()));
+                context.targetFileKeySupplier(() -> mirrorKey);
+                final AtomicLong mirrorCopied = new AtomicLong(-1L);
+                context.targetCopiedConsumer(mirrorCopied::set);
+                mirror.operate(context);
+                if (mirrorCopied.get() < 0L) {
+                    return false;
+                }
+                Files.deleteIfExists(tombstone(mirrorKey.leafPath()));
+                copied.compareAndSet(-1L, mirrorCopied.get());
+                return true;
+            }));
+        }
+        await(futures, "copy " + sourceFileKey + " to " + targetFileKey);
+
+        ofNullable(fileContext.pathNameConsumer()).ifPresent(
+            c -> c.accept(targetFileKey.pathName()));
+        LocalFileBack.copied(fileContext, copied.get());
+    }
+
+
+    private void delete(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        FileKey fileKey_
+            = ShardedFileBack.sourceFileKey(fileContext, false, primary());
+        if (fileKey_ == null) {
+            fileKey_ = ShardedFileBack.targetFileKey(fileContext, primary());
+        }
+        final FileKey fileKey = fileKey_;
+        if (fileKey == null) {
+            logger.warn("no key located");
+            return;
+        }
+
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < mirrors.size(); i++) {
+            final LocalFileBack mirror = mirrors.get(i);
+            futures.add(submit(i, fileKey, () -> {
+                bury(mirror, mirror.fileKey(fileKey.pathName()));
+                return true;
+            }));
+        }
+        await(futures, "delete " + fileKey);
+    }
+
+
+    private void read(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.sourceFileKey(fileContext, true, primary());
+        if (fileKey == null) {
+            logger.warn("no source key located");
+            return;
+        }
+
+        final Probe probe = probe(fileContext, fileKey);
+        if (probe == null) {
+            logger.warn("not found on any mirror: {}", fileKey);
+            return;
+        }
+
+        final Consumer<ReadableByteChannel> sourceChannelConsumer
+            = fileContext.sourceChannelConsumer();
+        final Supplier<WritableByteChannel> targetChannelSupplier
+            = fileContext.targetChannelSupplier();
+        long copied = -1L;
+        try {
+            ofNullable(fileContext.sourceObjectConsumer()).ifPresent(
+                c -> c.accept(probe.leafPath));
+            ofNullable(fileContext.pathNameConsumer()).ifPresent(
+                c -> c.accept(fileKey.pathName()));
+
+            if (sourceChannelConsumer != null) {
+                sourceChannelConsumer.accept(probe.channel());
+            } else if (targetChannelSupplier != null) {
+                final WritableByteChannel targetChannel
+                    = targetChannelSupplier.get();
+                final int head = probe.head.remaining();
+                while (probe.head.hasRemaining()) {
+                    targetChannel.write(probe.head);
+                }
+                copied = head + LocalFileBack.stream(
+                    probe.channel, targetChannel, null);
+            }
+        } finally {
+            probe.close();
+        }
+        probe.finish(); // e.g., a checksum mismatch found at the end
+        if (copied != -1L) {
+            LocalFileBack.copied(fileContext, copied);
+        }
+
+        if (sourceChannelConsumer != null && targetChannelSupplier != null) {
+            // the probe is consumed; read again from the winning mirror
+            final LocalFileBack mirror = mirrors.get(probe.mirror);
+            final FileKey mirrorKey = mirror.fileKey(fileKey.pathName());
+            mirror.operate(new RoutedFileContext(fileContext)
+                .override(FileContext.PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+                          (Supplier<FileKey>) () -> mirrorKey)
+                .override(FileContext.PropertyKey.SOURCE_CHANNEL_CONSUMER,
+                          null)
+                .override(FileContext.PropertyKey.SOURCE_OBJECT_CONSUMER,
+                          null)
+                .override(FileContext.PropertyKey.PATH_NAME_CONSUMER, null));
+        }
+    }
+
+
+    /**
+     * Opens specified key on the mirror with the best recent latency and, if
+     * it doesn't produce bytes within its hedge delay, on the next best one.
+     * The first mirror producing bytes wins and the others are closed.
+     *
+     * @param fileContext the file context of the caller.
+     * @param fileKey the file key.
+     *
+     * @return the winning probe or {@code null} if no mirror has the key.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private Probe probe(final FileContext fileContext, final FileKey fileKey)
+        throws IOException {
+
+        final Integer[] order = new Integer[mirrors.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(averages::get));
+
+        final List<CompletableFuture<Probe>> pending = new ArrayList<>();
+        int next = 0;
+        boolean missing = false;
+        IOException thrown = null;
+        Probe winner = null;
+        while (winner == null) {
+            if (pending.isEmpty()) {
+                if (next == order.length) {
+                    break;
+                }
+                pending.add(probe(order[next++], fileContext, fileKey));
+            }
+            final CompletableFuture<Object> any = CompletableFuture.anyOf(
+                pending.toArray(new CompletableFuture<?>[pending.size()]));
+            try {
+                if (next < order.length) {
+                    any.get(delays.get(order[next - 1]),
+                            TimeUnit.NANOSECONDS);
+                } else {
+                    any.get();
+                }
+            } catch (final TimeoutException te) {
+                hedges.increment();
+                pending.add(probe(order[next++], fileContext, fileKey));
+                continue;
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                pending.forEach(MirroredFileBack::discard);
+                throw new InterruptedIOException("interrupted while reading");
+            } catch (final ExecutionException ee) {
+                // handled below
+            }
+            for (final CompletableFuture<Probe> future
+                 : new ArrayList<>(pending)) {
+                if (!future.isDone()) {
+                    continue;
+                }
+                pending.remove(future);
+                try {
+                    final Probe probe = future.join();
+                    if (probe == null) {
+                        missing = true;
+                    } else if (winner == null) {
+                        winner = probe;
+                    } else {
+                        probe.close();
+                    }
+                } catch (final CompletionException ce) {
+                    thrown = ce.getCause() instanceof IOException
+                             ? (IOException) ce.getCause()
+                             : new IOException(ce.getCause());
+                }
+            }
+        }
+        pending.forEach(MirroredFileBack::discard);
+
+        if (missing || thrown != null) {
+            // some mirror diverged
+            repairLater(fileKey);
+        }
+        if (winner == null && thrown != null) {
+            throw thrown;
+        }
+
+        return winner;
+    }
+
+
+    /**
+     * Repairs specified key in background.
+     *
+     * @param fileKey the file key.
+     */
+    private void repairLater(final FileKey fileKey) {
+
+        executor.execute(() -> {
+            try {
+                repair(fileKey);
+            } catch (final IOException | FileBackException e) {
+                logger.error("failed to repair " + fileKey, e);
+            }
+        });
+    }
+
+
+    private static void discard(final CompletableFuture<Probe> future) {
+
+        future.thenAccept(probe -> {
+            if (probe != null) {
+                probe.close();
+            }
+        });
+    }
+
+
+    /**
+     * Reads specified key on specified mirror, in background, through the
+     * mirror's {@link LocalFileBack#operate(FileContext)} so that pending
+     * writes, expirations and checksums of the mirror apply. The read blocks
+     * after the first bytes until the probe is closed.
+     *
+     * @param mirror the index of the mirror.
+     * @param fileContext the file context of the caller.
+     * @param fileKey the file key.
+     *
+     * @return a future of the probe; completes with {@code null} if the
+     * mirror doesn't have the key.
+     */
+    private CompletableFuture<Probe> probe(final int mirror,
+                                           final FileContext fileContext,
+                                           final FileKey fileKey) {
+
+        final CompletableFuture<Probe> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            final long started = System.nanoTime();
+            final LocalFileBack back = mirrors.get(mirror);
+            final FileKey mirrorKey = back.fileKey(fileKey.pathName());
+            final AtomicReference<Probe> won = new AtomicReference<>();
+            final FileContext context = route(fileContext, FileOperation.READ);
+            context.sourceFileKeySupplier(() -> mirrorKey);
+            context.sourceChannelConsumer(c -> {
+                final ByteBuffer head = ByteBuffer.allocate(PROBE_BYTES);
+                try {
+                    for (int r = 0; r != -1 && head.hasRemaining();) {
+                        r = c.read(head);
+                    }
+                } catch (final IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+                head.flip();
+                responded(mirror, System.nanoTime() - started);
+                final Probe probe
+                    = new Probe(mirror, mirrorKey.leafPath(), head, c);
+                if (future.complete(probe)) {
+                    won.set(probe);
+                    probe.closed.join(); // c is open only until we return
+                }
+            });
+            Throwable failure = null;
+            try {
+                back.operate(context);
+                future.complete(null);
+            } catch (final UncheckedIOException uioe) {
+                failure = uioe.getCause();
+            } catch (final IOException | FileBackException
+                           | RuntimeException e) {
+                failure = e;
+            }
+            if (failure != null && !future.completeExceptionally(failure)) {
+                // e.g., a checksum mismatch found at the end
+                logger.error("failed to read " + fileKey + " on mirror "
+                             + mirror, failure);
+                repairLater(fileKey);
+            }
+            final Probe probe = won.get();
+            if (probe != null) {
+                probe.failed.complete(failure);
+            }
+        });
+
+        return future;
+    }
+
+
+    /**
+     * Records the time specified mirror took to produce bytes.
+     *
+     * @param mirror the index of the mirror.
+     * @param elapsed the elapsed time in nanoseconds.
+     */
+    private void responded(final int mirror, final long elapsed) {
+
+        // exponentially weighted moving average with alpha of 1/8
+        final long average = averages.get(mirror);
+        averages.set(mirror, average == 0L
+                             ? elapsed : average + (elapsed - average) / 8L);
+
+        final LatencyHistogram histogram = latencies[mirror];
+        histogram.record(elapsed);
+        if (responses.incrementAndGet() % HEDGE_DELAY_PERIOD == 0) {
+            delays.set(mirror, Math.max(histogram.snapshot().getP90(),
+                                        MINIMUM_HEDGE_DELAY));
+        }
+    }
+
+
+    private void stat(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.sourceFileKey(fileContext, true, primary());
+        if (fileKey == null) {
+            logger.warn("no source key located");
+            return;
+        }
+
+        int best = 0;
+        for (int i = 1; i < mirrors.size(); i++) {
+            if (averages.get(i) < averages.get(best)) {
+                best = i;
+            }
+        }
+        final LocalFileBack mirror = mirrors.get(best);
+        final FileKey mirrorKey = mirror.fileKey(fileKey.pathName());
+        mirror.operate(new RoutedFileContext(fileContext)
+            .override(FileContext.PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+                      (Supplier<FileKey>) () -> mirrorKey));
+    }
+
+
+    private void write(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.targetFileKey(fileContext, primary());
+        if (fileKey == null) {
+            logger.warn("no target key located");
+            return;
+        }
+
+        ofNullable(fileContext.targetObjectConsumer()).ifPresent(
+            c -> c.accept(primary().fileKey(fileKey.pathName()).leafPath()));
+        ofNullable(fileContext.pathNameConsumer()).ifPresent(
+            c -> c.accept(fileKey.pathName()));
+
+        final Spool spool = spool(fileContext);
+        if (spool == null) {
+            logger.warn("no source channel supplier nor target channel"
+                        + " consumer set");
+            return;
+        }
+
+        final long size = spool.size();
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < mirrors.size(); i++) {
+            final LocalFileBack mirror = mirrors.get(i);
+            futures.add(submit(i, fileKey, () -> {
+                return write(route(fileContext, FileOperation.WRITE), mirror,
+                             mirror.fileKey(fileKey.pathName()), spool);
+            }));
+        }
+        CompletableFuture.allOf(
+            futures.toArray(new CompletableFuture<?>[futures.size()]))
+            .whenComplete((r, t) -> spool.delete());
+        await(futures, "write " + fileKey);
+
+        LocalFileBack.copied(fileContext, size);
+    }
+
+
+    /**
+     * Writes specified spool to specified mirror and removes the tombstone,
+     * if any, of the key.
+     *
+     * @param context the file context routed for the mirror.
+     * @param mirror the mirror.
+     * @param mirrorKey the key resolved by {@code mirror}.
+     * @param spool the spool to write.
+     *
+     * @return {@code true} if all bytes are written; {@code false} otherwise.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    private static boolean write(final FileContext context,
+                                 final LocalFileBack mirror,
+                                 final FileKey mirrorKey, final Spool spool)
+        throws IOException, FileBackException {
+
+        try (ReadableByteChannel channel = spool.open()) {
+            context.targetFileKeySupplier(() -> mirrorKey);
+            context.sourceChannelSupplier(() -> channel);
+            final AtomicLong copied = new AtomicLong(-1L);
+            context.targetCopiedConsumer(copied::set);
+            mirror.operate(context);
+            if (copied.get() != spool.size()) {
+                return false;
+            }
+        }
+        Files.deleteIfExists(tombstone(mirrorKey.leafPath()));
+
+        return true;
+    }
+
+
+    /**
+     * Spools the content of a {@link FileOperation#WRITE} operation.
+     *
+     * @param fileContext the file context.
+     *
+     * @return the spool or {@code null} if the file context neither supplies
+     * a source channel nor consumes a target channel.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private Spool spool(final FileContext fileContext) throws IOException {
+
+        final Consumer<WritableByteChannel> targetChannelConsumer
+            = fileContext.targetChannelConsumer();
+        if (targetChannelConsumer != null) {
+            final Path path = temporary();
+            try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.WRITE)) {
+                targetChannelConsumer.accept(channel);
+            }
+            return new Spool(null, path);
+        }
+
+        final Supplier<ReadableByteChannel> sourceChannelSupplier
+            = fileContext.sourceChannelSupplier();
+        if (sourceChannelSupplier != null) {
+            return spool(sourceChannelSupplier.get());
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Spools all bytes of specified channel.
+     *
+     * @param sourceChannel the channel to read.
+     *
+     * @return the spool.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private Spool spool(final ReadableByteChannel sourceChannel)
+        throws IOException {
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        if (LocalFileBack.read(sourceChannel, stream, SPOOL_MEMORY_BYTES)) {
+            return new Spool(stream.toByteArray(), null);
+        }
+
+        final Spool spool = new Spool(null, temporary());
+        try (FileChannel channel = FileChannel.open(
+            spool.path, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(stream.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            LocalFileBack.transfer(sourceChannel, channel, stream.size());
+        } catch (final IOException ioe) {
+            spool.delete();
+            throw ioe;
+        }
+
+        return spool;
+    }
+
+
+    /**
+     * Spools specified key by reading it from specified mirror.
+     *
+     * @param mirror the mirror.
+     * @param mirrorKey the key resolved by {@code mirror}.
+     *
+     * @return the spool or {@code null} if the mirror doesn't have the key.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    private Spool spool(final LocalFileBack mirror, final FileKey mirrorKey)
+        throws IOException, FileBackException {
+
+        final AtomicReference<Spool> spool = new AtomicReference<>();
+        final FileContext context = new DefaultFileContext();
+        context.fileOperationSupplier(() -> FileOperation.READ);
+        context.sourceFileKeySupplier(() -> mirrorKey);
+        context.sourceChannelConsumer(c -> {
+            try {
+                spool.set(spool(c));
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+        try {
+            mirror.operate(context);
+        } catch (final UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } catch (final IOException | FileBackException | RuntimeException e) {
+            ofNullable(spool.get()).ifPresent(Spool::delete);
+            throw e;
+        }
+
+        return spool.get();
+    }
+
+
+    /**
+     * Creates a temporary file, whose name is not of objects, under the root
+     * of the first mirror.
+     *
+     * @return the path of the temporary file.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private Path temporary() throws IOException {
+
+        return Files.createTempFile(
+            primary().rootPath(), ".mirroring-", ".tmp");
+    }
+
+
+    /**
+     * Submits specified task for specified mirror. Tasks of a same key on a
+     * same mirror run in the order of submission.
+     *
+     * @param mirror the index of the mirror.
+     * @param fileKey the file key.
+     * @param task the task; returns {@code true} if succeeded.
+     *
+     * @return a future of the result of the task.
+     */
+    private CompletableFuture<Boolean> submit(final int mirror,
+                                              final FileKey fileKey,
+                                              final Callable<Boolean> task) {
+
+        final ConcurrentMap<FileKey, CompletableFuture<Boolean>> chain
+            = chains.get(mirror);
+        final CompletableFuture<Boolean> future = chain.compute(
+            fileKey, (k, previous) -> {
+                final CompletableFuture<Boolean> after = previous == null
+                    ? CompletableFuture.completedFuture(true) : previous;
+                return after.handleAsync((r, t) -> {
+                    try {
+                        return task.call();
+                    } catch (final Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+            });
+        future.whenComplete((r, t) -> chain.remove(fileKey, future));
+
+        return future;
+    }
+
+
+    /**
+     * Waits until a quorum of specified futures succeeded.
+     *
+     * @param futures the futures.
+     * @param operation a description of the operation for messages.
+     *
+     * @throws IOException if interrupted.
+     * @throws FileBackException if the quorum can't be reached.
+     */
+    private void await(final List<CompletableFuture<Boolean>> futures,
+                       final String operation)
+        throws IOException, FileBackException {
+
+        final CompletableFuture<Void> reached = new CompletableFuture<>();
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final int tolerable = futures.size() - quorum;
+        for (final CompletableFuture<Boolean> future : futures) {
+            future.whenComplete((r, t) -> {
+                if (t == null && r) {
+                    if (succeeded.incrementAndGet() == quorum) {
+                        reached.complete(null);
+                    }
+                    return;
+                }
+                if (t != null) {
+                    logger.error("failed to " + operation, t);
+                }
+                if (failed.incrementAndGet() == tolerable + 1) {
+                    reached.completeExceptionally(new FileBackException(
+                        "failed to " + operation + " on " + failed.get()
+                        + " mirror(s)", t));
+                }
+            });
+        }
+
+        try {
+            reached.get();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "interrupted while waiting to " + operation);
+        } catch (final ExecutionException ee) {
+            throw (FileBackException) ee.getCause();
+        }
+    }
+
+
+    /**
+     * Compares specified key on all mirrors and brings them to the most
+     * recent state. If the newest tombstone is not older than the newest
+     * copy, the key is deleted from mirrors still holding it. Otherwise the
+     * newest copy is written to mirrors missing it or holding a different
+     * content; contents are compared by their stored CRC32C or, if none is
+     * stored, by reading them. Tombstones are removed once no mirror holds
+     * the key. Keys with operations in flight are skipped.
+     *
+     * @param fileKey the file key.
+     *
+     * @return {@code true} if any mirror is repaired; {@code false} otherwise.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    boolean repair(final FileKey fileKey)
+        throws IOException, FileBackException {
+
+        for (final ConcurrentMap<FileKey, CompletableFuture<Boolean>> chain
+             : chains) {
+            if (chain.containsKey(fileKey)) {
+                return false;
+            }
+        }
+
+        final FileKey[] keys = new FileKey[mirrors.size()];
+        final BasicFileAttributes[] attributes
+            = new BasicFileAttributes[mirrors.size()];
+        final BasicFileAttributes[] tombstones
+            = new BasicFileAttributes[mirrors.size()];
+        int newest = -1;
+        int buried = -1;
+        for (int i = 0; i < mirrors.size(); i++) {
+            keys[i] = mirrors.get(i).fileKey(fileKey.pathName());
+            attributes[i] = attributes(keys[i].leafPath());
+            tombstones[i] = attributes(tombstone(keys[i].leafPath()));
+            if (attributes[i] != null
+                && (newest == -1 || attributes[i].lastModifiedTime()
+                    .compareTo(attributes[newest].lastModifiedTime()) > 0)) {
+                newest = i;
+            }
+            if (tombstones[i] != null
+                && (buried == -1 || tombstones[i].lastModifiedTime()
+                    .compareTo(tombstones[buried].lastModifiedTime()) > 0)) {
+                buried = i;
+            }
+        }
+
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        final boolean repairing;
+        if (buried != -1 && (newest == -1 || tombstones[buried]
+            .lastModifiedTime().compareTo(
+                attributes[newest].lastModifiedTime()) >= 0)) {
+            // deleted; finish the delete on mirrors which missed it
+            for (int i = 0; i < mirrors.size(); i++) {
+                if (attributes[i] == null) {
+                    continue;
+                }
+                final LocalFileBack mirror = mirrors.get(i);
+                final FileKey mirrorKey = keys[i];
+                final BasicFileAttributes expected = attributes[i];
+                futures.add(submit(i, fileKey, () -> {
+                    if (!unchanged(mirrorKey.leafPath(), expected)) {
+                        return false; // written meanwhile
+                    }
+                    bury(mirror, mirrorKey);
+                    return true;
+                }));
+            }
+            repairing = !futures.isEmpty();
+            if (!repairing) {
+                purge(fileKey, keys, tombstones, futures);
+            }
+        } else {
+            if (newest == -1) {
+                return false;
+            }
+            final int source = newest;
+            final boolean[] diverged = diverged(keys, attributes, source);
+            repairing = contains(diverged);
+            if (!repairing) {
+                purge(fileKey, keys, tombstones, futures);
+            } else {
+                final Spool spool = spool(mirrors.get(source), keys[source]);
+                if (spool == null
+                    || !unchanged(keys[source].leafPath(),
+                                  attributes[source])) {
+                    ofNullable(spool).ifPresent(Spool::delete);
+                    return false; // changed meanwhile
+                }
+                for (int i = 0; i < mirrors.size(); i++) {
+                    if (!diverged[i]) {
+                        continue;
+                    }
+                    final LocalFileBack mirror = mirrors.get(i);
+                    final FileKey mirrorKey = keys[i];
+                    final BasicFileAttributes expected = attributes[i];
+                    futures.add(submit(i, fileKey, () -> {
+                        if (!unchanged(mirrorKey.leafPath(), expected)) {
+                            return false; // written meanwhile
+                        }
+                        return write(
+                            route(new DefaultFileContext(),
+                                  FileOperation.WRITE),
+                            mirror, mirrorKey, spool);
+                    }));
+                }
+                CompletableFuture.allOf(
+                    futures.toArray(new CompletableFuture<?>[futures.size()]))
+                    .whenComplete((r, t) -> spool.delete());
+            }
+        }
+
+        for (final CompletableFuture<Boolean> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                    "interrupted while repairing " + fileKey);
+            } catch (final ExecutionException ee) {
+                throw new FileBackException(
+                    "failed to repair " + fileKey, ee.getCause());
+            }
+        }
+        if (!repairing) {
+            return false;
+        }
+        repairs.increment();
+        logger.debug("repaired: {}", fileKey);
+
+        return true;
+    }
+
+
+    /**
+     * Finds mirrors whose copies differ from the copy of specified source.
+     *
+     * @param keys the keys resolved by each mirror.
+     * @param attributes the attributes of each copy; {@code null} if absent.
+     * @param source the index of the source mirror.
+     *
+     * @return flags of diverged mirrors.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean[] diverged(final FileKey[] keys,
+                               final BasicFileAttributes[] attributes,
+                               final int source)
+        throws IOException {
+
+        final boolean[] diverged = new boolean[keys.length];
+        Integer expected = null;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == source) {
+                continue;
+            }
+            if (attributes[i] == null
+                || attributes[i].size() != attributes[source].size()) {
+                diverged[i] = true;
+                continue;
+            }
+            try {
+                if (expected == null) {
+                    expected = checksum(keys[source].leafPath());
+                }
+                diverged[i] = checksum(keys[i].leafPath()) != expected;
+            } catch (final NoSuchFileException nsfe) {
+                diverged[i] = true; // re-checked before writing
+            }
+        }
+
+        return diverged;
+    }
+
+
+    private static boolean contains(final boolean[] flags) {
+
+        for (final boolean flag : flags) {
+            if (flag) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Removes tombstones of specified key which are no longer needed.
+     *
+     * @param fileKey the file key.
+     * @param keys the keys resolved by each mirror.
+     * @param tombstones the attributes of each tombstone; {@code null} if
+     * absent.
+     * @param futures a list to which futures of removals are added.
+     */
+    private void purge(final FileKey fileKey, final FileKey[] keys,
+                       final BasicFileAttributes[] tombstones,
+                       final List<CompletableFuture<Boolean>> futures) {
+
+        for (int i = 0; i < keys.length; i++) {
+            if (tombstones[i] == null) {
+                continue;
+            }
+            final Path tombstone = tombstone(keys[i].leafPath());
+            final BasicFileAttributes expected = tombstones[i];
+            futures.add(submit(i, fileKey, () -> {
+                if (unchanged(tombstone, expected)) {
+                    Files.deleteIfExists(tombstone);
+                }
+                return true;
+            }));
+        }
+    }
+
+
+    /**
+     * Returns whether no mirror has operations in flight.
+     *
+     * @return {@code true} if idle; {@code false} otherwise.
+     */
+    boolean idle() {
+
+        for (final ConcurrentMap<FileKey, CompletableFuture<Boolean>> chain
+             : chains) {
+            if (!chain.isEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Walks all mirrors and repairs divergent keys, including keys known only
+     * by their tombstones. Schedule this method periodically; it holds the
+     * path names of all keys in memory.
+     *
+     * @return the number of keys repaired.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    public long reconcile() throws IOException, FileBackException {
+
+        final Set<String> pathNames = new HashSet<>();
+        for (final LocalFileBack mirror : mirrors) {
+            final Path rootPath = mirror.rootPath();
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult visitFile(
+                    final Path file, final BasicFileAttributes attrs) {
+
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    final String name = file.getFileName().toString();
+                    if (name.startsWith(".") && name.endsWith(TOMBSTONE_SUFFIX)
+                        && name.length() > TOMBSTONE_SUFFIX.length() + 1) {
+                        pathNames.add(mirror.pathName(file.resolveSibling(
+                            name.substring(1, name.length()
+                                              - TOMBSTONE_SUFFIX.length()))));
+                    } else {
+                        pathNames.add(mirror.pathName(file));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+
+                @Override
+                public FileVisitResult visitFileFailed(
+                    final Path file, final IOException exc) {
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+            });
+        }
+
+        long repaired = 0L;
+        for (final String pathName : pathNames) {
+            final FileKey fileKey;
+            try {
+                fileKey = primary().fileKey(pathName);
+            } catch (final IllegalArgumentException iae) {
+                continue; // not an object
+            }
+            if (repair(fileKey)) {
+                repaired++;
+            }
+        }
+
+        return repaired;
+    }
+
+
+    /**
+     * Returns the mirror resolving keys and holding temporary files.
+     *
+     * @return the first mirror.
+     */
+    private LocalFileBack primary() {
+
+        return mirrors.get(0);
+    }
+
+
+    /**
+     * Returns the mirrors.
+     *
+     * @return an unmodifiable list of mirrors.
+     */
+    public List<LocalFileBack> mirrors() {
+
+        return mirrors;
+    }
+
+
+    /**
+     * Returns the number of hedged reads so far.
+     *
+     * @return the number of hedged reads.
+     */
+    public long hedges() {
+
+        return hedges.sum();
+    }
+
+
+    /**
+     * Returns the number of keys repaired so far.
+     *
+     * @return the number of keys repaired.
+     */
+    public long repairs() {
+
+        return repairs.sum();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final List<LocalFileBack> mirrors;
+
+
+    private final int quorum;
+
+
+    private final Executor executor;
+
+
+    private final List<ConcurrentMap<FileKey, CompletableFuture<Boolean>>>
+        chains;
+
+
+    private final LatencyHistogram[] latencies;
+
+
+    private final AtomicLongArray averages;
+
+
+    private final AtomicLongArray delays;
+
+
+    private final AtomicLong responses = new AtomicLong();
+
+
+    private final LongAdder hedges = new LongAdder();
+
+
+    private final LongAdder repairs = new LongAdder();
+
+
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Multipart uploads of files of a {@link LocalFileBack}. Each upload stages
+ * its parts in a single file under the root path; part {@code n} is written,
+ * concurrently with other parts, at position {@code (n - 1) * partSize} of
+ * the staging file. Completing an upload truncates the staging file to the
+ * end of the last part and moves it, without copying, to the leaf path of the
+ * target key so that readers see either the previous file or the whole new
+ * one.
+ * <p>
+ * The list of parts is kept in memory; staging files left by a previous
+ * instance are deleted on construction.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class MultipartUploads {
+
+
+    /**
+     * The name of the directory, under the root path, of staging files.
+     */
+    static final String STAGING_NAME = ".uploads";
+
+
+    /**
+     * An upload in progress.
+     */
+    private static final class Upload {
+
+
+        Upload(final FileContext fileContext, final Path targetLeafPath,
+               final Path staging, final FileChannel channel) {
+
+            super();
+
+            this.fileContext = fileContext;
+            this.targetLeafPath = targetLeafPath;
+            this.staging = staging;
+            this.channel = channel;
+        }
+
+
+        final FileContext fileContext;
+
+
+        final Path targetLeafPath;
+
+
+        final Path staging;
+
+
+        final FileChannel channel;
+
+
+        final NavigableMap<Integer, Long> parts
+            = new ConcurrentSkipListMap<>();
+
+
+        /**
+         * A lock shared by parts being written and held exclusively while
+         * completing or aborting.
+         */
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+        boolean finished;
+
+
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fileBack the file back to upload files to.
+     * @param partSize the number of bytes of each part but the last.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public MultipartUploads(final LocalFileBack fileBack, final long partSize)
+        throws IOException {
+
+        super();
+
+        if (fileBack == null) {
+            throw new NullPointerException("null fileBack");
+        }
+
+        if (partSize <= 0L) {
+            throw new IllegalArgumentException(
+                "partSize(" + partSize + ") <= 0");
+        }
+
+        this.fileBack = fileBack;
+        this.partSize = partSize;
+
+        stagingPath = fileBack.rootPath().resolve(STAGING_NAME);
+        Files.createDirectories(stagingPath);
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(stagingPath)) {
+            for (final Path stale : stream) {
+                logger.warn("deleting stale staging file: {}", stale);
+                Files.deleteIfExists(stale);
+            }
+        }
+    }
+
+
+    /**
+     * Initiates an upload of the target file part of specified file context.
+     * The file context is kept until the upload completes and is used for
+     * the namespace, the time to live and the path name consumer.
+     *
+     * @param fileContext the file context.
+     *
+     * @return the id of the upload.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if no target key located.
+     */
+    public String initiate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        final FileKey fileKey
+            = ShardedFileBack.targetFileKey(fileContext, fileBack);
+        if (fileKey == null) {
+            throw new FileBackException("no target key located");
+        }
+
+        while (true) {
+            final String uploadId = Long.toHexString(
+                ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+            final Path staging = stagingPath.resolve(uploadId);
+            if (uploads.containsKey(uploadId) || Files.exists(staging)) {
+                continue;
+            }
+            final FileChannel channel = FileChannel.open(
+                staging, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            uploads.put(uploadId, new Upload(
+                fileContext, fileKey.leafPath(), staging, channel));
+            logger.debug("upload initiated: {} -> {}", uploadId,
+                         fileKey.pathName());
+            return uploadId;
+        }
+    }
+
+
+    private Upload upload(final String uploadId) throws FileBackException {
+
+        if (uploadId == null) {
+            throw new NullPointerException("null uploadId");
+        }
+
+        final Upload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new FileBackException("no such upload: " + uploadId);
+        }
+
+        return upload;
+    }
+
+
+    /**
+     * Writes a part of specified upload. Parts may be written concurrently,
+     * in any order and more than once; the last one written wins. Every part
+     * but the last must be exactly {@link #partSize()} bytes long.
+     *
+     * @param uploadId the id of the upload.
+     * @param partNumber the part number starting at {@code 1}.
+     * @param source the channel to read the part from.
+     *
+     * @return the number of bytes written.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if no such upload or the part is larger than
+     * the part size.
+     */
+    public long part(final String uploadId, final int partNumber,
+                     final ReadableByteChannel source)
+        throws IOException, FileBackException {
+
+        if (partNumber <= 0) {
+            throw new IllegalArgumentException(
+                "partNumber(" + partNumber + ") <= 0");
+        }
+
+        if (source == null) {
+            throw new NullPointerException("null source");
+        }
+
+        final Upload upload = upload(uploadId);
+        final Lock lock = upload.lock.readLock();
+        lock.lock();
+        try {
+            if (upload.finished) {
+                throw new FileBackException("upload finished: " + uploadId);
+            }
+            final long offset = (partNumber - 1L) * partSize;
+            final ByteBuffer buffer = ByteBuffer.allocate(
+                (int) Math.min(partSize + 1L, 65536L));
+            long written = 0L;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                if (written + buffer.remaining() > partSize) {
+                    throw new FileBackException(
+                        "part(" + partNumber + ") > " + partSize);
+                }
+                while (buffer.hasRemaining()) {
+                    written += upload.channel.write(buffer, offset + written);
+                }
+                buffer.clear();
+            }
+            upload.parts.put(partNumber, written);
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Completes specified upload and publishes the file at the leaf path of
+     * its target key.
+     *
+     * @param uploadId the id of the upload.
+     *
+     * @return the size of the file published.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if no such upload or parts are missing or
+     * short.
+     */
+    public long complete(final String uploadId)
+        throws IOException, FileBackException {
+
+        final Upload upload = upload(uploadId);
+        final Lock lock = upload.lock.writeLock();
+        lock.lock();
+        try {
+            if (upload.finished) {
+                throw new FileBackException("upload finished: " + uploadId);
+            }
+            if (upload.parts.isEmpty()) {
+                throw new FileBackException("no parts: " + uploadId);
+            }
+            final int last = upload.parts.lastKey();
+            for (int partNumber = 1; partNumber <= last; partNumber++) {
+                final Long length = upload.parts.get(partNumber);
+                if (length == null) {
+                    throw new FileBackException(
+                        "missing part(" + partNumber + ")");
+                }
+                if (partNumber < last && length != partSize) {
+                    throw new FileBackException(
+                        "part(" + partNumber + ").length(" + length
+                        + ") != " + partSize);
+                }
+            }
+            final long size
+                = (last - 1L) * partSize + upload.parts.get(last);
+            upload.channel.truncate(size);
+            upload.finished = true;
+            uploads.remove(uploadId);
+            try {
+                return fileBack.publish(upload.fileContext, upload.staging,
+                                        upload.channel,
+                                        upload.targetLeafPath);
+            } finally {
+                Files.deleteIfExists(upload.staging);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Aborts specified upload and deletes its staging file.
+     *
+     * @param uploadId the id of the upload.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if no such upload.
+     */
+    public void abort(final String uploadId)
+        throws IOException, FileBackException {
+
+        final Upload upload = upload(uploadId);
+        final Lock lock = upload.lock.writeLock();
+        lock.lock();
+        try {
+            if (upload.finished) {
+                return;
+            }
+            upload.finished = true;
+            uploads.remove(uploadId);
+            upload.channel.close();
+            Files.deleteIfExists(upload.staging);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the numbers and lengths of parts written so far of specified
+     * upload.
+     *
+     * @param uploadId the id of the upload.
+     *
+     * @return an unmodifiable map of part numbers and lengths.
+     *
+     * @throws FileBackException if no such upload.
+     */
+    public Map<Integer, Long> parts(final String uploadId)
+        throws FileBackException {
+
+        return Collections.unmodifiableMap(upload(uploadId).parts);
+    }
+
+
+    /**
+     * Returns the ids of uploads in progress.
+     *
+     * @return an unmodifiable set of ids.
+     */
+    public Set<String> uploads() {
+
+        return Collections.unmodifiableSet(uploads.keySet());
+    }
+
+
+    /**
+     * Returns the number of bytes of each part but the last.
+     *
+     * @return the part size.
+     */
+    public long partSize() {
+
+        return partSize;
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final LocalFileBack fileBack;
+
+
+    private final long partSize;
+
+
+    private final Path stagingPath;
+
+
+    private final ConcurrentMap<String, Upload> uploads
+        = new ConcurrentHashMap<>();
+
+
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Warms files up, in background, so that subsequent reads are served from
+ * the page cache. Each file is read through, chunk by chunk, by a thread of
+ * the lowest priority and paced as {@value #PRIORITY_CLASS} class if a
+ * {@link QualityOfService} is attached. The number of bytes of files queued
+ * or being read is bounded; files which don't fit are skipped. Files warmed
+ * up are remembered until read so that the hit rate can be measured.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#prefetcher(Prefetcher)
+ */
+public class Prefetcher {
+
+
+    /**
+     * The name of the priority class prefetches are paced as unless the
+     * context supplies one.
+     */
+    public static final String PRIORITY_CLASS = "prefetch";
+
+
+    /**
+     * The number of bytes read at once.
+     */
+    static final int CHUNK_SIZE = 65536;
+
+
+    /**
+     * The maximum number of warmed files remembered.
+     */
+    static final int MAXIMUM_WARMED = 65536;
+
+
+    /**
+     * A batch of files submitted together.
+     */
+    public static final class Batch {
+
+
+        private Batch(final int size) {
+
+            super();
+
+            remaining = new CountDownLatch(size);
+        }
+
+
+        /**
+         * Cancels all files of this batch not warmed yet. A file being read
+         * stops at the next chunk.
+         */
+        public void cancel() {
+
+            cancelled = true;
+        }
+
+
+        /**
+         * Returns whether this batch is cancelled.
+         *
+         * @return {@code true} if cancelled; {@code false} otherwise.
+         */
+        public boolean cancelled() {
+
+            return cancelled;
+        }
+
+
+        /**
+         * Waits for all files of this batch to be warmed, skipped or
+         * cancelled.
+         *
+         * @param timeout the maximum time to wait.
+         * @param unit the unit of {@code timeout}.
+         *
+         * @return {@code true} if done; {@code false} if timed out.
+         *
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        public boolean await(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+
+            return remaining.await(timeout, unit);
+        }
+
+
+        /**
+         * Returns the number of files of this batch warmed so far.
+         *
+         * @return the number of files warmed.
+         */
+        public long prefetched() {
+
+            return prefetched.sum();
+        }
+
+
+        /**
+         * Returns the number of bytes of this batch warmed so far.
+         *
+         * @return the number of bytes warmed.
+         */
+        public long bytes() {
+
+            return bytes.sum();
+        }
+
+
+        private volatile boolean cancelled;
+
+
+        private final CountDownLatch remaining;
+
+
+        private final LongAdder prefetched = new LongAdder();
+
+
+        private final LongAdder bytes = new LongAdder();
+
+
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor the executor reading files.
+     * @param maximumBytes the maximum number of bytes of files queued or
+     * being read.
+     */
+    public Prefetcher(final Executor executor, final long maximumBytes) {
+
+        super();
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        if (maximumBytes <= 0L) {
+            throw new IllegalArgumentException(
+                "maximumBytes(" + maximumBytes + ") <= 0");
+        }
+
+        this.executor = executor;
+        this.maximumBytes = maximumBytes;
+    }
+
+
+    /**
+     * Submits specified files.
+     *
+     * @param leafPaths the files to warm up.
+     * @param priority the priority class to pace reads as; may be
+     * {@code null}.
+     *
+     * @return a batch of submitted files.
+     */
+    Batch submit(final List<Path> leafPaths,
+                 final QualityOfService.PriorityClass priority) {
+
+        final Batch batch = new Batch(leafPaths.size());
+        for (final Path leafPath : leafPaths) {
+            final long size;
+            try {
+                size = Files.size(leafPath);
+            } catch (final IOException ioe) {
+                skipped.increment();
+                batch.remaining.countDown();
+                continue;
+            }
+            if (!reserve(size)) {
+                logger.debug("skipped; outstanding bytes: {}", outstanding);
+                skipped.increment();
+                batch.remaining.countDown();
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        warm(batch, leafPath, priority);
+                    } finally {
+                        outstanding.addAndGet(-size);
+                        batch.remaining.countDown();
+                    }
+                });
+            } catch (final RejectedExecutionException ree) {
+                outstanding.addAndGet(-size);
+                skipped.increment();
+                batch.remaining.countDown();
+            }
+        }
+
+        return batch;
+    }
+
+
+    private boolean reserve(final long size) {
+
+        for (long current; (current = outstanding.get()) + size
+                                <= maximumBytes;) {
+            if (outstanding.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private void warm(final Batch batch, final Path leafPath,
+                      final QualityOfService.PriorityClass priority) {
+
+        if (batch.cancelled) {
+            cancelled.increment();
+            return;
+        }
+
+        final Thread thread = Thread.currentThread();
+        final int threadPriority = thread.getPriority();
+        thread.setPriority(Thread.MIN_PRIORITY);
+        try (FileChannel channel = FileChannel.open(
+            leafPath, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            long total = 0L;
+            for (int read; (read = channel.read(buffer)) != -1;) {
+                buffer.clear();
+                total += read;
+                if (priority != null) {
+                    priority.bytes(read);
+                }
+                if (batch.cancelled) {
+                    cancelled.increment();
+                    return;
+                }
+            }
+            synchronized (warmed) {
+                warmed.put(leafPath, Boolean.TRUE);
+            }
+            batch.prefetched.increment();
+            batch.bytes.add(total);
+            prefetched.increment();
+            bytes.add(total);
+        } catch (final NoSuchFileException nsfe) {
+            skipped.increment();
+        } catch (final IOException ioe) {
+            logger.warn("failed to prefetch " + leafPath, ioe);
+            skipped.increment();
+        } finally {
+            thread.setPriority(threadPriority);
+        }
+    }
+
+
+    /**
+     * Notifies that specified file is being read.
+     *
+     * @param leafPath the file.
+     */
+    void accessed(final Path leafPath) {
+
+        final Boolean removed;
+        synchronized (warmed) {
+            removed = warmed.remove(leafPath);
+        }
+        if (removed != null) {
+            hits.increment();
+        }
+    }
+
+
+    /**
+     * Returns the maximum number of bytes of files queued or being read.
+     *
+     * @return the maximum number of outstanding bytes.
+     */
+    public long maximumBytes() {
+
+        return maximumBytes;
+    }
+
+
+    /**
+     * Returns the number of bytes of files queued or being read.
+     *
+     * @return the number of outstanding bytes.
+     */
+    public long outstandingBytes() {
+
+        return outstanding.get();
+    }
+
+
+    /**
+     * Returns the number of files warmed so far.
+     *
+     * @return the number of files warmed.
+     */
+    public long prefetched() {
+
+        return prefetched.sum();
+    }
+
+
+    /**
+     * Returns the number of bytes warmed so far.
+     *
+     * @return the number of bytes warmed.
+     */
+    public long bytes() {
+
+        return bytes.sum();
+    }
+
+
+    /**
+     * Returns the number of warmed files read afterwards.
+     *
+     * @return the number of hits.
+     */
+    public long hits() {
+
+        return hits.sum();
+    }
+
+
+    /**
+     * Returns the ratio of warmed files read afterwards to all files warmed.
+     *
+     * @return the hit rate between {@code 0.0} and {@code 1.0}.
+     */
+    public double hitRate() {
+
+        final long prefetched = prefetched();
+
+        return prefetched == 0L ? 0.0d : (double) hits() / prefetched;
+    }
+
+
+    /**
+     * Returns the number of files skipped because they didn't fit in the
+     * bound of outstanding bytes, were missing or failed to read.
+     *
+     * @return the number of files skipped.
+     */
+    public long skipped() {
+
+        return skipped.sum();
+    }
+
+
+    /**
+     * Returns the number of files cancelled before or while being read.
+     *
+     * @return the number of files cancelled.
+     */
+    public long cancelled() {
+
+        return cancelled.sum();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final Executor executor;
+
+
+    private final long maximumBytes;
+
+
+    private final AtomicLong outstanding = new AtomicLong();
+
+
+    private final Map<Path, Boolean> warmed
+        = new LinkedHashMap<Path, Boolean>() {
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry(
+                final Map.Entry<Path, Boolean> eldest) {
+
+                return size() > MAXIMUM_WARMED;
+            }
+
+        };
+
+
+    private final LongAdder prefetched = new LongAdder();
+
+
+    private final LongAdder bytes = new LongAdder();
+
+
+    private final LongAdder hits = new LongAdder();
+
+
+    private final LongAdder skipped = new LongAdder();
+
+
+    private final LongAdder cancelled = new LongAdder();
+
+
+}
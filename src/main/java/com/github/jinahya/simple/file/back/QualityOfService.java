@@ -0,0 +1,511 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Rate limits of operations and transferred bytes per priority class. Each
+ * class may have its own limits of bytes and operations per second, and all
+ * classes share the total limit of bytes per second in proportion to the
+ * weights of classes active at the moment; a class alone may use the whole
+ * total. Bytes are paced chunk by chunk while being transferred so that a
+ * long transfer never bursts. Limits can be changed at any time.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#qos(QualityOfService)
+ * @see FileContext#priorityClassSupplier()
+ */
+public class QualityOfService {
+
+
+    /**
+     * The name of the class for contexts supplying no or an unknown class.
+     */
+    public static final String DEFAULT_CLASS = "default";
+
+
+    /**
+     * A value for no limit.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+
+    /**
+     * The duration, in nanoseconds, a class remains active after its last
+     * transfer.
+     */
+    private static final long ACTIVE_NANOS
+        = TimeUnit.MILLISECONDS.toNanos(100L);
+
+
+    private static final int MINIMUM_CHUNK_SIZE = 65536;
+
+
+    private static final int MAXIMUM_CHUNK_SIZE = 1048576;
+
+
+    /**
+     * A token bucket which lends tokens ahead; a caller taking more tokens
+     * than available waits for the deficit to be refilled. The bucket holds
+     * up to a tenth of a second worth of tokens.
+     */
+    static final class TokenBucket {
+
+
+        TokenBucket(final long rate) {
+
+            super();
+
+            rate(rate);
+        }
+
+
+        synchronized void rate(final long rate) {
+
+            if (rate <= 0L) {
+                throw new IllegalArgumentException("rate(" + rate + ") <= 0");
+            }
+
+            this.rate = rate;
+            capacity = rate == UNLIMITED ? 0.0d : Math.max(1.0d, rate / 10.0d);
+            tokens = Math.min(tokens, capacity);
+        }
+
+
+        long rate() {
+
+            return rate;
+        }
+
+
+        /**
+         * Takes specified number of tokens.
+         *
+         * @param n the number of tokens.
+         *
+         * @return the time, in nanoseconds, to wait for the tokens.
+         */
+        synchronized long take(final long n) {
+
+            if (rate == UNLIMITED) {
+                return 0L;
+            }
+
+            final long now = System.nanoTime();
+            tokens = Math.min(capacity,
+                              tokens + (now - refilled) * (rate / 1.0e9d));
+            refilled = now;
+            tokens -= n;
+
+            return tokens >= 0.0d ? 0L : (long) (-tokens / rate * 1.0e9d);
+        }
+
+
+        private volatile long rate;
+
+
+        private double capacity;
+
+
+        private double tokens;
+
+
+        private long refilled = System.nanoTime();
+
+
+    }
+
+
+    /**
+     * A priority class.
+     */
+    public final class PriorityClass {
+
+
+        private PriorityClass(final String name) {
+
+            super();
+
+            this.name = name;
+        }
+
+
+        /**
+         * Takes a token for an operation and waits, if required.
+         *
+         * @throws InterruptedIOException if interrupted while waiting.
+         */
+        void operation() throws InterruptedIOException {
+
+            operations.increment();
+            sleep(operationBucket.take(1L));
+        }
+
+
+        /**
+         * Takes tokens for specified number of bytes and waits, if required.
+         *
+         * @param bytes the number of bytes.
+         *
+         * @throws InterruptedIOException if interrupted while waiting.
+         */
+        void bytes(final long bytes) throws InterruptedIOException {
+
+            if (bytes <= 0L) {
+                return;
+            }
+
+            transferred.add(bytes);
+            final long now = System.nanoTime();
+            active = now;
+            long wait = byteBucket.take(bytes);
+            final long total = totalBytesPerSecond;
+            if (total != UNLIMITED) {
+                shareBucket.rate(Math.max(
+                    1L, (long) ((double) total * weight / activeWeight(now))));
+                wait = Math.max(wait, shareBucket.take(bytes));
+            }
+            sleep(wait);
+        }
+
+
+        private void sleep(final long nanos) throws InterruptedIOException {
+
+            if (nanos <= 0L) {
+                return;
+            }
+
+            waited.add(nanos);
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                    "interrupted while pacing " + name);
+            }
+        }
+
+
+        /**
+         * Returns the number of bytes transferred between pacing.
+         *
+         * @return the chunk size.
+         */
+        int chunkSize() {
+
+            long rate = byteBucket.rate();
+            if (totalBytesPerSecond != UNLIMITED) {
+                rate = Math.min(rate, totalBytesPerSecond);
+            }
+
+            return (int) Math.max(MINIMUM_CHUNK_SIZE,
+                                  Math.min(MAXIMUM_CHUNK_SIZE, rate / 20L));
+        }
+
+
+        /**
+         * Wraps specified channel so that bytes read are paced.
+         *
+         * @param channel the channel to wrap.
+         *
+         * @return a paced channel.
+         */
+        ReadableByteChannel pace(final ReadableByteChannel channel) {
+
+            return new ReadableByteChannel() {
+
+                @Override
+                public int read(final ByteBuffer dst) throws IOException {
+
+                    final int read = channel.read(dst);
+                    bytes(read);
+                    return read;
+                }
+
+
+                @Override
+                public boolean isOpen() {
+
+                    return channel.isOpen();
+                }
+
+
+                @Override
+                public void close() throws IOException {
+
+                    channel.close();
+                }
+
+            };
+        }
+
+
+        /**
+         * Wraps specified channel so that bytes written are paced.
+         *
+         * @param channel the channel to wrap.
+         *
+         * @return a paced channel.
+         */
+        WritableByteChannel pace(final WritableByteChannel channel) {
+
+            return new WritableByteChannel() {
+
+                @Override
+                public int write(final ByteBuffer src) throws IOException {
+
+                    final int written = channel.write(src);
+                    bytes(written);
+                    return written;
+                }
+
+
+                @Override
+                public boolean isOpen() {
+
+                    return channel.isOpen();
+                }
+
+
+                @Override
+                public void close() throws IOException {
+
+                    channel.close();
+                }
+
+            };
+        }
+
+
+        /**
+         * Returns the name of this class.
+         *
+         * @return the name.
+         */
+        public String name() {
+
+            return name;
+        }
+
+
+        /**
+         * Returns the weight of this class.
+         *
+         * @return the weight.
+         */
+        public int weight() {
+
+            return weight;
+        }
+
+
+        /**
+         * Returns the number of operations so far.
+         *
+         * @return the number of operations.
+         */
+        public long operations() {
+
+            return operations.sum();
+        }
+
+
+        /**
+         * Returns the number of bytes transferred so far.
+         *
+         * @return the number of bytes transferred.
+         */
+        public long transferred() {
+
+            return transferred.sum();
+        }
+
+
+        /**
+         * Returns the total time, in nanoseconds, spent on waiting for
+         * tokens.
+         *
+         * @return the total waiting time in nanoseconds.
+         */
+        public long waited() {
+
+            return waited.sum();
+        }
+
+
+        private final String name;
+
+
+        private volatile int weight = 1;
+
+
+        private volatile long active;
+
+
+        private final TokenBucket byteBucket = new TokenBucket(UNLIMITED);
+
+
+        private final TokenBucket operationBucket
+            = new TokenBucket(UNLIMITED);
+
+
+        private final TokenBucket shareBucket = new TokenBucket(UNLIMITED);
+
+
+        private final LongAdder operations = new LongAdder();
+
+
+        private final LongAdder transferred = new LongAdder();
+
+
+        private final LongAdder waited = new LongAdder();
+
+
+    }
+
+
+    /**
+     * Creates a new instance with specified total limit.
+     *
+     * @param totalBytesPerSecond the total number of bytes per second shared
+     * by all classes; {@link #UNLIMITED} for no limit.
+     */
+    public QualityOfService(final long totalBytesPerSecond) {
+
+        super();
+
+        totalBytesPerSecond(totalBytesPerSecond);
+        classes.put(DEFAULT_CLASS, new PriorityClass(DEFAULT_CLASS));
+    }
+
+
+    private long activeWeight(final long now) {
+
+        long weight = 0L;
+        for (final PriorityClass priorityClass : classes.values()) {
+            if (now - priorityClass.active <= ACTIVE_NANOS) {
+                weight += priorityClass.weight;
+            }
+        }
+
+        return Math.max(1L, weight);
+    }
+
+
+    /**
+     * Changes the total limit shared by all classes.
+     *
+     * @param totalBytesPerSecond the total number of bytes per second;
+     * {@link #UNLIMITED} for no limit.
+     */
+    public void totalBytesPerSecond(final long totalBytesPerSecond) {
+
+        if (totalBytesPerSecond <= 0L) {
+            throw new IllegalArgumentException(
+                "totalBytesPerSecond(" + totalBytesPerSecond + ") <= 0");
+        }
+
+        this.totalBytesPerSecond = totalBytesPerSecond;
+    }
+
+
+    /**
+     * Adds or changes a priority class.
+     *
+     * @param name the name of the class.
+     * @param weight the weight of the class in sharing the total limit.
+     * @param bytesPerSecond the limit of bytes per second of the class;
+     * {@link #UNLIMITED} for no limit.
+     * @param operationsPerSecond the limit of operations per second of the
+     * class; {@link #UNLIMITED} for no limit.
+     *
+     * @return the class.
+     */
+    public PriorityClass configure(final String name, final int weight,
+                                   final long bytesPerSecond,
+                                   final long operationsPerSecond) {
+
+        if (name == null) {
+            throw new NullPointerException("null name");
+        }
+
+        if (weight <= 0) {
+            throw new IllegalArgumentException(
+                "weight(" + weight + ") <= 0");
+        }
+
+        final PriorityClass priorityClass
+            = classes.computeIfAbsent(name, PriorityClass::new);
+        priorityClass.weight = weight;
+        priorityClass.byteBucket.rate(bytesPerSecond);
+        priorityClass.operationBucket.rate(operationsPerSecond);
+
+        return priorityClass;
+    }
+
+
+    /**
+     * Returns the class of specified name or the default class if no such
+     * class configured.
+     *
+     * @param name the name of the class; may be {@code null}.
+     *
+     * @return the class.
+     */
+    public PriorityClass priorityClass(final String name) {
+
+        final PriorityClass priorityClass
+            = name == null ? null : classes.get(name);
+
+        return priorityClass == null
+               ? classes.get(DEFAULT_CLASS) : priorityClass;
+    }
+
+
+    /**
+     * Returns the names of configured classes.
+     *
+     * @return an unmodifiable set of names.
+     */
+    public Set<String> names() {
+
+        return Collections.unmodifiableSet(classes.keySet());
+    }
+
+
+    private volatile long totalBytesPerSecond;
+
+
+    private final ConcurrentMap<String, PriorityClass> classes
+        = new ConcurrentHashMap<>();
+
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+/**
+ * An exception thrown when a write is rejected because a quota is reached.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see CapacityAccount
+ */
+public class QuotaExceededException extends FileBackException {
+
+
+    private static final long serialVersionUID = 6413297458107361329L;
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param namespace the namespace whose quota is reached; {@code null} for
+     * the root.
+     * @param message the detail message.
+     */
+    public QuotaExceededException(final String namespace,
+                                  final String message) {
+
+        super(message);
+
+        this.namespace = namespace;
+    }
+
+
+    /**
+     * Returns the namespace whose quota is reached.
+     *
+     * @return the namespace or {@code null} if the quota of the root is
+     * reached.
+     */
+    public String namespace() {
+
+        return namespace;
+    }
+
+
+    private final String namespace;
+
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Coalesces concurrent reads of a same file. The first caller reads the whole
+ * file into memory and every caller arrived while the read is in flight
+ * shares the bytes instead of reading the file on its own. Files larger than
+ * the limit are never coalesced.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#coalescer(ReadCoalescer)
+ */
+public class ReadCoalescer {
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maximumBytes the maximum number of bytes of files to coalesce.
+     */
+    public ReadCoalescer(final int maximumBytes) {
+
+        super();
+
+        if (maximumBytes < 0) {
+            throw new IllegalArgumentException(
+                "maximumBytes(" + maximumBytes + ") < 0");
+        }
+
+        this.maximumBytes = maximumBytes;
+    }
+
+
+    /**
+     * Reads all bytes of specified file or joins a read of the same file
+     * already in flight. The returned array is shared among callers and must
+     * not be modified.
+     *
+     * @param leafPath the path of the file.
+     *
+     * @return all bytes of the file or {@code null} if the file is larger than
+     * the limit.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    byte[] read(final Path leafPath) throws IOException {
+
+        if (Files.size(leafPath) > maximumBytes) {
+            return null;
+        }
+
+        final CompletableFuture<byte[]> flight = new CompletableFuture<>();
+        final CompletableFuture<byte[]> existing
+            = flights.putIfAbsent(leafPath, flight);
+        if (existing != null) {
+            joined.increment();
+            try {
+                return existing.get();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                    "interrupted while waiting for " + leafPath);
+            } catch (final ExecutionException ee) {
+                throw new IOException(
+                    "failed to read " + leafPath, ee.getCause());
+            }
+        }
+
+        led.increment();
+        final byte[] bytes;
+        try {
+            bytes = load(leafPath);
+        } catch (final Throwable t) {
+            flights.remove(leafPath, flight);
+            flight.completeExceptionally(t);
+            throw t;
+        }
+        // callers arriving from now on start a new flight
+        flights.remove(leafPath, flight);
+        flight.complete(bytes);
+
+        return bytes;
+    }
+
+
+    private byte[] load(final Path leafPath) throws IOException {
+
+        try (FileChannel channel
+            = FileChannel.open(leafPath, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > maximumBytes) {
+                return null;
+            }
+            final byte[] bytes = new byte[(int) size];
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    // truncated while reading
+                    return Arrays.copyOf(bytes, buffer.position());
+                }
+            }
+            return bytes;
+        }
+    }
+
+
+    /**
+     * Returns the maximum number of bytes of files to coalesce.
+     *
+     * @return the maximum number of bytes.
+     */
+    public int maximumBytes() {
+
+        return maximumBytes;
+    }
+
+
+    /**
+     * Returns the number of reads actually performed so far.
+     *
+     * @return the number of reads performed.
+     */
+    public long led() {
+
+        return led.sum();
+    }
+
+
+    /**
+     * Returns the number of reads served by joining a read in flight.
+     *
+     * @return the number of reads joined.
+     */
+    public long joined() {
+
+        return joined.sum();
+    }
+
+
+    private final int maximumBytes;
+
+
+    private final ConcurrentMap<Path, CompletableFuture<byte[]>> flights
+        = new ConcurrentHashMap<>();
+
+
+    private final LongAdder led = new LongAdder();
+
+
+    private final LongAdder joined = new LongAdder();
+
+
+}
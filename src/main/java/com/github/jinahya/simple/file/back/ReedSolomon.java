@@ -0,0 +1,427 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.util.stream.IntStream;
+
+
+/**
+ * A systematic Reed-Solomon codec over GF(2<sup>8</sup>). The first
+ * {@code dataShards} shards carry the data as is and the following
+ * {@code parityShards} shards carry parities so that any {@code dataShards}
+ * shards of the total reconstruct the rest. Multiplications are done through
+ * a full multiplication table so that inner loops are a single table lookup
+ * per byte. Large ranges are split into slices processed in parallel.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public final class ReedSolomon {
+
+
+    /**
+     * The generator polynomial of the field;
+     * x<sup>8</sup> + x<sup>4</sup> + x<sup>3</sup> + x<sup>2</sup> + 1.
+     */
+    static final int POLYNOMIAL = 0x11D;
+
+
+    /**
+     * The minimum number of bytes processed by a single task.
+     */
+    static final int SLICE_SIZE = 32768;
+
+
+    private static final byte[] EXP = new byte[510];
+
+
+    private static final int[] LOG = new int[256];
+
+
+    /**
+     * The multiplication table; {@code MUL[a][b]} is {@code a * b}.
+     */
+    static final byte[][] MUL = new byte[256][256];
+
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = (byte) x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0) {
+                x ^= POLYNOMIAL;
+            }
+        }
+        System.arraycopy(EXP, 0, EXP, 255, 255);
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b++) {
+                MUL[a][b] = EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+
+    static int multiply(final int a, final int b) {
+
+        return MUL[a][b] & 0xFF;
+    }
+
+
+    static int inverse(final int a) {
+
+        if (a == 0) {
+            throw new ArithmeticException("zero has no inverse");
+        }
+
+        return EXP[255 - LOG[a]] & 0xFF;
+    }
+
+
+    static int power(final int a, final int n) {
+
+        if (n == 0) {
+            return 1;
+        }
+
+        if (a == 0) {
+            return 0;
+        }
+
+        return EXP[(LOG[a] * n) % 255] & 0xFF;
+    }
+
+
+    /**
+     * Inverts specified square matrix.
+     *
+     * @param matrix the matrix.
+     *
+     * @return the inverse.
+     *
+     * @throws ArithmeticException if the matrix is singular.
+     */
+    static int[][] invert(final int[][] matrix) {
+
+        final int n = matrix.length;
+        final int[][] work = new int[n][n * 2];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(matrix[r], 0, work[r], 0, n);
+            work[r][n + r] = 1;
+        }
+
+        for (int c = 0; c < n; c++) {
+            int pivot = c;
+            while (pivot < n && work[pivot][c] == 0) {
+                pivot++;
+            }
+            if (pivot == n) {
+                throw new ArithmeticException("singular matrix");
+            }
+            final int[] swap = work[c];
+            work[c] = work[pivot];
+            work[pivot] = swap;
+            final int scale = inverse(work[c][c]);
+            for (int i = 0; i < n * 2; i++) {
+                work[c][i] = multiply(work[c][i], scale);
+            }
+            for (int r = 0; r < n; r++) {
+                if (r == c || work[r][c] == 0) {
+                    continue;
+                }
+                final int factor = work[r][c];
+                for (int i = 0; i < n * 2; i++) {
+                    work[r][i] ^= multiply(factor, work[c][i]);
+                }
+            }
+        }
+
+        final int[][] inverse = new int[n][n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(work[r], n, inverse[r], 0, n);
+        }
+
+        return inverse;
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param dataShards the number of data shards.
+     * @param parityShards the number of parity shards.
+     */
+    public ReedSolomon(final int dataShards, final int parityShards) {
+
+        super();
+
+        if (dataShards <= 0) {
+            throw new IllegalArgumentException(
+                "dataShards(" + dataShards + ") <= 0");
+        }
+
+        if (parityShards <= 0) {
+            throw new IllegalArgumentException(
+                "parityShards(" + parityShards + ") <= 0");
+        }
+
+        if (dataShards + parityShards > 256) {
+            throw new IllegalArgumentException(
+                "dataShards(" + dataShards + ") + parityShards("
+                + parityShards + ") > 256");
+        }
+
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+
+        // a vandermonde matrix whose top square is made an identity
+        final int totalShards = dataShards + parityShards;
+        final int[][] vandermonde = new int[totalShards][dataShards];
+        for (int r = 0; r < totalShards; r++) {
+            for (int c = 0; c < dataShards; c++) {
+                vandermonde[r][c] = power(r, c);
+            }
+        }
+        final int[][] top = new int[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        final int[][] inverse = invert(top);
+        matrix = new int[totalShards][dataShards];
+        for (int r = 0; r < totalShards; r++) {
+            for (int c = 0; c < dataShards; c++) {
+                int value = 0;
+                for (int i = 0; i < dataShards; i++) {
+                    value ^= multiply(vandermonde[r][i], inverse[i][c]);
+                }
+                matrix[r][c] = value;
+            }
+        }
+    }
+
+
+    /**
+     * Computes parity shards from data shards.
+     *
+     * @param shards all shards; the first {@link #dataShards()} are read and
+     * the rest are written.
+     * @param offset the offset in each shard.
+     * @param length the number of bytes in each shard.
+     */
+    public void encode(final byte[][] shards, final int offset,
+                       final int length) {
+
+        check(shards, offset, length);
+
+        final int[][] rows = new int[parityShards][];
+        final byte[][] inputs = new byte[dataShards][];
+        final byte[][] outputs = new byte[parityShards][];
+        System.arraycopy(matrix, dataShards, rows, 0, parityShards);
+        System.arraycopy(shards, 0, inputs, 0, dataShards);
+        System.arraycopy(shards, dataShards, outputs, 0, parityShards);
+        multiply(rows, inputs, outputs, offset, length);
+    }
+
+
+    /**
+     * Reconstructs absent shards from present ones.
+     *
+     * @param shards all shards; absent ones are written.
+     * @param present flags for present shards.
+     * @param offset the offset in each shard.
+     * @param length the number of bytes in each shard.
+     *
+     * @throws IllegalArgumentException if fewer than {@link #dataShards()}
+     * shards are present.
+     */
+    public void decode(final byte[][] shards, final boolean[] present,
+                       final int offset, final int length) {
+
+        decodeData(shards, present, offset, length);
+
+        int absent = 0;
+        for (int i = dataShards; i < present.length; i++) {
+            if (!present[i]) {
+                absent++;
+            }
+        }
+        if (absent > 0) {
+            final int[][] rows = new int[absent][];
+            final byte[][] outputs = new byte[absent][];
+            for (int i = dataShards, j = 0; i < present.length; i++) {
+                if (!present[i]) {
+                    rows[j] = matrix[i];
+                    outputs[j++] = shards[i];
+                }
+            }
+            final byte[][] inputs = new byte[dataShards][];
+            System.arraycopy(shards, 0, inputs, 0, dataShards);
+            multiply(rows, inputs, outputs, offset, length);
+        }
+    }
+
+
+    /**
+     * Reconstructs absent data shards from present ones. Absent parity shards
+     * are left untouched.
+     *
+     * @param shards all shards; absent data ones are written.
+     * @param present flags for present shards.
+     * @param offset the offset in each shard.
+     * @param length the number of bytes in each shard.
+     *
+     * @throws IllegalArgumentException if fewer than {@link #dataShards()}
+     * shards are present.
+     */
+    public void decodeData(final byte[][] shards, final boolean[] present,
+                           final int offset, final int length) {
+
+        check(shards, offset, length);
+
+        final int[] indices = new int[dataShards];
+        int count = 0;
+        for (int i = 0; i < present.length && count < dataShards; i++) {
+            if (present[i]) {
+                indices[count++] = i;
+            }
+        }
+        if (count < dataShards) {
+            throw new IllegalArgumentException(
+                "present(" + count + ") < dataShards(" + dataShards + ")");
+        }
+
+        boolean dataAbsent = false;
+        for (int i = 0; i < dataShards; i++) {
+            dataAbsent |= !present[i];
+        }
+        if (dataAbsent) {
+            final int[][] sub = new int[dataShards][];
+            final byte[][] inputs = new byte[dataShards][];
+            for (int i = 0; i < dataShards; i++) {
+                sub[i] = matrix[indices[i]];
+                inputs[i] = shards[indices[i]];
+            }
+            final int[][] inverse = invert(sub);
+            int absent = 0;
+            for (int i = 0; i < dataShards; i++) {
+                if (!present[i]) {
+                    absent++;
+                }
+            }
+            final int[][] rows = new int[absent][];
+            final byte[][] outputs = new byte[absent][];
+            for (int i = 0, j = 0; i < dataShards; i++) {
+                if (!present[i]) {
+                    rows[j] = inverse[i];
+                    outputs[j++] = shards[i];
+                }
+            }
+            multiply(rows, inputs, outputs, offset, length);
+        }
+    }
+
+
+    private void check(final byte[][] shards, final int offset,
+                       final int length) {
+
+        if (shards.length != dataShards + parityShards) {
+            throw new IllegalArgumentException(
+                "shards.length(" + shards.length + ") != "
+                + (dataShards + parityShards));
+        }
+
+        for (final byte[] shard : shards) {
+            if (offset < 0 || length < 0 || offset + length > shard.length) {
+                throw new IndexOutOfBoundsException(
+                    "offset(" + offset + ") + length(" + length
+                    + ") > shard.length(" + shard.length + ")");
+            }
+        }
+    }
+
+
+    private static void multiply(final int[][] rows, final byte[][] inputs,
+                                 final byte[][] outputs, final int offset,
+                                 final int length) {
+
+        final int slices = (length + SLICE_SIZE - 1) / SLICE_SIZE;
+        if (slices <= 1) {
+            slice(rows, inputs, outputs, offset, offset + length);
+            return;
+        }
+
+        IntStream.range(0, slices).parallel().forEach(s -> {
+            final int from = offset + s * SLICE_SIZE;
+            final int to = Math.min(from + SLICE_SIZE, offset + length);
+            slice(rows, inputs, outputs, from, to);
+        });
+    }
+
+
+    private static void slice(final int[][] rows, final byte[][] inputs,
+                              final byte[][] outputs, final int from,
+                              final int to) {
+
+        for (int r = 0; r < rows.length; r++) {
+            final byte[] output = outputs[r];
+            final byte[] table0 = MUL[rows[r][0]];
+            final byte[] input0 = inputs[0];
+            for (int i = from; i < to; i++) {
+                output[i] = table0[input0[i] & 0xFF];
+            }
+            for (int c = 1; c < inputs.length; c++) {
+                final byte[] table = MUL[rows[r][c]];
+                final byte[] input = inputs[c];
+                for (int i = from; i < to; i++) {
+                    output[i] ^= table[input[i] & 0xFF];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns the number of data shards.
+     *
+     * @return the number of data shards.
+     */
+    public int dataShards() {
+
+        return dataShards;
+    }
+
+
+    /**
+     * Returns the number of parity shards.
+     *
+     * @return the number of parity shards.
+     */
+    public int parityShards() {
+
+        return parityShards;
+    }
+
+
+    private final int dataShards;
+
+
+    private final int parityShards;
+
+
+    private final int[][] matrix;
+
+
+}
@@ -0,0 +1,932 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import static java.util.Optional.ofNullable;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+
+/**
+ * A {@link FileContext} implementation which keeps each property in its own
+ * field. Typed accessors read and write fields directly, without any map,
+ * {@link Optional} or cast, and the number of copied bytes and the size of
+ * the target file can be consumed as primitive values via
+ * {@link #sourceCopiedLongConsumer(LongConsumer)},
+ * {@link #targetCopiedLongConsumer(LongConsumer)} and
+ * {@link #targetSizeLongConsumer(LongConsumer)}. Instances can be
+ * {@link #reset() reset} and reused, e.g., from a pool, across requests.
+ * Instances are not thread-safe.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ReusableFileContext implements FileContext {
+
+
+    /**
+     * Removes all properties so that this instance can be reused.
+     *
+     * @return this instance.
+     */
+    public ReusableFileContext reset() {
+
+        fileOperationSupplier = null;
+        pathNameConsumer = null;
+        pathNameSupplier = null;
+        sourceChannelConsumer = null;
+        targetChannelConsumer = null;
+        sourceChannelSupplier = null;
+        targetChannelSupplier = null;
+        sourceCopiedConsumer = null;
+        sourceCopiedLongConsumer = null;
+        targetCopiedConsumer = null;
+        targetCopiedLongConsumer = null;
+        sourceKeySupplier = null;
+        targetKeySupplier = null;
+        sourceFileKeySupplier = null;
+        targetFileKeySupplier = null;
+        sourceObjectConsumer = null;
+        sourceAttributesConsumer = null;
+        targetObjectConsumer = null;
+        timeToLiveSupplier = null;
+        namespaceSupplier = null;
+        priorityClassSupplier = null;
+        sourceKeysSupplier = null;
+        targetSizeConsumer = null;
+        targetSizeLongConsumer = null;
+        forceSupplier = null;
+        verifySupplier = null;
+
+        return this;
+    }
+
+
+    @Override
+    public Optional<Object> property(final PropertyKey propertyKey) {
+
+        if (propertyKey == null) {
+            throw new NullPointerException("null propertyKey");
+        }
+
+        switch (propertyKey) {
+            case FILE_OPERATION_SUPPLIER:
+                return ofNullable(fileOperationSupplier());
+            case PATH_NAME_CONSUMER:
+                return ofNullable(pathNameConsumer());
+            case PATH_NAME_SUPPLIER:
+                return ofNullable(pathNameSupplier());
+            case SOURCE_CHANNEL_CONSUMER:
+                return ofNullable(sourceChannelConsumer());
+            case TARGET_CHANNEL_CONSUMER:
+                return ofNullable(targetChannelConsumer());
+            case SOURCE_CHANNEL_SUPPLIER:
+                return ofNullable(sourceChannelSupplier());
+            case TARGET_CHANNEL_SUPPLIER:
+                return ofNullable(targetChannelSupplier());
+            case SOURCE_COPIED_CONSUMER:
+                return ofNullable(sourceCopiedConsumer());
+            case TARGET_COPIED_CONSUMER:
+                return ofNullable(targetCopiedConsumer());
+            case SOURCE_KEY_SUPPLIER:
+                return ofNullable(sourceKeySupplier());
+            case TARGET_KEY_SUPPLIER:
+                return ofNullable(targetKeySupplier());
+            case SOURCE_FILE_KEY_SUPPLIER:
+                return ofNullable(sourceFileKeySupplier());
+            case TARGET_FILE_KEY_SUPPLIER:
+                return ofNullable(targetFileKeySupplier());
+            case SOURCE_OBJECT_CONSUMER:
+                return ofNullable(sourceObjectConsumer());
+            case SOURCE_ATTRIBUTES_CONSUMER:
+                return ofNullable(sourceAttributesConsumer());
+            case TARGET_OBJECT_CONSUMER:
+                return ofNullable(targetObjectConsumer());
+            case TIME_TO_LIVE_SUPPLIER:
+                return ofNullable(timeToLiveSupplier());
+            case NAMESPACE_SUPPLIER:
+                return ofNullable(namespaceSupplier());
+            case PRIORITY_CLASS_SUPPLIER:
+                return ofNullable(priorityClassSupplier());
+            case SOURCE_KEYS_SUPPLIER:
+                return ofNullable(sourceKeysSupplier());
+            case TARGET_SIZE_CONSUMER:
+                return ofNullable(targetSizeConsumer());
+            case FORCE_SUPPLIER:
+                return ofNullable(forceSupplier());
+            case VERIFY_SUPPLIER:
+                return ofNullable(verifySupplier());
+            default:
+                throw new IllegalArgumentException(
+                    "unknown property key: " + propertyKey);
+        }
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<Object> property(final PropertyKey propertyKey,
+                                     final Object propertyValue) {
+
+        if (propertyKey == null) {
+            throw new NullPointerException("null propertyKey");
+        }
+
+        switch (propertyKey) {
+            case FILE_OPERATION_SUPPLIER:
+                return ofNullable(fileOperationSupplier(
+                    (Supplier<FileOperation>) propertyValue));
+            case PATH_NAME_CONSUMER:
+                return ofNullable(pathNameConsumer(
+                    (Consumer<String>) propertyValue));
+            case PATH_NAME_SUPPLIER:
+                return ofNullable(pathNameSupplier(
+                    (Supplier<String>) propertyValue));
+            case SOURCE_CHANNEL_CONSUMER:
+                return ofNullable(sourceChannelConsumer(
+                    (Consumer<ReadableByteChannel>) propertyValue));
+            case TARGET_CHANNEL_CONSUMER:
+                return ofNullable(targetChannelConsumer(
+                    (Consumer<WritableByteChannel>) propertyValue));
+            case SOURCE_CHANNEL_SUPPLIER:
+                return ofNullable(sourceChannelSupplier(
+                    (Supplier<ReadableByteChannel>) propertyValue));
+            case TARGET_CHANNEL_SUPPLIER:
+                return ofNullable(targetChannelSupplier(
+                    (Supplier<WritableByteChannel>) propertyValue));
+            case SOURCE_COPIED_CONSUMER:
+                return ofNullable(sourceCopiedConsumer(
+                    (Consumer<Long>) propertyValue));
+            case TARGET_COPIED_CONSUMER:
+                return ofNullable(targetCopiedConsumer(
+                    (Consumer<Long>) propertyValue));
+            case SOURCE_KEY_SUPPLIER:
+                return ofNullable(sourceKeySupplier(
+                    (Supplier<ByteBuffer>) propertyValue));
+            case TARGET_KEY_SUPPLIER:
+                return ofNullable(targetKeySupplier(
+                    (Supplier<ByteBuffer>) propertyValue));
+            case SOURCE_FILE_KEY_SUPPLIER:
+                return ofNullable(sourceFileKeySupplier(
+                    (Supplier<FileKey>) propertyValue));
+            case TARGET_FILE_KEY_SUPPLIER:
+                return ofNullable(targetFileKeySupplier(
+                    (Supplier<FileKey>) propertyValue));
+            case SOURCE_OBJECT_CONSUMER:
+                return ofNullable(sourceObjectConsumer(
+                    (Consumer<Object>) propertyValue));
+            case SOURCE_ATTRIBUTES_CONSUMER:
+                return ofNullable(sourceAttributesConsumer(
+                    (Consumer<BasicFileAttributes>) propertyValue));
+            case TARGET_OBJECT_CONSUMER:
+                return ofNullable(targetObjectConsumer(
+                    (Consumer<Object>) propertyValue));
+            case TIME_TO_LIVE_SUPPLIER:
+                return ofNullable(timeToLiveSupplier(
+                    (Supplier<Duration>) propertyValue));
+            case NAMESPACE_SUPPLIER:
+                return ofNullable(namespaceSupplier(
+                    (Supplier<String>) propertyValue));
+            case PRIORITY_CLASS_SUPPLIER:
+                return ofNullable(priorityClassSupplier(
+                    (Supplier<String>) propertyValue));
+            case SOURCE_KEYS_SUPPLIER:
+                return ofNullable(sourceKeysSupplier(
+                    (Supplier<Collection<ByteBuffer>>) propertyValue));
+            case TARGET_SIZE_CONSUMER:
+                return ofNullable(targetSizeConsumer(
+                    (Consumer<Long>) propertyValue));
+            case FORCE_SUPPLIER:
+                return ofNullable(forceSupplier(
+                    (Supplier<Boolean>) propertyValue));
+            case VERIFY_SUPPLIER:
+                return ofNullable(verifySupplier(
+                    (Supplier<Boolean>) propertyValue));
+            default:
+                throw new IllegalArgumentException(
+                    "unknown property key: " + propertyKey);
+        }
+    }
+
+
+    @Override
+    public Supplier<FileOperation> fileOperationSupplier() {
+
+        return fileOperationSupplier;
+    }
+
+
+    @Override
+    public Supplier<FileOperation> fileOperationSupplier(
+        final Supplier<FileOperation> fileOperationSupplier) {
+
+        final Supplier<FileOperation> previous = this.fileOperationSupplier;
+
+        this.fileOperationSupplier = fileOperationSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Consumer<String> pathNameConsumer() {
+
+        return pathNameConsumer;
+    }
+
+
+    @Override
+    public Consumer<String> pathNameConsumer(
+        final Consumer<String> pathNameConsumer) {
+
+        final Consumer<String> previous = this.pathNameConsumer;
+
+        this.pathNameConsumer = pathNameConsumer;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<String> pathNameSupplier() {
+
+        return pathNameSupplier;
+    }
+
+
+    @Override
+    public Supplier<String> pathNameSupplier(
+        final Supplier<String> pathNameSupplier) {
+
+        final Supplier<String> previous = this.pathNameSupplier;
+
+        this.pathNameSupplier = pathNameSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Consumer<ReadableByteChannel> sourceChannelConsumer() {
+
+        return sourceChannelConsumer;
+    }
+
+
+    @Override
+    public Consumer<ReadableByteChannel> sourceChannelConsumer(
+        final Consumer<ReadableByteChannel> sourceChannelConsumer) {
+
+        final Consumer<ReadableByteChannel> previous
+            = this.sourceChannelConsumer;
+
+        this.sourceChannelConsumer = sourceChannelConsumer;
+
+        return previous;
+    }
+
+
+    @Override
+    public Consumer<WritableByteChannel> targetChannelConsumer() {
+
+        return targetChannelConsumer;
+    }
+
+
+    @Override
+    public Consumer<WritableByteChannel> targetChannelConsumer(
+        final Consumer<WritableByteChannel> targetChannelConsumer) {
+
+        final Consumer<WritableByteChannel> previous
+            = this.targetChannelConsumer;
+
+        this.targetChannelConsumer = targetChannelConsumer;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<ReadableByteChannel> sourceChannelSupplier() {
+
+        return sourceChannelSupplier;
+    }
+
+
+    @Override
+    public Supplier<ReadableByteChannel> sourceChannelSupplier(
+        final Supplier<ReadableByteChannel> sourceChannelSupplier) {
+
+        final Supplier<ReadableByteChannel> previous
+            = this.sourceChannelSupplier;
+
+        this.sourceChannelSupplier = sourceChannelSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<WritableByteChannel> targetChannelSupplier() {
+
+        return targetChannelSupplier;
+    }
+
+
+    @Override
+    public Supplier<WritableByteChannel> targetChannelSupplier(
+        final Supplier<WritableByteChannel> targetChannelSupplier) {
+
+        final Supplier<WritableByteChannel> previous
+            = this.targetChannelSupplier;
+
+        this.targetChannelSupplier = targetChannelSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Consumer<Long> sourceCopiedConsumer() {
+
+        if (sourceCopiedConsumer == null && sourceCopiedLongConsumer != null) {
+            return sourceCopiedLongConsumer::accept;
+        }
+
+        return sourceCopiedConsumer;
+    }
+
+
+    @Override
+    public Consumer<Long> sourceCopiedConsumer(
+        final Consumer<Long> sourceCopiedConsumer) {
+
+        final Consumer<Long> previous = sourceCopiedConsumer();
+
+        this.sourceCopiedConsumer = sourceCopiedConsumer;
+        sourceCopiedLongConsumer = null;
+
+        return previous;
+    }
+
+
+    /**
+     * Returns the primitive consumer of the number of bytes copied from
+     * the source file part.
+     *
+     * @return the primitive consumer or {@code null} if not set.
+     */
+    public LongConsumer sourceCopiedLongConsumer() {
+
+        if (sourceCopiedLongConsumer == null && sourceCopiedConsumer != null) {
+            return sourceCopiedConsumer::accept;
+        }
+
+        return sourceCopiedLongConsumer;
+    }
+
+
+    /**
+     * Sets a primitive consumer of the number of bytes copied from the
+     * source file part. This replaces any value mapped to
+     * {@link PropertyKey#SOURCE_COPIED_CONSUMER}.
+     *
+     * @param sourceCopiedLongConsumer the new value; {@code null} for removal.
+     *
+     * @return the previous value; possibly {@code null}.
+     */
+    public LongConsumer sourceCopiedLongConsumer(
+        final LongConsumer sourceCopiedLongConsumer) {
+
+        final LongConsumer previous = sourceCopiedLongConsumer();
+
+        this.sourceCopiedLongConsumer = sourceCopiedLongConsumer;
+        sourceCopiedConsumer = null;
+
+        return previous;
+    }
+
+
+    /**
+     * Passes specified number of copied bytes to whichever consumer is set
+     * for {@link PropertyKey#SOURCE_COPIED_CONSUMER} without boxing it
+     * unless the consumer is a {@code Consumer<Long>}.
+     *
+     * @param copied the number of copied bytes.
+     */
+    void sourceCopied(final long copied) {
+
+        if (sourceCopiedLongConsumer != null) {
+            sourceCopiedLongConsumer.accept(copied);
+        } else if (sourceCopiedConsumer != null) {
+            sourceCopiedConsumer.accept(copied);
+        }
+    }
+
+
+    @Override
+    public Consumer<Long> targetCopiedConsumer() {
+
+        if (targetCopiedConsumer == null && targetCopiedLongConsumer != null) {
+            return targetCopiedLongConsumer::accept;
+        }
+
+        return targetCopiedConsumer;
+    }
+
+
+    @Override
+    public Consumer<Long> targetCopiedConsumer(
+        final Consumer<Long> targetCopiedConsumer) {
+
+        final Consumer<Long> previous = targetCopiedConsumer();
+
+        this.targetCopiedConsumer = targetCopiedConsumer;
+        targetCopiedLongConsumer = null;
+
+        return previous;
+    }
+
+
+    /**
+     * Returns the primitive consumer of the number of bytes copied to
+     * the target file part.
+     *
+     * @return the primitive consumer or {@code null} if not set.
+     */
+    public LongConsumer targetCopiedLongConsumer() {
+
+        if (targetCopiedLongConsumer == null && targetCopiedConsumer != null) {
+            return targetCopiedConsumer::accept;
+        }
+
+        return targetCopiedLongConsumer;
+    }
+
+
+    /**
+     * Sets a primitive consumer of the number of bytes copied to the
+     * target file part. This replaces any value mapped to
+     * {@link PropertyKey#TARGET_COPIED_CONSUMER}.
+     *
+     * @param targetCopiedLongConsumer the new value; {@code null} for removal.
+     *
+     * @return the previous value; possibly {@code null}.
+     */
+    public LongConsumer targetCopiedLongConsumer(
+        final LongConsumer targetCopiedLongConsumer) {
+
+        final LongConsumer previous = targetCopiedLongConsumer();
+
+        this.targetCopiedLongConsumer = targetCopiedLongConsumer;
+        targetCopiedConsumer = null;
+
+        return previous;
+    }
+
+
+    /**
+     * Passes specified number of copied bytes to whichever consumer is set
+     * for {@link PropertyKey#TARGET_COPIED_CONSUMER} without boxing it
+     * unless the consumer is a {@code Consumer<Long>}.
+     *
+     * @param copied the number of copied bytes.
+     */
+    void targetCopied(final long copied) {
+
+        if (targetCopiedLongConsumer != null) {
+            targetCopiedLongConsumer.accept(copied);
+        } else if (targetCopiedConsumer != null) {
+            targetCopiedConsumer.accept(copied);
+        }
+    }
+
+
+    @Override
+    public Supplier<ByteBuffer> sourceKeySupplier() {
+
+        return sourceKeySupplier;
+    }
+
+
+    @Override
+    public Supplier<ByteBuffer> sourceKeySupplier(
+        final Supplier<ByteBuffer> sourceKeySupplier) {
+
+        final Supplier<ByteBuffer> previous = this.sourceKeySupplier;
+
+        this.sourceKeySupplier = sourceKeySupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<ByteBuffer> targetKeySupplier() {
+
+        return targetKeySupplier;
+    }
+
+
+    @Override
+    public Supplier<ByteBuffer> targetKeySupplier(
+        final Supplier<ByteBuffer> targetKeySupplier) {
+
+        final Supplier<ByteBuffer> previous = this.targetKeySupplier;
+
+        this.targetKeySupplier = targetKeySupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<FileKey> sourceFileKeySupplier() {
+
+        return sourceFileKeySupplier;
+    }
+
+
+    @Override
+    public Supplier<FileKey> sourceFileKeySupplier(
+        final Supplier<FileKey> sourceFileKeySupplier) {
+
+        final Supplier<FileKey> previous = this.sourceFileKeySupplier;
+
+        this.sourceFileKeySupplier = sourceFileKeySupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<FileKey> targetFileKeySupplier() {
+
+        return targetFileKeySupplier;
+    }
+
+
+    @Override
+    public Supplier<FileKey> targetFileKeySupplier(
+        final Supplier<FileKey> targetFileKeySupplier) {
+
+        final Supplier<FileKey> previous = this.targetFileKeySupplier;
+
+        this.targetFileKeySupplier = targetFileKeySupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Consumer<Object> sourceObjectConsumer() {
+
+        return sourceObjectConsumer;
+    }
+
+
+    @Override
+    public Consumer<Object> sourceObjectConsumer(
+        final Consumer<Object> sourceObjectConsumer) {
+
+        final Consumer<Object> previous = this.sourceObjectConsumer;
+
+        this.sourceObjectConsumer = sourceObjectConsumer;
+
+        return previous;
+    }
+
+
+    @Override
+    public Consumer<BasicFileAttributes> sourceAttributesConsumer() {
+
+        return sourceAttributesConsumer;
+    }
+
+
+    @Override
+    public Consumer<BasicFileAttributes> sourceAttributesConsumer(
+        final Consumer<BasicFileAttributes> sourceAttributesConsumer) {
+
+        final Consumer<BasicFileAttributes> previous
+            = this.sourceAttributesConsumer;
+
+        this.sourceAttributesConsumer = sourceAttributesConsumer;
+
+        return previous;
+    }
+
+
+    @Override
+    public Consumer<Object> targetObjectConsumer() {
+
+        return targetObjectConsumer;
+    }
+
+
+    @Override
+    public Consumer<Object> targetObjectConsumer(
+        final Consumer<Object> targetObjectConsumer) {
+
+        final Consumer<Object> previous = this.targetObjectConsumer;
+
+        this.targetObjectConsumer = targetObjectConsumer;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<Duration> timeToLiveSupplier() {
+
+        return timeToLiveSupplier;
+    }
+
+
+    @Override
+    public Supplier<Duration> timeToLiveSupplier(
+        final Supplier<Duration> timeToLiveSupplier) {
+
+        final Supplier<Duration> previous = this.timeToLiveSupplier;
+
+        this.timeToLiveSupplier = timeToLiveSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<String> namespaceSupplier() {
+
+        return namespaceSupplier;
+    }
+
+
+    @Override
+    public Supplier<String> namespaceSupplier(
+        final Supplier<String> namespaceSupplier) {
+
+        final Supplier<String> previous = this.namespaceSupplier;
+
+        this.namespaceSupplier = namespaceSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<String> priorityClassSupplier() {
+
+        return priorityClassSupplier;
+    }
+
+
+    @Override
+    public Supplier<String> priorityClassSupplier(
+        final Supplier<String> priorityClassSupplier) {
+
+        final Supplier<String> previous = this.priorityClassSupplier;
+
+        this.priorityClassSupplier = priorityClassSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<Collection<ByteBuffer>> sourceKeysSupplier() {
+
+        return sourceKeysSupplier;
+    }
+
+
+    @Override
+    public Supplier<Collection<ByteBuffer>> sourceKeysSupplier(
+        final Supplier<Collection<ByteBuffer>> sourceKeysSupplier) {
+
+        final Supplier<Collection<ByteBuffer>> previous
+            = this.sourceKeysSupplier;
+
+        this.sourceKeysSupplier = sourceKeysSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Consumer<Long> targetSizeConsumer() {
+
+        if (targetSizeConsumer == null && targetSizeLongConsumer != null) {
+            return targetSizeLongConsumer::accept;
+        }
+
+        return targetSizeConsumer;
+    }
+
+
+    @Override
+    public Consumer<Long> targetSizeConsumer(
+        final Consumer<Long> targetSizeConsumer) {
+
+        final Consumer<Long> previous = targetSizeConsumer();
+
+        this.targetSizeConsumer = targetSizeConsumer;
+        targetSizeLongConsumer = null;
+
+        return previous;
+    }
+
+
+    /**
+     * Returns the primitive consumer of the size of the target file.
+     *
+     * @return the primitive consumer or {@code null} if not set.
+     */
+    public LongConsumer targetSizeLongConsumer() {
+
+        if (targetSizeLongConsumer == null && targetSizeConsumer != null) {
+            return targetSizeConsumer::accept;
+        }
+
+        return targetSizeLongConsumer;
+    }
+
+
+    /**
+     * Sets a primitive consumer of the size of the target file. This replaces
+     * any value mapped to {@link PropertyKey#TARGET_SIZE_CONSUMER}.
+     *
+     * @param targetSizeLongConsumer the new value; {@code null} for removal.
+     *
+     * @return the previous value; possibly {@code null}.
+     */
+    public LongConsumer targetSizeLongConsumer(
+        final LongConsumer targetSizeLongConsumer) {
+
+        final LongConsumer previous = targetSizeLongConsumer();
+
+        this.targetSizeLongConsumer = targetSizeLongConsumer;
+        targetSizeConsumer = null;
+
+        return previous;
+    }
+
+
+    /**
+     * Passes specified size to whichever consumer is set for
+     * {@link PropertyKey#TARGET_SIZE_CONSUMER} without boxing it unless the
+     * consumer is a {@code Consumer<Long>}.
+     *
+     * @param size the size of the target file.
+     */
+    void targetSize(final long size) {
+
+        if (targetSizeLongConsumer != null) {
+            targetSizeLongConsumer.accept(size);
+        } else if (targetSizeConsumer != null) {
+            targetSizeConsumer.accept(size);
+        }
+    }
+
+
+    @Override
+    public Supplier<Boolean> forceSupplier() {
+
+        return forceSupplier;
+    }
+
+
+    @Override
+    public Supplier<Boolean> forceSupplier(
+        final Supplier<Boolean> forceSupplier) {
+
+        final Supplier<Boolean> previous = this.forceSupplier;
+
+        this.forceSupplier = forceSupplier;
+
+        return previous;
+    }
+
+
+    @Override
+    public Supplier<Boolean> verifySupplier() {
+
+        return verifySupplier;
+    }
+
+
+    @Override
+    public Supplier<Boolean> verifySupplier(
+        final Supplier<Boolean> verifySupplier) {
+
+        final Supplier<Boolean> previous = this.verifySupplier;
+
+        this.verifySupplier = verifySupplier;
+
+        return previous;
+    }
+
+
+    private Supplier<FileOperation> fileOperationSupplier;
+
+
+    private Consumer<String> pathNameConsumer;
+
+
+    private Supplier<String> pathNameSupplier;
+
+
+    private Consumer<ReadableByteChannel> sourceChannelConsumer;
+
+
+    private Consumer<WritableByteChannel> targetChannelConsumer;
+
+
+    private Supplier<ReadableByteChannel> sourceChannelSupplier;
+
+
+    private Supplier<WritableByteChannel> targetChannelSupplier;
+
+
+    private Consumer<Long> sourceCopiedConsumer;
+
+
+    private LongConsumer sourceCopiedLongConsumer;
+
+
+    private Consumer<Long> targetCopiedConsumer;
+
+
+    private LongConsumer targetCopiedLongConsumer;
+
+
+    private Supplier<ByteBuffer> sourceKeySupplier;
+
+
+    private Supplier<ByteBuffer> targetKeySupplier;
+
+
+    private Supplier<FileKey> sourceFileKeySupplier;
+
+
+    private Supplier<FileKey> targetFileKeySupplier;
+
+
+    private Consumer<Object> sourceObjectConsumer;
+
+
+    private Consumer<BasicFileAttributes> sourceAttributesConsumer;
+
+
+    private Consumer<Object> targetObjectConsumer;
+
+
+    private Supplier<Duration> timeToLiveSupplier;
+
+
+    private Supplier<String> namespaceSupplier;
+
+
+    private Supplier<String> priorityClassSupplier;
+
+
+    private Supplier<Collection<ByteBuffer>> sourceKeysSupplier;
+
+
+    private Consumer<Long> targetSizeConsumer;
+
+
+    private LongConsumer targetSizeLongConsumer;
+
+
+    private Supplier<Boolean> forceSupplier;
+
+
+    private Supplier<Boolean> verifySupplier;
+
+
+}
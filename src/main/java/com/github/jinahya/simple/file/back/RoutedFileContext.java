@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import static java.util.Optional.ofNullable;
+
+
+/**
+ * A file context overriding some properties of another file context. File
+ * backs distributing operations among other file backs use this class to
+ * pass resolved file keys, operations or channels without modifying the
+ * caller's context. Properties of copied bytes consumers are never overridden
+ * so that file backs may notify the delegate directly, unless the context is
+ * detached; results of a detached context are its own so that a file back
+ * may check them before reporting to the caller.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+final class RoutedFileContext implements FileContext {
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param delegate the file context to delegate not overridden properties.
+     */
+    RoutedFileContext(final FileContext delegate) {
+
+        this(delegate, false);
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param delegate the file context to delegate not overridden properties.
+     * @param detached {@code true} for keeping copied bytes and target size
+     * consumers from the delegate; {@code false} otherwise.
+     */
+    RoutedFileContext(final FileContext delegate, final boolean detached) {
+
+        super();
+
+        if (delegate == null) {
+            throw new NullPointerException("null delegate");
+        }
+
+        this.delegate = delegate;
+        this.detached = detached;
+    }
+
+
+    private static boolean result(final PropertyKey propertyKey) {
+
+        switch (propertyKey) {
+            case SOURCE_COPIED_CONSUMER:
+            case TARGET_COPIED_CONSUMER:
+            case TARGET_SIZE_CONSUMER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
+    @Override
+    public Optional<Object> property(final PropertyKey propertyKey) {
+
+        if (overrides.containsKey(propertyKey)
+            || (detached && result(propertyKey))) {
+            return ofNullable(overrides.get(propertyKey));
+        }
+
+        return delegate.property(propertyKey);
+    }
+
+
+    @Override
+    public Optional<Object> property(final PropertyKey propertyKey,
+                                     final Object propertyValue) {
+
+        if (overrides.containsKey(propertyKey)
+            || (detached && result(propertyKey))) {
+            return ofNullable(overrides.put(propertyKey, propertyValue));
+        }
+
+        return delegate.property(propertyKey, propertyValue);
+    }
+
+
+    /**
+     * Overrides specified property with specified value.
+     *
+     * @param propertyKey the property key; must not be one of copied bytes
+     * consumers unless detached.
+     * @param propertyValue the value; {@code null} for hiding the delegate's.
+     *
+     * @return this instance.
+     */
+    RoutedFileContext override(final PropertyKey propertyKey,
+                               final Object propertyValue) {
+
+        if (!detached) {
+            switch (propertyKey) {
+                case SOURCE_COPIED_CONSUMER:
+                case TARGET_COPIED_CONSUMER:
+                    throw new IllegalArgumentException(
+                        "not overridable: " + propertyKey);
+                default:
+                    break;
+            }
+        }
+
+        overrides.put(propertyKey, propertyValue);
+
+        return this;
+    }
+
+
+    /**
+     * The file context to delegate.
+     */
+    final FileContext delegate;
+
+
+    /**
+     * A flag for keeping results from the delegate.
+     */
+    final boolean detached;
+
+
+    private final Map<PropertyKey, Object> overrides
+        = new EnumMap<>(PropertyKey.class);
+
+
+}
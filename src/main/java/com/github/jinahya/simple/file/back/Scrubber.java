@@ -0,0 +1,609 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * Verifies stored checksums of file parts in background so that rarely read
+ * file parts don't rot unnoticed. Each step visits the next batch of leaf
+ * paths in the sorted order of the tree, which keeps reads of a directory
+ * together, verifies them by {@code parallelism} workers each of which reads
+ * a contiguous run of the batch and paces all reads within the bytes per
+ * second budget. The cursor, the path name last visited, is persisted in a
+ * file named {@value #CURSOR_NAME} in the root path after each step so that
+ * a pass resumes across restarts.
+ * <p>
+ * A mismatch found while reading without the lock of the file part is
+ * confirmed while holding the lock. Corrupted file parts are reported and,
+ * if configured, moved into the directory named {@value #QUARANTINE_NAME}
+ * in the root path. File parts without valid checksums are skipped.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#checksums(boolean)
+ */
+public class Scrubber implements AutoCloseable {
+
+
+    /**
+     * The name of the cursor file in the root path.
+     */
+    public static final String CURSOR_NAME = ".scrub";
+
+
+    /**
+     * The name of the quarantine directory in the root path.
+     */
+    public static final String QUARANTINE_NAME = ".quarantine";
+
+
+    /**
+     * Creates a new instance. The cursor persisted in the root path of the
+     * file back, if any, is read.
+     *
+     * @param fileBack the file back whose file parts are verified.
+     * @param executor the executor for running workers.
+     * @param parallelism the maximum number of concurrent workers.
+     * @param bytesPerSecond the maximum number of bytes read per second;
+     * {@link QualityOfService#UNLIMITED} for no limit.
+     * @param quarantine {@code true} for moving corrupted file parts into
+     * the quarantine directory; {@code false} for reporting only.
+     *
+     * @throws IOException if an I/O error occurs while reading the cursor.
+     */
+    public Scrubber(final LocalFileBack fileBack, final Executor executor,
+                    final int parallelism, final long bytesPerSecond,
+                    final boolean quarantine)
+        throws IOException {
+
+        super();
+
+        if (fileBack == null) {
+            throw new NullPointerException("null fileBack");
+        }
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(
+                "parallelism(" + parallelism + ") <= 0");
+        }
+
+        if (bytesPerSecond <= 0L) {
+            throw new IllegalArgumentException(
+                "bytesPerSecond(" + bytesPerSecond + ") <= 0");
+        }
+
+        this.fileBack = fileBack;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.quarantine = quarantine;
+        bucket = new QualityOfService.TokenBucket(bytesPerSecond);
+        cursorPath = fileBack.rootPath().resolve(CURSOR_NAME);
+        quarantinePath = fileBack.rootPath().resolve(QUARANTINE_NAME);
+
+        load();
+    }
+
+
+    private void load() throws IOException {
+
+        try (InputStream stream = Files.newInputStream(cursorPath)) {
+            final DataInputStream input
+                = new DataInputStream(new BufferedInputStream(stream));
+            passes = input.readLong();
+            final String pathName = input.readUTF();
+            cursor = pathName.isEmpty() ? null : pathName;
+        } catch (final NoSuchFileException nsfe) {
+            return;
+        }
+        logger.debug("cursor loaded: {}, passes: {}", cursor, passes);
+    }
+
+
+    /**
+     * Writes the cursor, atomically, into the cursor file.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void persist() throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeLong(passes);
+        output.writeUTF(cursor == null ? "" : cursor);
+        output.flush();
+
+        final Path persisting = cursorPath.resolveSibling(CURSOR_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+            persisting, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(persisting, cursorPath, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    /**
+     * Collects leaf paths after specified cursor in sorted order. Names
+     * starting with {@code .}, which are not file parts, are skipped.
+     *
+     * @param directory the directory to list.
+     * @param cursor the tokens of the cursor.
+     * @param depth the depth of {@code directory} from the root path.
+     * @param after {@code true} if {@code directory} is after the cursor;
+     * {@code false} if it is on the cursor.
+     * @param leafPaths the list to add leaf paths to.
+     * @param limit the maximum number of leaf paths to collect.
+     *
+     * @return {@code false} if the limit reached; {@code true} otherwise.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private static boolean collect(final Path directory, final String[] cursor,
+                                   final int depth, final boolean after,
+                                   final List<Path> leafPaths,
+                                   final int limit)
+        throws IOException {
+
+        final List<Path> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream
+            = Files.newDirectoryStream(directory)) {
+            for (final Path child : stream) {
+                if (!child.getFileName().toString().startsWith(".")) {
+                    children.add(child);
+                }
+            }
+        } catch (final NoSuchFileException nsfe) {
+            return true; // pruned
+        }
+        Collections.sort(children);
+
+        for (final Path child : children) {
+            boolean following = after || depth >= cursor.length;
+            if (!following) {
+                final int compared
+                    = child.getFileName().toString().compareTo(cursor[depth]);
+                if (compared < 0) {
+                    continue; // visited
+                }
+                following = compared > 0;
+            }
+            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                if (!collect(child, cursor, depth + 1, following, leafPaths,
+                             limit)) {
+                    return false;
+                }
+                continue;
+            }
+            if (following && Files.isRegularFile(
+                child, LinkOption.NOFOLLOW_LINKS)) {
+                leafPaths.add(child);
+                if (leafPaths.size() >= limit) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Verifies up to specified number of file parts following the cursor and
+     * moves the cursor. A pass ends when no file parts follow the cursor; the
+     * cursor is reset so that the next step starts a new pass.
+     *
+     * @param limit the maximum number of file parts to verify.
+     *
+     * @return the number of file parts visited; {@code 0} if the pass ended.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized int scrub(final int limit) throws IOException {
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit(" + limit + ") <= 0");
+        }
+
+        final List<Path> leafPaths = new ArrayList<>();
+        collect(fileBack.rootPath(),
+                cursor == null ? new String[0] : cursor.split("/"), 0,
+                cursor == null, leafPaths, limit);
+
+        if (leafPaths.isEmpty()) {
+            logger.debug("pass {} ended", passes);
+            passes++;
+            cursor = null;
+            persist();
+            return 0;
+        }
+
+        // contiguous runs keep each worker reading a directory in order
+        final int workers = Math.min(parallelism, leafPaths.size());
+        final int run = (leafPaths.size() + workers - 1) / workers;
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = run; i < leafPaths.size(); i += run) {
+            final List<Path> runs
+                = leafPaths.subList(i, Math.min(i + run, leafPaths.size()));
+            futures.add(CompletableFuture.runAsync(
+                () -> runs.forEach(this::verify), executor));
+        }
+        try {
+            leafPaths.subList(0, run).forEach(this::verify);
+            CompletableFuture.allOf(futures.toArray(
+                new CompletableFuture<?>[futures.size()])).join();
+        } catch (final UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } catch (final CompletionException ce) {
+            final Throwable cause = ce.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw ce;
+        }
+
+        cursor = fileBack.pathName(leafPaths.get(leafPaths.size() - 1));
+        persist();
+
+        return leafPaths.size();
+    }
+
+
+    private void verify(final Path leafPath) {
+
+        try {
+            final Integer expected = FileChecksums.load(leafPath);
+            if (expected == null) {
+                skipped.increment();
+                return;
+            }
+            final int actual;
+            try (FileChannel channel
+                = FileChannel.open(leafPath, StandardOpenOption.READ)) {
+                actual = FileChecksums.checksum(pace(channel));
+            }
+            if (actual == expected) {
+                verified.increment();
+                return;
+            }
+            // confirm; the file may have been rewritten while being read
+            final String pathName = fileBack.pathName(leafPath);
+            if (quarantine) {
+                Files.createDirectories(quarantinePath);
+                if (!fileBack.quarantine(leafPath, quarantinePath.resolve(
+                    pathName.replace('/', '-')))) {
+                    skipped.increment();
+                    return;
+                }
+            } else if (!fileBack.corrupted(leafPath)) {
+                skipped.increment();
+                return;
+            }
+            logger.error("corrupted file part found: {}", pathName);
+            corruptions.add(pathName);
+        } catch (final NoSuchFileException nsfe) {
+            skipped.increment(); // deleted while being visited
+        } catch (final InterruptedIOException iioe) {
+            throw new UncheckedIOException(iioe);
+        } catch (final IOException ioe) {
+            logger.error("failed to verify " + leafPath, ioe);
+            errors.increment();
+        }
+    }
+
+
+    private ReadableByteChannel pace(final ReadableByteChannel channel) {
+
+        return new ReadableByteChannel() {
+
+
+            @Override
+            public int read(final ByteBuffer dst) throws IOException {
+
+                final int read = channel.read(dst);
+                if (read > 0) {
+                    bytes.add(read);
+                    final long nanos = bucket.take(read);
+                    if (nanos > 0L) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(nanos);
+                        } catch (final InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException(
+                                "interrupted while scrubbing");
+                        }
+                    }
+                }
+                return read;
+            }
+
+
+            @Override
+            public boolean isOpen() {
+
+                return channel.isOpen();
+            }
+
+
+            @Override
+            public void close() throws IOException {
+
+                channel.close();
+            }
+
+
+        };
+    }
+
+
+    /**
+     * Starts scrubbing in background with specified scheduler. Each step
+     * verifies up to {@code batch} file parts and the next step starts
+     * {@code delay} after the previous one ends. A step which finishes a pass
+     * is followed by the next pass.
+     *
+     * @param scheduler the scheduler for running steps.
+     * @param delay the delay between steps.
+     * @param unit the unit of {@code delay}.
+     * @param batch the maximum number of file parts verified by a step.
+     */
+    public synchronized void start(final ScheduledExecutorService scheduler,
+                                   final long delay, final TimeUnit unit,
+                                   final int batch) {
+
+        if (scheduler == null) {
+            throw new NullPointerException("null scheduler");
+        }
+
+        if (unit == null) {
+            throw new NullPointerException("null unit");
+        }
+
+        if (delay <= 0L) {
+            throw new IllegalArgumentException("delay(" + delay + ") <= 0");
+        }
+
+        if (batch <= 0) {
+            throw new IllegalArgumentException("batch(" + batch + ") <= 0");
+        }
+
+        if (future != null) {
+            throw new IllegalStateException("already started");
+        }
+
+        future = scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                scrub(batch);
+            } catch (final IOException ioe) {
+                logger.error("failed to scrub", ioe);
+                errors.increment();
+            }
+        }, delay, delay, unit);
+    }
+
+
+    /**
+     * Stops scrubbing in background. The cursor is kept in the cursor file
+     * for the next instance.
+     */
+    @Override
+    public synchronized void close() {
+
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+
+    /**
+     * Returns the path name last visited in the current pass.
+     *
+     * @return the cursor or {@code null} if the current pass hasn't visited
+     * any file part yet.
+     */
+    public synchronized String cursor() {
+
+        return cursor;
+    }
+
+
+    /**
+     * Returns an estimate, between {@code 0.0} and {@code 1.0}, of the
+     * progress of the current pass. Path names are hex digits of digests so
+     * the leading token of the cursor is uniformly distributed.
+     *
+     * @return an estimate of the progress.
+     */
+    public double progress() {
+
+        final String cursor = cursor();
+        if (cursor == null) {
+            return 0.0d;
+        }
+
+        final int index = cursor.indexOf('/');
+        final String token = index == -1 ? cursor : cursor.substring(0, index);
+        try {
+            return (Long.parseLong(token, 16) + 1.0d)
+                   / Math.pow(16.0d, token.length());
+        } catch (final NumberFormatException nfe) {
+            return 0.0d;
+        }
+    }
+
+
+    /**
+     * Returns the number of passes completed.
+     *
+     * @return the number of passes.
+     */
+    public synchronized long passes() {
+
+        return passes;
+    }
+
+
+    /**
+     * Returns the number of file parts verified so far.
+     *
+     * @return the number of file parts verified.
+     */
+    public long verified() {
+
+        return verified.sum();
+    }
+
+
+    /**
+     * Returns the number of file parts skipped, so far, because they have no
+     * valid checksums or have been deleted or rewritten while being verified.
+     *
+     * @return the number of file parts skipped.
+     */
+    public long skipped() {
+
+        return skipped.sum();
+    }
+
+
+    /**
+     * Returns the number of bytes read so far.
+     *
+     * @return the number of bytes read.
+     */
+    public long bytes() {
+
+        return bytes.sum();
+    }
+
+
+    /**
+     * Returns the number of failures, other than mismatches, so far.
+     *
+     * @return the number of errors.
+     */
+    public long errors() {
+
+        return errors.sum();
+    }
+
+
+    /**
+     * Returns the path names of corrupted file parts found so far.
+     *
+     * @return a set of path names.
+     */
+    public Set<String> corruptions() {
+
+        return Collections.unmodifiableSet(new HashSet<>(corruptions));
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final LocalFileBack fileBack;
+
+
+    private final Executor executor;
+
+
+    private final int parallelism;
+
+
+    private final boolean quarantine;
+
+
+    private final QualityOfService.TokenBucket bucket;
+
+
+    private final Path cursorPath;
+
+
+    private final Path quarantinePath;
+
+
+    private String cursor;
+
+
+    private long passes;
+
+
+    private ScheduledFuture<?> future;
+
+
+    private final LongAdder verified = new LongAdder();
+
+
+    private final LongAdder skipped = new LongAdder();
+
+
+    private final LongAdder bytes = new LongAdder();
+
+
+    private final LongAdder errors = new LongAdder();
+
+
+    private final Set<String> corruptions = ConcurrentHashMap.newKeySet();
+
+
+}
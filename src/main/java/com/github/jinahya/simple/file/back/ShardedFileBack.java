@@ -0,0 +1,843 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileContext.PropertyKey;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Optional.ofNullable;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A file back distributing files among multiple {@link LocalFileBack}s, each
+ * of which is supposed to be on a different storage device. Each key is placed
+ * on a file back by consistent hashing of the digest which also names the leaf
+ * path, so that adding a file back moves only the keys the new file back
+ * takes over.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ShardedFileBack implements FileBack {
+
+
+    /**
+     * The number of points on the ring per unit weight.
+     */
+    static final int VIRTUAL_NODES = 128;
+
+
+    /**
+     * An immutable consistent hash ring.
+     */
+    static final class Ring {
+
+
+        /**
+         * Returns the point of specified digest on the ring.
+         *
+         * @param digest the digest.
+         *
+         * @return the point.
+         */
+        static long point(final byte[] digest) {
+
+            long point = 0L;
+            for (int i = 0; i < 8; i++) {
+                point = (point << 8) | (digest[i] & 0xFFL);
+            }
+
+            return point;
+        }
+
+
+        Ring(final Map<LocalFileBack, Integer> weights) {
+
+            super();
+
+            this.weights = unmodifiableMap(new LinkedHashMap<>(weights));
+
+            final TreeMap<Long, LocalFileBack> nodes = new TreeMap<>();
+            for (final Map.Entry<LocalFileBack, Integer> entry
+                 : weights.entrySet()) {
+                final String rootPath = entry.getKey().rootPath().toString();
+                final int count = entry.getValue() * VIRTUAL_NODES;
+                for (int i = 0; i < count; i++) {
+                    final byte[] digest;
+                    try {
+                        digest = FileBackUtilities.digest(
+                            ByteBuffer.wrap((rootPath + "#" + i)
+                                .getBytes(UTF_8)), "SHA-1");
+                    } catch (final NoSuchAlgorithmException nsae) {
+                        throw new RuntimeException(nsae);
+                    }
+                    nodes.putIfAbsent(point(digest), entry.getKey());
+                }
+            }
+
+            points = new long[nodes.size()];
+            owners = new LocalFileBack[nodes.size()];
+            int index = 0;
+            for (final Map.Entry<Long, LocalFileBack> node
+                 : nodes.entrySet()) {
+                points[index] = node.getKey();
+                owners[index] = node.getValue();
+                index++;
+            }
+        }
+
+
+        /**
+         * Returns the file back owning specified digest.
+         *
+         * @param digest the digest.
+         *
+         * @return the owning file back.
+         */
+        LocalFileBack locate(final byte[] digest) {
+
+            int index = Arrays.binarySearch(points, point(digest));
+            if (index < 0) {
+                index = -index - 1;
+            }
+            if (index == points.length) {
+                index = 0;
+            }
+
+            return owners[index];
+        }
+
+
+        final Map<LocalFileBack, Integer> weights;
+
+
+        private final long[] points;
+
+
+        private final LocalFileBack[] owners;
+
+
+    }
+
+
+    /**
+     * Writes the content of specified source key to specified file back,
+     * keeping the namespace and the remaining time to live of the source, and
+     * checks if all bytes are written.
+     *
+     * @param source the file back of the source key.
+     * @param sourceKey the source key resolved by {@code source}.
+     * @param fileBack the file back to write.
+     * @param fileKey the target file key.
+     *
+     * @throws IOException if an I/O error occurs or not all bytes are written.
+     * @throws FileBackException if a file back error occurs.
+     */
+    static void write(final LocalFileBack source, final FileKey sourceKey,
+                      final FileBack fileBack, final FileKey fileKey)
+        throws IOException, FileBackException {
+
+        final AtomicLong copied = new AtomicLong(-1L);
+        try (FileChannel sourceChannel = FileChannel.open(
+            sourceKey.leafPath(), StandardOpenOption.READ)) {
+            final long size = sourceChannel.size();
+            final FileContext fileContext = new DefaultFileContext();
+            source.describe(sourceKey.leafPath(), fileContext);
+            fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+            fileContext.targetFileKeySupplier(() -> fileKey);
+            fileContext.sourceChannelSupplier(() -> sourceChannel);
+            fileContext.targetCopiedConsumer(copied::set);
+            fileBack.operate(fileContext);
+            if (copied.get() != size) {
+                throw new IOException(
+                    "failed to write " + fileKey.pathName() + "; copied("
+                    + copied.get() + ") != size(" + size + ")");
+            }
+        }
+    }
+
+
+    /**
+     * Copies specified source leaf path to another file back by writing its
+     * content under specified target key on behalf of specified file context.
+     *
+     * @param fileContext the file context of a {@link FileOperation#COPY}
+     * operation.
+     * @param sourceLeafPath the source leaf path.
+     * @param fileBack the file back to write.
+     * @param fileKey the target file key.
+     *
+     * @return {@code true} if copied; {@code false} if the source leaf path
+     * is not readable.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    static boolean copy(final FileContext fileContext,
+                        final Path sourceLeafPath, final FileBack fileBack,
+                        final FileKey fileKey)
+        throws IOException, FileBackException {
+
+        ofNullable(fileContext.sourceObjectConsumer()).ifPresent(
+            c -> c.accept(sourceLeafPath));
+        if (!Files.isReadable(sourceLeafPath)) {
+            getLogger(lookup().lookupClass()).error(
+                "source leaf path is not readable: {}", sourceLeafPath);
+            return false;
+        }
+
+        try (FileChannel sourceChannel = FileChannel.open(
+            sourceLeafPath, StandardOpenOption.READ)) {
+            fileBack.operate(new RoutedFileContext(fileContext)
+                .override(PropertyKey.FILE_OPERATION_SUPPLIER,
+                          (Supplier<FileOperation>) () -> FileOperation.WRITE)
+                .override(PropertyKey.SOURCE_CHANNEL_SUPPLIER,
+                          (Supplier<ReadableByteChannel>) () -> sourceChannel)
+                .override(PropertyKey.TARGET_CHANNEL_CONSUMER, null)
+                .override(PropertyKey.TARGET_FILE_KEY_SUPPLIER,
+                          (Supplier<FileKey>) () -> fileKey));
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Deletes specified file key from specified file back.
+     *
+     * @param fileBack the file back.
+     * @param fileKey the file key.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    static void delete(final FileBack fileBack, final FileKey fileKey)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.DELETE);
+        fileContext.sourceFileKeySupplier(() -> fileKey);
+        fileBack.operate(fileContext);
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param weights file backs and their weights; a file back with weight
+     * {@code 2} takes twice as many keys as one with weight {@code 1}.
+     */
+    public ShardedFileBack(final Map<LocalFileBack, Integer> weights) {
+
+        super();
+
+        if (weights == null) {
+            throw new NullPointerException("null weights");
+        }
+
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("empty weights");
+        }
+
+        for (final Map.Entry<LocalFileBack, Integer> entry
+             : weights.entrySet()) {
+            if (entry.getValue() <= 0) {
+                throw new IllegalArgumentException(
+                    "weight(" + entry.getValue() + ") <= 0");
+            }
+        }
+
+        ring = new Ring(weights);
+    }
+
+
+    @Override
+    public void operate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        final FileOperation fileOperation
+            = ofNullable(fileContext.fileOperationSupplier())
+            .orElseThrow(
+                () -> new FileBackException("no file operation supplier set"))
+            .get();
+        logger.trace("file operation: {}", fileOperation);
+        if (fileOperation == null) {
+            logger.error("null file operation supplied");
+            return;
+        }
+
+        switch (fileOperation) {
+            case COPY:
+                copy(fileContext);
+                break;
+            case DELETE:
+                delete(fileContext);
+                break;
+            case READ:
+            case STAT:
+                read(fileContext, fileOperation);
+                break;
+            case WRITE:
+                write(fileContext);
+                break;
+            default:
+                throw new FileBackException(
+                    "unsupported file operation: " + fileOperation);
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void copy(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey sourceFileKey = sourceFileKey(fileContext, false, any());
+        if (sourceFileKey == null) {
+            logger.error("no source key located");
+            return;
+        }
+
+        final FileKey targetFileKey = targetFileKey(fileContext, any());
+        if (targetFileKey == null) {
+            logger.error("no target key located");
+            return;
+        }
+
+        if (sourceFileKey.equals(targetFileKey)) {
+            logger.error("source key == target key");
+            return;
+        }
+
+        try (StripedLocks.Hold hold
+             = migrations.readWrite(sourceFileKey, targetFileKey)) {
+            final Ring ring = this.ring;
+            final Ring previous = this.previous;
+            final LocalFileBack source
+                = locate(sourceFileKey, ring, previous);
+            final LocalFileBack target = ring.locate(targetFileKey.digest);
+            final FileKey sourceKey = source.fileKey(sourceFileKey.pathName());
+            final FileKey targetKey = target.fileKey(targetFileKey.pathName());
+            if (source == target) {
+                source.operate(new RoutedFileContext(fileContext)
+                    .override(PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+                              (Supplier<FileKey>) () -> sourceKey)
+                    .override(PropertyKey.TARGET_FILE_KEY_SUPPLIER,
+                              (Supplier<FileKey>) () -> targetKey));
+            } else if (!copy(fileContext, sourceKey.leafPath(), target,
+                             targetKey)) {
+                return;
+            }
+            if (previous != null) {
+                final LocalFileBack former
+                    = previous.locate(targetFileKey.digest);
+                if (former != target) {
+                    delete(former, targetFileKey);
+                }
+            }
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void delete(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        FileKey fileKey_ = sourceFileKey(fileContext, false, any());
+        if (fileKey_ == null) {
+            fileKey_ = targetFileKey(fileContext, any());
+        }
+        final FileKey fileKey = fileKey_;
+        if (fileKey == null) {
+            logger.warn("no key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = migrations.write(fileKey)) {
+            final Ring ring = this.ring;
+            final Ring previous = this.previous;
+            final LocalFileBack owner = ring.locate(fileKey.digest);
+            final FileKey ownerKey = owner.fileKey(fileKey.pathName());
+            owner.operate(new RoutedFileContext(fileContext)
+                .override(PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+                          (Supplier<FileKey>) () -> ownerKey));
+            if (previous != null) {
+                final LocalFileBack former = previous.locate(fileKey.digest);
+                if (former != owner) {
+                    delete(former, fileKey);
+                }
+            }
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void read(final FileContext fileContext,
+                      final FileOperation fileOperation)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey = sourceFileKey(fileContext, true, any());
+        if (fileKey == null) {
+            logger.warn("no source key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = migrations.read(fileKey)) {
+            final LocalFileBack owner = locate(fileKey, ring, previous);
+            final FileKey ownerKey = owner.fileKey(fileKey.pathName());
+            owner.operate(new RoutedFileContext(fileContext)
+                .override(PropertyKey.FILE_OPERATION_SUPPLIER,
+                          (Supplier<FileOperation>) () -> fileOperation)
+                .override(PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+                          (Supplier<FileKey>) () -> ownerKey));
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void write(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey = targetFileKey(fileContext, any());
+        if (fileKey == null) {
+            logger.warn("no target key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = migrations.write(fileKey)) {
+            final Ring ring = this.ring;
+            final Ring previous = this.previous;
+            final LocalFileBack owner = ring.locate(fileKey.digest);
+            final FileKey ownerKey = owner.fileKey(fileKey.pathName());
+            owner.operate(new RoutedFileContext(fileContext)
+                .override(PropertyKey.TARGET_FILE_KEY_SUPPLIER,
+                          (Supplier<FileKey>) () -> ownerKey));
+            if (previous != null) {
+                final LocalFileBack former = previous.locate(fileKey.digest);
+                if (former != owner) {
+                    // the stale one must not be migrated over this one
+                    delete(former, fileKey);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Locates the file back currently holding specified key. While
+     * rebalancing, a key not yet migrated is located on its former owner.
+     *
+     * @param fileKey the file key.
+     * @param ring the current ring.
+     * @param previous the previous ring or {@code null} if not rebalancing.
+     *
+     * @return the file back holding the key.
+     */
+    private LocalFileBack locate(final FileKey fileKey, final Ring ring,
+                                 final Ring previous) {
+
+        final LocalFileBack owner = ring.locate(fileKey.digest);
+        if (previous == null) {
+            return owner;
+        }
+
+        final LocalFileBack former = previous.locate(fileKey.digest);
+        if (former == owner || Files.isRegularFile(
+            owner.fileKey(fileKey.pathName()).leafPath())) {
+            return owner;
+        }
+
+        return former;
+    }
+
+
+    /**
+     * Returns a file key for specified key bytes. The digest and the path name
+     * of the returned value don't depend on file backs.
+     *
+     * @param keyBytes the key bytes.
+     *
+     * @return a file key.
+     */
+    public FileKey fileKey(final ByteBuffer keyBytes) {
+
+        return any().fileKey(keyBytes);
+    }
+
+
+    /**
+     * Returns a file key for specified path name.
+     *
+     * @param pathName the path name.
+     *
+     * @return a file key.
+     */
+    public FileKey fileKey(final String pathName) {
+
+        return any().fileKey(pathName);
+    }
+
+
+    /**
+     * Returns any of file backs for resolving keys.
+     *
+     * @return a file back.
+     */
+    private LocalFileBack any() {
+
+        return ring.weights.keySet().iterator().next();
+    }
+
+
+    /**
+     * Resolves the source file key of specified file context with specified
+     * file back.
+     *
+     * @param fileContext the file context.
+     * @param pathName a flag for falling back to the path name supplied by
+     * {@link FileContext#pathNameSupplier()}.
+     * @param fileBack the file back to resolve keys.
+     *
+     * @return the source file key or {@code null} if not located.
+     */
+    static FileKey sourceFileKey(final FileContext fileContext,
+                                 final boolean pathName,
+                                 final LocalFileBack fileBack) {
+
+        final Supplier<FileKey> fileKeySupplier
+            = fileContext.sourceFileKeySupplier();
+        if (fileKeySupplier != null) {
+            final FileKey fileKey = fileKeySupplier.get();
+            if (fileKey != null) {
+                return fileKey;
+            }
+        }
+
+        final Supplier<ByteBuffer> keySupplier
+            = fileContext.sourceKeySupplier();
+        if (keySupplier != null) {
+            final ByteBuffer key = keySupplier.get();
+            if (key != null) {
+                return fileBack.fileKey(key);
+            }
+        }
+
+        if (pathName) {
+            final Supplier<String> pathNameSupplier
+                = fileContext.pathNameSupplier();
+            if (pathNameSupplier != null) {
+                final String v = pathNameSupplier.get();
+                if (v != null) {
+                    try {
+                        return fileBack.fileKey(v);
+                    } catch (final IllegalArgumentException iae) {
+                        getLogger(lookup().lookupClass()).warn(
+                            "illegal path name: {}", v);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Resolves the target file key of specified file context with specified
+     * file back.
+     *
+     * @param fileContext the file context.
+     * @param fileBack the file back to resolve keys.
+     *
+     * @return the target file key or {@code null} if not located.
+     */
+    static FileKey targetFileKey(final FileContext fileContext,
+                                 final LocalFileBack fileBack) {
+
+        final Supplier<FileKey> fileKeySupplier
+            = fileContext.targetFileKeySupplier();
+        if (fileKeySupplier != null) {
+            final FileKey fileKey = fileKeySupplier.get();
+            if (fileKey != null) {
+                return fileKey;
+            }
+        }
+
+        final Supplier<ByteBuffer> keySupplier
+            = fileContext.targetKeySupplier();
+        if (keySupplier != null) {
+            final ByteBuffer key = keySupplier.get();
+            if (key != null) {
+                return fileBack.fileKey(key);
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Adds specified file back and starts migrating keys it takes over in
+     * background. Operations keep working while migrating; reads of a key not
+     * yet migrated are served from its former file back.
+     *
+     * @param fileBack the file back to add.
+     * @param weight the weight of the file back.
+     * @param executor the executor to migrate keys.
+     *
+     * @return a future of the number of keys migrated.
+     *
+     * @throws IllegalStateException if a previous rebalancing is not done.
+     */
+    public CompletableFuture<Long> add(final LocalFileBack fileBack,
+                                       final int weight,
+                                       final Executor executor) {
+
+        if (fileBack == null) {
+            throw new NullPointerException("null fileBack");
+        }
+
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight(" + weight + ") <= 0");
+        }
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        synchronized (this) {
+            if (previous != null) {
+                throw new IllegalStateException("rebalancing");
+            }
+            final Map<LocalFileBack, Integer> weights
+                = new LinkedHashMap<>(ring.weights);
+            if (weights.putIfAbsent(fileBack, weight) != null) {
+                throw new IllegalArgumentException("already added");
+            }
+            // the order matters; see locate(FileKey, Ring, Ring)
+            previous = ring;
+            ring = new Ring(weights);
+        }
+
+        return rebalance(executor);
+    }
+
+
+    /**
+     * Migrates, in background, keys not yet migrated by the last call of
+     * {@link #add(LocalFileBack, int, Executor)}. Use this method to resume a
+     * failed rebalancing.
+     *
+     * @param executor the executor to migrate keys.
+     *
+     * @return a future of the number of keys migrated.
+     */
+    public CompletableFuture<Long> rebalance(final Executor executor) {
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        final Ring previous = this.previous;
+        if (previous == null) {
+            return CompletableFuture.completedFuture(0L);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            long migrated = 0L;
+            try {
+                for (final LocalFileBack fileBack
+                     : previous.weights.keySet()) {
+                    migrated += migrate(fileBack);
+                }
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            } catch (final FileBackException fbe) {
+                throw new CompletionException(fbe);
+            }
+            synchronized (this) {
+                if (this.previous == previous) {
+                    this.previous = null;
+                }
+            }
+            logger.debug("rebalanced; migrated: {}", migrated);
+            return migrated;
+        }, executor);
+    }
+
+
+    /**
+     * Migrates all keys of specified file back owned by other file backs.
+     *
+     * @param fileBack the file back to migrate keys from.
+     *
+     * @return the number of keys migrated.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    private long migrate(final LocalFileBack fileBack)
+        throws IOException, FileBackException {
+
+        final AtomicLong migrated = new AtomicLong();
+        final FileBackException[] thrown = new FileBackException[1];
+        Files.walkFileTree(fileBack.rootPath(), new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(final Path file,
+                                             final BasicFileAttributes attrs)
+                throws IOException {
+
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                final FileKey fileKey;
+                try {
+                    fileKey = fileBack.fileKey(fileBack.pathName(file));
+                } catch (final IllegalArgumentException iae) {
+                    return FileVisitResult.CONTINUE; // not an object
+                }
+                if (ring.locate(fileKey.digest) == fileBack) {
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    if (migrate(fileBack, fileKey)) {
+                        migrated.incrementAndGet();
+                    }
+                } catch (final FileBackException fbe) {
+                    thrown[0] = fbe;
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file,
+                                                   final IOException exc) {
+
+                // deleted while walking
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+
+        return migrated.get();
+    }
+
+
+    /**
+     * Migrates specified key from specified file back to its current owner.
+     *
+     * @param fileBack the file back to migrate from.
+     * @param fileKey the file key resolved by {@code fileBack}.
+     *
+     * @return {@code true} if migrated; {@code false} otherwise.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    @SuppressWarnings("try")
+    private boolean migrate(final LocalFileBack fileBack,
+                            final FileKey fileKey)
+        throws IOException, FileBackException {
+
+        try (StripedLocks.Hold hold = migrations.write(fileKey)) {
+            final LocalFileBack owner = ring.locate(fileKey.digest);
+            if (owner == fileBack) {
+                return false;
+            }
+            final Path sourceLeafPath = fileKey.leafPath();
+            if (!Files.isRegularFile(sourceLeafPath)) {
+                return false;
+            }
+            final FileKey ownerKey = owner.fileKey(fileKey.pathName());
+            if (!Files.exists(ownerKey.leafPath())) {
+                write(fileBack, fileKey, owner, ownerKey);
+            }
+            delete(fileBack, fileKey);
+            logger.trace("migrated: {}", fileKey);
+            return true;
+        }
+    }
+
+
+    /**
+     * Returns file backs and their weights.
+     *
+     * @return an unmodifiable map of file backs and their weights.
+     */
+    public Map<LocalFileBack, Integer> weights() {
+
+        return ring.weights;
+    }
+
+
+    /**
+     * Checks if keys are being migrated.
+     *
+     * @return {@code true} if rebalancing; {@code false} otherwise.
+     */
+    public boolean rebalancing() {
+
+        return previous != null;
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final StripedLocks migrations = new StripedLocks(256);
+
+
+    private volatile Ring ring;
+
+
+    private volatile Ring previous;
+
+
+}
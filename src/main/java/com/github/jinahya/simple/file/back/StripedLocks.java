@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * A fixed array of read/write locks indexed by the hash of keys. Readers of a
+ * key share a lock, writers are exclusive and keys mapped to different
+ * stripes never contend.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class StripedLocks {
+
+
+    /**
+     * A held lock which is released by {@link #close()}.
+     */
+    @FunctionalInterface
+    public static interface Hold extends AutoCloseable {
+
+
+        /**
+         * Releases the lock.
+         */
+        @Override
+        void close();
+
+
+    }
+
+
+    /**
+     * A hold which holds nothing.
+     */
+    static final Hold NONE = () -> {
+    };
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param stripes the number of stripes; rounded up to a power of two.
+     */
+    public StripedLocks(final int stripes) {
+
+        super();
+
+        if (stripes <= 0) {
+            throw new IllegalArgumentException(
+                "stripes(" + stripes + ") <= 0");
+        }
+
+        final int length = Integer.highestOneBit(stripes) == stripes
+                           ? stripes : Integer.highestOneBit(stripes) << 1;
+        if (length <= 0) {
+            throw new IllegalArgumentException(
+                "stripes(" + stripes + ") too large");
+        }
+
+        locks = new ReentrantReadWriteLock[length];
+        readHolds = new Hold[length];
+        writeHolds = new Hold[length];
+        for (int i = 0; i < length; i++) {
+            final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+            locks[i] = lock;
+            readHolds[i] = lock.readLock()::unlock;
+            writeHolds[i] = lock.writeLock()::unlock;
+        }
+    }
+
+
+    /**
+     * Returns the index of the stripe for specified key.
+     *
+     * @param key the key.
+     *
+     * @return the index of the stripe.
+     */
+    int index(final Object key) {
+
+        final int hash = key.hashCode();
+
+        return (hash ^ (hash >>> 16)) & (locks.length - 1);
+    }
+
+
+    private void acquire(final Lock lock) {
+
+        if (!lock.tryLock()) {
+            contentions.increment();
+            final long started = System.nanoTime();
+            lock.lock();
+            waited.add(System.nanoTime() - started);
+        }
+
+        acquisitions.increment();
+    }
+
+
+    /**
+     * Acquires the shared lock for specified key.
+     *
+     * @param key the key.
+     *
+     * @return a hold to release.
+     */
+    public Hold read(final Object key) {
+
+        if (key == null) {
+            throw new NullPointerException("null key");
+        }
+
+        final int index = index(key);
+        acquire(locks[index].readLock());
+
+        return readHolds[index];
+    }
+
+
+    /**
+     * Acquires the exclusive lock for specified key.
+     *
+     * @param key the key.
+     *
+     * @return a hold to release.
+     */
+    public Hold write(final Object key) {
+
+        if (key == null) {
+            throw new NullPointerException("null key");
+        }
+
+        final int index = index(key);
+        acquire(locks[index].writeLock());
+
+        return writeHolds[index];
+    }
+
+
+    /**
+     * Acquires the shared lock for {@code readKey} and the exclusive lock for
+     * {@code writeKey}. Locks are acquired in the order of stripes so that
+     * concurrent callers never deadlock. If both keys are mapped to the same
+     * stripe only the exclusive lock is acquired.
+     *
+     * @param readKey the key to read.
+     * @param writeKey the key to write.
+     *
+     * @return a hold to release both locks.
+     */
+    public Hold readWrite(final Object readKey, final Object writeKey) {
+
+        if (readKey == null) {
+            throw new NullPointerException("null readKey");
+        }
+
+        if (writeKey == null) {
+            throw new NullPointerException("null writeKey");
+        }
+
+        final int readIndex = index(readKey);
+        final int writeIndex = index(writeKey);
+
+        if (readIndex == writeIndex) {
+            acquire(locks[writeIndex].writeLock());
+            return writeHolds[writeIndex];
+        }
+
+        if (readIndex < writeIndex) {
+            acquire(locks[readIndex].readLock());
+            acquire(locks[writeIndex].writeLock());
+        } else {
+            acquire(locks[writeIndex].writeLock());
+            acquire(locks[readIndex].readLock());
+        }
+
+        final Hold readHold = readHolds[readIndex];
+        final Hold writeHold = writeHolds[writeIndex];
+
+        return () -> {
+            writeHold.close();
+            readHold.close();
+        };
+    }
+
+
+    /**
+     * Returns the number of stripes.
+     *
+     * @return the number of stripes.
+     */
+    public int stripes() {
+
+        return locks.length;
+    }
+
+
+    /**
+     * Returns the number of acquisitions so far.
+     *
+     * @return the number of acquisitions.
+     */
+    public long acquisitions() {
+
+        return acquisitions.sum();
+    }
+
+
+    /**
+     * Returns the number of acquisitions which had to wait for other holders.
+     *
+     * @return the number of contended acquisitions.
+     */
+    public long contentions() {
+
+        return contentions.sum();
+    }
+
+
+    /**
+     * Returns the total time, in nanoseconds, spent on waiting for other
+     * holders.
+     *
+     * @return the total waiting time in nanoseconds.
+     */
+    public long waited() {
+
+        return waited.sum();
+    }
+
+
+    private final ReentrantReadWriteLock[] locks;
+
+
+    private final Hold[] readHolds;
+
+
+    private final Hold[] writeHolds;
+
+
+    private final LongAdder acquisitions = new LongAdder();
+
+
+    private final LongAdder contentions = new LongAdder();
+
+
+    private final LongAdder waited = new LongAdder();
+
+
+}
@@ -0,0 +1,628 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileContext.PropertyKey;
+import java.io.IOException;
+import static java.lang.invoke.MethodHandles.lookup;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import static java.util.Optional.ofNullable;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+/**
+ * A file back storing files in a small and fast tier and a large and slow
+ * tier. New files are written to the hot tier. When the hot tier exceeds its
+ * capacity, least frequently and least recently accessed files are demoted to
+ * the cold tier in background. Files in the cold tier read repeatedly are
+ * promoted back. The tier of each file is remembered in memory so that most
+ * operations look up a single tier.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class TieredFileBack implements FileBack {
+
+
+    /**
+     * The number of reads, since the last demotion, which promotes a file in
+     * the cold tier.
+     */
+    static final int PROMOTION_FREQUENCY = 2;
+
+
+    /**
+     * The percentage of the capacity demotions stop at.
+     */
+    static final int LOW_WATERMARK_PERCENT = 90;
+
+
+    /**
+     * The tier and access statistics of a file.
+     */
+    static final class Location {
+
+
+        Location(final boolean hot, final long size) {
+
+            super();
+
+            this.hot = hot;
+            this.size = size;
+        }
+
+
+        /**
+         * Records an access. Updates are not atomic; statistics are
+         * approximate by design.
+         */
+        void accessed() {
+
+            if (frequency < Integer.MAX_VALUE) {
+                frequency++;
+            }
+            accessed = System.nanoTime();
+        }
+
+
+        volatile boolean hot;
+
+
+        volatile long size;
+
+
+        volatile int frequency;
+
+
+        volatile long accessed = System.nanoTime();
+
+
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param hot the file back of the hot tier.
+     * @param cold the file back of the cold tier.
+     * @param capacity the maximum number of bytes of the hot tier.
+     * @param executor the executor for promotions and demotions.
+     */
+    public TieredFileBack(final LocalFileBack hot, final LocalFileBack cold,
+                          final long capacity, final Executor executor) {
+
+        super();
+
+        if (hot == null) {
+            throw new NullPointerException("null hot");
+        }
+
+        if (cold == null) {
+            throw new NullPointerException("null cold");
+        }
+
+        if (capacity < 0L) {
+            throw new IllegalArgumentException(
+                "capacity(" + capacity + ") < 0");
+        }
+
+        if (executor == null) {
+            throw new NullPointerException("null executor");
+        }
+
+        this.hot = hot;
+        this.cold = cold;
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+
+    @Override
+    public void operate(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        if (fileContext == null) {
+            throw new NullPointerException("null fileContext");
+        }
+
+        final FileOperation fileOperation
+            = ofNullable(fileContext.fileOperationSupplier())
+            .orElseThrow(
+                () -> new FileBackException("no file operation supplier set"))
+            .get();
+        logger.trace("file operation: {}", fileOperation);
+        if (fileOperation == null) {
+            logger.error("null file operation supplied");
+            return;
+        }
+
+        switch (fileOperation) {
+            case COPY:
+                copy(fileContext);
+                break;
+            case DELETE:
+                delete(fileContext);
+                break;
+            case READ:
+            case STAT:
+                read(fileContext, fileOperation);
+                break;
+            case WRITE:
+                write(fileContext);
+                break;
+            default:
+                throw new FileBackException(
+                    "unsupported file operation: " + fileOperation);
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void copy(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey sourceFileKey
+            = ShardedFileBack.sourceFileKey(fileContext, false, hot);
+        if (sourceFileKey == null) {
+            logger.error("no source key located");
+            return;
+        }
+
+        final FileKey targetFileKey
+            = ShardedFileBack.targetFileKey(fileContext, hot);
+        if (targetFileKey == null) {
+            logger.error("no target key located");
+            return;
+        }
+
+        if (sourceFileKey.equals(targetFileKey)) {
+            logger.error("source key == target key");
+            return;
+        }
+
+        try (StripedLocks.Hold hold
+             = moves.readWrite(sourceFileKey, targetFileKey)) {
+            final Location source = locate(sourceFileKey);
+            if (source == null) {
+                logger.error("source key not found: {}", sourceFileKey);
+                return;
+            }
+            source.accessed();
+            final Location target = locate(targetFileKey);
+            final FileKey sourceKey = (source.hot ? hot : cold)
+                .fileKey(sourceFileKey.pathName());
+            final FileKey targetKey = hot.fileKey(targetFileKey.pathName());
+            if (source.hot) {
+                hot.operate(new RoutedFileContext(fileContext)
+                    .override(PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+                              (Supplier<FileKey>) () -> sourceKey)
+                    .override(PropertyKey.TARGET_FILE_KEY_SUPPLIER,
+                              (Supplier<FileKey>) () -> targetKey));
+            } else if (!ShardedFileBack.copy(fileContext, sourceKey.leafPath(),
+                                             hot, targetKey)) {
+                return;
+            }
+            if (target != null && !target.hot) {
+                ShardedFileBack.delete(cold, targetFileKey);
+            }
+            written(targetKey);
+        }
+
+        demote();
+    }
+
+
+    @SuppressWarnings("try")
+    private void delete(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        FileKey fileKey_
+            = ShardedFileBack.sourceFileKey(fileContext, false, hot);
+        if (fileKey_ == null) {
+            fileKey_ = ShardedFileBack.targetFileKey(fileContext, hot);
+        }
+        final FileKey fileKey = fileKey_;
+        if (fileKey == null) {
+            logger.warn("no key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = moves.write(fileKey)) {
+            final Location location = locate(fileKey);
+            final LocalFileBack tier
+                = location == null || location.hot ? hot : cold;
+            final FileKey tierKey = tier.fileKey(fileKey.pathName());
+            tier.operate(new RoutedFileContext(fileContext)
+                .override(PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+                          (Supplier<FileKey>) () -> tierKey));
+            if (location != null) {
+                locations.remove(fileKey, location);
+                if (location.hot) {
+                    hotBytes.add(-location.size);
+                }
+            }
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void read(final FileContext fileContext,
+                      final FileOperation fileOperation)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.sourceFileKey(fileContext, true, hot);
+        if (fileKey == null) {
+            logger.warn("no source key located");
+            return;
+        }
+
+        final Location location;
+        try (StripedLocks.Hold hold = moves.read(fileKey)) {
+            location = locate(fileKey);
+            final LocalFileBack tier
+                = location == null || location.hot ? hot : cold;
+            final FileKey tierKey = tier.fileKey(fileKey.pathName());
+            tier.operate(new RoutedFileContext(fileContext)
+                .override(PropertyKey.FILE_OPERATION_SUPPLIER,
+                          (Supplier<FileOperation>) () -> fileOperation)
+                .override(PropertyKey.SOURCE_FILE_KEY_SUPPLIER,
+                          (Supplier<FileKey>) () -> tierKey));
+        }
+
+        if (location == null || fileOperation != FileOperation.READ) {
+            return;
+        }
+        location.accessed();
+        if (!location.hot && location.frequency >= PROMOTION_FREQUENCY) {
+            executor.execute(() -> promote(fileKey));
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    private void write(final FileContext fileContext)
+        throws IOException, FileBackException {
+
+        final FileKey fileKey
+            = ShardedFileBack.targetFileKey(fileContext, hot);
+        if (fileKey == null) {
+            logger.warn("no target key located");
+            return;
+        }
+
+        try (StripedLocks.Hold hold = moves.write(fileKey)) {
+            final Location location = locate(fileKey);
+            final FileKey hotKey = hot.fileKey(fileKey.pathName());
+            hot.operate(new RoutedFileContext(fileContext)
+                .override(PropertyKey.TARGET_FILE_KEY_SUPPLIER,
+                          (Supplier<FileKey>) () -> hotKey));
+            if (location != null && !location.hot) {
+                ShardedFileBack.delete(cold, fileKey);
+            }
+            written(hotKey);
+        }
+
+        demote();
+    }
+
+
+    /**
+     * Updates the location of specified key just written to the hot tier.
+     * The caller must hold the exclusive lock of the key.
+     *
+     * @param hotKey the key resolved by the hot tier.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void written(final FileKey hotKey) throws IOException {
+
+        long size;
+        try {
+            size = Files.size(hotKey.leafPath());
+        } catch (final NoSuchFileException nsfe) {
+            size = 0L; // failed or pending
+        }
+
+        final Location location = new Location(true, size);
+        location.accessed();
+        final Location previous = locations.put(hotKey, location);
+        if (previous != null && previous.hot) {
+            hotBytes.add(-previous.size);
+        }
+        hotBytes.add(size);
+    }
+
+
+    /**
+     * Returns the location of specified key. Keys not yet in the location map
+     * are looked up in both tiers and remembered.
+     *
+     * @param fileKey the key.
+     *
+     * @return the location or {@code null} if the key is in neither tier.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private Location locate(final FileKey fileKey) throws IOException {
+
+        final Location location = locations.get(fileKey);
+        if (location != null) {
+            return location;
+        }
+
+        for (final LocalFileBack tier : new LocalFileBack[]{hot, cold}) {
+            final Path leafPath = tier.fileKey(fileKey.pathName()).leafPath();
+            final long size;
+            try {
+                size = Files.size(leafPath);
+            } catch (final NoSuchFileException nsfe) {
+                continue;
+            }
+            final Location found = new Location(tier == hot, size);
+            final Location previous = locations.putIfAbsent(fileKey, found);
+            if (previous != null) {
+                return previous;
+            }
+            if (found.hot) {
+                hotBytes.add(size);
+            }
+            return found;
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Moves specified key from the cold tier to the hot tier.
+     *
+     * @param fileKey the key.
+     */
+    @SuppressWarnings("try")
+    private void promote(final FileKey fileKey) {
+
+        try {
+            try (StripedLocks.Hold hold = moves.write(fileKey)) {
+                final Location location = locations.get(fileKey);
+                if (location == null || location.hot) {
+                    return;
+                }
+                final FileKey coldKey = cold.fileKey(fileKey.pathName());
+                final FileKey hotKey = hot.fileKey(fileKey.pathName());
+                ShardedFileBack.write(cold, coldKey, hot, hotKey);
+                location.hot = true;
+                hotBytes.add(location.size);
+                ShardedFileBack.delete(cold, coldKey);
+                promotions.increment();
+                logger.trace("promoted: {}", fileKey);
+            }
+            demote();
+        } catch (final IOException | FileBackException e) {
+            logger.error("failed to promote " + fileKey, e);
+        }
+    }
+
+
+    /**
+     * Starts, if not started, demoting files in background when the hot tier
+     * exceeds its capacity.
+     */
+    private void demote() {
+
+        if (hotBytes.sum() <= capacity
+            || !demoting.compareAndSet(false, true)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                demote(capacity > Long.MAX_VALUE / 100L
+                       ? capacity / 100L * LOW_WATERMARK_PERCENT
+                       : capacity * LOW_WATERMARK_PERCENT / 100L);
+            } catch (final IOException | FileBackException e) {
+                logger.error("failed to demote", e);
+            } finally {
+                demoting.set(false);
+            }
+        });
+    }
+
+
+    /**
+     * Demotes least frequently and least recently accessed files until the
+     * hot tier shrinks to specified number of bytes. Frequencies are halved
+     * afterwards so that past popularity fades.
+     *
+     * @param watermark the number of bytes to shrink to.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    @SuppressWarnings("try")
+    void demote(final long watermark) throws IOException, FileBackException {
+
+        final List<Map.Entry<FileKey, Location>> candidates
+            = new ArrayList<>();
+        for (final Map.Entry<FileKey, Location> entry
+             : locations.entrySet()) {
+            if (entry.getValue().hot) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort(Comparator
+            .comparingInt((Map.Entry<FileKey, Location> e)
+                -> e.getValue().frequency)
+            .thenComparingLong(e -> e.getValue().accessed));
+
+        for (final Map.Entry<FileKey, Location> candidate : candidates) {
+            if (hotBytes.sum() <= watermark) {
+                break;
+            }
+            final FileKey fileKey = candidate.getKey();
+            try (StripedLocks.Hold hold = moves.write(fileKey)) {
+                final Location location = locations.get(fileKey);
+                if (location != candidate.getValue() || !location.hot) {
+                    continue; // written, deleted or moved meanwhile
+                }
+                final FileKey hotKey = hot.fileKey(fileKey.pathName());
+                final FileKey coldKey = cold.fileKey(fileKey.pathName());
+                ShardedFileBack.write(hot, hotKey, cold, coldKey);
+                location.hot = false;
+                hotBytes.add(-location.size);
+                ShardedFileBack.delete(hot, hotKey);
+                demotions.increment();
+                logger.trace("demoted: {}", fileKey);
+            }
+        }
+
+        for (final Location location : locations.values()) {
+            location.frequency >>>= 1;
+        }
+    }
+
+
+    /**
+     * Walks both tiers and loads the location map. Call this method once
+     * before serving operations over tiers populated by another instance.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void load() throws IOException {
+
+        for (final LocalFileBack tier : new LocalFileBack[]{hot, cold}) {
+            Files.walkFileTree(tier.rootPath(), new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult visitFile(
+                    final Path file, final BasicFileAttributes attrs) {
+
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    final FileKey fileKey;
+                    try {
+                        fileKey = tier.fileKey(tier.pathName(file));
+                    } catch (final IllegalArgumentException iae) {
+                        return FileVisitResult.CONTINUE; // not an object
+                    }
+                    final Location location
+                        = new Location(tier == hot, attrs.size());
+                    if (locations.putIfAbsent(fileKey, location) == null
+                        && location.hot) {
+                        hotBytes.add(location.size);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+
+                @Override
+                public FileVisitResult visitFileFailed(
+                    final Path file, final IOException exc) {
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+            });
+        }
+    }
+
+
+    /**
+     * Returns the number of bytes in the hot tier.
+     *
+     * @return the number of bytes in the hot tier.
+     */
+    public long hotBytes() {
+
+        return hotBytes.sum();
+    }
+
+
+    /**
+     * Returns the number of promotions so far.
+     *
+     * @return the number of promotions.
+     */
+    public long promotions() {
+
+        return promotions.sum();
+    }
+
+
+    /**
+     * Returns the number of demotions so far.
+     *
+     * @return the number of demotions.
+     */
+    public long demotions() {
+
+        return demotions.sum();
+    }
+
+
+    private transient final Logger logger = getLogger(lookup().lookupClass());
+
+
+    private final LocalFileBack hot;
+
+
+    private final LocalFileBack cold;
+
+
+    private final long capacity;
+
+
+    private final Executor executor;
+
+
+    private final ConcurrentMap<FileKey, Location> locations
+        = new ConcurrentHashMap<>();
+
+
+    private final StripedLocks moves = new StripedLocks(256);
+
+
+    private final LongAdder hotBytes = new LongAdder();
+
+
+    private final AtomicBoolean demoting = new AtomicBoolean();
+
+
+    private final LongAdder promotions = new LongAdder();
+
+
+    private final LongAdder demotions = new LongAdder();
+
+
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Pending contents of writes which are not flushed yet. A write of a key
+ * replaces the pending content of the same key, if any, so that only the
+ * latest content is flushed when the window elapses. The total number of
+ * pending bytes is bounded; writers block while the bound is reached. Each
+ * write is buffered only up to a per-write limit before its bytes are
+ * reserved, so larger contents are written through.
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ * @see LocalFileBack#writeBehind(WriteBehind)
+ */
+public class WriteBehind {
+
+
+    /**
+     * The default maximum number of bytes of a single write to buffer.
+     */
+    public static final int DEFAULT_MAXIMUM_WRITE_BYTES = 65536;
+
+
+    /**
+     * Creates a new instance. Writes larger than the smaller of
+     * {@code maximumBytes} and {@link #DEFAULT_MAXIMUM_WRITE_BYTES} are
+     * written through.
+     *
+     * @param scheduler the scheduler for flushing pending contents.
+     * @param window the time to keep each pending content.
+     * @param unit the unit of {@code window}.
+     * @param maximumBytes the maximum number of pending bytes.
+     */
+    public WriteBehind(final ScheduledExecutorService scheduler,
+                       final long window, final TimeUnit unit,
+                       final int maximumBytes) {
+
+        this(scheduler, window, unit, maximumBytes,
+             Math.max(0, Math.min(maximumBytes, DEFAULT_MAXIMUM_WRITE_BYTES)));
+    }
+
+
+    /**
+     * Creates a new instance.
+     *
+     * @param scheduler the scheduler for flushing pending contents.
+     * @param window the time to keep each pending content.
+     * @param unit the unit of {@code window}.
+     * @param maximumBytes the maximum number of pending bytes.
+     * @param maximumWriteBytes the maximum number of bytes of a single write
+     * to buffer; larger writes are written through.
+     */
+    public WriteBehind(final ScheduledExecutorService scheduler,
+                       final long window, final TimeUnit unit,
+                       final int maximumBytes, final int maximumWriteBytes) {
+
+        super();
+
+        if (scheduler == null) {
+            throw new NullPointerException("null scheduler");
+        }
+
+        if (window < 0L) {
+            throw new IllegalArgumentException("window(" + window + ") < 0");
+        }
+
+        if (unit == null) {
+            throw new NullPointerException("null unit");
+        }
+
+        if (maximumBytes < 0) {
+            throw new IllegalArgumentException(
+                "maximumBytes(" + maximumBytes + ") < 0");
+        }
+
+        if (maximumWriteBytes < 0) {
+            throw new IllegalArgumentException(
+                "maximumWriteBytes(" + maximumWriteBytes + ") < 0");
+        }
+
+        if (maximumWriteBytes > maximumBytes) {
+            throw new IllegalArgumentException(
+                "maximumWriteBytes(" + maximumWriteBytes + ") > maximumBytes("
+                + maximumBytes + ")");
+        }
+
+        this.scheduler = scheduler;
+        this.window = window;
+        this.unit = unit;
+        this.maximumBytes = maximumBytes;
+        this.maximumWriteBytes = maximumWriteBytes;
+
+        permits = new Semaphore(maximumBytes, true);
+    }
+
+
+    /**
+     * Returns the pending content of specified path.
+     *
+     * @param leafPath the path.
+     *
+     * @return the pending content or {@code null} if nothing is pending.
+     */
+    byte[] get(final Path leafPath) {
+
+        return pendings.get(leafPath);
+    }
+
+
+    /**
+     * Reserves specified number of bytes for a content to put. This method
+     * blocks until enough bytes are available.
+     *
+     * @param bytes the number of bytes.
+     *
+     * @throws InterruptedIOException if interrupted while waiting for bytes.
+     */
+    void acquire(final int bytes) throws InterruptedIOException {
+
+        try {
+            permits.acquire(bytes);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "interrupted while waiting for " + bytes + " bytes");
+        }
+    }
+
+
+    /**
+     * Returns specified number of bytes reserved for a content which is
+     * never put.
+     *
+     * @param bytes the number of bytes.
+     *
+     * @see #acquire(int)
+     */
+    void release(final int bytes) {
+
+        permits.release(bytes);
+    }
+
+
+    /**
+     * Puts specified content, whose bytes are already reserved, as the
+     * pending content of specified path.
+     *
+     * @param leafPath the path.
+     * @param content the content; must not be modified afterwards.
+     *
+     * @return {@code true} if nothing was pending for the path and a flush
+     * should be scheduled; {@code false} if a pending content is replaced.
+     *
+     * @see #acquire(int)
+     */
+    boolean put(final Path leafPath, final byte[] content) {
+
+        buffered.increment();
+        final byte[] previous = pendings.put(leafPath, content);
+        if (previous == null) {
+            return true;
+        }
+
+        superseded.increment();
+        permits.release(previous.length);
+
+        return false;
+    }
+
+
+    /**
+     * Removes specified content if it is still the pending content of
+     * specified path.
+     *
+     * @param leafPath the path.
+     * @param content the content flushed.
+     *
+     * @return {@code true} if removed; {@code false} if the content has been
+     * replaced or discarded.
+     */
+    boolean remove(final Path leafPath, final byte[] content) {
+
+        if (!pendings.remove(leafPath, content)) {
+            return false;
+        }
+
+        flushed.increment();
+        permits.release(content.length);
+
+        return true;
+    }
+
+
+    /**
+     * Discards the pending content of specified path, if any.
+     *
+     * @param leafPath the path.
+     *
+     * @return the discarded content or {@code null} if nothing was pending.
+     */
+    byte[] discard(final Path leafPath) {
+
+        final byte[] content = pendings.remove(leafPath);
+        if (content != null) {
+            permits.release(content.length);
+        }
+
+        return content;
+    }
+
+
+    /**
+     * Schedules specified flush after the window.
+     *
+     * @param flush the flush.
+     */
+    void schedule(final Runnable flush) {
+
+        scheduler.schedule(flush, window, unit);
+    }
+
+
+    /**
+     * Returns a snapshot of paths which have pending contents.
+     *
+     * @return a list of paths.
+     */
+    List<Path> paths() {
+
+        return new ArrayList<>(pendings.keySet());
+    }
+
+
+    /**
+     * Returns the maximum number of pending bytes.
+     *
+     * @return the maximum number of pending bytes.
+     */
+    public int maximumBytes() {
+
+        return maximumBytes;
+    }
+
+
+    /**
+     * Returns the maximum number of bytes of a single write to buffer.
+     *
+     * @return the maximum number of bytes of a single write.
+     */
+    public int maximumWriteBytes() {
+
+        return maximumWriteBytes;
+    }
+
+
+    /**
+     * Returns the number of bytes currently pending.
+     *
+     * @return the number of bytes pending.
+     */
+    public int pendingBytes() {
+
+        return maximumBytes - permits.availablePermits();
+    }
+
+
+    /**
+     * Returns the number of writes buffered so far.
+     *
+     * @return the number of writes buffered.
+     */
+    public long buffered() {
+
+        return buffered.sum();
+    }
+
+
+    /**
+     * Returns the number of buffered writes dropped by subsequent writes of
+     * the same key.
+     *
+     * @return the number of writes superseded.
+     */
+    public long superseded() {
+
+        return superseded.sum();
+    }
+
+
+    /**
+     * Returns the number of pending contents actually written to files.
+     *
+     * @return the number of contents flushed.
+     */
+    public long flushed() {
+
+        return flushed.sum();
+    }
+
+
+    private final ScheduledExecutorService scheduler;
+
+
+    private final long window;
+
+
+    private final TimeUnit unit;
+
+
+    private final int maximumBytes;
+
+
+    private final int maximumWriteBytes;
+
+
+    private final Semaphore permits;
+
+
+    private final ConcurrentMap<Path, byte[]> pendings
+        = new ConcurrentHashMap<>();
+
+
+    private final LongAdder buffered = new LongAdder();
+
+
+    private final LongAdder superseded = new LongAdder();
+
+
+    private final LongAdder flushed = new LongAdder();
+
+
+}
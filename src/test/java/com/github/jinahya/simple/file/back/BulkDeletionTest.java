@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.BulkDeletion.Outcome;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class BulkDeletionTest {
+
+
+    @Test
+    public void delete() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final List<ByteBuffer> fileKeys = new ArrayList<>();
+        long total = 0L;
+        for (int i = 0; i < 16; i++) {
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes = randomFileBytes();
+            final Path leafPath
+                = fileBack.fileKey(fileKey.duplicate()).leafPath();
+            Files.createDirectories(leafPath.getParent());
+            Files.write(leafPath, fileBytes);
+            fileKeys.add(fileKey);
+            if (i < 8) {
+                total += fileBytes.length;
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<ByteBuffer> deleting
+                = new ArrayList<>(fileKeys.subList(0, 8));
+            final ByteBuffer absent = randomFileKey();
+            deleting.add(absent);
+            final BulkDeletion byKeys
+                = fileBack.delete(deleting, executor, 4, 1000);
+            assertEquals(byKeys.count(Outcome.DELETED), 8);
+            assertEquals(byKeys.count(Outcome.ABSENT), 1);
+            assertEquals(byKeys.outcomes().get(
+                fileBack.fileKey(absent.duplicate()).pathName()),
+                         Outcome.ABSENT);
+            assertEquals(byKeys.freedBytes(), total);
+            for (final ByteBuffer fileKey : fileKeys.subList(0, 8)) {
+                assertFalse(Files.exists(
+                    fileBack.fileKey(fileKey.duplicate()).leafPath()));
+            }
+
+            final FileKey remaining = fileBack.fileKey(fileKeys.get(8));
+            final String prefix = remaining.pathName().substring(0, 5);
+            final BulkDeletion byPrefix
+                = fileBack.delete(prefix, executor, 2, 0);
+            assertEquals(byPrefix.outcomes().get(remaining.pathName()),
+                         Outcome.DELETED);
+            for (final String pathName : byPrefix.outcomes().keySet()) {
+                assertTrue(pathName.startsWith(prefix));
+            }
+            assertFalse(Files.exists(remaining.leafPath()));
+
+            final BulkDeletion all = fileBack.delete("", executor, 4, 0);
+            assertEquals(all.count(Outcome.DELETED)
+                         + byPrefix.count(Outcome.DELETED), 8);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.writeContext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class CapacityAccountTest {
+
+
+    private static void write(final FileBack fileBack,
+                              final ByteBuffer fileKey, final int size,
+                              final String namespace)
+        throws IOException, FileBackException {
+
+        final FileContext writeContext = writeContext(fileKey, new byte[size]);
+        writeContext.namespaceSupplier(() -> namespace);
+        fileBack.operate(writeContext);
+    }
+
+
+    private static void assertUsage(final CapacityAccount account,
+                                    final long bytes, final long objects,
+                                    final long bytesA, final long bytesB) {
+
+        assertEquals(account.bytes(), bytes);
+        assertEquals(account.objects(), objects);
+        assertEquals(account.bytes("a"), bytesA);
+        assertEquals(account.bytes("b"), bytesB);
+    }
+
+
+    // keeps namespaces as attributes or in the index
+    private static void account(final boolean attributes) throws Exception {
+
+        final Path rootPath = FileBackTests.randomRootPath();
+        if (attributes && !Files.getFileStore(rootPath)
+            .supportsFileAttributeView(UserDefinedFileAttributeView.class)) {
+            throw new SkipException("user-defined attributes not supported");
+        }
+        final LocalFileBack fileBack = new LocalFileBack(rootPath);
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final ByteBuffer a = randomFileKey();
+            final ByteBuffer b = randomFileKey();
+            final ByteBuffer c = randomFileKey();
+            try (CapacityAccount account = new CapacityAccount(
+                fileBack, scheduler, 1L, 0L, TimeUnit.HOURS, attributes)) {
+                scheduler.submit(() -> null).get(); // the initial scan
+                fileBack.account(account);
+
+                write(fileBack, a, 100, "a");
+                write(fileBack, b, 50, "b");
+                write(fileBack, c, 10, null);
+                assertUsage(account, 160L, 3L, 100L, 50L);
+
+                write(fileBack, a, 30, "a");
+                assertUsage(account, 90L, 3L, 30L, 50L);
+
+                account.quota("b", 50L, Long.MAX_VALUE);
+                try {
+                    write(fileBack, randomFileKey(), 1, "b");
+                    fail("quota exceeded");
+                } catch (final QuotaExceededException qee) {
+                    assertEquals(qee.namespace(), "b");
+                }
+                write(fileBack, randomFileKey(), 1, "a");
+                assertUsage(account, 91L, 4L, 31L, 50L);
+
+                final FileContext deleteContext = new DefaultFileContext();
+                deleteContext.fileOperationSupplier(
+                    () -> FileOperation.DELETE);
+                deleteContext.sourceKeySupplier(() -> a.duplicate());
+                fileBack.operate(deleteContext);
+                assertUsage(account, 61L, 3L, 1L, 50L);
+            }
+
+            try (CapacityAccount account = new CapacityAccount(
+                fileBack, scheduler, 1L, 0L, TimeUnit.HOURS, attributes)) {
+                assertUsage(account, 61L, 3L, 1L, 50L);
+                account.reconcile();
+                assertUsage(account, 61L, 3L, 1L, 50L);
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+    @Test
+    public void accountWithAttributes() throws Exception {
+
+        account(true);
+    }
+
+
+    @Test
+    public void accountWithIndex() throws Exception {
+
+        account(false);
+    }
+
+
+    @Test
+    public void reconcileWhileWriting() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final StripedLocks locks = new StripedLocks(64);
+        fileBack.locks(locks);
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try (CapacityAccount account = new CapacityAccount(
+            fileBack, scheduler, 1L, 0L, TimeUnit.HOURS)) {
+            scheduler.submit(() -> null).get(); // the initial scan
+            fileBack.account(account);
+
+            final ByteBuffer[] keys = new ByteBuffer[8];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = randomFileKey();
+                write(fileBack, keys[i], 10, "a");
+            }
+            assertUsage(account, 80L, 8L, 80L, 0L);
+
+            // the scan stops at one file part while all of them change
+            final Path held
+                = fileBack.fileKey(keys[3].duplicate()).leafPath();
+            final Future<?> reconciling;
+            try (StripedLocks.Hold hold = locks.write(held)) {
+                reconciling = scheduler.submit(() -> {
+                    account.reconcile();
+                    return null;
+                });
+                for (int i = 0; locks.contentions() == 0L; i++) {
+                    assertTrue(i < 500, "scan never stopped");
+                    Thread.sleep(10L);
+                }
+                for (final ByteBuffer key : keys) {
+                    write(fileBack, key, 20, "a");
+                }
+                write(fileBack, randomFileKey(), 5, "a");
+            }
+            reconciling.get();
+            assertUsage(account, 165L, 9L, 165L, 0L);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+}
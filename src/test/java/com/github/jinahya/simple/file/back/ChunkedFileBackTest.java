@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.read;
+import static com.github.jinahya.simple.file.back.FileBackTests.write;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ChunkedFileBackTest {
+
+
+    private static byte[] consume(final FileBack fileBack,
+                                  final ByteBuffer key)
+        throws Exception {
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+        fileContext.sourceKeySupplier(() -> key.duplicate());
+        fileContext.sourceChannelConsumer(c -> {
+            try (InputStream input = Channels.newInputStream(c)) {
+                final byte[] buffer = new byte[333];
+                for (int r; (r = input.read(buffer)) != -1;) {
+                    output.write(buffer, 0, r);
+                }
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+        fileBack.operate(fileContext);
+
+        return output.toByteArray();
+    }
+
+
+    private static long files(final Path rootPath) throws IOException {
+
+        try (Stream<Path> paths = Files.walk(rootPath)) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+
+    @Test
+    public void chunked() throws Exception {
+
+        final LocalFileBack root
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ChunkedFileBack fileBack
+                = new ChunkedFileBack(root, executor, 1000, 3);
+            final ByteBuffer key = randomFileKey();
+
+            final byte[] large = randomFileBytes(10500);
+            write(fileBack, key, large);
+            assertEquals(fileBack.chunked(), 1L);
+            assertEquals(fileBack.chunksWritten(), 11L);
+            final FileKey fileKey = root.fileKey(key.duplicate());
+            assertFalse(Files.exists(fileKey.leafPath()));
+            assertTrue(Files.isRegularFile(ChunkedFileBack.manifest(fileKey)));
+            assertEquals(files(root.rootPath()), 12L);
+            assertEquals(read(fileBack, key), large);
+            assertEquals(consume(fileBack, key), large);
+
+            final AtomicReference<BasicFileAttributes> attributes
+                = new AtomicReference<>();
+            final FileContext statContext = new DefaultFileContext();
+            statContext.fileOperationSupplier(() -> FileOperation.STAT);
+            statContext.sourceKeySupplier(() -> key.duplicate());
+            statContext.sourceAttributesConsumer(attributes::set);
+            fileBack.operate(statContext);
+            assertEquals(attributes.get().size(), 10500L);
+
+            // small ones are stored as is
+            final byte[] small = randomFileBytes(1000);
+            write(fileBack, key, small);
+            assertTrue(Files.isRegularFile(fileKey.leafPath()));
+            assertFalse(Files.exists(ChunkedFileBack.manifest(fileKey)));
+            assertEquals(files(root.rootPath()), 1L);
+            assertEquals(read(fileBack, key), small);
+
+            // copies and deletes
+            final byte[] medium = randomFileBytes(2500);
+            write(fileBack, key, medium);
+            final ByteBuffer other = randomFileKey();
+            final FileContext copyContext = new DefaultFileContext();
+            copyContext.fileOperationSupplier(() -> FileOperation.COPY);
+            copyContext.sourceKeySupplier(() -> key.duplicate());
+            copyContext.targetKeySupplier(() -> other.duplicate());
+            fileBack.operate(copyContext);
+            assertEquals(files(root.rootPath()), 8L);
+
+            final FileContext deleteContext = new DefaultFileContext();
+            deleteContext.fileOperationSupplier(() -> FileOperation.DELETE);
+            deleteContext.sourceKeySupplier(() -> key.duplicate());
+            fileBack.operate(deleteContext);
+            assertEquals(files(root.rootPath()), 4L);
+            assertEquals(read(fileBack, key).length, 0);
+            assertEquals(read(fileBack, other), medium);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void verified() throws Exception {
+
+        final Path rootPath = FileBackTests.randomRootPath();
+        if (!Files.getFileStore(rootPath).supportsFileAttributeView(
+            UserDefinedFileAttributeView.class)) {
+            throw new SkipException("user-defined attributes not supported");
+        }
+        final LocalFileBack root = new LocalFileBack(rootPath);
+        root.checksums(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ChunkedFileBack fileBack
+                = new ChunkedFileBack(root, executor, 1000, 3);
+            final ByteBuffer key = randomFileKey();
+            final byte[] large = randomFileBytes(3500);
+            write(fileBack, key, large);
+            assertEquals(read(fileBack, key), large);
+
+            // chunks are read through the root, which verifies them
+            final FileKey fileKey = root.fileKey(key.duplicate());
+            final ChunkedFileBack.Manifest manifest
+                = ChunkedFileBack.Manifest.read(
+                    ChunkedFileBack.manifest(fileKey));
+            final Path leafPath = fileBack.chunkKey(
+                fileKey, manifest.generation, 1).leafPath();
+            final byte[] chunk = Files.readAllBytes(leafPath);
+            chunk[0] = (byte) ~chunk[0];
+            final FileTime lastModifiedTime
+                = Files.getLastModifiedTime(leafPath);
+            Files.write(leafPath, chunk);
+            Files.setLastModifiedTime(leafPath, lastModifiedTime);
+            try {
+                read(fileBack, key);
+                fail("corrupted chunk read");
+            } catch (final IOException | FileBackException e) {
+                // expected
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+}
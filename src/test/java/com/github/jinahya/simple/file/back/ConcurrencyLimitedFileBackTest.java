@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ConcurrencyLimitedFileBackTest {
+
+
+    private static FileContext context(final FileOperation fileOperation) {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> fileOperation);
+
+        return fileContext;
+    }
+
+
+    @Test
+    public void reject() throws Exception {
+
+        final CountDownLatch entered = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ConcurrencyLimitedFileBack fileBack
+            = new ConcurrencyLimitedFileBack(c -> {
+                if (c.fileOperationSupplier().get() != FileOperation.READ) {
+                    return;
+                }
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 2, 16);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> first = executor.submit(() -> {
+                fileBack.operate(context(FileOperation.READ));
+                return null;
+            });
+            final Future<?> second = executor.submit(() -> {
+                fileBack.operate(context(FileOperation.READ));
+                return null;
+            });
+            assertTrue(entered.await(10L, TimeUnit.SECONDS));
+            assertEquals(fileBack.inFlight(FileOperation.READ), 2);
+
+            try {
+                fileBack.operate(context(FileOperation.READ));
+                fail("limit exceeded");
+            } catch (final LimitExceededException lee) {
+                assertEquals(lee.fileOperation(), FileOperation.READ);
+                assertEquals(lee.limit(), 2);
+            }
+            assertEquals(fileBack.rejections(FileOperation.READ), 1L);
+
+            // limits are per operation
+            fileBack.operate(context(FileOperation.STAT));
+
+            release.countDown();
+            first.get();
+            second.get();
+            assertEquals(fileBack.inFlight(FileOperation.READ), 0);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void adapt() throws Exception {
+
+        final ConcurrencyLimitedFileBack.Limiter limiter
+            = new ConcurrencyLimitedFileBack.Limiter(4, 8);
+
+        // additive increase while utilized and fast
+        for (int i = 0; i < 64; i++) {
+            int acquired = 0;
+            while (limiter.acquire()) {
+                acquired++;
+            }
+            assertEquals(acquired, limiter.limit());
+            while (acquired-- > 0) {
+                limiter.release(1000L, false);
+            }
+        }
+        assertEquals(limiter.limit(), 8);
+
+        // multiplicative decrease on failures
+        assertTrue(limiter.acquire());
+        limiter.release(0L, true);
+        assertEquals(limiter.limit(), 7);
+
+        // and on latencies far above the baseline
+        Thread.sleep(2L);
+        assertTrue(limiter.acquire());
+        limiter.release(1000000L, false);
+        assertEquals(limiter.limit(), 6);
+        assertEquals(limiter.inFlight(), 0);
+    }
+
+
+    @Test
+    public void failure() throws Exception {
+
+        final ConcurrencyLimitedFileBack fileBack
+            = new ConcurrencyLimitedFileBack(c -> {
+                throw new IOException("failed");
+            }, 10, 10);
+        try {
+            fileBack.operate(context(FileOperation.WRITE));
+            fail("failed");
+        } catch (final IOException ioe) {
+            // expected
+        }
+        assertEquals(fileBack.limit(FileOperation.WRITE), 9);
+        assertEquals(fileBack.inFlight(FileOperation.WRITE), 0);
+    }
+
+
+}
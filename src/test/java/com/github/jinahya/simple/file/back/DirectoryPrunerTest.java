@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class DirectoryPrunerTest {
+
+
+    @Test
+    public void pruneDeleted() throws Exception {
+
+        final Path rootPath = FileBackTests.randomRootPath();
+        final LocalFileBack fileBack = new LocalFileBack(rootPath);
+        fileBack.pruner(new DirectoryPruner(Runnable::run));
+
+        final ByteBuffer fileKey = randomFileKey();
+        final byte[] fileBytes = randomFileBytes();
+        final FileContext writeContext = new DefaultFileContext();
+        writeContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        writeContext.targetKeySupplier(() -> fileKey.duplicate());
+        writeContext.sourceChannelSupplier(
+            () -> Channels.newChannel(new ByteArrayInputStream(fileBytes)));
+        fileBack.operate(writeContext);
+        final Path leafPath = fileBack.fileKey(fileKey.duplicate()).leafPath();
+        assertTrue(Files.isRegularFile(leafPath));
+
+        final FileContext deleteContext = new DefaultFileContext();
+        deleteContext.fileOperationSupplier(() -> FileOperation.DELETE);
+        deleteContext.sourceKeySupplier(() -> fileKey.duplicate());
+        fileBack.operate(deleteContext);
+        assertFalse(Files.exists(leafPath.getParent()));
+        assertFalse(Files.exists(
+            rootPath.resolve(rootPath.relativize(leafPath).getName(0))));
+        assertTrue(Files.isDirectory(rootPath));
+        assertEquals(fileBack.pruner().pending(), 0);
+
+        // written again after pruned
+        fileBack.operate(writeContext);
+        assertEquals(Files.readAllBytes(leafPath), fileBytes);
+    }
+
+
+    @Test
+    public void pruneAll() throws Exception {
+
+        final Path rootPath = FileBackTests.randomRootPath();
+        final LocalFileBack fileBack = new LocalFileBack(rootPath);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            fileBack.pruner(new DirectoryPruner(executor));
+
+            final ByteBuffer fileKey = randomFileKey();
+            final Path leafPath
+                = fileBack.fileKey(fileKey.duplicate()).leafPath();
+            Files.createDirectories(leafPath.getParent());
+            Files.write(leafPath, randomFileBytes());
+            Files.createDirectories(rootPath.resolve("a/b/c"));
+            Files.createDirectories(rootPath.resolve("d/e"));
+            Files.createDirectories(rootPath.resolve(".hidden"));
+
+            assertEquals(fileBack.prune(), 5L);
+            assertFalse(Files.exists(rootPath.resolve("a")));
+            assertFalse(Files.exists(rootPath.resolve("d")));
+            assertTrue(Files.isDirectory(rootPath.resolve(".hidden")));
+            assertTrue(Files.isRegularFile(leafPath));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+}
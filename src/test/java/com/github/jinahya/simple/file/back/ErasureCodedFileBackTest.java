@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.read;
+import static com.github.jinahya.simple.file.back.FileBackTests.write;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ErasureCodedFileBackTest {
+
+
+    @Test
+    public void codec() {
+
+        final ReedSolomon codec = new ReedSolomon(4, 2);
+        final byte[][] shards = new byte[6][1024];
+        for (int i = 0; i < 4; i++) {
+            ThreadLocalRandom.current().nextBytes(shards[i]);
+        }
+        codec.encode(shards, 0, 1024);
+
+        final byte[][] expected = new byte[6][];
+        for (int i = 0; i < shards.length; i++) {
+            expected[i] = shards[i].clone();
+        }
+
+        final boolean[] present = {false, true, true, false, true, true};
+        shards[0] = new byte[1024];
+        shards[3] = new byte[1024];
+        codec.decode(shards, present, 0, 1024);
+        for (int i = 0; i < shards.length; i++) {
+            assertEquals(shards[i], expected[i]);
+        }
+
+        // absent parity shards are left untouched
+        shards[0] = new byte[1024];
+        shards[5] = new byte[1024];
+        present[3] = true;
+        present[5] = false;
+        codec.decodeData(shards, present, 0, 1024);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(shards[i], expected[i]);
+        }
+        assertEquals(shards[5], new byte[1024]);
+    }
+
+
+    @Test
+    public void reconstruct() throws Exception {
+
+        final List<LocalFileBack> roots = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            roots.add(new LocalFileBack(FileBackTests.randomRootPath()));
+        }
+        final ErasureCodedFileBack fileBack
+            = new ErasureCodedFileBack(roots, 3);
+
+        // spans two stripes
+        final byte[] fileBytes = new byte[
+            ErasureCodedFileBack.STRIPE_UNIT * 4 + 17];
+        ThreadLocalRandom.current().nextBytes(fileBytes);
+        final ByteBuffer fileKey = randomFileKey();
+        write(fileBack, fileKey, fileBytes);
+        assertEquals(read(fileBack, fileKey), fileBytes);
+        assertEquals(fileBack.reconstructions(), 0L);
+
+        // lose one data fragment and one parity fragment
+        Files.delete(roots.get(1).fileKey(fileKey.duplicate()).leafPath());
+        Files.delete(roots.get(4).fileKey(fileKey.duplicate()).leafPath());
+        assertEquals(read(fileBack, fileKey), fileBytes);
+        assertTrue(fileBack.reconstructions() > 0L);
+
+        final FileContext deleteContext = new DefaultFileContext();
+        deleteContext.fileOperationSupplier(() -> FileOperation.DELETE);
+        deleteContext.sourceKeySupplier(() -> fileKey.duplicate());
+        fileBack.operate(deleteContext);
+        for (final LocalFileBack root : roots) {
+            assertFalse(Files.exists(
+                root.fileKey(fileKey.duplicate()).leafPath()));
+        }
+    }
+
+
+    @Test
+    public void stale() throws Exception {
+
+        final List<LocalFileBack> roots = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            roots.add(new LocalFileBack(FileBackTests.randomRootPath()));
+        }
+        final ErasureCodedFileBack fileBack
+            = new ErasureCodedFileBack(roots, 3);
+
+        final byte[] older = new byte[ErasureCodedFileBack.STRIPE_UNIT + 17];
+        ThreadLocalRandom.current().nextBytes(older);
+        final ByteBuffer fileKey = randomFileKey();
+        write(fileBack, fileKey, older);
+        final Path leafPath
+            = roots.get(0).fileKey(fileKey.duplicate()).leafPath();
+        final byte[] fragment = Files.readAllBytes(leafPath);
+
+        // a same-sized overwrite; a root then rolls its fragment back
+        final byte[] newer = new byte[older.length];
+        ThreadLocalRandom.current().nextBytes(newer);
+        write(fileBack, fileKey, newer);
+        Files.write(leafPath, fragment);
+        assertEquals(read(fileBack, fileKey), newer);
+        assertTrue(fileBack.reconstructions() > 0L);
+
+        // too many stale fragments
+        for (int i = 1; i < 3; i++) {
+            Files.delete(roots.get(i).fileKey(fileKey.duplicate()).leafPath());
+        }
+        try {
+            read(fileBack, fileKey);
+            fail("read with stale fragments");
+        } catch (final FileBackException fbe) {
+            // expected
+        }
+    }
+
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.read;
+import static com.github.jinahya.simple.file.back.FileBackTests.writeContext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ExpiryReaperTest {
+
+
+    private static void write(final FileBack fileBack,
+                              final ByteBuffer fileKey, final byte[] fileBytes,
+                              final Duration timeToLive)
+        throws IOException, FileBackException {
+
+        final FileContext writeContext = writeContext(fileKey, fileBytes);
+        writeContext.timeToLiveSupplier(() -> timeToLive);
+        fileBack.operate(writeContext);
+    }
+
+
+    @Test
+    public void wheel() {
+
+        final ExpiryReaper.Wheel wheel = new ExpiryReaper.Wheel(0L);
+        final List<ExpiryReaper.Entry> due = new ArrayList<>();
+        final long[] deadlines = {1L, 63L, 64L, 65L, 4095L, 4097L, 300000L,
+                                  20000000L};
+        for (final long deadline : deadlines) {
+            wheel.add(new ExpiryReaper.Entry(null, deadline, deadline),
+                      due);
+        }
+        long previous = 0L;
+        for (final long deadline : deadlines) {
+            wheel.advance(deadline - 1L, due);
+            assertEquals(due.size(), 0, "before " + deadline);
+            wheel.advance(deadline, due);
+            assertEquals(due.size(), 1, "at " + deadline);
+            due.clear();
+            previous = deadline;
+        }
+        assertEquals(wheel.current, previous);
+    }
+
+
+    @Test
+    public void reap() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try (ExpiryReaper reaper = new ExpiryReaper(
+            fileBack, scheduler, 10L, TimeUnit.MILLISECONDS, 1000)) {
+            fileBack.reaper(reaper);
+
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes = randomFileBytes();
+            write(fileBack, fileKey, fileBytes, Duration.ofMillis(200L));
+            assertEquals(read(fileBack, fileKey), fileBytes);
+            assertEquals(reaper.pending(), 1);
+
+            final long deadline = System.currentTimeMillis() + 10000L;
+            while (reaper.reaped() == 0L
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertEquals(reaper.reaped(), 1L);
+            assertEquals(reaper.pending(), 0);
+            assertFalse(Files.exists(
+                fileBack.fileKey(fileKey.duplicate()).leafPath()));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+    @Test
+    public void expiredAndReloaded() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final ByteBuffer expiring = randomFileKey();
+            final ByteBuffer living = randomFileKey();
+            final ByteBuffer cleared = randomFileKey();
+            try (ExpiryReaper reaper = new ExpiryReaper(
+                fileBack, scheduler, 1L, TimeUnit.HOURS, 1)) {
+                fileBack.reaper(reaper);
+                write(fileBack, expiring, randomFileBytes(),
+                      Duration.ofMillis(1L));
+                write(fileBack, living, randomFileBytes(),
+                      Duration.ofDays(1L));
+                write(fileBack, cleared, randomFileBytes(),
+                      Duration.ofDays(1L));
+                write(fileBack, cleared, randomFileBytes(), null);
+                assertEquals(reaper.pending(), 2);
+
+                Thread.sleep(20L);
+                final Path leafPath
+                    = fileBack.fileKey(expiring.duplicate()).leafPath();
+                assertTrue(Files.exists(leafPath)); // not reaped yet
+                assertEquals(read(fileBack, expiring).length, 0);
+                final FileContext statContext = new DefaultFileContext();
+                statContext.fileOperationSupplier(() -> FileOperation.STAT);
+                statContext.sourceKeySupplier(() -> expiring.duplicate());
+                final BasicFileAttributes[] attributes
+                    = new BasicFileAttributes[1];
+                statContext.sourceAttributesConsumer(a -> attributes[0] = a);
+                fileBack.operate(statContext);
+                assertNull(attributes[0]);
+            }
+
+            try (ExpiryReaper reaper = new ExpiryReaper(
+                fileBack, scheduler, 1L, TimeUnit.HOURS, 1)) {
+                fileBack.reaper(reaper);
+                assertEquals(reaper.pending(), 2);
+                reaper.turn(); // the expired one is due on load
+                assertEquals(reaper.reaped(), 1L);
+                assertEquals(reaper.pending(), 1);
+                assertTrue(Files.exists(
+                    fileBack.fileKey(cleared.duplicate()).leafPath()));
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import static java.util.concurrent.ThreadLocalRandom.current;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class FileBackMetricsTest {
+
+
+    @Test(invocationCount = 128)
+    public void highest() {
+
+        final long value = current().nextLong(Long.MAX_VALUE >> 1);
+        final int index = LatencyHistogram.index(value);
+        assertTrue(LatencyHistogram.highest(index) >= value);
+        if (index > 0) {
+            assertTrue(LatencyHistogram.highest(index - 1) < value);
+        }
+    }
+
+
+    @Test
+    public void percentiles() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000L; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        final LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(snapshot.getCount(), 1000L);
+        assertEquals(snapshot.getMax(), 1000000L);
+        assertEquals(snapshot.getP50(), 500000L, 500000L / 16L);
+        assertEquals(snapshot.getP99(), 990000L, 990000L / 16L);
+    }
+
+
+    @Test
+    public void operate() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final FileBackMetrics metrics = new FileBackMetrics();
+        fileBack.metrics(metrics);
+
+        final ByteBuffer fileKey = randomFileKey();
+        final byte[] fileBytes = randomFileBytes();
+
+        final FileContext writeContext = new DefaultFileContext();
+        writeContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        writeContext.targetKeySupplier(() -> fileKey);
+        writeContext.sourceChannelSupplier(
+            () -> Channels.newChannel(new ByteArrayInputStream(fileBytes)));
+        fileBack.operate(writeContext);
+
+        final FileContext readContext = new DefaultFileContext();
+        readContext.fileOperationSupplier(() -> FileOperation.READ);
+        readContext.sourceKeySupplier(() -> fileKey);
+        final ByteArrayOutputStream targetStream = new ByteArrayOutputStream();
+        readContext.targetChannelSupplier(
+            () -> Channels.newChannel(targetStream));
+        fileBack.operate(readContext);
+
+        assertEquals(metrics.latency(FileOperation.WRITE).getCount(), 1L);
+        assertEquals(metrics.latency(FileOperation.READ).getCount(), 1L);
+        assertEquals(metrics.latency(FileBackMetrics.Phase.KEY_HASH)
+            .getCount(), 2L);
+        assertEquals(metrics.getBytesIn(), fileBytes.length);
+        assertEquals(metrics.getBytesOut(), fileBytes.length);
+    }
+
+
+    @Test
+    public void register() throws JMException {
+
+        final FileBackMetrics metrics = new FileBackMetrics();
+        final ObjectName objectName = metrics.register(
+            FileBackMetricsTest.class.getName());
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(server.getAttribute(objectName, "BytesIn"), 0L);
+            server.getAttribute(objectName, "OperationLatencies");
+        } finally {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+
+}
@@ -18,10 +18,12 @@
 package com.github.jinahya.simple.file.back;
 
 
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
 import com.google.common.io.Files;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
@@ -64,7 +66,13 @@ public final class FileBackTests {
 
     public static byte[] randomFileBytes() {
 
-        final byte[] fileBytes = new byte[current().nextInt(1, 1024)];
+        return randomFileBytes(current().nextInt(1, 1024));
+    }
+
+
+    public static byte[] randomFileBytes(final int size) {
+
+        final byte[] fileBytes = new byte[size];
         current().nextBytes(fileBytes);
 
         return fileBytes;
@@ -98,6 +106,87 @@ public final class FileBackTests {
     }
 
 
+    /**
+     * Creates a new context for writing specified bytes to specified key.
+     *
+     * @param fileKey the file key.
+     * @param fileBytes the bytes to write.
+     *
+     * @return a new file context.
+     */
+    public static FileContext writeContext(final ByteBuffer fileKey,
+                                           final byte[] fileBytes) {
+
+        final FileContext writeContext = new DefaultFileContext();
+        writeContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        writeContext.targetKeySupplier(() -> fileKey.duplicate());
+        writeContext.sourceChannelSupplier(
+            () -> Channels.newChannel(new ByteArrayInputStream(fileBytes)));
+
+        return writeContext;
+    }
+
+
+    /**
+     * Writes specified bytes to specified key of specified file back.
+     *
+     * @param fileBack the file back.
+     * @param fileKey the file key.
+     * @param fileBytes the bytes to write.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    public static void write(final FileBack fileBack, final ByteBuffer fileKey,
+                             final byte[] fileBytes)
+        throws IOException, FileBackException {
+
+        fileBack.operate(writeContext(fileKey, fileBytes));
+    }
+
+
+    /**
+     * Creates a new context for reading specified key into specified stream.
+     *
+     * @param fileKey the file key.
+     * @param targetStream the stream to which the bytes are read.
+     *
+     * @return a new file context.
+     */
+    public static FileContext readContext(
+        final ByteBuffer fileKey, final ByteArrayOutputStream targetStream) {
+
+        final FileContext readContext = new DefaultFileContext();
+        readContext.fileOperationSupplier(() -> FileOperation.READ);
+        readContext.sourceKeySupplier(() -> fileKey.duplicate());
+        readContext.targetChannelSupplier(
+            () -> Channels.newChannel(targetStream));
+
+        return readContext;
+    }
+
+
+    /**
+     * Reads all bytes of specified key from specified file back.
+     *
+     * @param fileBack the file back.
+     * @param fileKey the file key.
+     *
+     * @return the bytes read; empty if the file doesn't exist.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws FileBackException if a file back error occurs.
+     */
+    public static byte[] read(final FileBack fileBack, final ByteBuffer fileKey)
+        throws IOException, FileBackException {
+
+        final ByteArrayOutputStream targetStream = new ByteArrayOutputStream();
+        fileBack.operate(readContext(fileKey, targetStream));
+
+        return targetStream.toByteArray();
+    }
+
+
     private FileBackTests() {
 
         super();
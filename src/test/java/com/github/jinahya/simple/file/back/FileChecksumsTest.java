@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.readContext;
+import static com.github.jinahya.simple.file.back.FileBackTests.write;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.zip.Checksum;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class FileChecksumsTest {
+
+
+    private static LocalFileBack fileBack() throws IOException {
+
+        final Path rootPath = FileBackTests.randomRootPath();
+        if (!Files.getFileStore(rootPath).supportsFileAttributeView(
+            UserDefinedFileAttributeView.class)) {
+            throw new SkipException("user-defined attributes not supported");
+        }
+
+        final LocalFileBack fileBack = new LocalFileBack(rootPath);
+        fileBack.checksums(true);
+
+        return fileBack;
+    }
+
+
+    private static byte[] read(final FileBack fileBack, final ByteBuffer key,
+                               final boolean verify)
+        throws IOException, FileBackException {
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final FileContext fileContext = readContext(key, stream);
+        fileContext.verifySupplier(() -> verify);
+        fileBack.operate(fileContext);
+
+        return stream.toByteArray();
+    }
+
+
+    private static byte[] consume(final FileBack fileBack,
+                                  final ByteBuffer key)
+        throws IOException, FileBackException {
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.READ);
+        fileContext.sourceKeySupplier(() -> key.duplicate());
+        fileContext.sourceChannelConsumer(v -> {
+            final ByteBuffer buffer = ByteBuffer.allocate(1024);
+            try {
+                while (v.read(buffer) != -1) {
+                    stream.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+            } catch (final IOException ioe) {
+                // the mismatch is rethrown by the operation
+            }
+        });
+        fileBack.operate(fileContext);
+
+        return stream.toByteArray();
+    }
+
+
+    // flips the first byte keeping the size and the last modified time
+    private static void corrupt(final Path leafPath) throws IOException {
+
+        final FileTime lastModifiedTime = Files.getLastModifiedTime(leafPath);
+        try (FileChannel channel = FileChannel.open(
+            leafPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, 0L);
+            buffer.put(0, (byte) ~buffer.get(0)).rewind();
+            channel.write(buffer, 0L);
+        }
+        Files.setLastModifiedTime(leafPath, lastModifiedTime);
+    }
+
+
+    @Test
+    public void crc32c() {
+
+        final byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+        final Checksum fallback = new FileChecksums.Crc32c();
+        fallback.update(bytes, 0, bytes.length);
+        assertEquals(fallback.getValue(), 0xE3069283L);
+
+        final Checksum checksum = FileChecksums.newChecksum();
+        checksum.update(bytes, 0, 4);
+        checksum.update(bytes, 4, bytes.length - 4);
+        assertEquals(checksum.getValue(), 0xE3069283L);
+
+        assertEquals(FileChecksums.checksum(bytes), 0xE3069283);
+
+        final int head = FileChecksums.checksum(
+            "1234".getBytes(StandardCharsets.US_ASCII));
+        final int tail = FileChecksums.checksum(
+            "56789".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(FileChecksums.combine(head, tail, 5L), 0xE3069283);
+        assertEquals(FileChecksums.combine(head, 0, 0L), head);
+        assertEquals(FileChecksums.combine(0, 0xE3069283, 9L), 0xE3069283);
+    }
+
+
+    @Test
+    public void verify() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack = fileBack();
+        final ByteBuffer key = randomFileKey();
+        final byte[] bytes = randomFileBytes();
+        write(fileBack, key, bytes);
+
+        final Path leafPath = fileBack.fileKey(key.duplicate()).leafPath();
+        assertNotNull(FileChecksums.load(leafPath));
+        assertEquals(read(fileBack, key, true), bytes);
+        assertEquals(consume(fileBack, key), bytes);
+
+        corrupt(leafPath);
+        try {
+            read(fileBack, key, true);
+            fail("corrupted file read");
+        } catch (final ChecksumMismatchException cme) {
+            assertEquals(cme.expected(), FileChecksums.checksum(bytes));
+            assertNotEquals(cme.actual(), cme.expected());
+        }
+        try {
+            consume(fileBack, key);
+            fail("corrupted file consumed");
+        } catch (final ChecksumMismatchException cme) {
+            // expected
+        }
+
+        // skipped on hot paths
+        final byte[] corrupted = read(fileBack, key, false);
+        assertEquals(corrupted.length, bytes.length);
+        assertNotEquals(corrupted, bytes);
+    }
+
+
+    // appends specified bytes, alternately supplying and consuming channels
+    private static void append(final FileBack fileBack, final ByteBuffer key,
+                               final byte[] bytes, final boolean supply)
+        throws IOException, FileBackException {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.APPEND);
+        fileContext.targetKeySupplier(() -> key.duplicate());
+        if (supply) {
+            fileContext.sourceChannelSupplier(
+                () -> Channels.newChannel(new ByteArrayInputStream(bytes)));
+        } else {
+            fileContext.targetChannelConsumer(v -> {
+                try {
+                    Channels.newOutputStream(v).write(bytes);
+                } catch (final IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        }
+        fileBack.operate(fileContext);
+    }
+
+
+    @Test
+    public void append() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack = fileBack();
+        final ByteBuffer key = randomFileKey();
+        final Path leafPath = fileBack.fileKey(key.duplicate()).leafPath();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            final byte[] bytes = randomFileBytes();
+            append(fileBack, key, bytes, i % 2 == 0);
+            expected.write(bytes, 0, bytes.length);
+            assertEquals(FileChecksums.load(leafPath), Integer.valueOf(
+                         FileChecksums.checksum(expected.toByteArray())));
+        }
+        assertEquals(read(fileBack, key, true), expected.toByteArray());
+
+        // extended on an object written with a checksum
+        final byte[] bytes = randomFileBytes();
+        write(fileBack, key, bytes);
+        final byte[] appended = randomFileBytes();
+        append(fileBack, key, appended, true);
+        final byte[] whole = new byte[bytes.length + appended.length];
+        System.arraycopy(bytes, 0, whole, 0, bytes.length);
+        System.arraycopy(appended, 0, whole, bytes.length, appended.length);
+        assertEquals(read(fileBack, key, true), whole);
+
+        corrupt(leafPath);
+        try {
+            read(fileBack, key, true);
+            fail("corrupted append read");
+        } catch (final ChecksumMismatchException cme) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void stale() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack = fileBack();
+        final ByteBuffer key = randomFileKey();
+        final byte[] bytes = randomFileBytes();
+        write(fileBack, key, new byte[bytes.length + 1]);
+
+        // neither computed nor removed
+        fileBack.checksums(false);
+        write(fileBack, key, bytes);
+        fileBack.checksums(true);
+
+        final Path leafPath = fileBack.fileKey(key.duplicate()).leafPath();
+        assertNull(FileChecksums.load(leafPath));
+        assertEquals(read(fileBack, key, true), bytes);
+    }
+
+
+    @Test
+    public void copy() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack = fileBack();
+        final ByteBuffer sourceKey = randomFileKey();
+        final byte[] bytes = randomFileBytes();
+        write(fileBack, sourceKey, bytes);
+
+        final ByteBuffer targetKey = randomFileKey();
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.COPY);
+        fileContext.sourceKeySupplier(() -> sourceKey.duplicate());
+        fileContext.targetKeySupplier(() -> targetKey.duplicate());
+        fileBack.operate(fileContext);
+
+        final Path leafPath
+            = fileBack.fileKey(targetKey.duplicate()).leafPath();
+        assertEquals(FileChecksums.load(leafPath),
+                     Integer.valueOf(FileChecksums.checksum(bytes)));
+
+        corrupt(leafPath);
+        try {
+            read(fileBack, targetKey, true);
+            fail("corrupted copy read");
+        } catch (final ChecksumMismatchException cme) {
+            // expected
+        }
+    }
+
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class FileOperationEventTest {
+
+
+    private static List<RecordedEvent> events(final List<RecordedEvent> events,
+                                              final String name) {
+
+        return events.stream()
+            .filter(e -> e.getEventType().getName().equals(name))
+            .collect(Collectors.toList());
+    }
+
+
+    @Test
+    public void record() throws IOException, FileBackException {
+
+        final Path rootPath = FileBackTests.randomRootPath();
+        final LocalFileBack fileBack = new LocalFileBack(rootPath);
+        final ByteBuffer key = randomFileKey();
+        final byte[] bytes = new byte[1024];
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(FileOperationEvent.NAME)
+                .withThreshold(Duration.ZERO);
+            recording.enable(FileForceEvent.NAME)
+                .withThreshold(Duration.ZERO);
+            recording.enable(DirectoryCreationEvent.NAME)
+                .withThreshold(Duration.ZERO);
+            recording.start();
+
+            // forced by the target channel consumer
+            final FileContext writeContext = new DefaultFileContext();
+            writeContext.fileOperationSupplier(() -> FileOperation.WRITE);
+            writeContext.targetKeySupplier(() -> key.duplicate());
+            writeContext.targetChannelConsumer(c -> {
+                try {
+                    Channels.newOutputStream(c).write(bytes);
+                } catch (final IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            fileBack.operate(writeContext);
+
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            final FileContext readContext = new DefaultFileContext();
+            readContext.fileOperationSupplier(() -> FileOperation.READ);
+            readContext.sourceKeySupplier(() -> key.duplicate());
+            readContext.targetChannelSupplier(
+                () -> Channels.newChannel(stream));
+            fileBack.operate(readContext);
+            assertEquals(stream.size(), bytes.length);
+
+            recording.stop();
+            final Path dump = Files.createTempFile("file-back", ".jfr");
+            try {
+                recording.dump(dump);
+                events = RecordingFile.readAllEvents(dump);
+            } finally {
+                Files.delete(dump);
+            }
+        }
+
+        final String pathName
+            = fileBack.pathName(fileBack.fileKey(key.duplicate()).leafPath());
+
+        final List<RecordedEvent> operations
+            = events(events, FileOperationEvent.NAME);
+        assertEquals(operations.size(), 2);
+        assertEquals(operations.get(0).getString("operation"), "WRITE");
+        assertEquals(operations.get(1).getString("operation"), "READ");
+        for (final RecordedEvent operation : operations) {
+            assertEquals(operation.getString("pathName"), pathName);
+            assertEquals(operation.getLong("bytes"), (long) bytes.length);
+            assertEquals(operation.getString("outcome"), "SUCCEEDED");
+        }
+
+        final List<RecordedEvent> forces = events(events, FileForceEvent.NAME);
+        assertEquals(forces.size(), 1);
+        assertEquals(forces.get(0).getString("file"), pathName);
+        assertEquals(forces.get(0).getLong("bytes"), (long) bytes.length);
+
+        final List<RecordedEvent> creations
+            = events(events, DirectoryCreationEvent.NAME);
+        assertEquals(creations.size(), 1);
+        assertTrue(rootPath.resolve(creations.get(0).getString("directory"))
+            .equals(fileBack.fileKey(key.duplicate()).leafPath().getParent()));
+    }
+
+
+}
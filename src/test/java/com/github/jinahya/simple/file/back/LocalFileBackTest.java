@@ -26,19 +26,27 @@ import com.google.inject.name.Named;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import static java.lang.invoke.MethodHandles.lookup;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import static java.util.concurrent.ThreadLocalRandom.current;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.slf4j.Logger;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 import org.testng.annotations.AfterClass;
@@ -144,6 +152,45 @@ public class LocalFileBackTest {
     }
 
 
+    @Test(enabled = true, invocationCount = 1)
+    public void append() throws IOException, FileBackException {
+
+        final ByteBuffer fileKey = randomFileKey();
+        final Path leafPath = LocalFileBack.leafPath(rootPath, fileKey, true);
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final List<Long> sizes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final byte[] fileBytes = randomFileBytes();
+            expected.write(fileBytes, 0, fileBytes.length);
+            final FileContext appendContext = new DefaultFileContext();
+            appendContext.fileOperationSupplier(() -> FileOperation.APPEND);
+            appendContext.targetKeySupplier(() -> fileKey.duplicate());
+            if (i % 2 == 0) {
+                appendContext.sourceChannelSupplier(
+                    () -> Channels.newChannel(
+                        new ByteArrayInputStream(fileBytes)));
+            } else {
+                appendContext.targetChannelConsumer(v -> {
+                    try {
+                        Channels.newOutputStream(v).write(fileBytes);
+                    } catch (final IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                });
+            }
+            final boolean force = i == 2;
+            appendContext.forceSupplier(() -> force);
+            appendContext.targetSizeConsumer(sizes::add);
+            fileBack.operate(appendContext);
+        }
+
+        assertEquals(Files.readAllBytes(leafPath), expected.toByteArray());
+        assertEquals(sizes.size(), 3);
+        assertEquals(sizes.get(2).longValue(), (long) expected.size());
+    }
+
+
     @Test(enabled = true, invocationCount = 1)
     public void copy() throws IOException, FileBackException {
 
@@ -198,6 +245,35 @@ public class LocalFileBackTest {
     }
 
 
+    @Test(enabled = true, invocationCount = 1)
+    public void fileKey() throws IOException, FileBackException {
+
+        final ByteBuffer keyBytes = randomFileKey();
+
+        final FileKey fileKey = ((LocalFileBack) fileBack).fileKey(keyBytes);
+        assertEquals(fileKey.leafPath(),
+                     LocalFileBack.leafPath(rootPath, keyBytes, false));
+        assertEquals(fileKey.pathName().replace("/", ""),
+                     DigestUtils.sha1Hex(keyBytes.array()));
+        assertEquals(((LocalFileBack) fileBack).fileKey(fileKey.pathName()),
+                     fileKey);
+
+        final byte[] fileBytes = randomFileBytes();
+        Files.createDirectories(fileKey.leafPath().getParent());
+        Files.write(fileKey.leafPath(), fileBytes);
+
+        final FileContext context = new DefaultFileContext();
+        context.fileOperationSupplier(() -> FileOperation.READ);
+        context.sourceFileKeySupplier(() -> fileKey);
+        final ByteArrayOutputStream targetStream = new ByteArrayOutputStream();
+        context.targetChannelSupplier(() -> Channels.newChannel(targetStream));
+
+        fileBack.operate(context);
+
+        assertEquals(targetStream.toByteArray(), fileBytes);
+    }
+
+
     @Test(enabled = true, invocationCount = 1)
     public void read() throws IOException, FileBackException {
 
@@ -242,6 +318,43 @@ public class LocalFileBackTest {
     }
 
 
+    @Test(enabled = true, invocationCount = 1)
+    public void stat() throws IOException, FileBackException {
+
+        fileContext.fileOperationSupplier(() -> FileOperation.STAT);
+
+        final ByteBuffer fileKey = randomFileKey();
+        fileContext.sourceKeySupplier(() -> fileKey);
+
+        final Path leafPath = LocalFileBack.leafPath(rootPath, fileKey, true);
+
+        final byte[] fileBytes = randomFileBytes();
+        final boolean fileWritten
+            = Files.isRegularFile(leafPath) || current().nextBoolean();
+        if (fileWritten) {
+            Files.write(leafPath, fileBytes, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+            logger.trace("file written");
+        }
+
+        final BasicFileAttributes[] attributes = new BasicFileAttributes[1];
+        fileContext.sourceAttributesConsumer(v -> attributes[0] = v);
+
+        fileBack.operate(fileContext);
+
+        if (fileWritten) {
+            assertNotNull(attributes[0]);
+            assertEquals(attributes[0].size(), fileBytes.length);
+        } else {
+            assertNull(attributes[0]);
+        }
+
+        ((LocalFileBack) fileBack).stat(
+            Collections.singleton(fileKey),
+            (k, v) -> assertEquals(v != null, fileWritten));
+    }
+
+
     @Test(enabled = true, invocationCount = 1)
     public void write() throws IOException, FileBackException {
 
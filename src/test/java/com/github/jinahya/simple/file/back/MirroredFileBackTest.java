@@ -0,0 +1,403 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.read;
+import static com.github.jinahya.simple.file.back.FileBackTests.readContext;
+import static com.github.jinahya.simple.file.back.FileBackTests.write;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class MirroredFileBackTest {
+
+
+    // a mirror whose operations can be delayed or failed
+    private static class Mirror extends LocalFileBack {
+
+
+        Mirror() {
+
+            super(FileBackTests.randomRootPath());
+        }
+
+
+        @Override
+        public void operate(final FileContext fileContext)
+            throws IOException, FileBackException {
+
+            final FileOperation fileOperation
+                = fileContext.fileOperationSupplier().get();
+            if (failing.contains(fileOperation)) {
+                throw new FileBackException("failing " + fileOperation);
+            }
+            if (fileOperation == FileOperation.READ && readDelay > 0L) {
+                try {
+                    Thread.sleep(readDelay);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.operate(fileContext);
+        }
+
+
+        final Set<FileOperation> failing = ConcurrentHashMap.newKeySet();
+
+
+        volatile long readDelay;
+
+
+    }
+
+
+    private static void delete(final FileBack fileBack,
+                               final ByteBuffer fileKey)
+        throws IOException, FileBackException {
+
+        final FileContext deleteContext = new DefaultFileContext();
+        deleteContext.fileOperationSupplier(() -> FileOperation.DELETE);
+        deleteContext.sourceKeySupplier(() -> fileKey.duplicate());
+        fileBack.operate(deleteContext);
+    }
+
+
+    // waits until the operations in flight settle
+    private static void settle(final MirroredFileBack fileBack)
+        throws InterruptedException {
+
+        for (int i = 0; !fileBack.idle(); i++) {
+            assertTrue(i < 500, "not settled");
+            Thread.sleep(10L);
+        }
+    }
+
+
+    // reads and returns the leaf path served
+    private static Path served(final FileBack fileBack,
+                               final ByteBuffer fileKey,
+                               final byte[] expected)
+        throws IOException, FileBackException {
+
+        final AtomicReference<Object> served = new AtomicReference<>();
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final FileContext readContext = readContext(fileKey, stream);
+        readContext.sourceObjectConsumer(served::set);
+        fileBack.operate(readContext);
+        assertEquals(stream.toByteArray(), expected);
+
+        return (Path) served.get();
+    }
+
+
+    @Test
+    public void mirror() throws Exception {
+
+        final List<LocalFileBack> mirrors = Arrays.asList(
+            new LocalFileBack(FileBackTests.randomRootPath()),
+            new LocalFileBack(FileBackTests.randomRootPath()));
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            // quorum of all so that both are written on return
+            final MirroredFileBack fileBack
+                = new MirroredFileBack(mirrors, 2, executor);
+
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes = randomFileBytes();
+            write(fileBack, fileKey, fileBytes);
+            for (final LocalFileBack mirror : mirrors) {
+                assertEquals(Files.readAllBytes(
+                    mirror.fileKey(fileKey.duplicate()).leafPath()),
+                    fileBytes);
+            }
+
+            // lose one copy; reads still succeed and reconcile restores it
+            final Path lost = mirrors.get(0).fileKey(fileKey.duplicate())
+                .leafPath();
+            Files.delete(lost);
+            for (int i = 0; i < 8; i++) {
+                assertEquals(read(fileBack, fileKey), fileBytes);
+            }
+            fileBack.reconcile();
+            assertEquals(Files.readAllBytes(lost), fileBytes);
+
+            final FileContext deleteContext = new DefaultFileContext();
+            deleteContext.fileOperationSupplier(() -> FileOperation.DELETE);
+            deleteContext.sourceKeySupplier(() -> fileKey.duplicate());
+            fileBack.operate(deleteContext);
+            for (final LocalFileBack mirror : mirrors) {
+                assertFalse(Files.exists(
+                    mirror.fileKey(fileKey.duplicate()).leafPath()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void hedgeAndPreferFaster() throws Exception {
+
+        final List<Mirror> mirrors = Arrays.asList(new Mirror(), new Mirror());
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final MirroredFileBack fileBack = new MirroredFileBack(
+                new ArrayList<>(mirrors), 2, executor);
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes = randomFileBytes();
+            write(fileBack, fileKey, fileBytes);
+            final Path fast = mirrors.get(1).fileKey(fileKey.duplicate())
+                .leafPath();
+
+            // the first mirror is tried first and is slow; hedged
+            mirrors.get(0).readDelay = 200L;
+            assertEquals(served(fileBack, fileKey, fileBytes), fast);
+            assertEquals(fileBack.hedges(), 1L);
+
+            // the slow one records its latency once it responds
+            Thread.sleep(400L);
+            for (int i = 0; i < 8; i++) {
+                assertEquals(served(fileBack, fileKey, fileBytes), fast);
+            }
+            assertEquals(fileBack.hedges(), 1L);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void quorum() throws Exception {
+
+        final List<Mirror> mirrors
+            = Arrays.asList(new Mirror(), new Mirror(), new Mirror());
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final MirroredFileBack fileBack = new MirroredFileBack(
+                new ArrayList<>(mirrors), 2, executor);
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes = randomFileBytes();
+
+            // one of three may fail
+            mirrors.get(2).failing.add(FileOperation.WRITE);
+            write(fileBack, fileKey, fileBytes);
+            final Path missing = mirrors.get(2).fileKey(fileKey.duplicate())
+                .leafPath();
+            settle(fileBack);
+            assertFalse(Files.exists(missing));
+
+            mirrors.get(2).failing.clear();
+            assertEquals(fileBack.reconcile(), 1L);
+            assertEquals(Files.readAllBytes(missing), fileBytes);
+            assertEquals(read(fileBack, fileKey), fileBytes);
+
+            // two of three may not
+            mirrors.get(1).failing.add(FileOperation.WRITE);
+            mirrors.get(2).failing.add(FileOperation.WRITE);
+            try {
+                write(fileBack, fileKey, randomFileBytes());
+                fail("quorum reached with one mirror");
+            } catch (final FileBackException fbe) {
+                // expected
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void tombstones() throws Exception {
+
+        final List<Mirror> mirrors
+            = Arrays.asList(new Mirror(), new Mirror(), new Mirror());
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final MirroredFileBack fileBack = new MirroredFileBack(
+                new ArrayList<>(mirrors), 2, executor);
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes = randomFileBytes();
+            write(fileBack, fileKey, fileBytes);
+
+            // a mirror missing the delete doesn't bring the key back
+            mirrors.get(2).failing.add(FileOperation.DELETE);
+            delete(fileBack, fileKey);
+            settle(fileBack);
+            final Path stale = mirrors.get(2).fileKey(fileKey.duplicate())
+                .leafPath();
+            assertTrue(Files.exists(stale));
+            mirrors.get(2).failing.clear();
+            assertEquals(fileBack.reconcile(), 1L);
+            for (final LocalFileBack mirror : mirrors) {
+                final Path leafPath
+                    = mirror.fileKey(fileKey.duplicate()).leafPath();
+                assertFalse(Files.exists(leafPath));
+                assertTrue(Files.exists(
+                    MirroredFileBack.tombstone(leafPath)));
+            }
+            assertEquals(read(fileBack, fileKey).length, 0);
+
+            // tombstones go once all mirrors agree
+            assertEquals(fileBack.reconcile(), 0L);
+            for (final LocalFileBack mirror : mirrors) {
+                assertFalse(Files.exists(MirroredFileBack.tombstone(
+                    mirror.fileKey(fileKey.duplicate()).leafPath())));
+            }
+
+            // a later write wins over a tombstone
+            delete(fileBack, fileKey);
+            write(fileBack, fileKey, fileBytes);
+            settle(fileBack);
+            assertEquals(fileBack.reconcile(), 0L);
+            assertEquals(read(fileBack, fileKey), fileBytes);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void divergedContents() throws Exception {
+
+        final List<LocalFileBack> mirrors = Arrays.asList(
+            new LocalFileBack(FileBackTests.randomRootPath()),
+            new LocalFileBack(FileBackTests.randomRootPath()));
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final MirroredFileBack fileBack
+                = new MirroredFileBack(mirrors, 2, executor);
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes = randomFileBytes();
+            write(fileBack, fileKey, fileBytes);
+            settle(fileBack);
+            assertEquals(fileBack.reconcile(), 0L);
+
+            // same size, different bytes, newer
+            final byte[] newer = fileBytes.clone();
+            newer[0] = (byte) ~newer[0];
+            Thread.sleep(50L);
+            write(mirrors.get(1), fileKey, newer);
+            assertEquals(fileBack.reconcile(), 1L);
+            for (final LocalFileBack mirror : mirrors) {
+                assertEquals(read(mirror, fileKey), newer);
+            }
+            assertEquals(fileBack.reconcile(), 0L);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void lateMismatches() throws Exception {
+
+        final List<LocalFileBack> mirrors = Arrays.asList(
+            new LocalFileBack(FileBackTests.randomRootPath()),
+            new LocalFileBack(FileBackTests.randomRootPath()));
+        for (final LocalFileBack mirror : mirrors) {
+            if (!Files.getFileStore(mirror.rootPath())
+                .supportsFileAttributeView(
+                    UserDefinedFileAttributeView.class)) {
+                throw new SkipException(
+                    "user-defined attributes not supported");
+            }
+            mirror.checksums(true);
+        }
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final MirroredFileBack fileBack
+                = new MirroredFileBack(mirrors, 2, executor);
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes
+                = randomFileBytes(MirroredFileBack.PROBE_BYTES * 4);
+            write(fileBack, fileKey, fileBytes);
+            settle(fileBack);
+
+            // flip the first byte of every copy keeping the last modified time
+            for (final LocalFileBack mirror : mirrors) {
+                final Path leafPath
+                    = mirror.fileKey(fileKey.duplicate()).leafPath();
+                final FileTime lastModifiedTime
+                    = Files.getLastModifiedTime(leafPath);
+                final byte[] bytes = Files.readAllBytes(leafPath);
+                bytes[0] = (byte) ~bytes[0];
+                Files.write(leafPath, bytes);
+                Files.setLastModifiedTime(leafPath, lastModifiedTime);
+            }
+
+            // found after the winning mirror served the bytes
+            final FileContext consumeContext = new DefaultFileContext();
+            consumeContext.fileOperationSupplier(() -> FileOperation.READ);
+            consumeContext.sourceKeySupplier(() -> fileKey.duplicate());
+            consumeContext.sourceChannelConsumer(c -> {
+                final ByteBuffer buffer = ByteBuffer.allocate(1024);
+                try {
+                    while (c.read(buffer) != -1) {
+                        buffer.clear();
+                    }
+                } catch (final IOException ioe) {
+                    // the mismatch is rethrown by the operation
+                }
+            });
+            try {
+                fileBack.operate(consumeContext);
+                fail("corrupted file consumed");
+            } catch (final ChecksumMismatchException cme) {
+                // expected
+            }
+
+            // the caller's flags reach the mirrors
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            final FileContext readContext = readContext(fileKey, stream);
+            readContext.verifySupplier(() -> false);
+            fileBack.operate(readContext);
+            assertEquals(stream.size(), fileBytes.length);
+            settle(fileBack);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class MultipartUploadsTest {
+
+
+    private static FileContext target(final ByteBuffer key) {
+
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.targetKeySupplier(() -> key.duplicate());
+
+        return fileContext;
+    }
+
+
+    private static void part(final MultipartUploads uploads,
+                             final String uploadId, final int partNumber,
+                             final byte[] bytes, final int offset,
+                             final int length)
+        throws Exception {
+
+        uploads.part(uploadId, partNumber, Channels.newChannel(
+                     new ByteArrayInputStream(bytes, offset, length)));
+    }
+
+
+    private static long staged(final LocalFileBack fileBack)
+        throws Exception {
+
+        try (Stream<Path> paths = Files.list(fileBack.rootPath().resolve(
+            MultipartUploads.STAGING_NAME))) {
+            return paths.count();
+        }
+    }
+
+
+    @Test
+    public void complete() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final MultipartUploads uploads = new MultipartUploads(fileBack, 1000L);
+        final ByteBuffer key = randomFileKey();
+        final byte[] bytes = new byte[3500];
+        ThreadLocalRandom.current().nextBytes(bytes);
+
+        final String uploadId = uploads.initiate(target(key));
+        assertEquals(staged(fileBack), 1L);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 3; i >= 0; i--) {
+                final int index = i;
+                futures.add(executor.submit(() -> {
+                    part(uploads, uploadId, index + 1, bytes, index * 1000,
+                         Math.min(1000, bytes.length - index * 1000));
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(uploads.parts(uploadId).size(), 4);
+
+        assertEquals(uploads.complete(uploadId), 3500L);
+        assertTrue(uploads.uploads().isEmpty());
+        assertEquals(staged(fileBack), 0L);
+        final Path leafPath = fileBack.fileKey(key.duplicate()).leafPath();
+        assertEquals(Files.readAllBytes(leafPath), bytes);
+
+        try {
+            uploads.complete(uploadId);
+            fail("no such upload");
+        } catch (final FileBackException fbe) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void invalid() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final MultipartUploads uploads = new MultipartUploads(fileBack, 100L);
+        final ByteBuffer key = randomFileKey();
+        final byte[] bytes = new byte[300];
+
+        final String uploadId = uploads.initiate(target(key));
+        try {
+            part(uploads, uploadId, 1, bytes, 0, 101);
+            fail("part too large");
+        } catch (final FileBackException fbe) {
+            // expected
+        }
+
+        part(uploads, uploadId, 1, bytes, 0, 100);
+        part(uploads, uploadId, 3, bytes, 0, 50);
+        try {
+            uploads.complete(uploadId);
+            fail("missing part");
+        } catch (final FileBackException fbe) {
+            // expected
+        }
+        part(uploads, uploadId, 2, bytes, 0, 99);
+        try {
+            uploads.complete(uploadId);
+            fail("short part");
+        } catch (final FileBackException fbe) {
+            // expected
+        }
+        assertEquals(uploads.parts(uploadId).keySet(),
+                     new TreeSet<>(Arrays.asList(1, 2, 3)));
+
+        uploads.abort(uploadId);
+        assertEquals(staged(fileBack), 0L);
+        assertTrue(uploads.uploads().isEmpty());
+
+        final FileContext statContext = new DefaultFileContext();
+        statContext.fileOperationSupplier(() -> FileOperation.STAT);
+        statContext.sourceKeySupplier(() -> key.duplicate());
+        statContext.sourceAttributesConsumer(
+            a -> assertEquals(a, null));
+        fileBack.operate(statContext);
+    }
+
+
+}
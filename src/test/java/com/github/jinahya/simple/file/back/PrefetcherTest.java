@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.write;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class PrefetcherTest {
+
+
+    private static Prefetcher.Batch prefetch(final FileBack fileBack,
+                                             final List<ByteBuffer> keys)
+        throws Exception {
+
+        final AtomicReference<Object> batch = new AtomicReference<>();
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.PREFETCH);
+        fileContext.sourceKeysSupplier(() -> keys);
+        fileContext.sourceObjectConsumer(batch::set);
+        fileBack.operate(fileContext);
+        assertNotNull(batch.get());
+
+        return (Prefetcher.Batch) batch.get();
+    }
+
+
+    @Test
+    public void prefetch() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final List<ByteBuffer> keys = Arrays.asList(
+            randomFileKey(), randomFileKey(), randomFileKey());
+        for (final ByteBuffer key : keys) {
+            write(fileBack, key, new byte[100000]);
+        }
+
+        try {
+            prefetch(fileBack, keys);
+            fail("no prefetcher attached");
+        } catch (final FileBackException fbe) {
+            // expected
+        }
+
+        final List<Runnable> tasks = new ArrayList<>();
+        final Prefetcher prefetcher = new Prefetcher(tasks::add, 250000L);
+        fileBack.prefetcher(prefetcher);
+
+        // the third one doesn't fit in the bound
+        final Prefetcher.Batch batch = prefetch(fileBack, keys);
+        assertEquals(tasks.size(), 2);
+        assertEquals(prefetcher.skipped(), 1L);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            tasks.forEach(executor::execute);
+            assertTrue(batch.await(10L, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(batch.prefetched(), 2L);
+        assertEquals(batch.bytes(), 200000L);
+        assertEquals(prefetcher.outstandingBytes(), 0L);
+
+        for (final ByteBuffer key : keys) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final FileContext fileContext = new DefaultFileContext();
+            fileContext.fileOperationSupplier(() -> FileOperation.READ);
+            fileContext.sourceKeySupplier(() -> key.duplicate());
+            fileContext.targetChannelSupplier(
+                () -> Channels.newChannel(output));
+            fileBack.operate(fileContext);
+            assertEquals(output.size(), 100000);
+        }
+        assertEquals(prefetcher.hits(), 2L);
+        assertEquals(prefetcher.hitRate(), 1.0d);
+    }
+
+
+    @Test
+    public void cancel() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final List<ByteBuffer> keys = Arrays.asList(
+            randomFileKey(), randomFileKey());
+        for (final ByteBuffer key : keys) {
+            write(fileBack, key, new byte[1000]);
+        }
+
+        final List<Runnable> tasks = new ArrayList<>();
+        final Prefetcher prefetcher = new Prefetcher(tasks::add, 1048576L);
+        fileBack.prefetcher(prefetcher);
+
+        final Prefetcher.Batch batch = prefetch(fileBack, keys);
+        assertEquals(tasks.size(), 2);
+        assertEquals(prefetcher.outstandingBytes(), 2000L);
+        batch.cancel();
+        tasks.forEach(Runnable::run);
+        assertTrue(batch.await(0L, TimeUnit.SECONDS));
+        assertEquals(batch.prefetched(), 0L);
+        assertEquals(prefetcher.cancelled(), 2L);
+        assertEquals(prefetcher.outstandingBytes(), 0L);
+    }
+
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class QualityOfServiceTest {
+
+
+    private static long transfer(final QualityOfService.PriorityClass priority,
+                                 final long nanos)
+        throws Exception {
+
+        final long deadline = System.nanoTime() + nanos;
+        long transferred = 0L;
+        while (System.nanoTime() < deadline) {
+            priority.bytes(priority.chunkSize());
+            transferred += priority.chunkSize();
+        }
+
+        return transferred;
+    }
+
+
+    @Test
+    public void priorityClass() {
+
+        final QualityOfService qos
+            = new QualityOfService(QualityOfService.UNLIMITED);
+        assertSame(qos.priorityClass(null),
+                   qos.priorityClass(QualityOfService.DEFAULT_CLASS));
+        assertSame(qos.priorityClass("unknown"),
+                   qos.priorityClass(QualityOfService.DEFAULT_CLASS));
+
+        final QualityOfService.PriorityClass batch
+            = qos.configure("batch", 1, 1024L, 1L);
+        assertSame(qos.priorityClass("batch"), batch);
+        assertSame(qos.configure("batch", 2, QualityOfService.UNLIMITED,
+                                 QualityOfService.UNLIMITED), batch);
+        assertEquals(batch.weight(), 2);
+        assertTrue(qos.names().contains("batch"));
+    }
+
+
+    @Test
+    public void write() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final QualityOfService qos
+            = new QualityOfService(QualityOfService.UNLIMITED);
+        final QualityOfService.PriorityClass slow
+            = qos.configure("slow", 1, 1048576L, QualityOfService.UNLIMITED);
+        fileBack.qos(qos);
+
+        final ByteBuffer fileKey = randomFileKey();
+        final FileContext fileContext = new DefaultFileContext();
+        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        fileContext.targetKeySupplier(() -> fileKey.duplicate());
+        fileContext.sourceChannelSupplier(
+            () -> Channels.newChannel(new ByteArrayInputStream(
+                new byte[524288])));
+        fileContext.priorityClassSupplier(() -> "slow");
+
+        final long started = System.nanoTime();
+        fileBack.operate(fileContext);
+        final long elapsed = System.nanoTime() - started;
+
+        assertEquals(slow.operations(), 1L);
+        assertEquals(slow.transferred(), 524288L);
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(300L),
+                   "elapsed: " + elapsed);
+        assertTrue(slow.waited() > 0L);
+
+        // reconfigured limits apply to subsequent transfers
+        qos.configure("slow", 1, QualityOfService.UNLIMITED,
+                      QualityOfService.UNLIMITED);
+        final long waited = slow.waited();
+        fileBack.operate(fileContext);
+        assertEquals(slow.waited(), waited);
+    }
+
+
+    @Test
+    public void share() throws Exception {
+
+        final QualityOfService qos = new QualityOfService(4194304L);
+        final QualityOfService.PriorityClass high = qos.configure(
+            "high", 3, QualityOfService.UNLIMITED,
+            QualityOfService.UNLIMITED);
+        final QualityOfService.PriorityClass low = qos.configure(
+            "low", 1, QualityOfService.UNLIMITED,
+            QualityOfService.UNLIMITED);
+
+        final long nanos = TimeUnit.SECONDS.toNanos(1L);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Long> highFuture
+                = executor.submit(() -> transfer(high, nanos));
+            final Future<Long> lowFuture
+                = executor.submit(() -> transfer(low, nanos));
+            final long highBytes = highFuture.get();
+            final long lowBytes = lowFuture.get();
+            assertTrue(highBytes > lowBytes * 2L,
+                       "high: " + highBytes + ", low: " + lowBytes);
+            assertTrue(highBytes + lowBytes <= 4194304L * 3L / 2L,
+                       "high: " + highBytes + ", low: " + lowBytes);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ReadCoalescerTest {
+
+
+    @Test
+    public void read() throws Exception {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final ReadCoalescer coalescer = new ReadCoalescer(1048576);
+        fileBack.coalescer(coalescer);
+
+        final ByteBuffer fileKey = randomFileKey();
+        final byte[] fileBytes = randomFileBytes();
+
+        final FileContext writeContext = new DefaultFileContext();
+        writeContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        writeContext.targetKeySupplier(() -> fileKey);
+        writeContext.sourceChannelSupplier(
+            () -> Channels.newChannel(new ByteArrayInputStream(fileBytes)));
+        fileBack.operate(writeContext);
+
+        final Callable<byte[]> reader = () -> {
+            final FileContext readContext = new DefaultFileContext();
+            readContext.fileOperationSupplier(() -> FileOperation.READ);
+            readContext.sourceKeySupplier(() -> fileKey.duplicate());
+            final ByteArrayOutputStream targetStream
+                = new ByteArrayOutputStream();
+            readContext.targetChannelSupplier(
+                () -> Channels.newChannel(targetStream));
+            fileBack.operate(readContext);
+            return targetStream.toByteArray();
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(reader));
+            }
+            for (final Future<byte[]> future : futures) {
+                assertEquals(future.get(), fileBytes);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(coalescer.led() + coalescer.joined(), 32L);
+    }
+
+
+    @Test
+    public void readLargerThanLimit() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final ReadCoalescer coalescer = new ReadCoalescer(0);
+
+        final ByteBuffer fileKey = randomFileKey();
+        final byte[] fileBytes = new byte[1];
+
+        final FileContext writeContext = new DefaultFileContext();
+        writeContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        writeContext.targetKeySupplier(() -> fileKey);
+        writeContext.sourceChannelSupplier(
+            () -> Channels.newChannel(new ByteArrayInputStream(fileBytes)));
+        fileBack.operate(writeContext);
+
+        assertNull(coalescer.read(fileBack.fileKey(fileKey).leafPath()));
+        assertEquals(coalescer.led(), 0L);
+    }
+
+
+}
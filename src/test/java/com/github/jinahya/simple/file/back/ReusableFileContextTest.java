@@ -0,0 +1,227 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import com.github.jinahya.simple.file.back.FileContext.PropertyKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ReusableFileContextTest {
+
+
+    // a distinct supplier or consumer for each property key
+    private static Map<PropertyKey, Object> values() {
+
+        final Map<PropertyKey, Object> values
+            = new EnumMap<>(PropertyKey.class);
+        for (final PropertyKey key : PropertyKey.values()) {
+            if (key.name().endsWith("_SUPPLIER")) {
+                values.put(key, (Supplier<Object>) () -> key);
+            } else {
+                values.put(key, (Consumer<Object>) v -> {
+                });
+            }
+        }
+
+        return values;
+    }
+
+
+    @Test
+    public void property() {
+
+        final ReusableFileContext fileContext = new ReusableFileContext();
+        final Map<PropertyKey, Object> values = values();
+
+        for (final PropertyKey key : PropertyKey.values()) {
+            assertFalse(fileContext.property(key).isPresent(), key.name());
+            assertFalse(fileContext.property(key, values.get(key)).isPresent(),
+                        key.name());
+            assertSame(fileContext.property(key).get(), values.get(key),
+                       key.name());
+        }
+
+        final FileContext defaultContext = new DefaultFileContext();
+        for (final PropertyKey key : PropertyKey.values()) {
+            defaultContext.property(key, values.get(key));
+        }
+        assertSame(fileContext.fileOperationSupplier(),
+                   defaultContext.fileOperationSupplier());
+        assertSame(fileContext.sourceKeySupplier(),
+                   defaultContext.sourceKeySupplier());
+        assertSame(fileContext.targetCopiedConsumer(),
+                   defaultContext.targetCopiedConsumer());
+        assertSame(fileContext.targetSizeConsumer(),
+                   defaultContext.targetSizeConsumer());
+        assertSame(fileContext.verifySupplier(),
+                   defaultContext.verifySupplier());
+
+        for (final PropertyKey key : PropertyKey.values()) {
+            assertSame(fileContext.property(key, (Object) null).get(),
+                       values.get(key), key.name());
+            assertFalse(fileContext.property(key).isPresent(), key.name());
+        }
+    }
+
+
+    @Test
+    public void reset() {
+
+        final ReusableFileContext fileContext = new ReusableFileContext();
+        final Map<PropertyKey, Object> values = values();
+        for (final PropertyKey key : PropertyKey.values()) {
+            fileContext.property(key, values.get(key));
+        }
+        fileContext.sourceCopiedLongConsumer(v -> {
+        });
+        fileContext.targetCopiedLongConsumer(v -> {
+        });
+        fileContext.targetSizeLongConsumer(v -> {
+        });
+
+        assertSame(fileContext.reset(), fileContext);
+        for (final PropertyKey key : PropertyKey.values()) {
+            assertFalse(fileContext.property(key).isPresent(), key.name());
+        }
+        assertNull(fileContext.sourceCopiedLongConsumer());
+        assertNull(fileContext.targetCopiedLongConsumer());
+        assertNull(fileContext.targetSizeLongConsumer());
+    }
+
+
+    @Test
+    public void longConsumers() {
+
+        final ReusableFileContext fileContext = new ReusableFileContext();
+        final AtomicLong sourceCopied = new AtomicLong();
+        final AtomicLong targetCopied = new AtomicLong();
+        final AtomicLong targetSize = new AtomicLong();
+
+        final LongConsumer sourceCopiedLongConsumer = sourceCopied::set;
+        assertNull(fileContext.sourceCopiedLongConsumer(
+            sourceCopiedLongConsumer));
+        final LongConsumer targetCopiedLongConsumer = targetCopied::set;
+        assertNull(fileContext.targetCopiedLongConsumer(
+            targetCopiedLongConsumer));
+        final LongConsumer targetSizeLongConsumer = targetSize::set;
+        assertNull(fileContext.targetSizeLongConsumer(targetSizeLongConsumer));
+
+        // visible, boxed, via the generic accessors
+        assertNotNull(
+            fileContext.property(PropertyKey.SOURCE_COPIED_CONSUMER).get());
+        fileContext.sourceCopiedConsumer().accept(1L);
+        assertEquals(sourceCopied.get(), 1L);
+        fileContext.targetCopiedConsumer().accept(2L);
+        assertEquals(targetCopied.get(), 2L);
+        fileContext.targetSizeConsumer().accept(3L);
+        assertEquals(targetSize.get(), 3L);
+
+        fileContext.sourceCopied(4L);
+        assertEquals(sourceCopied.get(), 4L);
+        fileContext.targetCopied(5L);
+        assertEquals(targetCopied.get(), 5L);
+        fileContext.targetSize(6L);
+        assertEquals(targetSize.get(), 6L);
+
+        // a boxed consumer replaces the primitive one and vice versa
+        final Consumer<Long> targetSizeConsumer = v -> targetSize.set(-v);
+        assertNotNull(fileContext.targetSizeConsumer(targetSizeConsumer));
+        assertSame(fileContext.targetSizeConsumer(), targetSizeConsumer);
+        fileContext.targetSize(7L);
+        assertEquals(targetSize.get(), -7L);
+        fileContext.targetSizeLongConsumer().accept(8L);
+        assertEquals(targetSize.get(), -8L);
+        assertNotNull(
+            fileContext.targetSizeLongConsumer(targetSizeLongConsumer));
+        assertSame(fileContext.targetSizeLongConsumer(),
+                   targetSizeLongConsumer);
+        fileContext.targetSize(9L);
+        assertEquals(targetSize.get(), 9L);
+
+        final Consumer<Long> sourceCopiedConsumer = v -> sourceCopied.set(-v);
+        fileContext.sourceCopiedConsumer(sourceCopiedConsumer);
+        fileContext.sourceCopied(10L);
+        assertEquals(sourceCopied.get(), -10L);
+        fileContext.sourceCopiedLongConsumer(sourceCopiedLongConsumer);
+        fileContext.sourceCopied(11L);
+        assertEquals(sourceCopied.get(), 11L);
+
+        final Consumer<Long> targetCopiedConsumer = v -> targetCopied.set(-v);
+        fileContext.targetCopiedConsumer(targetCopiedConsumer);
+        fileContext.targetCopied(12L);
+        assertEquals(targetCopied.get(), -12L);
+        fileContext.targetCopiedLongConsumer(targetCopiedLongConsumer);
+        fileContext.targetCopied(13L);
+        assertEquals(targetCopied.get(), 13L);
+    }
+
+
+    @Test
+    public void operate() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final ByteBuffer fileKey = randomFileKey();
+        final ReusableFileContext fileContext = new ReusableFileContext();
+        final AtomicLong copied = new AtomicLong(-1L);
+        final AtomicLong size = new AtomicLong(-1L);
+
+        fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+        fileContext.targetKeySupplier(() -> fileKey.duplicate());
+        fileContext.sourceChannelSupplier(
+            () -> Channels.newChannel(new ByteArrayInputStream(new byte[3])));
+        fileContext.targetCopiedLongConsumer(copied::set);
+        fileBack.operate(fileContext);
+        assertEquals(copied.get(), 3L);
+
+        fileContext.reset();
+        fileContext.fileOperationSupplier(() -> FileOperation.APPEND);
+        fileContext.targetKeySupplier(() -> fileKey.duplicate());
+        fileContext.sourceChannelSupplier(
+            () -> Channels.newChannel(new ByteArrayInputStream(new byte[2])));
+        fileContext.sourceCopiedLongConsumer(copied::set);
+        fileContext.targetSizeLongConsumer(size::set);
+        fileBack.operate(fileContext);
+        assertEquals(copied.get(), 2L);
+        assertEquals(size.get(), 5L);
+    }
+
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ScrubberTest {
+
+
+    private static final int FILES = 16;
+
+
+    private static final int SIZE = 4096;
+
+
+    // writes files and corrupts the first one in the sorted order
+    private static List<Path> populate(final LocalFileBack fileBack)
+        throws IOException, FileBackException {
+
+        final List<Path> leafPaths = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            final ByteBuffer key = randomFileKey();
+            final byte[] bytes = new byte[SIZE];
+            bytes[0] = (byte) i;
+            final FileContext fileContext = new DefaultFileContext();
+            fileContext.fileOperationSupplier(() -> FileOperation.WRITE);
+            fileContext.targetKeySupplier(() -> key.duplicate());
+            fileContext.sourceChannelSupplier(
+                () -> Channels.newChannel(new ByteArrayInputStream(bytes)));
+            fileBack.operate(fileContext);
+            leafPaths.add(fileBack.fileKey(key.duplicate()).leafPath());
+        }
+        Collections.sort(leafPaths);
+
+        final Path corrupted = leafPaths.get(0);
+        final FileTime lastModifiedTime = Files.getLastModifiedTime(corrupted);
+        try (FileChannel channel = FileChannel.open(
+            corrupted, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{-1}), SIZE - 1L);
+        }
+        Files.setLastModifiedTime(corrupted, lastModifiedTime);
+
+        return leafPaths;
+    }
+
+
+    private static LocalFileBack fileBack() throws IOException {
+
+        final Path rootPath = FileBackTests.randomRootPath();
+        if (!Files.getFileStore(rootPath).supportsFileAttributeView(
+            UserDefinedFileAttributeView.class)) {
+            throw new SkipException("user-defined attributes not supported");
+        }
+
+        final LocalFileBack fileBack = new LocalFileBack(rootPath);
+        fileBack.checksums(true);
+
+        return fileBack;
+    }
+
+
+    @AfterClass
+    public void shutdown() {
+
+        executor.shutdown();
+    }
+
+
+    @Test
+    public void scrub() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack = fileBack();
+        final List<Path> leafPaths = populate(fileBack);
+
+        final Scrubber scrubber = new Scrubber(
+            fileBack, executor, 3, QualityOfService.UNLIMITED, false);
+        assertNull(scrubber.cursor());
+        while (scrubber.scrub(5) > 0) {
+            assertNotNull(scrubber.cursor());
+        }
+
+        assertEquals(scrubber.passes(), 1L);
+        assertNull(scrubber.cursor());
+        assertEquals(scrubber.verified(), FILES - 1L);
+        assertEquals(scrubber.bytes(), (long) FILES * SIZE);
+        assertEquals(scrubber.errors(), 0L);
+        assertEquals(scrubber.corruptions(),
+                     Collections.singleton(
+                         fileBack.pathName(leafPaths.get(0))));
+        assertTrue(Files.isRegularFile(leafPaths.get(0)));
+    }
+
+
+    @Test
+    public void resume() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack = fileBack();
+        final List<Path> leafPaths = populate(fileBack);
+
+        final Scrubber first = new Scrubber(
+            fileBack, executor, 2, QualityOfService.UNLIMITED, false);
+        assertEquals(first.scrub(6), 6);
+        assertEquals(first.cursor(), fileBack.pathName(leafPaths.get(5)));
+        assertTrue(first.progress() > 0.0d);
+
+        final Scrubber second = new Scrubber(
+            fileBack, executor, 2, QualityOfService.UNLIMITED, false);
+        assertEquals(second.cursor(), first.cursor());
+        while (second.scrub(4) > 0) {
+            // scrubbing
+        }
+        assertEquals(second.verified(), (long) FILES - 6);
+        assertTrue(second.corruptions().isEmpty());
+        assertEquals(second.passes(), 1L);
+    }
+
+
+    @Test
+    public void quarantine() throws IOException, FileBackException {
+
+        final LocalFileBack fileBack = fileBack();
+        final List<Path> leafPaths = populate(fileBack);
+
+        final Scrubber scrubber = new Scrubber(
+            fileBack, executor, 4, 1024L * 1024L, true);
+        while (scrubber.scrub(FILES) > 0) {
+            // scrubbing
+        }
+
+        final String pathName = fileBack.pathName(leafPaths.get(0));
+        assertFalse(Files.exists(leafPaths.get(0)));
+        assertTrue(Files.isRegularFile(
+            fileBack.rootPath().resolve(Scrubber.QUARANTINE_NAME)
+            .resolve(pathName.replace('/', '-'))));
+        assertEquals(scrubber.corruptions(),
+                     Collections.singleton(pathName));
+
+        // the quarantine isn't visited
+        while (scrubber.scrub(FILES) > 0) {
+            // scrubbing
+        }
+        assertEquals(scrubber.verified(), 2L * (FILES - 1));
+    }
+
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+
+}
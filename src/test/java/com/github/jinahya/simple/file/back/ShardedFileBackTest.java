@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.read;
+import static com.github.jinahya.simple.file.back.FileBackTests.write;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class ShardedFileBackTest {
+
+
+    @Test
+    public void rebalance() throws Exception {
+
+        final Map<LocalFileBack, Integer> weights = new LinkedHashMap<>();
+        weights.put(new LocalFileBack(FileBackTests.randomRootPath()), 1);
+        weights.put(new LocalFileBack(FileBackTests.randomRootPath()), 1);
+        final ShardedFileBack fileBack = new ShardedFileBack(weights);
+
+        final List<ByteBuffer> fileKeys = new ArrayList<>();
+        final List<byte[]> fileBytes = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            fileKeys.add(randomFileKey());
+            fileBytes.add(randomFileBytes());
+            write(fileBack, fileKeys.get(i), fileBytes.get(i));
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final long migrated;
+        try {
+            migrated = fileBack.add(
+                new LocalFileBack(FileBackTests.randomRootPath()), 1,
+                executor).get();
+        } finally {
+            executor.shutdown();
+        }
+        assertFalse(fileBack.rebalancing());
+        assertTrue(migrated > 0L);
+        assertTrue(migrated < fileKeys.size() / 2, "migrated: " + migrated);
+
+        for (int i = 0; i < fileKeys.size(); i++) {
+            assertEquals(read(fileBack, fileKeys.get(i)), fileBytes.get(i));
+        }
+    }
+
+
+    @Test
+    public void copy() throws IOException, FileBackException {
+
+        final Map<LocalFileBack, Integer> weights = new LinkedHashMap<>();
+        weights.put(new LocalFileBack(FileBackTests.randomRootPath()), 1);
+        weights.put(new LocalFileBack(FileBackTests.randomRootPath()), 1);
+        final ShardedFileBack fileBack = new ShardedFileBack(weights);
+
+        final ByteBuffer sourceKey = randomFileKey();
+        final byte[] fileBytes = randomFileBytes();
+        write(fileBack, sourceKey, fileBytes);
+
+        for (int i = 0; i < 16; i++) {
+            final ByteBuffer targetKey = randomFileKey();
+            final FileContext copyContext = new DefaultFileContext();
+            copyContext.fileOperationSupplier(() -> FileOperation.COPY);
+            copyContext.sourceKeySupplier(() -> sourceKey.duplicate());
+            copyContext.targetKeySupplier(() -> targetKey.duplicate());
+            final List<Long> copied = new ArrayList<>();
+            copyContext.targetCopiedConsumer(copied::add);
+            fileBack.operate(copyContext);
+            assertEquals(copied.size(), 1);
+            assertEquals((long) copied.get(0), fileBytes.length);
+            assertEquals(read(fileBack, targetKey), fileBytes);
+        }
+    }
+
+
+}
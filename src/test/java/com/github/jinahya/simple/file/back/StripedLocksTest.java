@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class StripedLocksTest {
+
+
+    @Test
+    public void stripes() {
+
+        assertEquals(new StripedLocks(1).stripes(), 1);
+        assertEquals(new StripedLocks(3).stripes(), 4);
+        assertEquals(new StripedLocks(64).stripes(), 64);
+    }
+
+
+    @Test
+    public void readWriteOnSameStripe() {
+
+        final StripedLocks locks = new StripedLocks(1);
+        try (StripedLocks.Hold hold = locks.readWrite("source", "target")) {
+        }
+        try (StripedLocks.Hold hold = locks.write("target")) {
+        }
+        assertEquals(locks.acquisitions(), 2L);
+        assertEquals(locks.contentions(), 0L);
+    }
+
+
+    @Test
+    public void writeExcludesRead() throws Exception {
+
+        final StripedLocks locks = new StripedLocks(16);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> future;
+            try (StripedLocks.Hold hold = locks.write("key")) {
+                future = executor.submit(() -> {
+                    try (StripedLocks.Hold read = locks.read("key")) {
+                    }
+                });
+                try {
+                    future.get(100L, TimeUnit.MILLISECONDS);
+                    fail("read acquired while written");
+                } catch (final TimeoutException te) {
+                    // expected
+                }
+            }
+            future.get();
+            assertEquals(locks.contentions(), 1L);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.read;
+import static com.github.jinahya.simple.file.back.FileBackTests.write;
+import static com.github.jinahya.simple.file.back.FileBackTests.writeContext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import static java.util.concurrent.ThreadLocalRandom.current;
+import java.util.concurrent.TimeUnit;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class TieredFileBackTest {
+
+
+    @Test
+    public void demoteAndPromote() throws IOException, FileBackException {
+
+        final LocalFileBack hot
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final LocalFileBack cold
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        // runs promotions and demotions in the calling thread
+        final TieredFileBack fileBack
+            = new TieredFileBack(hot, cold, 4096L, Runnable::run);
+
+        final List<ByteBuffer> fileKeys = new ArrayList<>();
+        final List<byte[]> fileBytes = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            final byte[] bytes = new byte[1024];
+            current().nextBytes(bytes);
+            fileKeys.add(randomFileKey());
+            fileBytes.add(bytes);
+            write(fileBack, fileKeys.get(i), bytes);
+        }
+        assertTrue(fileBack.hotBytes() <= 4096L);
+        assertTrue(fileBack.demotions() >= 12L);
+
+        // the first one is cold by now
+        final ByteBuffer first = fileKeys.get(0);
+        assertTrue(Files.exists(cold.fileKey(first.duplicate()).leafPath()));
+        for (int i = 0; i < TieredFileBack.PROMOTION_FREQUENCY; i++) {
+            assertEquals(read(fileBack, first), fileBytes.get(0));
+        }
+        assertEquals(fileBack.promotions(), 1L);
+        assertTrue(Files.exists(hot.fileKey(first.duplicate()).leafPath()));
+
+        for (int i = 0; i < fileKeys.size(); i++) {
+            assertEquals(read(fileBack, fileKeys.get(i)), fileBytes.get(i));
+        }
+    }
+
+
+    @Test
+    public void copyOverCold() throws IOException, FileBackException {
+
+        final LocalFileBack hot
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final LocalFileBack cold
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final TieredFileBack fileBack
+            = new TieredFileBack(hot, cold, 2048L, Runnable::run);
+
+        final ByteBuffer target = randomFileKey();
+        write(fileBack, target, randomFileBytes(1024));
+        fileBack.demote(0L);
+        assertTrue(Files.exists(cold.fileKey(target.duplicate()).leafPath()));
+
+        final ByteBuffer source = randomFileKey();
+        final byte[] bytes = randomFileBytes(1024);
+        write(fileBack, source, bytes);
+        final FileContext copyContext = new DefaultFileContext();
+        copyContext.fileOperationSupplier(() -> FileOperation.COPY);
+        copyContext.sourceKeySupplier(() -> source.duplicate());
+        copyContext.targetKeySupplier(() -> target.duplicate());
+        fileBack.operate(copyContext);
+
+        assertTrue(Files.exists(hot.fileKey(target.duplicate()).leafPath()));
+        assertFalse(Files.exists(cold.fileKey(target.duplicate()).leafPath()));
+        assertEquals(read(fileBack, target), bytes);
+    }
+
+
+    @Test
+    public void smallCapacity() throws IOException, FileBackException {
+
+        final LocalFileBack hot
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final LocalFileBack cold
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final TieredFileBack fileBack
+            = new TieredFileBack(hot, cold, 50L, Runnable::run);
+
+        write(fileBack, randomFileKey(), randomFileBytes(40));
+        write(fileBack, randomFileKey(), randomFileBytes(40));
+        assertEquals(fileBack.demotions(), 1L);
+        assertEquals(fileBack.hotBytes(), 40L);
+    }
+
+
+    @Test
+    public void movesKeepNamespacesAndTimesToLive() throws Exception {
+
+        final LocalFileBack hot
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final LocalFileBack cold
+            = new LocalFileBack(FileBackTests.randomRootPath());
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try (CapacityAccount hotAccount = new CapacityAccount(
+                 hot, scheduler, 1L, 0L, TimeUnit.HOURS, false);
+             CapacityAccount coldAccount = new CapacityAccount(
+                 cold, scheduler, 1L, 0L, TimeUnit.HOURS, false);
+             ExpiryReaper hotReaper = new ExpiryReaper(
+                 hot, scheduler, 1L, TimeUnit.HOURS, 1000);
+             ExpiryReaper coldReaper = new ExpiryReaper(
+                 cold, scheduler, 1L, TimeUnit.HOURS, 1000)) {
+            scheduler.submit(() -> null).get(); // the initial scans
+            hot.account(hotAccount);
+            cold.account(coldAccount);
+            hot.reaper(hotReaper);
+            cold.reaper(coldReaper);
+            final TieredFileBack fileBack
+                = new TieredFileBack(hot, cold, 4096L, Runnable::run);
+
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] bytes = randomFileBytes(1024);
+            final FileContext writeContext = writeContext(fileKey, bytes);
+            writeContext.namespaceSupplier(() -> "a");
+            writeContext.timeToLiveSupplier(() -> Duration.ofHours(1L));
+            fileBack.operate(writeContext);
+            final Long expiresAt = hotReaper.expiresAt(
+                hot.fileKey(fileKey.duplicate()).leafPath());
+            assertNotNull(expiresAt);
+
+            fileBack.demote(0L);
+            assertEquals(hotAccount.bytes("a"), 0L);
+            assertEquals(coldAccount.bytes("a"), 1024L);
+            final Long demoted = coldReaper.expiresAt(
+                cold.fileKey(fileKey.duplicate()).leafPath());
+            assertNotNull(demoted);
+            assertTrue(Math.abs(demoted - expiresAt) < 1000L);
+
+            for (int i = 0; i < TieredFileBack.PROMOTION_FREQUENCY; i++) {
+                assertEquals(read(fileBack, fileKey), bytes);
+            }
+            assertEquals(fileBack.promotions(), 1L);
+            assertEquals(hotAccount.bytes("a"), 1024L);
+            assertEquals(coldAccount.bytes("a"), 0L);
+            assertNotNull(hotReaper.expiresAt(
+                hot.fileKey(fileKey.duplicate()).leafPath()));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Jin Kwon &lt;jinahya_at_gmail.com&gt;.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jinahya.simple.file.back;
+
+
+import com.github.jinahya.simple.file.back.FileBack.FileOperation;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileBytes;
+import static com.github.jinahya.simple.file.back.FileBackTests.randomFileKey;
+import static com.github.jinahya.simple.file.back.FileBackTests.read;
+import static com.github.jinahya.simple.file.back.FileBackTests.write;
+import static com.github.jinahya.simple.file.back.FileBackTests.writeContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+
+/**
+ *
+ * @author Jin Kwon &lt;jinahya_at_gmail.com&gt;
+ */
+public class WriteBehindTest {
+
+
+    @Test
+    public void lastWriterWins() throws IOException, FileBackException {
+
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final LocalFileBack fileBack
+                = new LocalFileBack(FileBackTests.randomRootPath());
+            fileBack.locks(new StripedLocks(16));
+            final WriteBehind writeBehind
+                = new WriteBehind(scheduler, 1L, TimeUnit.HOURS, 1048576);
+            fileBack.writeBehind(writeBehind);
+
+            final ByteBuffer fileKey = randomFileKey();
+            final Path leafPath = fileBack.fileKey(fileKey).leafPath();
+            byte[] fileBytes = null;
+            for (int i = 0; i < 8; i++) {
+                fileBytes = randomFileBytes();
+                write(fileBack, fileKey, fileBytes);
+            }
+            assertFalse(Files.exists(leafPath));
+            assertEquals(writeBehind.superseded(), 7L);
+            assertEquals(writeBehind.pendingBytes(), fileBytes.length);
+            assertEquals(read(fileBack, fileKey), fileBytes);
+
+            fileBack.flush();
+            assertEquals(writeBehind.flushed(), 1L);
+            assertEquals(writeBehind.pendingBytes(), 0);
+            assertEquals(Files.readAllBytes(leafPath), fileBytes);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+    @Test
+    public void writeThrough() throws IOException, FileBackException {
+
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final LocalFileBack fileBack
+                = new LocalFileBack(FileBackTests.randomRootPath());
+            final WriteBehind writeBehind
+                = new WriteBehind(scheduler, 1L, TimeUnit.HOURS, 16);
+            fileBack.writeBehind(writeBehind);
+
+            final ByteBuffer fileKey = randomFileKey();
+            final byte[] fileBytes = new byte[8192 + 17];
+            write(fileBack, fileKey, fileBytes);
+            assertEquals(writeBehind.buffered(), 0L);
+            assertEquals(Files.readAllBytes(
+                fileBack.fileKey(fileKey).leafPath()), fileBytes);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+    @Test
+    public void releaseOnFailure() throws Exception {
+
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final LocalFileBack fileBack
+                = new LocalFileBack(FileBackTests.randomRootPath());
+            final WriteBehind writeBehind
+                = new WriteBehind(scheduler, 1L, TimeUnit.HOURS, 64);
+            fileBack.writeBehind(writeBehind);
+            try (ExpiryReaper reaper = new ExpiryReaper(
+                fileBack, scheduler, 1L, TimeUnit.HOURS, 1000)) {
+                fileBack.reaper(reaper);
+
+                // fails, while locked, after the bytes are reserved
+                for (int i = 0; i < 4; i++) {
+                    final FileContext writeContext
+                        = writeContext(randomFileKey(), new byte[64]);
+                    writeContext.timeToLiveSupplier(
+                        () -> Duration.ofSeconds(Long.MAX_VALUE));
+                    try {
+                        fileBack.operate(writeContext);
+                        fail("time to live overflowed");
+                    } catch (final ArithmeticException ae) {
+                        // expected
+                    }
+                    assertEquals(writeBehind.pendingBytes(), 0);
+                }
+
+                final ByteBuffer fileKey = randomFileKey();
+                final byte[] fileBytes = randomFileBytes(64);
+                write(fileBack, fileKey, fileBytes);
+                assertEquals(writeBehind.pendingBytes(), 64);
+                assertEquals(read(fileBack, fileKey), fileBytes);
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+    @Test
+    public void writeThroughAboveWriteLimit()
+        throws IOException, FileBackException {
+
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final LocalFileBack fileBack
+                = new LocalFileBack(FileBackTests.randomRootPath());
+            final WriteBehind writeBehind
+                = new WriteBehind(scheduler, 1L, TimeUnit.HOURS, 1048576, 64);
+            fileBack.writeBehind(writeBehind);
+
+            final ByteBuffer small = randomFileKey();
+            write(fileBack, small, new byte[64]);
+            assertEquals(writeBehind.buffered(), 1L);
+            assertEquals(writeBehind.pendingBytes(), 64);
+
+            final ByteBuffer large = randomFileKey();
+            final byte[] fileBytes = new byte[65];
+            write(fileBack, large, fileBytes);
+            assertEquals(writeBehind.buffered(), 1L);
+            assertEquals(writeBehind.pendingBytes(), 64);
+            assertEquals(Files.readAllBytes(
+                fileBack.fileKey(large).leafPath()), fileBytes);
+
+            // a seekable source known to be larger is never buffered
+            final Path source = Files.createTempFile("write-behind", null);
+            try {
+                Files.write(source, new byte[128]);
+                final FileContext writeContext = new DefaultFileContext();
+                writeContext.fileOperationSupplier(() -> FileOperation.WRITE);
+                writeContext.targetKeySupplier(() -> large.duplicate());
+                writeContext.sourceChannelSupplier(() -> {
+                    try {
+                        return FileChannel.open(source);
+                    } catch (final IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                });
+                fileBack.operate(writeContext);
+            } finally {
+                Files.delete(source);
+            }
+            assertEquals(writeBehind.buffered(), 1L);
+            assertEquals(Files.size(fileBack.fileKey(large).leafPath()), 128L);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void writeLimitAboveMaximum() {
+
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+        try {
+            new WriteBehind(scheduler, 1L, TimeUnit.HOURS, 16, 17);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+
+}